@@ -0,0 +1,61 @@
+package com.ryanantkowiak.matrix.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmark jar. Accepts the usual JMH command line
+ * options, and unless they say otherwise, enables the GC profiler (to report
+ * allocation rates), adds the jdk.incubator.vector module to the forked JVMs
+ * so the vectorized kernels are measured, and writes the results as JSON to
+ * matrix-benchmarks.json so runs can be diffed between releases.
+ * 
+ * @author antko
+ *
+ */
+public class BenchmarkRunner
+{
+	/**
+	 * Default file for the JSON results.
+	 */
+	public static final String DEFAULT_RESULT_FILE = "matrix-benchmarks.json";
+
+	/**
+	 * Default JVM option for the forked benchmark JVMs.
+	 */
+	public static final String DEFAULT_JVM_ARGS_APPEND = "--add-modules=jdk.incubator.vector";
+
+	/**
+	 * Run the benchmarks.
+	 * 
+	 * @param args
+	 *            - JMH command line options
+	 * @throws CommandLineOptionException
+	 * @throws RunnerException
+	 */
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException
+	{
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmd);
+
+		if (cmd.getProfilers().isEmpty())
+			builder.addProfiler(GCProfiler.class);
+
+		if (!cmd.getJvmArgsAppend().hasValue())
+			builder.jvmArgsAppend(DEFAULT_JVM_ARGS_APPEND);
+
+		if (!cmd.getResultFormat().hasValue())
+			builder.resultFormat(ResultFormatType.JSON);
+
+		if (!cmd.getResult().hasValue())
+			builder.result(DEFAULT_RESULT_FILE);
+
+		new Runner(builder.build()).run();
+	}
+}
@@ -0,0 +1,47 @@
+package com.ryanantkowiak.matrix.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ryanantkowiak.matrix.DoubleMatrix;
+import com.ryanantkowiak.matrix.InvalidMatrixDimensionException;
+import com.ryanantkowiak.matrix.MatrixMath;
+
+/**
+ * Benchmarks for element-wise operations.
+ * 
+ * @author antko
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElementWiseBenchmark
+{
+	@Benchmark
+	public DoubleMatrix add(MatrixState s) throws InvalidMatrixDimensionException
+	{
+		return MatrixMath.add(s.a, s.b);
+	}
+
+	@Benchmark
+	public DoubleMatrix subtract(MatrixState s) throws InvalidMatrixDimensionException
+	{
+		return MatrixMath.subtract(s.a, s.b);
+	}
+
+	@Benchmark
+	public DoubleMatrix scalarMultiply(MatrixState s)
+	{
+		return MatrixMath.scalarMultiply(s.a, 1.5);
+	}
+}
@@ -0,0 +1,50 @@
+package com.ryanantkowiak.matrix.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ryanantkowiak.matrix.DoubleMatrix;
+import com.ryanantkowiak.matrix.InvalidMatrixDimensionException;
+import com.ryanantkowiak.matrix.MatrixExpression;
+import com.ryanantkowiak.matrix.MatrixMath;
+
+/**
+ * Benchmarks for a pipeline of six element-wise operations, ((a + b) * 2.5 -
+ * aCopy + b * 0.5) * 3, computed one MatrixMath call at a time and as a fused
+ * MatrixExpression.
+ * 
+ * @author antko
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark
+{
+	@Benchmark
+	public DoubleMatrix eager(MatrixState s) throws InvalidMatrixDimensionException
+	{
+		DoubleMatrix m = MatrixMath.scalarMultiply(MatrixMath.add(s.a, s.b), 2.5);
+
+		m = MatrixMath.add(MatrixMath.subtract(m, s.aCopy), MatrixMath.scalarMultiply(s.b, 0.5));
+
+		return MatrixMath.scalarMultiply(m, 3.0);
+	}
+
+	@Benchmark
+	public DoubleMatrix fused(MatrixState s) throws InvalidMatrixDimensionException
+	{
+		MatrixExpression e = MatrixExpression.of(s.a).add(s.b).scalarMultiply(2.5).subtract(s.aCopy);
+
+		return e.add(MatrixExpression.of(s.b).scalarMultiply(0.5)).scalarMultiply(3.0).evaluate();
+	}
+}
@@ -0,0 +1,92 @@
+package com.ryanantkowiak.matrix.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ryanantkowiak.matrix.DoubleMatrix;
+import com.ryanantkowiak.matrix.DoubleSparseMatrix;
+import com.ryanantkowiak.matrix.MatrixParser;
+
+/**
+ * Benchmark for parsing a matrix from text, with the original fromString and
+ * with the streaming MatrixParser.
+ * 
+ * @author antko
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FromStringBenchmark
+{
+	/**
+	 * The row and column dimension of the parsed matrix.
+	 */
+	@Param({ "8", "64", "512", "4096" })
+	public int size;
+
+	/**
+	 * The fraction of elements that are nonzero.
+	 */
+	@Param({ "1.0", "0.1", "0.001", "0.00001" })
+	public double density;
+
+	/**
+	 * The text to parse: size * size space separated values.
+	 */
+	private String m_text;
+
+	/**
+	 * Build the text to parse.
+	 */
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+
+		for (long i = 0 ; i < (long) size * size ; ++i)
+		{
+			if (i > 0)
+				sb.append(' ');
+
+			sb.append(random.nextDouble() < density ? random.nextDouble() : 0.0);
+		}
+
+		m_text = sb.toString();
+	}
+
+	@Benchmark
+	public DoubleMatrix fromString()
+	{
+		return DoubleMatrix.fromString(size, size, m_text, " ");
+	}
+
+	@Benchmark
+	public DoubleMatrix parse()
+	{
+		return MatrixParser.parse(m_text, size, size);
+	}
+
+	@Benchmark
+	public DoubleSparseMatrix parseSparse()
+	{
+		return MatrixParser.parseSparse(m_text, size, size);
+	}
+}
@@ -0,0 +1,133 @@
+package com.ryanantkowiak.matrix.benchmarks;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.ryanantkowiak.matrix.DoubleMatrix;
+import com.ryanantkowiak.matrix.DoubleSparseMatrix;
+
+/**
+ * Benchmark operands: two random square matrices of the given size, density
+ * and storage format.
+ * 
+ * @author antko
+ *
+ */
+@State(Scope.Benchmark)
+public class MatrixState
+{
+	/**
+	 * Most nonzeros a sparse operand may hold. Denser sparse operands would
+	 * keep the multiply and determinant benchmarks running for hours, so those
+	 * parameter combinations are skipped.
+	 */
+	public static final long MAX_SPARSE_NON_ZEROS = 1L << 20;
+
+	/**
+	 * The row and column dimension of the operands.
+	 */
+	@Param({ "8", "64", "512", "4096" })
+	public int size;
+
+	/**
+	 * The fraction of elements that are nonzero.
+	 */
+	@Param({ "1.0", "0.1", "0.001", "0.00001" })
+	public double density;
+
+	/**
+	 * The storage format of the operands: "dense" for DoubleMatrix, "sparse" for
+	 * DoubleSparseMatrix.
+	 */
+	@Param({ "dense", "sparse" })
+	public String format;
+
+	/**
+	 * The first operand.
+	 */
+	public DoubleMatrix a;
+
+	/**
+	 * The second operand.
+	 */
+	public DoubleMatrix b;
+
+	/**
+	 * An equal copy of the first operand, held in separate storage.
+	 */
+	public DoubleMatrix aCopy;
+
+	/**
+	 * Build the operands.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the operands would be sparse with more than
+	 *             MAX_SPARSE_NON_ZEROS nonzeros, which makes JMH skip this
+	 *             parameter combination
+	 */
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		if ("sparse".equals(format) && density * size * size > MAX_SPARSE_NON_ZEROS)
+			throw new IllegalStateException("Skipped: sparse operands of size " + size + " and density " + density
+					+ " exceed " + MAX_SPARSE_NON_ZEROS + " nonzeros");
+
+		Random random = new Random(42);
+
+		a = create();
+		b = create();
+		aCopy = create();
+
+		fill(random, a, b);
+
+		random = new Random(42);
+
+		fill(random, aCopy, create());
+	}
+
+	/**
+	 * Create an empty operand in the configured format.
+	 * 
+	 * @return - a new empty matrix
+	 */
+	public DoubleMatrix create()
+	{
+		if ("sparse".equals(format))
+			return new DoubleSparseMatrix(size, size);
+
+		return new DoubleMatrix(size, size);
+	}
+
+	/**
+	 * Fill two matrices with random nonzeros at the configured density.
+	 */
+	private void fill(Random random, DoubleMatrix m1, DoubleMatrix m2)
+	{
+		long nonZeros = Math.round(density * size * size);
+
+		if (density >= 1.0)
+		{
+			for (int r = 0 ; r < size ; ++r)
+			{
+				for (int c = 0 ; c < size ; ++c)
+				{
+					m1.setDouble(r, c, random.nextDouble() + 0.5);
+					m2.setDouble(r, c, random.nextDouble() + 0.5);
+				}
+			}
+
+			return;
+		}
+
+		for (long i = 0 ; i < nonZeros ; ++i)
+		{
+			m1.setDouble(random.nextInt(size), random.nextInt(size), random.nextDouble() + 0.5);
+			m2.setDouble(random.nextInt(size), random.nextInt(size), random.nextDouble() + 0.5);
+		}
+	}
+}
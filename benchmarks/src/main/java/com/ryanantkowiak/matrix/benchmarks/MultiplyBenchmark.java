@@ -0,0 +1,42 @@
+package com.ryanantkowiak.matrix.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ryanantkowiak.matrix.DoubleMatrix;
+import com.ryanantkowiak.matrix.InvalidMatrixDimensionException;
+import com.ryanantkowiak.matrix.MatrixMath;
+
+/**
+ * Benchmarks for matrix multiplication. For dense operands of size n the
+ * throughput in GFLOP/s is 2 * n^3 / (time per operation in ns).
+ * 
+ * @author antko
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiplyBenchmark
+{
+	@Benchmark
+	public DoubleMatrix multiply(MatrixState s) throws InvalidMatrixDimensionException
+	{
+		return MatrixMath.multiply(s.a, s.b);
+	}
+
+	@Benchmark
+	public DoubleMatrix multiplySparse(MatrixState s) throws InvalidMatrixDimensionException
+	{
+		return MatrixMath.multiplySparse(s.a, s.b);
+	}
+}
@@ -0,0 +1,49 @@
+package com.ryanantkowiak.matrix.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ryanantkowiak.matrix.DoubleMatrix;
+import com.ryanantkowiak.matrix.InvalidMatrixDimensionException;
+import com.ryanantkowiak.matrix.MatrixMath;
+
+/**
+ * Benchmarks for determinant, sub-matrix extraction and equality.
+ * 
+ * @author antko
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructureBenchmark
+{
+	@Benchmark
+	public double determinant(MatrixState s) throws InvalidMatrixDimensionException
+	{
+		return MatrixMath.determinant(s.a);
+	}
+
+	@Benchmark
+	public DoubleMatrix subMatrix(MatrixState s)
+	{
+		int quarter = s.size / 4;
+
+		return s.a.subMatrix(quarter, s.size - quarter, quarter, s.size - quarter);
+	}
+
+	@Benchmark
+	public boolean equals(MatrixState s)
+	{
+		return s.a.equals(s.aCopy);
+	}
+}
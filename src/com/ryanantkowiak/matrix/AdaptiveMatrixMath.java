@@ -0,0 +1,303 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Math functions on matrices of doubles that choose the kernel and the
+ * representation of the result from the density of the operands, so that the
+ * caller does not have to pick between MatrixMath.add() and addSparse(),
+ * multiply() and multiplySparse(), and so on.
+ *
+ * The density of an operand is the fraction of its elements that it stores:
+ * the entries of a sparse or compressed matrix, the structure of a banded,
+ * triangular or symmetric matrix, and every element of any other matrix. The
+ * density of a result is estimated before it is computed: for a sum, from the
+ * densities of the operands, as if their nonzeros fell independently; for a
+ * product, from its exact number of multiply-adds, as if they fell on random
+ * elements of the result.
+ *
+ * A result whose estimated density is above the density threshold is computed
+ * into an array-backed matrix, and any other result into a DoubleSparseMatrix.
+ * A result whose actual density ends up on the other side of the threshold is
+ * then converted, as adapt() does. Operations on operands without sparse
+ * storage are left to MatrixMath, and their results are not converted.
+ *
+ * Results may differ from those of MatrixMath.multiply() in the last bits,
+ * since the sparse kernels sum the products in a different order.
+ *
+ * @author antko
+ *
+ */
+public class AdaptiveMatrixMath
+{
+	/**
+	 * Default density above which a result is stored as an array-backed
+	 * matrix. A DoubleSparseMatrix takes 32 to 64 bytes per nonzero against 8
+	 * bytes per element for an array, and its kernels do several times the
+	 * work per element, so it stops paying off well below a quarter full.
+	 */
+	public static final double DEFAULT_DENSITY_THRESHOLD = 0.1;
+
+	private double m_densityThreshold;
+
+	/**
+	 * Construct a policy with the default density threshold.
+	 */
+	public AdaptiveMatrixMath()
+	{
+		this(DEFAULT_DENSITY_THRESHOLD);
+	}
+
+	/**
+	 * Construct a policy with the given density threshold.
+	 *
+	 * @param densityThreshold
+	 *            - the density above which results are array-backed, from 0
+	 *            to 1
+	 */
+	public AdaptiveMatrixMath(double densityThreshold)
+	{
+		setDensityThreshold(densityThreshold);
+	}
+
+	/**
+	 * Return the given matrix in the representation its actual density calls
+	 * for: a sparse or compressed matrix denser than the threshold is copied
+	 * into an array-backed matrix, and an array-backed matrix no denser than
+	 * the threshold is copied into a DoubleSparseMatrix. Any other matrix,
+	 * such as a structured or off-heap matrix, is returned as is.
+	 *
+	 * @param m
+	 * @return - m, or a new matrix holding the same values
+	 */
+	public DoubleMatrix adapt(DoubleMatrix m)
+	{
+		if (null == m)
+			throw new NullPointerException();
+
+		double elements = (double) m.getRowDimension() * m.getColumnDimension();
+
+		if (elements == 0.0)
+			return m;
+
+		if (SparseKernels.hasSparseStorage(m))
+			return isDense(density(m)) ? dense(m) : m;
+
+		if (m.m_values == null)
+			return m;
+
+		long nonZeros = 0;
+
+		for (int r = 0 ; r < m.getRowDimension() ; ++r)
+		{
+			int start = m.m_offset + r * m.m_rowStride;
+
+			for (int c = start ; c < start + m.getColumnDimension() ; ++c)
+				if (m.m_values[c] != 0.0)
+					++nonZeros;
+		}
+
+		if (isDense(nonZeros / elements))
+			return m;
+
+		DoubleSparseMatrix s = new DoubleSparseMatrix(m.getRowDimension(), m.getColumnDimension());
+
+		s.m_sparseData = new LongDoubleHashMap(nonZeros);
+
+		m.forEachNonZero((row, col, value) -> s.m_sparseData.put(s.convertRowAndColToKey(row, col), value));
+
+		return s;
+	}
+
+	/**
+	 * Add two matrices, into the representation their estimated density calls
+	 * for.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return - the sum
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public DoubleMatrix add(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	{
+		return elementWise(m1, m2, false);
+	}
+
+	/**
+	 * Helper function to return the fraction of the elements of a matrix that
+	 * it stores.
+	 */
+	private static double density(DoubleMatrix m)
+	{
+		double elements = (double) m.getRowDimension() * m.getColumnDimension();
+
+		if (elements == 0.0)
+			return 0.0;
+
+		if (m instanceof DoubleSparseMatrix)
+			return ((DoubleSparseMatrix) m).m_sparseData.size() / elements;
+
+		if (m instanceof DoubleCompressedMatrix)
+			return ((DoubleCompressedMatrix) m).getNonZeroCount() / elements;
+
+		if (m instanceof DoubleSymmetricMatrix)
+			return (2.0 * ((DoubleSymmetricMatrix) m).getStoredCount() - m.getRowDimension()) / elements;
+
+		if (m instanceof DoubleStructuredMatrix)
+			return ((DoubleStructuredMatrix) m).getStoredCount() / elements;
+
+		return 1.0;
+	}
+
+	/**
+	 * Helper function to return an array-backed matrix holding the values of
+	 * m, which is m itself if it is array-backed.
+	 */
+	private static DoubleMatrix dense(DoubleMatrix m)
+	{
+		if (m.m_values != null)
+			return m;
+
+		int rows = m.getRowDimension();
+		int cols = m.getColumnDimension();
+
+		DoubleMatrix d = new DoubleMatrix(rows, cols);
+		double[] values = d.m_values;
+
+		if (SparseKernels.hasSparseStorage(m))
+		{
+			m.forEachNonZero((row, col, value) -> values[row * cols + col] = value);
+			return d;
+		}
+
+		for (int r = 0 ; r < rows ; ++r)
+			MatrixMath.readRow(m, r, 0, values, r * cols, cols);
+
+		return d;
+	}
+
+	/**
+	 * Helper function to compute m1 + m2 (or m1 - m2).
+	 */
+	private DoubleMatrix elementWise(DoubleMatrix m1, DoubleMatrix m2, boolean subtract)
+			throws InvalidMatrixDimensionException
+	{
+		if (m1 == null || m2 == null)
+			throw new NullPointerException();
+
+		if (!MatrixMath.dimensionsEqual(m1, m2))
+			throw new InvalidMatrixDimensionException();
+
+		if (!SparseKernels.hasSparseStorage(m1) && !SparseKernels.hasSparseStorage(m2))
+			return subtract ? MatrixMath.subtract(m1, m2) : MatrixMath.add(m1, m2);
+
+		double d1 = density(m1);
+		double d2 = density(m2);
+
+		if (isDense(d1 + d2 - d1 * d2))
+		{
+			DoubleMatrix a = dense(m1);
+			DoubleMatrix b = (m2 == m1) ? a : dense(m2);
+
+			return adapt(subtract ? MatrixMath.subtract(a, b) : MatrixMath.add(a, b));
+		}
+
+		return adapt(subtract ? MatrixMath.subtractSparse(m1, m2) : MatrixMath.addSparse(m1, m2));
+	}
+
+	/**
+	 * Returns the density above which results are array-backed.
+	 *
+	 * @return - the density threshold
+	 */
+	public double getDensityThreshold()
+	{
+		return m_densityThreshold;
+	}
+
+	/**
+	 * Helper function to determine whether the given density calls for an
+	 * array-backed matrix.
+	 */
+	private boolean isDense(double density)
+	{
+		return density > m_densityThreshold;
+	}
+
+	/**
+	 * Multiply two matrices, with the kernel and into the representation their
+	 * densities call for. Operands that are both denser than the threshold are
+	 * multiplied by the dense kernel. Otherwise the product is computed from
+	 * the nonzeros: straight into an array-backed matrix when it is estimated
+	 * to be dense, and into a sparse matrix when it is not. Operands holding a
+	 * NaN or infinite value are multiplied by the dense kernel, whose products
+	 * with zero give NaN as they should.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return - the product
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public DoubleMatrix multiply(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	{
+		if (m1 == null || m2 == null)
+			throw new NullPointerException();
+
+		if (m1.getColumnDimension() != m2.getRowDimension())
+			throw new InvalidMatrixDimensionException();
+
+		if (!SparseKernels.hasSparseStorage(m1) && !SparseKernels.hasSparseStorage(m2))
+			return MatrixMath.multiply(m1, m2);
+
+		DoubleCompressedMatrix a = null;
+		DoubleMatrix b = null;
+
+		if (!isDense(density(m1)) || !isDense(density(m2)))
+		{
+			a = SparseKernels.toFiniteCompressedRows(m1);
+			b = (a == null) ? null : SparseKernels.toFiniteRows(m2);
+		}
+
+		if (a == null || b == null)
+		{
+			DoubleMatrix d1 = dense(m1);
+
+			return adapt(MatrixMath.multiply(d1, (m2 == m1) ? d1 : dense(m2)));
+		}
+
+		if (isDense(SparseKernels.productDensity(a, b)))
+			return adapt(SparseKernels.multiplyDense(a, b));
+
+		DoubleCompressedMatrix cb = (b instanceof DoubleCompressedMatrix) ? (DoubleCompressedMatrix) b
+				: SparseKernels.toCompressedRows(b);
+
+		return adapt(SparseKernels.multiply(a, cb).toSparseMatrix());
+	}
+
+	/**
+	 * Set the density above which results are array-backed. Zero makes every
+	 * result with a nonzero array-backed, and one makes every result sparse.
+	 *
+	 * @param densityThreshold
+	 *            - a density from 0 to 1
+	 */
+	public void setDensityThreshold(double densityThreshold)
+	{
+		if (!(densityThreshold >= 0.0 && densityThreshold <= 1.0))
+			throw new IllegalArgumentException("densityThreshold must be between 0 and 1");
+
+		m_densityThreshold = densityThreshold;
+	}
+
+	/**
+	 * Subtract m2 from m1, into the representation their estimated density
+	 * calls for.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return - the difference
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public DoubleMatrix subtract(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	{
+		return elementWise(m1, m2, true);
+	}
+}
@@ -0,0 +1,240 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Cholesky decomposition of a symmetric positive definite matrix, such that A
+ * = L * L^T, where L is lower triangular with a positive diagonal.
+ *
+ * The factorization takes about half the operations of an LU decomposition
+ * and needs no pivoting. It is blocked like LUDecomposition, so that most of
+ * the work is done by the matrix multiplication kernel.
+ *
+ * @author antko
+ *
+ */
+public class CholeskyDecomposition
+{
+	private static final DoubleKernels KERNELS = DoubleKernels.INSTANCE;
+
+	/**
+	 * The dimension of the factored matrix.
+	 */
+	private final int m_n;
+
+	/**
+	 * Row-major storage of L, with zeros above the diagonal.
+	 */
+	private final double[] m_l;
+
+	/**
+	 * Factor the given symmetric positive definite matrix.
+	 *
+	 * @param m
+	 *            - the matrix to factor
+	 * @throws InvalidMatrixDimensionException
+	 * @throws NotPositiveDefiniteException
+	 *             if the matrix is not symmetric, or not positive definite
+	 */
+	public CholeskyDecomposition(DoubleMatrix m) throws InvalidMatrixDimensionException, NotPositiveDefiniteException
+	{
+		if (null == m)
+			throw new NullPointerException();
+
+		if (m.getRowDimension() != m.getColumnDimension())
+			throw new InvalidMatrixDimensionException();
+
+		int n = m.getRowDimension();
+
+		m_n = n;
+		m_l = new double[n * n];
+
+		for (int r = 0 ; r < n ; ++r)
+			MatrixMath.readRow(m, r, 0, m_l, r * n, n);
+
+		for (int r = 0 ; r < n ; ++r)
+			for (int c = 0 ; c < r ; ++c)
+				if (m_l[r * n + c] != m_l[c * n + r])
+					throw new NotPositiveDefiniteException();
+
+		factor(m_l, n);
+	}
+
+	/**
+	 * Helper function to factor the lower triangle of the row-major n x n array
+	 * in place, a panel of DenseFactorKernels.NB columns at a time: the
+	 * diagonal block is factored, the rows below it are solved with its
+	 * transpose, and the lower half of the trailing matrix is updated with
+	 * products.
+	 *
+	 * @param a
+	 * @param n
+	 * @throws NotPositiveDefiniteException
+	 */
+	private static void factor(double[] a, int n) throws NotPositiveDefiniteException
+	{
+		for (int j = 0 ; j < n ; j += DenseFactorKernels.NB)
+		{
+			int nb = Math.min(DenseFactorKernels.NB, n - j);
+			int end = j + nb;
+
+			for (int k = j ; k < end ; ++k)
+			{
+				int rk = k * n;
+				double d = a[rk + k] - KERNELS.dot(a, rk + j, a, rk + j, k - j);
+
+				if (!(d > 0.0))
+					throw new NotPositiveDefiniteException();
+
+				double lkk = Math.sqrt(d);
+
+				a[rk + k] = lkk;
+
+				for (int i = k + 1 ; i < end ; ++i)
+					a[i * n + k] = (a[i * n + k] - KERNELS.dot(a, i * n + j, a, rk + j, k - j)) / lkk;
+			}
+
+			int rest = n - end;
+
+			if (rest == 0)
+				break;
+
+			for (int i = end ; i < n ; ++i)
+				for (int k = j ; k < end ; ++k)
+					a[i * n + k] = (a[i * n + k] - KERNELS.dot(a, i * n + j, a, k * n + j, k - j)) / a[k * n + k];
+
+			double[] lt = new double[nb * rest];
+
+			for (int i = 0 ; i < rest ; ++i)
+				for (int p = 0 ; p < nb ; ++p)
+					lt[p * rest + i] = a[(end + i) * n + j + p];
+
+			for (int i = end ; i < n ; i += DenseFactorKernels.NB)
+			{
+				int ib = Math.min(DenseFactorKernels.NB, n - i);
+
+				DenseFactorKernels.subtractProduct(ib, i + ib - end, nb, a, i * n + j, n, false, lt, 0, rest, a,
+						i * n + end, n);
+			}
+		}
+
+		for (int r = 0 ; r < n ; ++r)
+			Arrays.fill(a, r * n + r + 1, (r + 1) * n, 0.0);
+	}
+
+	/**
+	 * Returns the determinant of the factored matrix.
+	 *
+	 * @return - the determinant
+	 */
+	public double determinant()
+	{
+		double det = 1.0;
+
+		for (int i = 0 ; i < m_n ; ++i)
+		{
+			double d = m_l[i * m_n + i];
+
+			det *= d * d;
+		}
+
+		return det;
+	}
+
+	/**
+	 * Returns the lower triangular factor L.
+	 *
+	 * @return - a new matrix holding L
+	 */
+	public DoubleLowerTriangularMatrix getL()
+	{
+		DoubleLowerTriangularMatrix l = new DoubleLowerTriangularMatrix(m_n);
+
+		for (int r = 0 ; r < m_n ; ++r)
+			System.arraycopy(m_l, r * m_n, l.m_elements, l.index(r, 0), r + 1);
+
+		return l;
+	}
+
+	/**
+	 * Returns the inverse of the factored matrix.
+	 *
+	 * @return - a new matrix holding the inverse
+	 */
+	public DoubleMatrix inverse()
+	{
+		DoubleMatrix x = new DoubleMatrix(m_n, m_n);
+		double[] xv = x.m_values;
+
+		for (int i = 0 ; i < m_n ; ++i)
+			xv[i * m_n + i] = 1.0;
+
+		substitute(xv, m_n);
+
+		return x;
+	}
+
+	/**
+	 * Solve A * x = b for a single right-hand side.
+	 *
+	 * @param b
+	 *            - the right-hand side, of length n
+	 * @return - the solution x
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public double[] solve(double[] b) throws InvalidMatrixDimensionException
+	{
+		if (null == b)
+			throw new NullPointerException();
+
+		if (b.length != m_n)
+			throw new InvalidMatrixDimensionException();
+
+		double[] x = b.clone();
+
+		substitute(x, 1);
+
+		return x;
+	}
+
+	/**
+	 * Solve A * X = B for every column of B at once.
+	 *
+	 * @param b
+	 *            - the right-hand sides, with n rows
+	 * @return - the solution X, with the same shape as B
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public DoubleMatrix solve(DoubleMatrix b) throws InvalidMatrixDimensionException
+	{
+		if (null == b)
+			throw new NullPointerException();
+
+		if (b.getRowDimension() != m_n)
+			throw new InvalidMatrixDimensionException();
+
+		int nrhs = b.getColumnDimension();
+
+		DoubleMatrix x = new DoubleMatrix(m_n, nrhs);
+
+		for (int i = 0 ; i < m_n ; ++i)
+			MatrixMath.readRow(b, i, 0, x.m_values, i * nrhs, nrhs);
+
+		substitute(x.m_values, nrhs);
+
+		return x;
+	}
+
+	/**
+	 * Helper function to solve L * L^T * X = B in place, where B is a row-major
+	 * n x nrhs array.
+	 *
+	 * @param x
+	 * @param nrhs
+	 */
+	private void substitute(double[] x, int nrhs)
+	{
+		DenseFactorKernels.solveTriangular(m_n, nrhs, m_l, 0, m_n, true, false, false, x, 0, nrhs);
+		DenseFactorKernels.solveTriangular(m_n, nrhs, m_l, 0, m_n, true, true, false, x, 0, nrhs);
+	}
+}
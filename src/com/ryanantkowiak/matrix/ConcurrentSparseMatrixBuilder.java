@@ -0,0 +1,190 @@
+package com.ryanantkowiak.matrix;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Builder for sparse matrices of doubles that many threads can fill at once,
+ * as in finite element assembly, where each element adds its contributions to
+ * a shared global matrix.
+ *
+ * Each thread appends its accumulate() calls to a buffer of its own, in
+ * coordinate (COO) form, so threads never share a lock or a cache line while
+ * the matrix is being assembled. Contributions to the same position are only
+ * combined when the buffers are merged by toCompressedRowMatrix(), which sorts
+ * every entry into compressed row form and sums the duplicates, in time
+ * linear in the number of contributions.
+ *
+ * The merge must happen after the threads that accumulated are done, for
+ * example after they have been joined or their tasks have completed. The
+ * duplicates are summed in the order their buffers are merged, which may
+ * differ between runs, so sums may differ in the last bits.
+ *
+ * The buffers belong to the builder. A thread holds only a weak reference to
+ * its own, so a pooled thread that once accumulated does not keep the
+ * contributions reachable after the builder is dropped.
+ *
+ * @author antko
+ *
+ */
+public class ConcurrentSparseMatrixBuilder
+{
+	/**
+	 * Initial capacity of each thread's buffer.
+	 */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/**
+	 * Coordinate entries appended by a single thread.
+	 */
+	private static class Buffer
+	{
+		int[] m_rows = new int[INITIAL_CAPACITY];
+		int[] m_cols = new int[INITIAL_CAPACITY];
+		double[] m_values = new double[INITIAL_CAPACITY];
+		int m_size;
+
+		void append(int row, int col, double value)
+		{
+			if (m_size == m_rows.length)
+			{
+				int capacity = Math.max(2 * m_size, INITIAL_CAPACITY);
+
+				m_rows = Arrays.copyOf(m_rows, capacity);
+				m_cols = Arrays.copyOf(m_cols, capacity);
+				m_values = Arrays.copyOf(m_values, capacity);
+			}
+
+			m_rows[m_size] = row;
+			m_cols[m_size] = col;
+			m_values[m_size++] = value;
+		}
+	}
+
+	private final int m_rows;
+	private final int m_columns;
+
+	/**
+	 * Every buffer created so far, for the merge. This is the only strong
+	 * reference to them.
+	 */
+	private final Queue<Buffer> m_buffers = new ConcurrentLinkedQueue<Buffer>();
+
+	/**
+	 * The calling thread's buffer, created and registered on first use.
+	 */
+	private final ThreadLocal<WeakReference<Buffer>> m_buffer = new ThreadLocal<WeakReference<Buffer>>()
+	{
+		@Override
+		protected WeakReference<Buffer> initialValue()
+		{
+			Buffer b = new Buffer();
+
+			m_buffers.add(b);
+
+			return new WeakReference<Buffer>(b);
+		}
+	};
+
+	/**
+	 * Construct a builder for a matrix with the given dimensions.
+	 *
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 */
+	public ConcurrentSparseMatrixBuilder(int rows, int cols)
+	{
+		if (rows < 0 || cols < 0)
+			throw new IndexOutOfBoundsException();
+
+		m_rows = rows;
+		m_columns = cols;
+	}
+
+	/**
+	 * Add delta to the element at the given row and column. May be called from
+	 * any number of threads at once; no contribution is lost.
+	 *
+	 * @param row
+	 *            - the row of the element
+	 * @param col
+	 *            - the column of the element
+	 * @param delta
+	 *            - the value to add to the element
+	 */
+	public void accumulate(int row, int col, double delta)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		m_buffer.get().get().append(row, col, delta);
+	}
+
+	/**
+	 * Returns the number of columns of the matrix being built.
+	 *
+	 * @return - the number of columns
+	 */
+	public int getColumnDimension()
+	{
+		return m_columns;
+	}
+
+	/**
+	 * Returns the number of rows of the matrix being built.
+	 *
+	 * @return - the number of rows
+	 */
+	public int getRowDimension()
+	{
+		return m_rows;
+	}
+
+	/**
+	 * Merge the contributions of every thread into a compressed row matrix,
+	 * with the contributions to each position summed and the positions whose
+	 * sum is zero left out. The builder is not changed, so accumulation may
+	 * continue afterwards.
+	 *
+	 * @return - a new compressed row matrix
+	 */
+	public DoubleCompressedRowMatrix toCompressedRowMatrix()
+	{
+		List<Buffer> buffers = new ArrayList<Buffer>(m_buffers);
+		int segments = buffers.size();
+
+		int[][] rowIdx = new int[segments][];
+		int[][] colIdx = new int[segments][];
+		double[][] values = new double[segments][];
+		int[] counts = new int[segments];
+
+		for (int s = 0 ; s < segments ; ++s)
+		{
+			Buffer b = buffers.get(s);
+
+			rowIdx[s] = b.m_rows;
+			colIdx[s] = b.m_cols;
+			values[s] = b.m_values;
+			counts[s] = b.m_size;
+		}
+
+		return SparseKernels.compressTriplets(m_rows, m_columns, rowIdx, colIdx, values, counts);
+	}
+
+	/**
+	 * Merge the contributions of every thread into a sparse matrix, as
+	 * toCompressedRowMatrix() does.
+	 *
+	 * @return - a new sparse matrix
+	 */
+	public DoubleSparseMatrix toSparseMatrix()
+	{
+		return toCompressedRowMatrix().toSparseMatrix();
+	}
+}
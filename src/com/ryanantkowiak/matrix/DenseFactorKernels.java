@@ -0,0 +1,139 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Blocked building blocks shared by the dense factorizations (LU, Cholesky and
+ * QR) on row-major arrays: triangular solves with many right-hand sides and
+ * the C -= A * B update. Each works a block of NB rows or columns at a time,
+ * so that most of the floating point operations are done by the cache-blocked
+ * DoubleGemm kernel.
+ *
+ * @author antko
+ *
+ */
+final class DenseFactorKernels
+{
+	/**
+	 * Width of the panels and diagonal blocks.
+	 */
+	static final int NB = 64;
+
+	private static final DoubleKernels KERNELS = DoubleKernels.INSTANCE;
+
+	/**
+	 * Unused default constructor.
+	 */
+	private DenseFactorKernels()
+	{
+	}
+
+	/**
+	 * Solve op(T) * X = B in place for the n x nrhs array X, where T is an n x n
+	 * triangular array and op(T) is T or its transpose. The diagonal blocks are
+	 * solved by substitution, and the rows still to be solved are updated with
+	 * one product per block.
+	 *
+	 * @param n
+	 * @param nrhs
+	 * @param t
+	 *            - data of T
+	 * @param tOff
+	 *            - offset of T(0, 0) in t
+	 * @param ldt
+	 *            - distance between rows of T in t
+	 * @param lower
+	 *            - true if T is stored below the diagonal, false if above
+	 * @param trans
+	 *            - true to solve with the transpose of T
+	 * @param unit
+	 *            - true if the diagonal of T is implicitly one
+	 * @param x
+	 *            - data of X, holding B on entry
+	 * @param xOff
+	 *            - offset of X(0, 0) in x
+	 * @param ldx
+	 *            - distance between rows of X in x
+	 */
+	static void solveTriangular(int n, int nrhs, double[] t, int tOff, int ldt, boolean lower, boolean trans,
+			boolean unit, double[] x, int xOff, int ldx)
+	{
+		boolean forward = (lower != trans);
+
+		// Element (i, k) of op(T) is t[tOff + i * si + k * sk].
+		int si = trans ? 1 : ldt;
+		int sk = trans ? ldt : 1;
+
+		for (int s = 0 ; s < n ; s += NB)
+		{
+			int nb = Math.min(NB, n - s);
+			int i0 = forward ? s : n - s - nb;
+
+			for (int b = 0 ; b < nb ; ++b)
+			{
+				int i = forward ? i0 + b : i0 + nb - 1 - b;
+				int row = xOff + i * ldx;
+
+				int kFirst = forward ? i0 : i + 1;
+				int kLast = forward ? i : i0 + nb;
+
+				for (int k = kFirst ; k < kLast ; ++k)
+				{
+					double l = t[tOff + i * si + k * sk];
+
+					if (l != 0.0)
+						KERNELS.axpy(-l, x, xOff + k * ldx, x, row, nrhs);
+				}
+
+				if (unit)
+					continue;
+
+				double diag = t[tOff + i * (si + sk)];
+
+				for (int j = 0 ; j < nrhs ; ++j)
+					x[row + j] /= diag;
+			}
+
+			int r0 = forward ? i0 + nb : 0;
+			int rows = forward ? n - r0 : i0;
+
+			if (rows > 0)
+				subtractProduct(rows, nrhs, nb, t, tOff + r0 * si + i0 * sk, ldt, trans, x, xOff + i0 * ldx, ldx, x,
+						xOff + r0 * ldx, ldx);
+		}
+	}
+
+	/**
+	 * Compute C -= op(A) * B, where op(A) is the m x k matrix A or the
+	 * transpose of the k x m matrix A. op(A) is copied and negated into a
+	 * contiguous block, so C may share an array with A and B as long as their
+	 * elements do not overlap.
+	 *
+	 * @param m
+	 * @param n
+	 * @param k
+	 * @param a
+	 * @param aOff
+	 * @param lda
+	 * @param transA
+	 *            - true to use the transpose of A
+	 * @param b
+	 * @param bOff
+	 * @param ldb
+	 * @param c
+	 * @param cOff
+	 * @param ldc
+	 */
+	static void subtractProduct(int m, int n, int k, double[] a, int aOff, int lda, boolean transA, double[] b,
+			int bOff, int ldb, double[] c, int cOff, int ldc)
+	{
+		if (m == 0 || n == 0 || k == 0)
+			return;
+
+		double[] na = new double[m * k];
+
+		for (int i = 0 ; i < m ; ++i)
+			for (int p = 0 ; p < k ; ++p)
+				na[i * k + p] = -(transA ? a[aOff + p * lda + i] : a[aOff + i * lda + p]);
+
+		DoubleGemm.multiply(m, n, k, na, 0, k, b, bOff, ldb, c, cOff, ldc);
+	}
+}
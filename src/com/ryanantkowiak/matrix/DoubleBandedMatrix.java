@@ -0,0 +1,124 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Banded matrix of doubles: the element at (row, col) may be nonzero only when
+ * -lower <= col - row <= upper. Each row stores lower + upper + 1 elements,
+ * the band of row r starting at position r * (lower + upper + 1), with unused
+ * positions where the band runs past the edges of the matrix.
+ *
+ * @author antko
+ *
+ */
+public class DoubleBandedMatrix extends DoubleStructuredMatrix
+{
+	/**
+	 * The number of diagonals stored below the main diagonal.
+	 */
+	protected final int m_lowerBandwidth;
+
+	/**
+	 * The number of diagonals stored above the main diagonal.
+	 */
+	protected final int m_upperBandwidth;
+
+	/**
+	 * Construct a zeroed banded matrix.
+	 *
+	 * @param rows
+	 *            - the number of rows in this matrix
+	 * @param cols
+	 *            - the number of columns in this matrix
+	 * @param lower
+	 *            - the number of diagonals below the main diagonal
+	 * @param upper
+	 *            - the number of diagonals above the main diagonal
+	 */
+	public DoubleBandedMatrix(int rows, int cols, int lower, int upper)
+	{
+		super(rows, cols, (long) rows * (bandwidth(lower, rows) + bandwidth(upper, cols) + 1));
+
+		m_lowerBandwidth = bandwidth(lower, rows);
+		m_upperBandwidth = bandwidth(upper, cols);
+	}
+
+	/**
+	 * Helper function to validate a bandwidth and limit it to the diagonals that
+	 * fit in a matrix with the given dimension.
+	 */
+	private static int bandwidth(int diagonals, int dimension)
+	{
+		if (diagonals < 0)
+			throw new IllegalArgumentException("Invalid bandwidth: " + diagonals);
+
+		return Math.min(diagonals, Math.max(0, dimension - 1));
+	}
+
+	/**
+	 * Return a copy of this matrix with the same bandwidths.
+	 *
+	 * @return - a new banded matrix holding the same values
+	 */
+	@Override
+	public DoubleBandedMatrix copy()
+	{
+		return (DoubleBandedMatrix) super.copy();
+	}
+
+	/**
+	 * Returns a zeroed banded matrix with the same dimensions and bandwidths.
+	 */
+	@Override
+	DoubleStructuredMatrix emptyCopy()
+	{
+		return new DoubleBandedMatrix(m_rows, m_columns, m_lowerBandwidth, m_upperBandwidth);
+	}
+
+	/**
+	 * The band of a row starts lower columns before the diagonal.
+	 */
+	@Override
+	int firstColumn(int row)
+	{
+		return Math.max(0, row - m_lowerBandwidth);
+	}
+
+	/**
+	 * Returns the number of diagonals stored below the main diagonal.
+	 *
+	 * @return - the lower bandwidth
+	 */
+	@Override
+	public int getLowerBandwidth()
+	{
+		return m_lowerBandwidth;
+	}
+
+	/**
+	 * Returns the number of diagonals stored above the main diagonal.
+	 *
+	 * @return - the upper bandwidth
+	 */
+	@Override
+	public int getUpperBandwidth()
+	{
+		return m_upperBandwidth;
+	}
+
+	/**
+	 * Element (row, col) is at row * (lower + upper + 1) + col - row + lower.
+	 */
+	@Override
+	int index(int row, int col)
+	{
+		return row * (m_lowerBandwidth + m_upperBandwidth) + col + m_lowerBandwidth;
+	}
+
+	/**
+	 * The band of a row ends upper columns after the diagonal.
+	 */
+	@Override
+	int lastColumn(int row)
+	{
+		return Math.min(m_columns, row + m_upperBandwidth + 1);
+	}
+}
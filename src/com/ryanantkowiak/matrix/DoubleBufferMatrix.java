@@ -0,0 +1,260 @@
+package com.ryanantkowiak.matrix;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Dense matrix of doubles stored outside the Java heap, in DoubleBuffers over
+ * direct or memory-mapped memory.
+ *
+ * A buffer is indexed by int, so the rows are split across several buffers of
+ * whole rows, and the number of elements may exceed Integer.MAX_VALUE. Element
+ * positions across the whole matrix are addressed with long indices.
+ *
+ * @author antko
+ *
+ */
+public abstract class DoubleBufferMatrix extends DoubleMatrix
+{
+	/**
+	 * Largest number of bytes held in one buffer.
+	 */
+	static final long MAX_CHUNK_BYTES = 1L << 30;
+
+	/**
+	 * Buffers of consecutive blocks of m_rowsPerChunk rows, or null once the
+	 * memory has been released.
+	 */
+	protected DoubleBuffer[] m_chunks;
+
+	/**
+	 * Number of rows in each buffer (the last may hold fewer).
+	 */
+	protected final int m_rowsPerChunk;
+
+	/**
+	 * Construct a matrix over the given buffers.
+	 *
+	 * @param rows
+	 *            - the number of rows in this matrix
+	 * @param cols
+	 *            - the number of columns in this matrix
+	 * @param chunks
+	 *            - buffers of consecutive blocks of rows
+	 * @param rowsPerChunk
+	 *            - the number of rows in each buffer
+	 */
+	DoubleBufferMatrix(int rows, int cols, DoubleBuffer[] chunks, int rowsPerChunk)
+	{
+		super(rows, cols, false);
+
+		m_chunks = chunks;
+		m_rowsPerChunk = rowsPerChunk;
+	}
+
+	/**
+	 * Returns the number of whole rows of the given length that fit in one
+	 * buffer.
+	 *
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 * @return - the number of rows per buffer, at least 1
+	 */
+	static int rowsPerChunk(int rows, int cols)
+	{
+		long rowBytes = 8L * cols;
+
+		if (rowBytes > MAX_CHUNK_BYTES)
+			throw new IllegalArgumentException("Matrix rows too long: " + cols);
+
+		if (rowBytes == 0)
+			return Math.max(1, rows);
+
+		return (int) Math.max(1, Math.min(rows, MAX_CHUNK_BYTES / rowBytes));
+	}
+
+	/**
+	 * Returns the number of buffers needed for the given number of rows.
+	 */
+	static int chunkCount(int rows, int rowsPerChunk)
+	{
+		return (rows + rowsPerChunk - 1) / rowsPerChunk;
+	}
+
+	/**
+	 * Helper function to return the buffers, checking that the memory has not
+	 * been released.
+	 */
+	private DoubleBuffer[] chunks()
+	{
+		DoubleBuffer[] chunks = m_chunks;
+
+		if (null == chunks)
+			throw new IllegalStateException("Matrix memory has been released");
+
+		return chunks;
+	}
+
+	/**
+	 * Zero the values of the matrix.
+	 */
+	@Override
+	public void clear()
+	{
+		double[] zeros = new double[m_columns];
+
+		for (int row = 0 ; row < m_rows ; ++row)
+			putRow(row, 0, zeros, 0, m_columns);
+	}
+
+	/**
+	 * Return a copy of this matrix in heap memory, read a row at a time.
+	 *
+	 * @return - a new matrix holding the same values
+	 */
+	@Override
+	public DoubleMatrix copy()
+	{
+		DoubleMatrix m = new DoubleMatrix(m_rows, m_columns);
+
+		for (int row = 0 ; row < m_rows ; ++row)
+			getRow(row, 0, m.m_values, row * m_columns, m_columns);
+
+		return m;
+	}
+
+	/**
+	 * Returns the primitive value at the specified row and column.
+	 *
+	 * @param row
+	 *            - the row at which to get the value
+	 * @param col
+	 *            - the column at which to get the value
+	 * @return - the value at the specified row and column
+	 */
+	@Override
+	public double getDouble(int row, int col)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		return chunks()[row / m_rowsPerChunk].get((row % m_rowsPerChunk) * m_columns + col);
+	}
+
+	/**
+	 * Returns the primitive value at the given row-major position.
+	 *
+	 * @param index
+	 *            - row * columns + column
+	 * @return - the value at the given position
+	 */
+	public double getDouble(long index)
+	{
+		if (index < 0 || index >= (long) m_rows * m_columns)
+			throw new IndexOutOfBoundsException();
+
+		return getDouble((int) (index / m_columns), (int) (index % m_columns));
+	}
+
+	/**
+	 * Returns the number of elements in this matrix.
+	 *
+	 * @return - rows * columns
+	 */
+	public long getElementCount()
+	{
+		return (long) m_rows * m_columns;
+	}
+
+	/**
+	 * Copy n values of a row, starting at the given column, to dst[off..].
+	 */
+	void getRow(int row, int col, double[] dst, int off, int n)
+	{
+		chunks()[row / m_rowsPerChunk].get((row % m_rowsPerChunk) * m_columns + col, dst, off, n);
+	}
+
+	/**
+	 * The buffers are created by the subclasses.
+	 */
+	@Override
+	protected void initializeDataStructures()
+	{
+	}
+
+	/**
+	 * The values can be changed outside this matrix (for example through
+	 * another mapping of the same file), so the hash code is not cached.
+	 */
+	@Override
+	protected boolean isHashCodeCacheable()
+	{
+		return false;
+	}
+
+	/**
+	 * Copy n values from src[off..] into a row, starting at the given column.
+	 */
+	void putRow(int row, int col, double[] src, int off, int n)
+	{
+		chunks()[row / m_rowsPerChunk].put((row % m_rowsPerChunk) * m_columns + col, src, off, n);
+	}
+
+	/**
+	 * Set the primitive value at the specified row and column.
+	 *
+	 * @param row
+	 *            - the row at which to set the value
+	 * @param col
+	 *            - the column at which to set the value
+	 * @param value
+	 *            - the value to set
+	 */
+	@Override
+	public void setDouble(int row, int col, double value)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		chunks()[row / m_rowsPerChunk].put((row % m_rowsPerChunk) * m_columns + col, value);
+	}
+
+	/**
+	 * Set the primitive value at the given row-major position.
+	 *
+	 * @param index
+	 *            - row * columns + column
+	 * @param value
+	 *            - the value to set
+	 */
+	public void setDouble(long index, double value)
+	{
+		if (index < 0 || index >= (long) m_rows * m_columns)
+			throw new IndexOutOfBoundsException();
+
+		setDouble((int) (index / m_columns), (int) (index % m_columns), value);
+	}
+
+	/**
+	 * Return a sub-matrix with the given indices, copied into heap memory a row
+	 * at a time.
+	 */
+	@Override
+	public DoubleMatrix subMatrix(int firstRowIndex, int lastRowIndex, int firstColIndex, int lastColIndex)
+	{
+		if (firstRowIndex < 0 || lastRowIndex > m_rows || firstRowIndex >= lastRowIndex)
+			throw new IndexOutOfBoundsException();
+
+		if (firstColIndex < 0 || lastColIndex > m_columns || firstColIndex >= lastColIndex)
+			throw new IndexOutOfBoundsException();
+
+		int cols = lastColIndex - firstColIndex;
+		DoubleMatrix m = new DoubleMatrix(lastRowIndex - firstRowIndex, cols);
+
+		for (int row = firstRowIndex ; row < lastRowIndex ; ++row)
+			getRow(row, firstColIndex, m.m_values, (row - firstRowIndex) * cols, cols);
+
+		return m;
+	}
+}
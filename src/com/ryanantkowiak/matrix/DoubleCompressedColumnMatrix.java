@@ -0,0 +1,61 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Immutable sparse matrix of doubles in compressed sparse column (CSC) form.
+ * 
+ * @author antko
+ *
+ */
+public class DoubleCompressedColumnMatrix extends DoubleCompressedMatrix
+{
+	/**
+	 * Construct a CSC matrix from existing arrays, which are not copied.
+	 * 
+	 * @param rows
+	 *            - the number of rows in this matrix
+	 * @param cols
+	 *            - the number of columns in this matrix
+	 * @param colPointers
+	 *            - start of each column, plus the number of nonzeros
+	 * @param rowIndices
+	 *            - row of each nonzero, ascending within each column
+	 * @param values
+	 *            - value of each nonzero
+	 */
+	DoubleCompressedColumnMatrix(int rows, int cols, int[] colPointers, int[] rowIndices, double[] values)
+	{
+		super(rows, cols, false, colPointers, rowIndices, values);
+	}
+
+	/**
+	 * Construct a CSC matrix holding the nonzeros of a sparse matrix.
+	 * 
+	 * @param m
+	 *            - the sparse matrix to compress
+	 */
+	public DoubleCompressedColumnMatrix(DoubleSparseMatrix m)
+	{
+		super(m, false);
+	}
+
+	/**
+	 * Construct a CSC matrix holding the same values as a compressed matrix.
+	 * 
+	 * @param m
+	 *            - the compressed matrix to convert
+	 */
+	public DoubleCompressedColumnMatrix(DoubleCompressedMatrix m)
+	{
+		super(m, false);
+	}
+
+	/**
+	 * Return a CSR matrix holding the same values.
+	 * 
+	 * @return - a new CSR matrix
+	 */
+	public DoubleCompressedRowMatrix toCompressedRowMatrix()
+	{
+		return new DoubleCompressedRowMatrix(this);
+	}
+}
@@ -0,0 +1,430 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed sparse matrix of doubles, stored as primitive arrays.
+ *
+ * The nonzeros are grouped by their major index (the row for compressed row
+ * storage, the column for compressed column storage). The nonzeros of major
+ * index k are stored in positions m_pointers[k] to m_pointers[k + 1] - 1 of
+ * m_indices, which holds their minor index in ascending order, and of
+ * m_nonZeroValues, which holds their values. Each nonzero costs one int and one
+ * double.
+ *
+ * @author antko
+ *
+ */
+public abstract class DoubleCompressedMatrix extends DoubleMatrix
+{
+	/**
+	 * True if the major index is the row (CSR), false if it is the column (CSC).
+	 */
+	protected final boolean m_rowMajor;
+
+	/**
+	 * Start of each major index in m_indices and m_nonZeroValues, with one extra
+	 * entry holding the number of nonzeros.
+	 */
+	protected final int[] m_pointers;
+
+	/**
+	 * Minor index of each nonzero, ascending within each major index.
+	 */
+	protected final int[] m_indices;
+
+	/**
+	 * Value of each nonzero.
+	 */
+	protected final double[] m_nonZeroValues;
+
+	/**
+	 * Construct a compressed matrix from existing arrays, which are not copied.
+	 *
+	 * @param rows
+	 *            - the number of rows in this matrix
+	 * @param cols
+	 *            - the number of columns in this matrix
+	 * @param rowMajor
+	 *            - true for compressed rows, false for compressed columns
+	 * @param pointers
+	 *            - start of each major index, plus the number of nonzeros
+	 * @param indices
+	 *            - minor index of each nonzero
+	 * @param values
+	 *            - value of each nonzero
+	 */
+	DoubleCompressedMatrix(int rows, int cols, boolean rowMajor, int[] pointers, int[] indices, double[] values)
+	{
+		super(rows, cols);
+
+		m_rowMajor = rowMajor;
+		m_pointers = pointers;
+		m_indices = indices;
+		m_nonZeroValues = values;
+	}
+
+	/**
+	 * Construct a compressed matrix holding the nonzeros of a sparse matrix.
+	 *
+	 * @param m
+	 *            - the sparse matrix to compress
+	 * @param rowMajor
+	 *            - true for compressed rows, false for compressed columns
+	 */
+	DoubleCompressedMatrix(DoubleSparseMatrix m, boolean rowMajor)
+	{
+		super(m.getRowDimension(), m.getColumnDimension());
+
+		int cols = m.getColumnDimension();
+		int majorDim = rowMajor ? m.getRowDimension() : cols;
+		int minorDim = rowMajor ? cols : m.getRowDimension();
+		int nnz = m.m_sparseData.size();
+
+		// Bucket by minor index, then stably by major index, so that the minor
+		// indices end up sorted within each major index.
+		int[] minorPtr = new int[minorDim + 1];
+		int[] pointers = new int[majorDim + 1];
+
+		long[] keys = m.m_sparseData.m_keys;
+		double[] vals = m.m_sparseData.m_values;
+
+		for (long key : keys)
+		{
+			if (key == LongDoubleHashMap.EMPTY)
+				continue;
+
+			int row = (int) (key / cols);
+			int col = (int) (key % cols);
+
+			++minorPtr[(rowMajor ? col : row) + 1];
+			++pointers[(rowMajor ? row : col) + 1];
+		}
+
+		for (int i = 0 ; i < minorDim ; ++i)
+			minorPtr[i + 1] += minorPtr[i];
+
+		for (int i = 0 ; i < majorDim ; ++i)
+			pointers[i + 1] += pointers[i];
+
+		int[] byMinorMajor = new int[nnz];
+		double[] byMinorValue = new double[nnz];
+
+		for (int i = 0 ; i < keys.length ; ++i)
+		{
+			if (keys[i] == LongDoubleHashMap.EMPTY)
+				continue;
+
+			int row = (int) (keys[i] / cols);
+			int col = (int) (keys[i] % cols);
+			int p = minorPtr[rowMajor ? col : row]++;
+
+			byMinorMajor[p] = rowMajor ? row : col;
+			byMinorValue[p] = vals[i];
+		}
+
+		int[] indices = new int[nnz];
+		double[] values = new double[nnz];
+		int[] fill = Arrays.copyOf(pointers, majorDim);
+
+		int p = 0;
+
+		for (int minor = 0 ; minor < minorDim ; ++minor)
+		{
+			for ( ; p < minorPtr[minor] ; ++p)
+			{
+				int q = fill[byMinorMajor[p]]++;
+
+				indices[q] = minor;
+				values[q] = byMinorValue[p];
+			}
+		}
+
+		m_rowMajor = rowMajor;
+		m_pointers = pointers;
+		m_indices = indices;
+		m_nonZeroValues = values;
+	}
+
+	/**
+	 * Construct a compressed matrix holding the same values as another compressed
+	 * matrix. The arrays are shared when the storage order is the same, and
+	 * transposed otherwise.
+	 *
+	 * @param m
+	 *            - the compressed matrix to convert
+	 * @param rowMajor
+	 *            - true for compressed rows, false for compressed columns
+	 */
+	DoubleCompressedMatrix(DoubleCompressedMatrix m, boolean rowMajor)
+	{
+		super(m.getRowDimension(), m.getColumnDimension());
+
+		m_rowMajor = rowMajor;
+
+		if (m.m_rowMajor == rowMajor)
+		{
+			m_pointers = m.m_pointers;
+			m_indices = m.m_indices;
+			m_nonZeroValues = m.m_nonZeroValues;
+			return;
+		}
+
+		int majorDim = m.getMajorDimension();
+		int minorDim = m.getMinorDimension();
+		int nnz = m.getNonZeroCount();
+
+		int[] pointers = new int[minorDim + 1];
+		int[] indices = new int[nnz];
+		double[] values = new double[nnz];
+
+		for (int p = 0 ; p < nnz ; ++p)
+			++pointers[m.m_indices[p] + 1];
+
+		for (int i = 0 ; i < minorDim ; ++i)
+			pointers[i + 1] += pointers[i];
+
+		int[] fill = Arrays.copyOf(pointers, minorDim);
+
+		for (int major = 0 ; major < majorDim ; ++major)
+		{
+			for (int p = m.m_pointers[major] ; p < m.m_pointers[major + 1] ; ++p)
+			{
+				int q = fill[m.m_indices[p]]++;
+
+				indices[q] = major;
+				values[q] = m.m_nonZeroValues[p];
+			}
+		}
+
+		m_pointers = pointers;
+		m_indices = indices;
+		m_nonZeroValues = values;
+	}
+
+	/**
+	 * Compressed matrices are immutable.
+	 */
+	@Override
+	public void clear()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Compressed matrices are immutable, so they are their own copy.
+	 */
+	@Override
+	public DoubleCompressedMatrix copy()
+	{
+		return this;
+	}
+
+	/**
+	 * Sum the element hash codes over the stored values only.
+	 */
+	@Override
+	protected int computeHashCode()
+	{
+		int h = 0;
+
+		for (int major = 0 ; major < getMajorDimension() ; ++major)
+		{
+			for (int p = m_pointers[major] ; p < m_pointers[major + 1] ; ++p)
+			{
+				if (m_nonZeroValues[p] == 0.0)
+					continue;
+
+				int row = m_rowMajor ? major : m_indices[p];
+				int col = m_rowMajor ? m_indices[p] : major;
+
+				h += elementHashCode(row, col, Double.hashCode(m_nonZeroValues[p]));
+			}
+		}
+
+		return h;
+	}
+
+	/**
+	 * Visit the stored nonzeros only, in order of their major index.
+	 */
+	@Override
+	public void forEachNonZero(DoubleEntryVisitor visitor)
+	{
+		for (int major = 0 ; major < getMajorDimension() ; ++major)
+			visitMajor(major, visitor);
+	}
+
+	/**
+	 * Visit the stored nonzeros of the column only.
+	 */
+	@Override
+	public void forEachNonZeroInColumn(int col, DoubleEntryVisitor visitor)
+	{
+		if (col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		if (m_rowMajor)
+			visitMinor(col, visitor);
+		else
+			visitMajor(col, visitor);
+	}
+
+	/**
+	 * Visit the stored nonzeros of the row only.
+	 */
+	@Override
+	public void forEachNonZeroInRow(int row, DoubleEntryVisitor visitor)
+	{
+		if (row < 0 || row >= m_rows)
+			throw new IndexOutOfBoundsException();
+
+		if (m_rowMajor)
+			visitMajor(row, visitor);
+		else
+			visitMinor(row, visitor);
+	}
+
+	/**
+	 * Returns the primitive value at the specified row and column, found by a
+	 * binary search within its major index.
+	 *
+	 * @param row
+	 *            - the row at which to get the value
+	 * @param col
+	 *            - the column at which to get the value
+	 * @return - the value at the specified row and column
+	 */
+	@Override
+	public double getDouble(int row, int col)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		int major = m_rowMajor ? row : col;
+		int minor = m_rowMajor ? col : row;
+
+		int p = Arrays.binarySearch(m_indices, m_pointers[major], m_pointers[major + 1], minor);
+
+		if (p < 0)
+			return 0.0;
+
+		return m_nonZeroValues[p];
+	}
+
+	/**
+	 * Returns the number of rows (CSR) or columns (CSC).
+	 *
+	 * @return - the dimension indexed by m_pointers
+	 */
+	int getMajorDimension()
+	{
+		return m_rowMajor ? m_rows : m_columns;
+	}
+
+	/**
+	 * Returns the number of columns (CSR) or rows (CSC).
+	 *
+	 * @return - the dimension stored in m_indices
+	 */
+	int getMinorDimension()
+	{
+		return m_rowMajor ? m_columns : m_rows;
+	}
+
+	/**
+	 * Returns the number of stored nonzeros.
+	 *
+	 * @return - the number of stored nonzeros
+	 */
+	public int getNonZeroCount()
+	{
+		return m_pointers[getMajorDimension()];
+	}
+
+	/**
+	 * The underlying arrays are allocated by the constructors.
+	 */
+	@Override
+	protected void initializeDataStructures()
+	{
+	}
+
+	/**
+	 * Compressed matrices are immutable.
+	 */
+	@Override
+	public void setDouble(int row, int col, double value)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Return a mutable sparse matrix holding the same values.
+	 *
+	 * @return - a new sparse matrix
+	 */
+	public DoubleSparseMatrix toSparseMatrix()
+	{
+		DoubleSparseMatrix m = new DoubleSparseMatrix(m_rows, m_columns);
+
+		// Sized up front and filled directly, since the nonzeros are known.
+		m.m_sparseData = new LongDoubleHashMap(getNonZeroCount());
+
+		for (int major = 0 ; major < getMajorDimension() ; ++major)
+		{
+			for (int p = m_pointers[major] ; p < m_pointers[major + 1] ; ++p)
+			{
+				if (m_nonZeroValues[p] == 0.0)
+					continue;
+
+				int row = m_rowMajor ? major : m_indices[p];
+				int col = m_rowMajor ? m_indices[p] : major;
+
+				m.m_sparseData.put(m.convertRowAndColToKey(row, col), m_nonZeroValues[p]);
+			}
+		}
+
+		m.invalidateHashCode();
+
+		return m;
+	}
+
+	/**
+	 * Helper function to call the visitor with the nonzeros of the given major
+	 * index, in ascending minor order.
+	 */
+	private void visitMajor(int major, DoubleEntryVisitor visitor)
+	{
+		for (int p = m_pointers[major] ; p < m_pointers[major + 1] ; ++p)
+		{
+			if (m_nonZeroValues[p] == 0.0)
+				continue;
+
+			if (m_rowMajor)
+				visitor.visit(major, m_indices[p], m_nonZeroValues[p]);
+			else
+				visitor.visit(m_indices[p], major, m_nonZeroValues[p]);
+		}
+	}
+
+	/**
+	 * Helper function to call the visitor with the nonzeros of the given minor
+	 * index, found by a binary search within each major index.
+	 */
+	private void visitMinor(int minor, DoubleEntryVisitor visitor)
+	{
+		for (int major = 0 ; major < getMajorDimension() ; ++major)
+		{
+			int p = Arrays.binarySearch(m_indices, m_pointers[major], m_pointers[major + 1], minor);
+
+			if (p < 0 || m_nonZeroValues[p] == 0.0)
+				continue;
+
+			if (m_rowMajor)
+				visitor.visit(major, minor, m_nonZeroValues[p]);
+			else
+				visitor.visit(minor, major, m_nonZeroValues[p]);
+		}
+	}
+}
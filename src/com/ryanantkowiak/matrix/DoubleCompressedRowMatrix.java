@@ -0,0 +1,102 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Immutable sparse matrix of doubles in compressed sparse row (CSR) form.
+ * 
+ * @author antko
+ *
+ */
+public class DoubleCompressedRowMatrix extends DoubleCompressedMatrix
+{
+	/**
+	 * Construct a CSR matrix from existing arrays, which are not copied.
+	 * 
+	 * @param rows
+	 *            - the number of rows in this matrix
+	 * @param cols
+	 *            - the number of columns in this matrix
+	 * @param rowPointers
+	 *            - start of each row, plus the number of nonzeros
+	 * @param colIndices
+	 *            - column of each nonzero, ascending within each row
+	 * @param values
+	 *            - value of each nonzero
+	 */
+	DoubleCompressedRowMatrix(int rows, int cols, int[] rowPointers, int[] colIndices, double[] values)
+	{
+		super(rows, cols, true, rowPointers, colIndices, values);
+	}
+
+	/**
+	 * Construct a CSR matrix holding the nonzeros of a sparse matrix.
+	 * 
+	 * @param m
+	 *            - the sparse matrix to compress
+	 */
+	public DoubleCompressedRowMatrix(DoubleSparseMatrix m)
+	{
+		super(m, true);
+	}
+
+	/**
+	 * Construct a CSR matrix holding the same values as a compressed matrix.
+	 * 
+	 * @param m
+	 *            - the compressed matrix to convert
+	 */
+	public DoubleCompressedRowMatrix(DoubleCompressedMatrix m)
+	{
+		super(m, true);
+	}
+
+	/**
+	 * Build a CSR matrix from coordinate (COO) triplets: element (rowIdx[k],
+	 * colIdx[k]) receives values[k]. The triplets may come in any order;
+	 * values at the same position are summed, and positions whose sum is zero
+	 * are not stored. The triplets are sorted with two counting passes, so the
+	 * cost is linear in their number and no object is created per triplet.
+	 * 
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 * @param rowIdx
+	 *            - the row of each triplet
+	 * @param colIdx
+	 *            - the column of each triplet
+	 * @param values
+	 *            - the value of each triplet
+	 * @return - a new CSR matrix
+	 * @throws InvalidMatrixDimensionException
+	 *             if the three arrays differ in length
+	 */
+	public static DoubleCompressedRowMatrix fromTriplets(int rows, int cols, int[] rowIdx, int[] colIdx,
+			double[] values) throws InvalidMatrixDimensionException
+	{
+		if (rowIdx == null || colIdx == null || values == null)
+			throw new NullPointerException();
+
+		if (rows < 0 || cols < 0)
+			throw new IndexOutOfBoundsException();
+
+		if (rowIdx.length != values.length || colIdx.length != values.length)
+			throw new InvalidMatrixDimensionException();
+
+		for (int k = 0 ; k < values.length ; ++k)
+			if (rowIdx[k] < 0 || rowIdx[k] >= rows || colIdx[k] < 0 || colIdx[k] >= cols)
+				throw new IndexOutOfBoundsException();
+
+		return SparseKernels.compressTriplets(rows, cols, new int[][] { rowIdx }, new int[][] { colIdx },
+				new double[][] { values }, new int[] { values.length });
+	}
+
+	/**
+	 * Return a CSC matrix holding the same values.
+	 * 
+	 * @return - a new CSC matrix
+	 */
+	public DoubleCompressedColumnMatrix toCompressedColumnMatrix()
+	{
+		return new DoubleCompressedColumnMatrix(this);
+	}
+}
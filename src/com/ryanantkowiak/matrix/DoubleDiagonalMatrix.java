@@ -0,0 +1,55 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Square diagonal matrix of doubles, storing only its n diagonal elements.
+ *
+ * @author antko
+ *
+ */
+public class DoubleDiagonalMatrix extends DoubleBandedMatrix
+{
+	/**
+	 * Construct a zeroed n x n diagonal matrix.
+	 *
+	 * @param n
+	 *            - the number of rows and columns in this matrix
+	 */
+	public DoubleDiagonalMatrix(int n)
+	{
+		super(n, n, 0, 0);
+	}
+
+	/**
+	 * Construct a diagonal matrix with the given diagonal elements, which are
+	 * copied.
+	 *
+	 * @param diagonal
+	 *            - the elements of the diagonal
+	 */
+	public DoubleDiagonalMatrix(double[] diagonal)
+	{
+		this(diagonal.length);
+
+		System.arraycopy(diagonal, 0, m_elements, 0, diagonal.length);
+	}
+
+	/**
+	 * Return a copy of this diagonal matrix.
+	 *
+	 * @return - a new diagonal matrix holding the same values
+	 */
+	@Override
+	public DoubleDiagonalMatrix copy()
+	{
+		return (DoubleDiagonalMatrix) super.copy();
+	}
+
+	/**
+	 * Returns a zeroed diagonal matrix of the same size.
+	 */
+	@Override
+	DoubleStructuredMatrix emptyCopy()
+	{
+		return new DoubleDiagonalMatrix(m_rows);
+	}
+}
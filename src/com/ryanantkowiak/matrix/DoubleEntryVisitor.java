@@ -0,0 +1,24 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Callback invoked by DoubleMatrix.forEachNonZero() and its row and column
+ * variants with each nonzero element, as primitives, so that enumerating the
+ * elements boxes nothing.
+ *
+ * @author antko
+ *
+ */
+public interface DoubleEntryVisitor
+{
+	/**
+	 * Called with one nonzero element.
+	 *
+	 * @param row
+	 *            - the row of the element
+	 * @param col
+	 *            - the column of the element
+	 * @param value
+	 *            - the value of the element, which is not zero
+	 */
+	void visit(int row, int col, double value);
+}
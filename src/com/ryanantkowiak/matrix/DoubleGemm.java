@@ -0,0 +1,303 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Cache-blocked matrix multiplication kernel for row-major primitive arrays.
+ *
+ * The operands are split into blocks sized for the caches: a KC x NC panel of
+ * B is packed once per outer iteration, an MC x KC panel of A is packed per
+ * inner iteration, and a register-blocked MR x NR micro-kernel accumulates each
+ * tile of C from the packed panels with unit stride. The micro-kernel and the
+ * rows of the simple loop are run by DoubleKernels, vectorized when the Vector
+ * API is available.
+ *
+ * @author antko
+ *
+ */
+final class DoubleGemm
+{
+	/**
+	 * Rows of C computed by one micro-kernel call.
+	 */
+	static final int MR = 4;
+
+	/**
+	 * Columns of C computed by one micro-kernel call.
+	 */
+	static final int NR = 4;
+
+	/**
+	 * Rows of A packed per block (sized for the L2 cache).
+	 */
+	static final int MC = 96;
+
+	/**
+	 * Depth of the packed panels (sized so an MR x KC sliver of A and a KC x NR
+	 * sliver of B stay in the L1 cache).
+	 */
+	static final int KC = 256;
+
+	/**
+	 * Columns of B packed per block (sized for the L3 cache).
+	 */
+	static final int NC = 2048;
+
+	/**
+	 * Below this many multiply-adds the packing overhead outweighs the benefit,
+	 * and the simple loop is used instead.
+	 */
+	static final long SMALL_PRODUCT = 32L * 32L * 32L;
+
+	/**
+	 * Kernels for the micro-kernel and the rows of the simple product.
+	 */
+	private static final DoubleKernels KERNELS = DoubleKernels.INSTANCE;
+
+	/**
+	 * Packing buffers reused by each thread, so that repeated products do not
+	 * allocate.
+	 */
+	private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+	/**
+	 * Packed panels of A and B and the scratch tile for partial tiles at the
+	 * edges of C. The panels grow to the largest block seen by the thread.
+	 */
+	private static final class Workspace
+	{
+		private double[] m_packedA = new double[0];
+		private double[] m_packedB = new double[0];
+		private final double[] m_edge = new double[MR * NR];
+
+		/**
+		 * Returns a buffer of at least the given size for packed A.
+		 */
+		double[] packedA(int size)
+		{
+			if (m_packedA.length < size)
+				m_packedA = new double[size];
+
+			return m_packedA;
+		}
+
+		/**
+		 * Returns a buffer of at least the given size for packed B.
+		 */
+		double[] packedB(int size)
+		{
+			if (m_packedB.length < size)
+				m_packedB = new double[size];
+
+			return m_packedB;
+		}
+	}
+
+	/**
+	 * Unused default constructor.
+	 */
+	private DoubleGemm()
+	{
+	}
+
+	/**
+	 * Compute C += A * B on row-major arrays.
+	 *
+	 * @param m
+	 *            - rows of A and C
+	 * @param n
+	 *            - columns of B and C
+	 * @param k
+	 *            - columns of A and rows of B
+	 * @param a
+	 *            - data of A
+	 * @param aOff
+	 *            - offset of A(0, 0) in a
+	 * @param lda
+	 *            - distance between rows of A in a
+	 * @param b
+	 *            - data of B
+	 * @param bOff
+	 *            - offset of B(0, 0) in b
+	 * @param ldb
+	 *            - distance between rows of B in b
+	 * @param c
+	 *            - data of C
+	 * @param cOff
+	 *            - offset of C(0, 0) in c
+	 * @param ldc
+	 *            - distance between rows of C in c
+	 */
+	static void multiply(int m, int n, int k, double[] a, int aOff, int lda, double[] b, int bOff, int ldb,
+			double[] c, int cOff, int ldc)
+	{
+		if (isSmall(m, n, k))
+			multiplySimple(m, n, k, a, aOff, lda, b, bOff, ldb, c, cOff, ldc);
+		else
+			multiplyBlocked(m, n, k, a, aOff, lda, b, bOff, ldb, c, cOff, ldc);
+	}
+
+	/**
+	 * Returns true if a product of the given shape is small enough that the
+	 * simple loop should be used instead of the blocked kernel.
+	 */
+	static boolean isSmall(int m, int n, int k)
+	{
+		return ((long) m * n * k <= SMALL_PRODUCT);
+	}
+
+	/**
+	 * Compute C += A * B with the blocked kernel regardless of shape. The
+	 * summation order of each element of C depends only on k, so any split of C
+	 * into sub-blocks produces the same result as a single call.
+	 */
+	static void multiplyBlocked(int m, int n, int k, double[] a, int aOff, int lda, double[] b, int bOff, int ldb,
+			double[] c, int cOff, int ldc)
+	{
+		if (m == 0 || n == 0 || k == 0)
+			return;
+
+		Workspace ws = WORKSPACE.get();
+
+		double[] packedA = ws.packedA(Math.min(MC, roundUp(m, MR)) * Math.min(KC, k));
+		double[] packedB = ws.packedB(Math.min(NC, roundUp(n, NR)) * Math.min(KC, k));
+		double[] edge = ws.m_edge;
+
+		for (int jc = 0 ; jc < n ; jc += NC)
+		{
+			int nc = Math.min(NC, n - jc);
+
+			for (int pc = 0 ; pc < k ; pc += KC)
+			{
+				int kc = Math.min(KC, k - pc);
+
+				packB(kc, nc, b, bOff + pc * ldb + jc, ldb, packedB);
+
+				for (int ic = 0 ; ic < m ; ic += MC)
+				{
+					int mc = Math.min(MC, m - ic);
+
+					packA(mc, kc, a, aOff + ic * lda + pc, lda, packedA);
+
+					macroKernel(mc, nc, kc, packedA, packedB, edge, c, cOff + ic * ldc + jc, ldc);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute C += A * B with a plain loop that streams rows of B.
+	 */
+	static void multiplySimple(int m, int n, int k, double[] a, int aOff, int lda, double[] b, int bOff, int ldb,
+			double[] c, int cOff, int ldc)
+	{
+		for (int r = 0 ; r < m ; ++r)
+		{
+			int cRow = cOff + r * ldc;
+			int aRow = aOff + r * lda;
+
+			for (int z = 0 ; z < k ; ++z)
+			{
+				double val = a[aRow + z];
+				int bRow = bOff + z * ldb;
+
+				KERNELS.axpy(val, b, bRow, c, cRow, n);
+			}
+		}
+	}
+
+	/**
+	 * Round value up to the next multiple of step.
+	 */
+	private static int roundUp(int value, int step)
+	{
+		return ((value + step - 1) / step) * step;
+	}
+
+	/**
+	 * Pack an mc x kc block of A into slivers of MR rows. Within a sliver the MR
+	 * values of each column are contiguous. Rows past mc are padded with zeros.
+	 */
+	private static void packA(int mc, int kc, double[] a, int off, int lda, double[] packed)
+	{
+		int dst = 0;
+
+		for (int i = 0 ; i < mc ; i += MR)
+		{
+			int rows = Math.min(MR, mc - i);
+
+			for (int p = 0 ; p < kc ; ++p)
+			{
+				int src = off + i * lda + p;
+
+				for (int ii = 0 ; ii < rows ; ++ii)
+					packed[dst++] = a[src + ii * lda];
+
+				for (int ii = rows ; ii < MR ; ++ii)
+					packed[dst++] = 0.0;
+			}
+		}
+	}
+
+	/**
+	 * Pack a kc x nc block of B into slivers of NR columns. Within a sliver the
+	 * NR values of each row are contiguous. Columns past nc are padded with
+	 * zeros.
+	 */
+	private static void packB(int kc, int nc, double[] b, int off, int ldb, double[] packed)
+	{
+		int dst = 0;
+
+		for (int j = 0 ; j < nc ; j += NR)
+		{
+			int cols = Math.min(NR, nc - j);
+
+			for (int p = 0 ; p < kc ; ++p)
+			{
+				int src = off + p * ldb + j;
+
+				for (int jj = 0 ; jj < cols ; ++jj)
+					packed[dst++] = b[src + jj];
+
+				for (int jj = cols ; jj < NR ; ++jj)
+					packed[dst++] = 0.0;
+			}
+		}
+	}
+
+	/**
+	 * Multiply a packed mc x kc block of A by a packed kc x nc block of B and
+	 * accumulate into C, one MR x NR tile at a time. Partial tiles are computed
+	 * into edge and then added to C.
+	 */
+	private static void macroKernel(int mc, int nc, int kc, double[] packedA, double[] packedB, double[] edge,
+			double[] c, int cOff, int ldc)
+	{
+		for (int j = 0 ; j < nc ; j += NR)
+		{
+			int cols = Math.min(NR, nc - j);
+			int bOff = j * kc;
+
+			for (int i = 0 ; i < mc ; i += MR)
+			{
+				int rows = Math.min(MR, mc - i);
+				int aOff = i * kc;
+
+				if (rows == MR && cols == NR)
+				{
+					KERNELS.microKernel(kc, packedA, aOff, packedB, bOff, c, cOff + i * ldc + j, ldc);
+				}
+				else
+				{
+					Arrays.fill(edge, 0.0);
+
+					KERNELS.microKernel(kc, packedA, aOff, packedB, bOff, edge, 0, NR);
+
+					for (int ii = 0 ; ii < rows ; ++ii)
+						for (int jj = 0 ; jj < cols ; ++jj)
+							c[cOff + (i + ii) * ldc + j + jj] += edge[ii * NR + jj];
+				}
+			}
+		}
+	}
+}
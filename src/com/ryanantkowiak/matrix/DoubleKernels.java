@@ -0,0 +1,191 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Loops over contiguous runs of doubles used by the dense operations:
+ * element-wise add, subtract and scale, axpy, dot products and the GEMM
+ * micro-kernel.
+ *
+ * This class holds the plain scalar loops. When the jdk.incubator.vector
+ * module is present (the JVM is started with --add-modules
+ * jdk.incubator.vector) and the processor has SIMD registers of at least 256
+ * bits, INSTANCE is a DoubleVectorKernels, which runs the same loops with the
+ * Vector API. The property com.ryanantkowiak.matrix.scalar=true forces the
+ * scalar loops.
+ *
+ * Every loop except dot() produces exactly the same values with either
+ * implementation.
+ *
+ * @author antko
+ *
+ */
+class DoubleKernels
+{
+	/**
+	 * The kernels used by the library.
+	 */
+	static final DoubleKernels INSTANCE = select();
+
+	/**
+	 * Helper function to choose the vectorized kernels when they are available,
+	 * and the scalar kernels otherwise.
+	 */
+	private static DoubleKernels select()
+	{
+		if (Boolean.getBoolean("com.ryanantkowiak.matrix.scalar"))
+			return new DoubleKernels();
+
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+			return new DoubleKernels();
+
+		try
+		{
+			Class<?> c = Class.forName("com.ryanantkowiak.matrix.DoubleVectorKernels");
+			DoubleKernels kernels = (DoubleKernels) c.getDeclaredConstructor().newInstance();
+
+			if (kernels.isSupported())
+				return kernels;
+		}
+		catch (ReflectiveOperationException | LinkageError | RuntimeException e)
+		{
+			// Use the scalar kernels.
+		}
+
+		return new DoubleKernels();
+	}
+
+	/**
+	 * Returns true if these kernels are faster than the scalar loops on this
+	 * processor.
+	 */
+	boolean isSupported()
+	{
+		return true;
+	}
+
+	/**
+	 * Compute d[dOff..] = a[aOff..] + b[bOff..] for n elements.
+	 */
+	void add(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+	{
+		for (int i = 0 ; i < n ; ++i)
+			d[dOff + i] = a[aOff + i] + b[bOff + i];
+	}
+
+	/**
+	 * Compute d[dOff..] = a[aOff..] - b[bOff..] for n elements.
+	 */
+	void subtract(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+	{
+		for (int i = 0 ; i < n ; ++i)
+			d[dOff + i] = a[aOff + i] - b[bOff + i];
+	}
+
+	/**
+	 * Compute d[dOff..] = scalar * a[aOff..] for n elements.
+	 */
+	void scale(double scalar, double[] a, int aOff, double[] d, int dOff, int n)
+	{
+		for (int i = 0 ; i < n ; ++i)
+			d[dOff + i] = scalar * a[aOff + i];
+	}
+
+	/**
+	 * Compute y[yOff..] += alpha * x[xOff..] for n elements.
+	 */
+	void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int n)
+	{
+		for (int i = 0 ; i < n ; ++i)
+			y[yOff + i] += alpha * x[xOff + i];
+	}
+
+	/**
+	 * Returns the sum of x[xOff + i] * y[yOff + i] for n elements. The
+	 * vectorized kernels add the products in a different order, so the result
+	 * may differ in the last bits.
+	 */
+	double dot(double[] x, int xOff, double[] y, int yOff, int n)
+	{
+		double sum = 0.0;
+
+		for (int i = 0 ; i < n ; ++i)
+			sum += x[xOff + i] * y[yOff + i];
+
+		return sum;
+	}
+
+	/**
+	 * Accumulate a 4 x 4 tile of C from a 4 x kc sliver of packed A and a kc x 4
+	 * sliver of packed B (see DoubleGemm), keeping the tile in local variables.
+	 */
+	void microKernel(int kc, double[] pa, int aOff, double[] pb, int bOff, double[] c, int cOff, int ldc)
+	{
+		double c00 = 0.0, c01 = 0.0, c02 = 0.0, c03 = 0.0;
+		double c10 = 0.0, c11 = 0.0, c12 = 0.0, c13 = 0.0;
+		double c20 = 0.0, c21 = 0.0, c22 = 0.0, c23 = 0.0;
+		double c30 = 0.0, c31 = 0.0, c32 = 0.0, c33 = 0.0;
+
+		int ai = aOff;
+		int bi = bOff;
+
+		for (int p = 0 ; p < kc ; ++p)
+		{
+			double a0 = pa[ai];
+			double a1 = pa[ai + 1];
+			double a2 = pa[ai + 2];
+			double a3 = pa[ai + 3];
+
+			double b0 = pb[bi];
+			double b1 = pb[bi + 1];
+			double b2 = pb[bi + 2];
+			double b3 = pb[bi + 3];
+
+			c00 += a0 * b0;
+			c01 += a0 * b1;
+			c02 += a0 * b2;
+			c03 += a0 * b3;
+
+			c10 += a1 * b0;
+			c11 += a1 * b1;
+			c12 += a1 * b2;
+			c13 += a1 * b3;
+
+			c20 += a2 * b0;
+			c21 += a2 * b1;
+			c22 += a2 * b2;
+			c23 += a2 * b3;
+
+			c30 += a3 * b0;
+			c31 += a3 * b1;
+			c32 += a3 * b2;
+			c33 += a3 * b3;
+
+			ai += 4;
+			bi += 4;
+		}
+
+		int r0 = cOff;
+		int r1 = r0 + ldc;
+		int r2 = r1 + ldc;
+		int r3 = r2 + ldc;
+
+		c[r0] += c00;
+		c[r0 + 1] += c01;
+		c[r0 + 2] += c02;
+		c[r0 + 3] += c03;
+
+		c[r1] += c10;
+		c[r1 + 1] += c11;
+		c[r1 + 2] += c12;
+		c[r1 + 3] += c13;
+
+		c[r2] += c20;
+		c[r2 + 1] += c21;
+		c[r2 + 2] += c22;
+		c[r2 + 3] += c23;
+
+		c[r3] += c30;
+		c[r3 + 1] += c31;
+		c[r3 + 2] += c32;
+		c[r3 + 3] += c33;
+	}
+}
@@ -0,0 +1,42 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Square lower triangular matrix of doubles: the elements above the diagonal
+ * are zero.
+ *
+ * @author antko
+ *
+ */
+public class DoubleLowerTriangularMatrix extends DoubleTriangularMatrix
+{
+	/**
+	 * Construct a zeroed n x n lower triangular matrix.
+	 *
+	 * @param n
+	 *            - the number of rows and columns in this matrix
+	 */
+	public DoubleLowerTriangularMatrix(int n)
+	{
+		super(n, false);
+	}
+
+	/**
+	 * Return a copy of this lower triangular matrix.
+	 *
+	 * @return - a new lower triangular matrix holding the same values
+	 */
+	@Override
+	public DoubleLowerTriangularMatrix copy()
+	{
+		return (DoubleLowerTriangularMatrix) super.copy();
+	}
+
+	/**
+	 * Returns a zeroed lower triangular matrix of the same size.
+	 */
+	@Override
+	DoubleStructuredMatrix emptyCopy()
+	{
+		return new DoubleLowerTriangularMatrix(m_rows);
+	}
+}
@@ -0,0 +1,46 @@
+package com.ryanantkowiak.matrix;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Dense matrix of doubles whose values stay in a memory-mapped file, written
+ * by MatrixFile. Values are read from the mapping on demand, so opening the
+ * matrix costs no copy and the operating system pages in only the parts that
+ * are used.
+ *
+ * A single mapping is limited to 2 GB, so the rows are split across several
+ * mappings of whole rows. Writes go straight to the file when the matrix was
+ * opened for writing, and throw ReadOnlyBufferException otherwise.
+ *
+ * @author antko
+ *
+ */
+public class DoubleMappedMatrix extends DoubleBufferMatrix
+{
+	/**
+	 * Construct a matrix over the given mappings.
+	 *
+	 * @param rows
+	 *            - the number of rows in this matrix
+	 * @param cols
+	 *            - the number of columns in this matrix
+	 * @param chunks
+	 *            - mappings of consecutive blocks of rows
+	 * @param rowsPerChunk
+	 *            - the number of rows in each mapping
+	 */
+	DoubleMappedMatrix(int rows, int cols, DoubleBuffer[] chunks, int rowsPerChunk)
+	{
+		super(rows, cols, chunks, rowsPerChunk);
+	}
+
+	/**
+	 * Returns true if the values can be changed.
+	 *
+	 * @return - true if the matrix was opened for writing
+	 */
+	public boolean isWritable()
+	{
+		return (m_chunks.length == 0 || !m_chunks[0].isReadOnly());
+	}
+}
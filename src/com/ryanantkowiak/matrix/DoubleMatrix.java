@@ -1,5 +1,7 @@
 package com.ryanantkowiak.matrix;
 
+import java.util.Arrays;
+
 /**
  * Matrix of Doubles class.
  * 
@@ -8,6 +10,29 @@ package com.ryanantkowiak.matrix;
  */
 public class DoubleMatrix extends Matrix<Double>
 {
+	/**
+	 * Row-major primitive storage for the elements of this matrix. Subclasses
+	 * that provide their own storage leave this null.
+	 */
+	protected double[] m_values;
+
+	/**
+	 * Index in m_values of the element at row 0, column 0.
+	 */
+	protected int m_offset;
+
+	/**
+	 * Distance in m_values between the starts of consecutive rows. Equal to the
+	 * column dimension unless this matrix is a view of a wider matrix.
+	 */
+	protected int m_rowStride;
+
+	/**
+	 * True if the array is shared with a view or with the matrix this one views,
+	 * so that its values can change without this matrix being told.
+	 */
+	private boolean m_sharedStorage;
+
 	/**
 	 * Construct an empty matrix of Doubles with the specified dimensions.
 	 * 
@@ -22,7 +47,323 @@ public class DoubleMatrix extends Matrix<Double>
 	}
 
 	/**
-	 * Return a matrix, constructed from a given string and delimiter
+	 * Construct a matrix of Doubles with the specified dimensions, without
+	 * initializing the underlying data structures. Used by matrices that share
+	 * or provide their own storage.
+	 * 
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 * @param initialize
+	 *            - true to initialize the underlying data structures
+	 */
+	protected DoubleMatrix(int rows, int cols, boolean initialize)
+	{
+		super(rows, cols, initialize);
+	}
+
+	/**
+	 * Construct a view of a window of a parent matrix, sharing its array.
+	 * 
+	 * @param parent
+	 *            - the array-backed matrix to view
+	 * @param firstRowIndex
+	 * @param lastRowIndex
+	 * @param firstColIndex
+	 * @param lastColIndex
+	 */
+	private DoubleMatrix(DoubleMatrix parent, int firstRowIndex, int lastRowIndex, int firstColIndex,
+			int lastColIndex)
+	{
+		super(lastRowIndex - firstRowIndex, lastColIndex - firstColIndex, false);
+
+		m_values = parent.m_values;
+		m_offset = parent.m_offset + firstRowIndex * parent.m_rowStride + firstColIndex;
+		m_rowStride = parent.m_rowStride;
+		m_sharedStorage = true;
+
+		parent.m_sharedStorage = true;
+		parent.invalidateHashCode();
+	}
+
+	/**
+	 * Returns true if the given matrix has the same dimensions as this one and
+	 * each of its values is within epsilon of the value at the same position
+	 * in this matrix. NaN matches only NaN. Sparse matrices are compared
+	 * through their stored values.
+	 * 
+	 * @param m
+	 *            - the matrix to compare with
+	 * @param epsilon
+	 *            - the largest absolute difference allowed, not negative
+	 * @return - true if the matrices are equal within epsilon
+	 */
+	public boolean approxEquals(DoubleMatrix m, double epsilon)
+	{
+		if (m == null)
+			throw new NullPointerException();
+
+		if (!(epsilon >= 0.0))
+			throw new IllegalArgumentException("Invalid epsilon: " + epsilon);
+
+		if (m_rows != m.m_rows || m_columns != m.m_columns)
+			return false;
+
+		if (m_values != null && m.m_values != null)
+		{
+			for (int row = 0 ; row < m_rows ; ++row)
+			{
+				int a = m_offset + row * m_rowStride;
+				int b = m.m_offset + row * m.m_rowStride;
+
+				for (int i = 0 ; i < m_columns ; ++i)
+					if (!isClose(m_values[a + i], m.m_values[b + i], epsilon))
+						return false;
+			}
+
+			return true;
+		}
+
+		if (SparseKernels.hasSparseStorage(this) && SparseKernels.hasSparseStorage(m))
+			return (SparseKernels.storedValuesClose(this, m, epsilon)
+					&& SparseKernels.storedValuesClose(m, this, epsilon));
+
+		for (int row = 0 ; row < m_rows ; ++row)
+			for (int col = 0 ; col < m_columns ; ++col)
+				if (!isClose(getDouble(row, col), m.getDouble(row, col), epsilon))
+					return false;
+
+		return true;
+	}
+
+	/**
+	 * Clear the values of the matrix. Array-backed matrices are zeroed in
+	 * place, so views sharing the array see the change.
+	 */
+	@Override
+	public void clear()
+	{
+		if (m_values == null)
+		{
+			super.clear();
+			return;
+		}
+
+		for (int row = 0 ; row < m_rows ; ++row)
+		{
+			int start = m_offset + row * m_rowStride;
+
+			Arrays.fill(m_values, start, start + m_columns, 0.0);
+		}
+
+		invalidateHashCode();
+	}
+
+	/**
+	 * Return a copy of this matrix that does not share storage with it.
+	 * 
+	 * @return - a new matrix holding the same values
+	 */
+	@Override
+	public DoubleMatrix copy()
+	{
+		DoubleMatrix m = new DoubleMatrix(m_rows, m_columns);
+
+		if (m_values != null)
+		{
+			for (int row = 0 ; row < m_rows ; ++row)
+				System.arraycopy(m_values, m_offset + row * m_rowStride, m.m_values, row * m_columns, m_columns);
+		}
+		else
+		{
+			for (int row = 0 ; row < m_rows ; ++row)
+				for (int col = 0 ; col < m_columns ; ++col)
+					m.m_values[row * m_columns + col] = getDouble(row, col);
+		}
+
+		return m;
+	}
+
+	/**
+	 * Sum the element hash codes, reading array-backed matrices directly.
+	 */
+	@Override
+	protected int computeHashCode()
+	{
+		int h = 0;
+
+		for (int row = 0 ; row < m_rows ; ++row)
+		{
+			for (int col = 0 ; col < m_columns ; ++col)
+			{
+				double value = (m_values != null) ? m_values[m_offset + row * m_rowStride + col] : getDouble(row, col);
+
+				h += elementHashCode(row, col, Double.hashCode(value));
+			}
+		}
+
+		return h;
+	}
+
+	/**
+	 * Equals comparison operator. Array-backed matrices are compared a row at
+	 * a time, and matrices that store only their nonzeros through their stored
+	 * values. Values are compared as by Double.equals, so NaN equals NaN and
+	 * 0.0 does not equal -0.0.
+	 */
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o instanceof DoubleMatrix == false || o == this)
+			return super.equals(o);
+
+		DoubleMatrix rhs = (DoubleMatrix) o;
+
+		if (m_rows != rhs.m_rows || m_columns != rhs.m_columns)
+			return false;
+
+		if (hashCodesDiffer(rhs))
+			return false;
+
+		if (m_values != null && rhs.m_values != null)
+		{
+			for (int row = 0 ; row < m_rows ; ++row)
+			{
+				int a = m_offset + row * m_rowStride;
+				int b = rhs.m_offset + row * rhs.m_rowStride;
+
+				if (!Arrays.equals(m_values, a, a + m_columns, rhs.m_values, b, b + m_columns))
+					return false;
+			}
+
+			return true;
+		}
+
+		boolean sparse = SparseKernels.hasSparseStorage(this);
+		boolean rhsSparse = SparseKernels.hasSparseStorage(rhs);
+
+		if (sparse && rhsSparse)
+			return (SparseKernels.matchStoredValues(this, rhs) >= 0 && SparseKernels.matchStoredValues(rhs, this) >= 0);
+
+		if (sparse && rhs.m_values != null)
+			return sparseEqualsArray(this, rhs);
+
+		if (rhsSparse && m_values != null)
+			return sparseEqualsArray(rhs, this);
+
+		for (int row = 0 ; row < m_rows ; ++row)
+			for (int col = 0 ; col < m_columns ; ++col)
+				if (Double.doubleToLongBits(getDouble(row, col)) != Double.doubleToLongBits(rhs.getDouble(row, col)))
+					return false;
+
+		return true;
+	}
+
+	/**
+	 * Helper function to compare a matrix that stores only its nonzeros with
+	 * an array-backed matrix: equal if every stored value matches, and the
+	 * array holds no more values other than 0.0 than were stored.
+	 */
+	private static boolean sparseEqualsArray(DoubleMatrix sparse, DoubleMatrix dense)
+	{
+		long stored = SparseKernels.matchStoredValues(sparse, dense);
+
+		if (stored < 0)
+			return false;
+
+		long nonZeros = 0;
+
+		for (int row = 0 ; row < dense.m_rows ; ++row)
+		{
+			int start = dense.m_offset + row * dense.m_rowStride;
+
+			for (int i = start ; i < start + dense.m_columns ; ++i)
+				if (Double.doubleToRawLongBits(dense.m_values[i]) != 0L)
+					++nonZeros;
+		}
+
+		return (nonZeros == stored);
+	}
+
+	/**
+	 * Call the visitor with every nonzero element of this matrix, as
+	 * primitives. Array-backed matrices visit in row-major order; sparse,
+	 * compressed and structured matrices visit only their stored elements, in
+	 * the order of their storage, so the cost is proportional to the number of
+	 * nonzeros rather than to rows * cols. The visitor must not change the
+	 * matrix.
+	 * 
+	 * @param visitor
+	 *            - the visitor to call with each nonzero
+	 */
+	public void forEachNonZero(DoubleEntryVisitor visitor)
+	{
+		for (int row = 0 ; row < m_rows ; ++row)
+			forEachNonZeroInRow(row, visitor);
+	}
+
+	/**
+	 * Call the visitor with every nonzero element of the given column, in
+	 * ascending row order. The visitor must not change the matrix.
+	 * 
+	 * @param col
+	 *            - the column to visit
+	 * @param visitor
+	 *            - the visitor to call with each nonzero
+	 */
+	public void forEachNonZeroInColumn(int col, DoubleEntryVisitor visitor)
+	{
+		if (col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		for (int row = 0 ; row < m_rows ; ++row)
+		{
+			double value = (m_values != null) ? m_values[m_offset + row * m_rowStride + col] : getDouble(row, col);
+
+			if (value != 0.0)
+				visitor.visit(row, col, value);
+		}
+	}
+
+	/**
+	 * Call the visitor with every nonzero element of the given row, in
+	 * ascending column order. The visitor must not change the matrix.
+	 * 
+	 * @param row
+	 *            - the row to visit
+	 * @param visitor
+	 *            - the visitor to call with each nonzero
+	 */
+	public void forEachNonZeroInRow(int row, DoubleEntryVisitor visitor)
+	{
+		if (row < 0 || row >= m_rows)
+			throw new IndexOutOfBoundsException();
+
+		if (m_values == null)
+		{
+			for (int col = 0 ; col < m_columns ; ++col)
+			{
+				double value = getDouble(row, col);
+
+				if (value != 0.0)
+					visitor.visit(row, col, value);
+			}
+
+			return;
+		}
+
+		int start = m_offset + row * m_rowStride;
+
+		for (int col = 0 ; col < m_columns ; ++col)
+			if (m_values[start + col] != 0.0)
+				visitor.visit(row, col, m_values[start + col]);
+	}
+
+	/**
+	 * Return a matrix, constructed from a given string and delimiter. Simple
+	 * delimiters (a single character, or whitespace) are handled by the
+	 * streaming MatrixParser without splitting the string.
 	 * 
 	 * @param rows
 	 *            - the number of rows in the matrix
@@ -36,6 +377,11 @@ public class DoubleMatrix extends Matrix<Double>
 	 */
 	public static DoubleMatrix fromString(int rows, int cols, String str, String delim)
 	{
+		String separators = MatrixParser.literalSeparators(delim);
+
+		if (separators != null)
+			return MatrixParser.parse(str, rows, cols, separators);
+
 		DoubleMatrix m = new DoubleMatrix(rows, cols);
 
 		String[] arr = str.split(delim);
@@ -68,16 +414,96 @@ public class DoubleMatrix extends Matrix<Double>
 	 */
 	@Override
 	public Double get(int row, int col)
+	{
+		return getDouble(row, col);
+	}
+
+	/**
+	 * Returns the primitive value at the specified row and column.
+	 * 
+	 * @param row
+	 *            - the row at which to get the value
+	 * @param col
+	 *            - the column at which to get the value
+	 * @return - the value at the specified row and column
+	 */
+	public double getDouble(int row, int col)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		return m_values[m_offset + row * m_rowStride + col];
+	}
+
+	/**
+	 * Initialize the underlying data structures.
+	 */
+	@Override
+	protected void initializeDataStructures()
+	{
+		if ((long) m_rows * m_columns > Integer.MAX_VALUE)
+			throw new IndexOutOfBoundsException("Too many elements for an array: use DoubleOffHeapMatrix");
+
+		m_values = new double[m_rows * m_columns];
+		m_offset = 0;
+		m_rowStride = m_columns;
+	}
+
+	/**
+	 * Returns true if two values are within epsilon of each other, or are both
+	 * NaN.
+	 */
+	static boolean isClose(double a, double b, double epsilon)
+	{
+		return (a == b || Math.abs(a - b) <= epsilon || (a != a && b != b));
+	}
+
+	/**
+	 * The hash code is not cached while the array is shared with a view.
+	 */
+	@Override
+	protected boolean isHashCodeCacheable()
+	{
+		return !m_sharedStorage;
+	}
+
+	/**
+	 * Set the data at the given row and column. A null element is stored as
+	 * zero.
+	 * 
+	 * @param row
+	 *            - the row at which to set the element
+	 * @param col
+	 *            - the column at which to set the element
+	 * @param element
+	 *            - the element to set at the given row and column
+	 */
+	@Override
+	public void set(int row, int col, Double element)
+	{
+		setDouble(row, col, (element == null) ? 0.0 : element.doubleValue());
+	}
+
+	/**
+	 * Set the primitive value at the given row and column.
+	 * 
+	 * @param row
+	 *            - the row at which to set the value
+	 * @param col
+	 *            - the column at which to set the value
+	 * @param value
+	 *            - the value to set at the given row and column
+	 */
+	public void setDouble(int row, int col, double value)
 	{
 		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
 			throw new IndexOutOfBoundsException();
 
-		Double d = m_data.get(convertRowAndColToIndex(row, col));
+		int index = m_offset + row * m_rowStride + col;
 
-		if (null == d)
-			return 0.0;
+		updateHashCode(row, col, Double.hashCode(m_values[index]), Double.hashCode(value));
 
-		return d;
+		m_values[index] = value;
 	}
 
 	/**
@@ -103,15 +529,51 @@ public class DoubleMatrix extends Matrix<Double>
 
 		DoubleMatrix m = new DoubleMatrix(newRows, newCols);
 
+		if (m_values != null)
+		{
+			for (int row = firstRowIndex ; row < lastRowIndex ; ++row)
+				System.arraycopy(m_values, m_offset + row * m_rowStride + firstColIndex, m.m_values,
+						(row - firstRowIndex) * newCols, newCols);
+
+			return m;
+		}
+
 		for (int row = firstRowIndex ; row < lastRowIndex ; ++row)
 		{
 			for (int col = firstColIndex ; col < lastColIndex ; ++col)
 			{
-				m.set(row - firstRowIndex, col - firstColIndex, get(row, col));
+				m.setDouble(row - firstRowIndex, col - firstColIndex, getDouble(row, col));
 			}
 		}
 
 		return m;
 	}
 
+	/**
+	 * Return a view of the sub-matrix with the given indices. The view shares
+	 * storage with this matrix, so changes to either are visible in both. Use
+	 * copy() on the view to detach it. Views of array-backed matrices are
+	 * themselves array-backed, so MatrixMath operates on them directly.
+	 * 
+	 * @param firstRowIndex
+	 * @param lastRowIndex
+	 * @param firstColIndex
+	 * @param lastColIndex
+	 * @return
+	 */
+	@Override
+	public DoubleMatrix subMatrixView(int firstRowIndex, int lastRowIndex, int firstColIndex, int lastColIndex)
+	{
+		if (firstRowIndex < 0 || lastRowIndex > m_rows || firstRowIndex >= lastRowIndex)
+			throw new IndexOutOfBoundsException();
+
+		if (firstColIndex < 0 || lastColIndex > m_columns || firstColIndex >= lastColIndex)
+			throw new IndexOutOfBoundsException();
+
+		if (m_values != null)
+			return new DoubleMatrix(this, firstRowIndex, lastRowIndex, firstColIndex, lastColIndex);
+
+		return new DoubleMatrixView(this, firstRowIndex, lastRowIndex, firstColIndex, lastColIndex);
+	}
+
 }
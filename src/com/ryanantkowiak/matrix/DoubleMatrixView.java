@@ -0,0 +1,134 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * View of a rectangular window of a matrix of Doubles that has no backing
+ * array, such as a sparse matrix. Values are read from and written to the
+ * parent matrix, so no data is copied.
+ * 
+ * @author antko
+ *
+ */
+public class DoubleMatrixView extends DoubleMatrix
+{
+	/**
+	 * The matrix whose storage this view shares.
+	 */
+	protected final DoubleMatrix m_parent;
+
+	/**
+	 * The row of the parent at which this view starts.
+	 */
+	protected final int m_firstRow;
+
+	/**
+	 * The column of the parent at which this view starts.
+	 */
+	protected final int m_firstColumn;
+
+	/**
+	 * Construct a view of the given window of a parent matrix.
+	 * 
+	 * @param parent
+	 *            - the matrix to view
+	 * @param firstRowIndex
+	 * @param lastRowIndex
+	 * @param firstColIndex
+	 * @param lastColIndex
+	 */
+	DoubleMatrixView(DoubleMatrix parent, int firstRowIndex, int lastRowIndex, int firstColIndex, int lastColIndex)
+	{
+		super(lastRowIndex - firstRowIndex, lastColIndex - firstColIndex, false);
+
+		m_parent = parent;
+		m_firstRow = firstRowIndex;
+		m_firstColumn = firstColIndex;
+	}
+
+	/**
+	 * Clear the values of the window in the parent matrix.
+	 */
+	@Override
+	public void clear()
+	{
+		for (int row = 0 ; row < m_rows ; ++row)
+			for (int col = 0 ; col < m_columns ; ++col)
+				m_parent.setDouble(m_firstRow + row, m_firstColumn + col, 0.0);
+	}
+
+	/**
+	 * Return a detached copy of the viewed window, of the same kind as the
+	 * parent matrix.
+	 */
+	@Override
+	public DoubleMatrix copy()
+	{
+		return m_parent.subMatrix(m_firstRow, m_firstRow + m_rows, m_firstColumn, m_firstColumn + m_columns);
+	}
+
+	/**
+	 * Returns the primitive value at the specified row and column of the view.
+	 */
+	@Override
+	public double getDouble(int row, int col)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		return m_parent.getDouble(m_firstRow + row, m_firstColumn + col);
+	}
+
+	/**
+	 * The values can be changed through the parent, so the hash code is not
+	 * cached.
+	 */
+	@Override
+	protected boolean isHashCodeCacheable()
+	{
+		return false;
+	}
+
+	/**
+	 * Set the primitive value at the specified row and column of the view.
+	 */
+	@Override
+	public void setDouble(int row, int col, double value)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		m_parent.setDouble(m_firstRow + row, m_firstColumn + col, value);
+	}
+
+	/**
+	 * Return a detached copy of the sub-matrix with the given indices.
+	 */
+	@Override
+	public DoubleMatrix subMatrix(int firstRowIndex, int lastRowIndex, int firstColIndex, int lastColIndex)
+	{
+		if (firstRowIndex < 0 || lastRowIndex > m_rows || firstRowIndex >= lastRowIndex)
+			throw new IndexOutOfBoundsException();
+
+		if (firstColIndex < 0 || lastColIndex > m_columns || firstColIndex >= lastColIndex)
+			throw new IndexOutOfBoundsException();
+
+		return m_parent.subMatrix(m_firstRow + firstRowIndex, m_firstRow + lastRowIndex,
+				m_firstColumn + firstColIndex, m_firstColumn + lastColIndex);
+	}
+
+	/**
+	 * Return a view of the sub-matrix with the given indices, sharing storage
+	 * with the parent matrix.
+	 */
+	@Override
+	public DoubleMatrix subMatrixView(int firstRowIndex, int lastRowIndex, int firstColIndex, int lastColIndex)
+	{
+		if (firstRowIndex < 0 || lastRowIndex > m_rows || firstRowIndex >= lastRowIndex)
+			throw new IndexOutOfBoundsException();
+
+		if (firstColIndex < 0 || lastColIndex > m_columns || firstColIndex >= lastColIndex)
+			throw new IndexOutOfBoundsException();
+
+		return new DoubleMatrixView(m_parent, m_firstRow + firstRowIndex, m_firstRow + lastRowIndex,
+				m_firstColumn + firstColIndex, m_firstColumn + lastColIndex);
+	}
+}
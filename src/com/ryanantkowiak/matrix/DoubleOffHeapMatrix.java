@@ -0,0 +1,165 @@
+package com.ryanantkowiak.matrix;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * Dense matrix of doubles stored in direct memory outside the Java heap, for
+ * matrices too large for the heap or for an int index (such as 50000 x 50000,
+ * or 20 GB). The memory is not managed by the garbage collector's heap and is
+ * released by close().
+ *
+ * Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to the
+ * maximum heap size, so the limit must be raised for matrices larger than the
+ * heap.
+ *
+ * The matrix must not be used after close(), nor concurrently with it.
+ *
+ * @author antko
+ *
+ */
+public class DoubleOffHeapMatrix extends DoubleBufferMatrix implements AutoCloseable
+{
+	/**
+	 * sun.misc.Unsafe.invokeCleaner, used to release direct memory without
+	 * waiting for the garbage collector, or null if it is not available.
+	 */
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static
+	{
+		Object unsafe = null;
+		Method invokeCleaner = null;
+
+		try
+		{
+			Class<?> c = Class.forName("sun.misc.Unsafe");
+			Field f = c.getDeclaredField("theUnsafe");
+
+			f.setAccessible(true);
+
+			unsafe = f.get(null);
+			invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+		}
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			unsafe = null;
+			invokeCleaner = null;
+		}
+
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	/**
+	 * The direct buffers that own the memory of m_chunks.
+	 */
+	private ByteBuffer[] m_buffers;
+
+	/**
+	 * Construct a zeroed matrix of doubles in direct memory.
+	 *
+	 * @param rows
+	 *            - the number of rows in this matrix
+	 * @param cols
+	 *            - the number of columns in this matrix
+	 */
+	public DoubleOffHeapMatrix(int rows, int cols)
+	{
+		super(rows, cols, null, rowsPerChunk(rows, cols));
+
+		int count = chunkCount(rows, m_rowsPerChunk);
+
+		m_buffers = new ByteBuffer[count];
+		m_chunks = new DoubleBuffer[count];
+
+		try
+		{
+			for (int i = 0 ; i < count ; ++i)
+			{
+				int n = Math.min(m_rowsPerChunk, rows - i * m_rowsPerChunk);
+
+				m_buffers[i] = ByteBuffer.allocateDirect(n * cols * 8).order(ByteOrder.nativeOrder());
+				m_chunks[i] = m_buffers[i].asDoubleBuffer();
+			}
+		}
+		catch (OutOfMemoryError e)
+		{
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Construct a matrix in direct memory holding the same values as another
+	 * matrix.
+	 *
+	 * @param m
+	 *            - the matrix to copy
+	 */
+	public DoubleOffHeapMatrix(DoubleMatrix m)
+	{
+		this(m.getRowDimension(), m.getColumnDimension());
+
+		double[] row = new double[m_columns];
+
+		for (int r = 0 ; r < m_rows ; ++r)
+		{
+			if (m.m_values != null)
+			{
+				putRow(r, 0, m.m_values, m.m_offset + r * m.m_rowStride, m_columns);
+				continue;
+			}
+
+			for (int c = 0 ; c < m_columns ; ++c)
+				row[c] = m.getDouble(r, c);
+
+			putRow(r, 0, row, 0, m_columns);
+		}
+	}
+
+	/**
+	 * Release the memory of this matrix. Further access throws
+	 * IllegalStateException. Calling close() again has no effect.
+	 */
+	@Override
+	public void close()
+	{
+		ByteBuffer[] buffers = m_buffers;
+
+		m_chunks = null;
+		m_buffers = null;
+
+		if (null == buffers || null == INVOKE_CLEANER)
+			return;
+
+		for (ByteBuffer b : buffers)
+		{
+			if (null == b)
+				continue;
+
+			try
+			{
+				INVOKE_CLEANER.invoke(UNSAFE, b);
+			}
+			catch (ReflectiveOperationException | RuntimeException e)
+			{
+				// The garbage collector releases the memory instead.
+			}
+		}
+	}
+
+	/**
+	 * Returns true if close() has been called.
+	 *
+	 * @return - true if the memory has been released
+	 */
+	public boolean isClosed()
+	{
+		return (null == m_chunks);
+	}
+}
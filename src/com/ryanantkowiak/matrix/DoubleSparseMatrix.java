@@ -1,10 +1,9 @@
 package com.ryanantkowiak.matrix;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
- * Sparse Matrix of Doubles.
+ * Sparse Matrix of Doubles. Only the nonzeros are stored, in a hash map from
+ * their long row-major key to their primitive value, so reading and setting
+ * elements allocate nothing.
  * 
  * @author antko
  *
@@ -12,9 +11,10 @@ import java.util.Map;
 public class DoubleSparseMatrix extends DoubleMatrix
 {
 	/**
-	 * Underlying data structure for a sparse matrix of doubles.
+	 * Underlying data structure for a sparse matrix of doubles: the nonzeros,
+	 * by key from convertRowAndColToKey().
 	 */
-	protected Map<Integer, Double> m_sparseData;
+	protected LongDoubleHashMap m_sparseData;
 
 	/**
 	 * Constructor
@@ -29,6 +29,138 @@ public class DoubleSparseMatrix extends DoubleMatrix
 		super(rows, cols);
 	}
 
+	/**
+	 * Add delta to the value at the given row and column, removing the entry if
+	 * the sum is zero. Unlike setDouble(), repeated calls at the same position
+	 * add up, as when assembling a matrix from overlapping contributions.
+	 * 
+	 * @param row
+	 *            - the row at which to add the value
+	 * @param col
+	 *            - the column at which to add the value
+	 * @param delta
+	 *            - the value to add
+	 */
+	public void accumulate(int row, int col, double delta)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		long key = convertRowAndColToKey(row, col);
+		double old = m_sparseData.get(key);
+		double sum = old + delta;
+
+		if (sum == 0.0)
+			m_sparseData.remove(key);
+		else
+			m_sparseData.put(key, sum);
+
+		updateHashCode(row, col, Double.hashCode(old), (sum == 0.0) ? 0 : Double.hashCode(sum));
+	}
+
+	/**
+	 * Return a copy of this matrix that does not share storage with it.
+	 * 
+	 * @return - a new sparse matrix holding the same values
+	 */
+	@Override
+	public DoubleSparseMatrix copy()
+	{
+		DoubleSparseMatrix m = new DoubleSparseMatrix(m_rows, m_columns);
+
+		m.m_sparseData = new LongDoubleHashMap(m_sparseData);
+
+		return m;
+	}
+
+	/**
+	 * Sum the element hash codes over the stored nonzeros only.
+	 */
+	@Override
+	protected int computeHashCode()
+	{
+		long[] keys = m_sparseData.m_keys;
+		double[] values = m_sparseData.m_values;
+		int h = 0;
+
+		for (int i = 0 ; i < keys.length ; ++i)
+		{
+			long key = keys[i];
+
+			if (key != LongDoubleHashMap.EMPTY)
+				h += elementHashCode((int) (key / m_columns), (int) (key % m_columns), Double.hashCode(values[i]));
+		}
+
+		return h;
+	}
+
+	/**
+	 * Visit the stored nonzeros only, in no particular order.
+	 */
+	@Override
+	public void forEachNonZero(DoubleEntryVisitor visitor)
+	{
+		long[] keys = m_sparseData.m_keys;
+		double[] values = m_sparseData.m_values;
+
+		for (int i = 0 ; i < keys.length ; ++i)
+			if (keys[i] != LongDoubleHashMap.EMPTY)
+				visitor.visit((int) (keys[i] / m_columns), (int) (keys[i] % m_columns), values[i]);
+	}
+
+	/**
+	 * Visit the stored nonzeros of the column only.
+	 */
+	@Override
+	public void forEachNonZeroInColumn(int col, DoubleEntryVisitor visitor)
+	{
+		if (col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		visitSlots(m_sparseData.slotsOf(col, (long) m_rows * m_columns, m_columns), visitor);
+	}
+
+	/**
+	 * Visit the stored nonzeros of the row only.
+	 */
+	@Override
+	public void forEachNonZeroInRow(int row, DoubleEntryVisitor visitor)
+	{
+		if (row < 0 || row >= m_rows)
+			throw new IndexOutOfBoundsException();
+
+		long first = convertRowAndColToKey(row, 0);
+
+		visitSlots(m_sparseData.slotsOf(first, first + m_columns, 1), visitor);
+	}
+
+	/**
+	 * Build a sparse matrix from coordinate (COO) triplets, summing the values
+	 * of triplets at the same position, as
+	 * DoubleCompressedRowMatrix.fromTriplets() does. The triplets are sorted
+	 * and summed in primitive arrays, and each resulting nonzero is then
+	 * stored once, so no set() call or intermediate entry is made per triplet.
+	 * 
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 * @param rowIdx
+	 *            - the row of each triplet
+	 * @param colIdx
+	 *            - the column of each triplet
+	 * @param values
+	 *            - the value of each triplet
+	 * @return - a new sparse matrix
+	 * @throws InvalidMatrixDimensionException
+	 *             if the three arrays differ in length
+	 */
+	public static DoubleSparseMatrix fromTriplets(int rows, int cols, int[] rowIdx, int[] colIdx, double[] values)
+			throws InvalidMatrixDimensionException
+	{
+		return DoubleCompressedRowMatrix.fromTriplets(rows, cols, rowIdx, colIdx, values).toSparseMatrix();
+	}
+
 	/**
 	 * Retrieve the double at the given row and column
 	 */
@@ -38,12 +170,19 @@ public class DoubleSparseMatrix extends DoubleMatrix
 		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
 			throw new IndexOutOfBoundsException();
 
-		Double d = m_sparseData.get(convertRowAndColToIndex(row, col));
+		return m_sparseData.get(convertRowAndColToKey(row, col));
+	}
 
-		if (null == d)
-			return 0.0;
+	/**
+	 * Retrieve the primitive double at the given row and column
+	 */
+	@Override
+	public double getDouble(int row, int col)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
 
-		return d;
+		return m_sparseData.get(convertRowAndColToKey(row, col));
 	}
 
 	/**
@@ -52,7 +191,7 @@ public class DoubleSparseMatrix extends DoubleMatrix
 	@Override
 	protected void initializeDataStructures()
 	{
-		m_sparseData = new HashMap<Integer, Double>();
+		m_sparseData = new LongDoubleHashMap();
 	}
 
 	/**
@@ -71,10 +210,47 @@ public class DoubleSparseMatrix extends DoubleMatrix
 		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
 			throw new IndexOutOfBoundsException();
 
+		double old;
+		int hash = 0;
+
 		if (element == null || element.doubleValue() == 0.0)
-			m_sparseData.remove(convertRowAndColToIndex(row, col));
+		{
+			old = m_sparseData.remove(convertRowAndColToKey(row, col));
+		}
 		else
-			m_sparseData.put(convertRowAndColToIndex(row, col), element);
+		{
+			old = m_sparseData.put(convertRowAndColToKey(row, col), element.doubleValue());
+			hash = element.hashCode();
+		}
+
+		updateHashCode(row, col, Double.hashCode(old), hash);
+	}
+
+	/**
+	 * Set the primitive double at the given row and column. Zero values are not
+	 * stored.
+	 * 
+	 * @param row
+	 *            - the row at which to set the value
+	 * @param col
+	 *            - the column at which to set the value
+	 * @param value
+	 *            - the value to set at the given row and column
+	 */
+	@Override
+	public void setDouble(int row, int col, double value)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		double old;
+
+		if (value == 0.0)
+			old = m_sparseData.remove(convertRowAndColToKey(row, col));
+		else
+			old = m_sparseData.put(convertRowAndColToKey(row, col), value);
+
+		updateHashCode(row, col, Double.hashCode(old), (value == 0.0) ? 0 : Double.hashCode(value));
 	}
 
 	/**
@@ -100,16 +276,72 @@ public class DoubleSparseMatrix extends DoubleMatrix
 
 		DoubleSparseMatrix m = new DoubleSparseMatrix(newRows, newCols);
 
+		// Visit whichever is smaller: the stored entries or the window.
+		if (m_sparseData.size() < (long) newRows * newCols)
+		{
+			long[] keys = m_sparseData.m_keys;
+			double[] values = m_sparseData.m_values;
+
+			for (int i = 0 ; i < keys.length ; ++i)
+			{
+				if (keys[i] == LongDoubleHashMap.EMPTY)
+					continue;
+
+				int row = (int) (keys[i] / m_columns);
+				int col = (int) (keys[i] % m_columns);
+
+				if (row >= firstRowIndex && row < lastRowIndex && col >= firstColIndex && col < lastColIndex)
+					m.setDouble(row - firstRowIndex, col - firstColIndex, values[i]);
+			}
+
+			return m;
+		}
+
 		for (int row = firstRowIndex ; row < lastRowIndex ; ++row)
 		{
 			for (int col = firstColIndex ; col < lastColIndex ; ++col)
 			{
-				Double d = get(row, col);
-				if (d != null && d.doubleValue() != 0.0)
-					m.set(row - firstRowIndex, col - firstColIndex, d);
+				double d = getDouble(row, col);
+
+				if (d != 0.0)
+					m.setDouble(row - firstRowIndex, col - firstColIndex, d);
 			}
 		}
 
 		return m;
 	}
+
+	/**
+	 * Return an immutable compressed sparse row copy of this matrix.
+	 * 
+	 * @return - a new CSR matrix
+	 */
+	public DoubleCompressedRowMatrix toCompressedRowMatrix()
+	{
+		return new DoubleCompressedRowMatrix(this);
+	}
+
+	/**
+	 * Return an immutable compressed sparse column copy of this matrix.
+	 * 
+	 * @return - a new CSC matrix
+	 */
+	public DoubleCompressedColumnMatrix toCompressedColumnMatrix()
+	{
+		return new DoubleCompressedColumnMatrix(this);
+	}
+
+	/**
+	 * Helper function to call the visitor with the nonzeros in the given slots
+	 * of m_sparseData.
+	 */
+	private void visitSlots(int[] slots, DoubleEntryVisitor visitor)
+	{
+		for (int i : slots)
+		{
+			long key = m_sparseData.m_keys[i];
+
+			visitor.visit((int) (key / m_columns), (int) (key % m_columns), m_sparseData.m_values[i]);
+		}
+	}
 }
@@ -0,0 +1,289 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Matrix of doubles whose nonzeros are confined to a known structure (a band,
+ * a triangle or a symmetric pair), stored in a primitive array whose size is
+ * proportional to the structure rather than to rows * cols.
+ *
+ * The stored elements of each row form a run of consecutive columns, from
+ * firstColumn(row) to lastColumn(row) - 1, held in consecutive positions of
+ * m_elements starting at index(row, firstColumn(row)). Every element outside
+ * the runs is zero, and setting it to anything else throws
+ * IllegalArgumentException. DoubleSymmetricMatrix stores only the lower
+ * triangle and mirrors it.
+ *
+ * MatrixMath recognizes these matrices and uses kernels whose cost scales with
+ * the structure.
+ *
+ * @author antko
+ *
+ */
+public abstract class DoubleStructuredMatrix extends DoubleMatrix
+{
+	/**
+	 * The stored elements, in the layout given by index().
+	 */
+	protected final double[] m_elements;
+
+	/**
+	 * Construct a zeroed structured matrix.
+	 *
+	 * @param rows
+	 *            - the number of rows in this matrix
+	 * @param cols
+	 *            - the number of columns in this matrix
+	 * @param count
+	 *            - the number of stored elements
+	 */
+	DoubleStructuredMatrix(int rows, int cols, long count)
+	{
+		super(rows, cols, false);
+
+		if (count > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Matrix too large: " + rows + " x " + cols);
+
+		m_elements = new double[(int) count];
+	}
+
+	/**
+	 * Zero the stored elements.
+	 */
+	@Override
+	public void clear()
+	{
+		Arrays.fill(m_elements, 0.0);
+
+		invalidateHashCode();
+	}
+
+	/**
+	 * Sum the element hash codes over the stored elements only.
+	 */
+	@Override
+	protected int computeHashCode()
+	{
+		int h = 0;
+
+		for (int row = 0 ; row < m_rows ; ++row)
+		{
+			int base = index(row, 0);
+
+			for (int col = firstColumn(row) ; col < lastColumn(row) ; ++col)
+				h += elementHashCode(row, col, Double.hashCode(m_elements[base + col]));
+		}
+
+		return h;
+	}
+
+	/**
+	 * Return a copy of this matrix with the same structure.
+	 *
+	 * @return - a new matrix holding the same values
+	 */
+	@Override
+	public DoubleStructuredMatrix copy()
+	{
+		DoubleStructuredMatrix m = emptyCopy();
+
+		System.arraycopy(m_elements, 0, m.m_elements, 0, m_elements.length);
+
+		return m;
+	}
+
+	/**
+	 * Returns a zeroed matrix with the same dimensions and structure.
+	 *
+	 * @return - a new matrix
+	 */
+	abstract DoubleStructuredMatrix emptyCopy();
+
+	/**
+	 * Returns the first column stored for the given row.
+	 *
+	 * @param row
+	 * @return - the first column of the row's run
+	 */
+	abstract int firstColumn(int row);
+
+	/**
+	 * Visit the stored elements of the column only: the rows within the
+	 * bandwidths of the column.
+	 */
+	@Override
+	public void forEachNonZeroInColumn(int col, DoubleEntryVisitor visitor)
+	{
+		if (col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		int first = Math.max(0, col - getUpperBandwidth());
+		int last = (int) Math.min(m_rows, (long) col + getLowerBandwidth() + 1);
+
+		for (int row = first ; row < last ; ++row)
+		{
+			double value = getDouble(row, col);
+
+			if (value != 0.0)
+				visitor.visit(row, col, value);
+		}
+	}
+
+	/**
+	 * Visit the stored elements of the row only.
+	 */
+	@Override
+	public void forEachNonZeroInRow(int row, DoubleEntryVisitor visitor)
+	{
+		if (row < 0 || row >= m_rows)
+			throw new IndexOutOfBoundsException();
+
+		int base = index(row, 0);
+
+		for (int col = firstColumn(row) ; col < lastColumn(row) ; ++col)
+			if (m_elements[base + col] != 0.0)
+				visitor.visit(row, col, m_elements[base + col]);
+	}
+
+	/**
+	 * Returns the primitive value at the specified row and column, which is zero
+	 * outside the structure.
+	 *
+	 * @param row
+	 *            - the row at which to get the value
+	 * @param col
+	 *            - the column at which to get the value
+	 * @return - the value at the specified row and column
+	 */
+	@Override
+	public double getDouble(int row, int col)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		if (col < firstColumn(row) || col >= lastColumn(row))
+			return 0.0;
+
+		return m_elements[index(row, col)];
+	}
+
+	/**
+	 * Returns the number of nonzero diagonals below the main diagonal that the
+	 * structure allows.
+	 *
+	 * @return - the lower bandwidth
+	 */
+	public abstract int getLowerBandwidth();
+
+	/**
+	 * Copy n values of a row, starting at the given column, to dst[off..].
+	 */
+	void getRow(int row, int col, double[] dst, int off, int n)
+	{
+		int first = Math.max(col, firstColumn(row));
+		int last = Math.min(col + n, lastColumn(row));
+
+		if (first >= last)
+		{
+			Arrays.fill(dst, off, off + n, 0.0);
+			return;
+		}
+
+		Arrays.fill(dst, off, off + first - col, 0.0);
+		System.arraycopy(m_elements, index(row, first), dst, off + first - col, last - first);
+		Arrays.fill(dst, off + last - col, off + n, 0.0);
+	}
+
+	/**
+	 * Returns the number of elements stored by this matrix.
+	 *
+	 * @return - the length of the underlying array
+	 */
+	public int getStoredCount()
+	{
+		return m_elements.length;
+	}
+
+	/**
+	 * Returns the number of nonzero diagonals above the main diagonal that the
+	 * structure allows.
+	 *
+	 * @return - the upper bandwidth
+	 */
+	public abstract int getUpperBandwidth();
+
+	/**
+	 * Returns the position of an element of a row's run in m_elements. The
+	 * position is linear in col, so index(row, 0) + col is the position of any
+	 * element of the run.
+	 *
+	 * @param row
+	 * @param col
+	 * @return - the index of the element in m_elements
+	 */
+	abstract int index(int row, int col);
+
+	/**
+	 * The underlying array is allocated by the constructor.
+	 */
+	@Override
+	protected void initializeDataStructures()
+	{
+	}
+
+	/**
+	 * Returns one past the last column stored for the given row, which is not
+	 * greater than firstColumn(row) when the row stores nothing.
+	 *
+	 * @param row
+	 * @return - the end of the row's run
+	 */
+	abstract int lastColumn(int row);
+
+	/**
+	 * Set the primitive value at the given row and column. Only zero may be set
+	 * outside the structure.
+	 *
+	 * @param row
+	 *            - the row at which to set the value
+	 * @param col
+	 *            - the column at which to set the value
+	 * @param value
+	 *            - the value to set at the given row and column
+	 */
+	@Override
+	public void setDouble(int row, int col, double value)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		if (col < firstColumn(row) || col >= lastColumn(row))
+		{
+			if (value != 0.0)
+				throw new IllegalArgumentException("Element (" + row + ", " + col + ") is outside the structure");
+
+			return;
+		}
+
+		int index = index(row, col);
+
+		updateHashCode(row, col, Double.hashCode(m_elements[index]), Double.hashCode(value));
+
+		m_elements[index] = value;
+	}
+
+	/**
+	 * Return a dense matrix holding the same values.
+	 *
+	 * @return - a new array-backed matrix
+	 */
+	public DoubleMatrix toDenseMatrix()
+	{
+		DoubleMatrix m = new DoubleMatrix(m_rows, m_columns);
+
+		for (int row = 0 ; row < m_rows ; ++row)
+			getRow(row, 0, m.m_values, row * m_columns, m_columns);
+
+		return m;
+	}
+}
@@ -0,0 +1,208 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Square symmetric matrix of doubles, storing only the n * (n + 1) / 2
+ * elements on and below the diagonal, packed row by row. The element at (row,
+ * col) above the diagonal is the stored element at (col, row), so setting
+ * either one sets both.
+ *
+ * @author antko
+ *
+ */
+public class DoubleSymmetricMatrix extends DoubleStructuredMatrix
+{
+	/**
+	 * Construct a zeroed n x n symmetric matrix.
+	 *
+	 * @param n
+	 *            - the number of rows and columns in this matrix
+	 */
+	public DoubleSymmetricMatrix(int n)
+	{
+		super(n, n, (long) n * (n + 1) / 2);
+	}
+
+	/**
+	 * Sum the element hash codes over the stored elements, counting each one
+	 * below the diagonal for both of its positions.
+	 */
+	@Override
+	protected int computeHashCode()
+	{
+		int h = 0;
+
+		for (int row = 0 ; row < m_rows ; ++row)
+		{
+			int base = index(row, 0);
+
+			for (int col = 0 ; col < row ; ++col)
+			{
+				int valueHashCode = Double.hashCode(m_elements[base + col]);
+
+				h += elementHashCode(row, col, valueHashCode) + elementHashCode(col, row, valueHashCode);
+			}
+
+			h += elementHashCode(row, row, Double.hashCode(m_elements[base + row]));
+		}
+
+		return h;
+	}
+
+	/**
+	 * Return a copy of this symmetric matrix.
+	 *
+	 * @return - a new symmetric matrix holding the same values
+	 */
+	@Override
+	public DoubleSymmetricMatrix copy()
+	{
+		return (DoubleSymmetricMatrix) super.copy();
+	}
+
+	/**
+	 * Returns a zeroed symmetric matrix of the same size.
+	 */
+	@Override
+	DoubleStructuredMatrix emptyCopy()
+	{
+		return new DoubleSymmetricMatrix(m_rows);
+	}
+
+	/**
+	 * Each row stores the columns up to the diagonal.
+	 */
+	@Override
+	int firstColumn(int row)
+	{
+		return 0;
+	}
+
+	/**
+	 * Visit the row, reading the part above the diagonal down the stored
+	 * column.
+	 */
+	@Override
+	public void forEachNonZeroInRow(int row, DoubleEntryVisitor visitor)
+	{
+		if (row < 0 || row >= m_rows)
+			throw new IndexOutOfBoundsException();
+
+		int base = index(row, 0);
+
+		for (int col = 0 ; col <= row ; ++col)
+			if (m_elements[base + col] != 0.0)
+				visitor.visit(row, col, m_elements[base + col]);
+
+		for (int col = row + 1 ; col < m_columns ; ++col)
+		{
+			double value = m_elements[index(col, row)];
+
+			if (value != 0.0)
+				visitor.visit(row, col, value);
+		}
+	}
+
+	/**
+	 * Returns the primitive value at the specified row and column, reading the
+	 * stored element at (col, row) above the diagonal.
+	 *
+	 * @param row
+	 *            - the row at which to get the value
+	 * @param col
+	 *            - the column at which to get the value
+	 * @return - the value at the specified row and column
+	 */
+	@Override
+	public double getDouble(int row, int col)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		return (col <= row) ? m_elements[index(row, col)] : m_elements[index(col, row)];
+	}
+
+	/**
+	 * Returns n - 1, since any element may be nonzero.
+	 *
+	 * @return - the lower bandwidth
+	 */
+	@Override
+	public int getLowerBandwidth()
+	{
+		return Math.max(0, m_rows - 1);
+	}
+
+	/**
+	 * Copy n values of a row, reading the part above the diagonal down the
+	 * stored column.
+	 */
+	@Override
+	void getRow(int row, int col, double[] dst, int off, int n)
+	{
+		int split = Math.min(col + n, row + 1);
+
+		if (split > col)
+			System.arraycopy(m_elements, index(row, col), dst, off, split - col);
+
+		for (int c = Math.max(col, split) ; c < col + n ; ++c)
+			dst[off + c - col] = m_elements[index(c, row)];
+	}
+
+	/**
+	 * Returns n - 1, since any element may be nonzero.
+	 *
+	 * @return - the upper bandwidth
+	 */
+	@Override
+	public int getUpperBandwidth()
+	{
+		return Math.max(0, m_rows - 1);
+	}
+
+	/**
+	 * Row r holds r + 1 elements, following the previous row.
+	 */
+	@Override
+	int index(int row, int col)
+	{
+		return (int) ((long) row * (row + 1) / 2 + col);
+	}
+
+	/**
+	 * Each row stores the columns up to the diagonal.
+	 */
+	@Override
+	int lastColumn(int row)
+	{
+		return row + 1;
+	}
+
+	/**
+	 * Set the primitive value at the given row and column, and at the mirrored
+	 * position.
+	 *
+	 * @param row
+	 *            - the row at which to set the value
+	 * @param col
+	 *            - the column at which to set the value
+	 * @param value
+	 *            - the value to set at the given row and column
+	 */
+	@Override
+	public void setDouble(int row, int col, double value)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		int index = (col <= row) ? index(row, col) : index(col, row);
+		int oldValueHashCode = Double.hashCode(m_elements[index]);
+		int newValueHashCode = Double.hashCode(value);
+
+		updateHashCode(row, col, oldValueHashCode, newValueHashCode);
+
+		if (row != col)
+			updateHashCode(col, row, oldValueHashCode, newValueHashCode);
+
+		m_elements[index] = value;
+	}
+}
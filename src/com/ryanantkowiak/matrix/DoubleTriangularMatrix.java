@@ -0,0 +1,108 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Square triangular matrix of doubles, storing only the n * (n + 1) / 2
+ * elements of its triangle, packed row by row.
+ *
+ * @author antko
+ *
+ */
+public abstract class DoubleTriangularMatrix extends DoubleStructuredMatrix
+{
+	/**
+	 * True if the elements below the diagonal are zero, false if the elements
+	 * above it are.
+	 */
+	protected final boolean m_upper;
+
+	/**
+	 * Construct a zeroed n x n triangular matrix.
+	 *
+	 * @param n
+	 *            - the number of rows and columns in this matrix
+	 * @param upper
+	 *            - true for an upper triangular matrix, false for a lower one
+	 */
+	DoubleTriangularMatrix(int n, boolean upper)
+	{
+		super(n, n, (long) n * (n + 1) / 2);
+
+		m_upper = upper;
+	}
+
+	/**
+	 * Return a copy of this triangular matrix.
+	 *
+	 * @return - a new triangular matrix holding the same values
+	 */
+	@Override
+	public DoubleTriangularMatrix copy()
+	{
+		return (DoubleTriangularMatrix) super.copy();
+	}
+
+	/**
+	 * Rows of an upper triangular matrix start at the diagonal.
+	 */
+	@Override
+	int firstColumn(int row)
+	{
+		return m_upper ? row : 0;
+	}
+
+	/**
+	 * Returns zero for an upper triangular matrix, and n - 1 for a lower one.
+	 *
+	 * @return - the lower bandwidth
+	 */
+	@Override
+	public int getLowerBandwidth()
+	{
+		return m_upper ? 0 : Math.max(0, m_rows - 1);
+	}
+
+	/**
+	 * Returns n - 1 for an upper triangular matrix, and zero for a lower one.
+	 *
+	 * @return - the upper bandwidth
+	 */
+	@Override
+	public int getUpperBandwidth()
+	{
+		return m_upper ? Math.max(0, m_rows - 1) : 0;
+	}
+
+	/**
+	 * Row r of an upper triangular matrix holds n - r elements and row r of a
+	 * lower one holds r + 1, each row following the previous one.
+	 */
+	@Override
+	int index(int row, int col)
+	{
+		long r = row;
+
+		if (m_upper)
+			return (int) (r * m_rows - r * (r - 1) / 2 + col - r);
+
+		return (int) (r * (r + 1) / 2 + col);
+	}
+
+	/**
+	 * Returns true if this matrix is upper triangular.
+	 *
+	 * @return - true if the elements below the diagonal are zero
+	 */
+	public boolean isUpper()
+	{
+		return m_upper;
+	}
+
+	/**
+	 * Rows of a lower triangular matrix end at the diagonal.
+	 */
+	@Override
+	int lastColumn(int row)
+	{
+		return m_upper ? m_columns : row + 1;
+	}
+}
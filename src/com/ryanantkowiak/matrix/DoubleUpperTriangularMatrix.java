@@ -0,0 +1,42 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Square upper triangular matrix of doubles: the elements below the diagonal
+ * are zero.
+ *
+ * @author antko
+ *
+ */
+public class DoubleUpperTriangularMatrix extends DoubleTriangularMatrix
+{
+	/**
+	 * Construct a zeroed n x n upper triangular matrix.
+	 *
+	 * @param n
+	 *            - the number of rows and columns in this matrix
+	 */
+	public DoubleUpperTriangularMatrix(int n)
+	{
+		super(n, true);
+	}
+
+	/**
+	 * Return a copy of this upper triangular matrix.
+	 *
+	 * @return - a new upper triangular matrix holding the same values
+	 */
+	@Override
+	public DoubleUpperTriangularMatrix copy()
+	{
+		return (DoubleUpperTriangularMatrix) super.copy();
+	}
+
+	/**
+	 * Returns a zeroed upper triangular matrix of the same size.
+	 */
+	@Override
+	DoubleStructuredMatrix emptyCopy()
+	{
+		return new DoubleUpperTriangularMatrix(m_rows);
+	}
+}
@@ -0,0 +1,160 @@
+package com.ryanantkowiak.matrix;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels that process several doubles per instruction with the Vector API
+ * (jdk.incubator.vector). This class is loaded by DoubleKernels only when the
+ * module is present, so the rest of the library runs without it.
+ *
+ * All loops use 256-bit vectors of 4 doubles, with a scalar loop for the
+ * remaining elements; the GEMM micro-kernel keeps each row of its 4 x 4 tile
+ * in one vector. Wider vectors were slower on processors that support them,
+ * and a single vector shape lets the JIT compiler keep every vector in
+ * registers. Products are multiplied and added separately rather than fused,
+ * so the results match the scalar kernels exactly.
+ *
+ * @author antko
+ *
+ */
+final class DoubleVectorKernels extends DoubleKernels
+{
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_256;
+
+	private static final int LANES = SPECIES.length();
+
+	/**
+	 * Without 256-bit registers the vectors are emulated, which is much slower
+	 * than the scalar loops.
+	 */
+	@Override
+	boolean isSupported()
+	{
+		return (DoubleVector.SPECIES_PREFERRED.length() >= LANES);
+	}
+
+	@Override
+	void add(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+	{
+		int i = 0;
+
+		for (int bound = SPECIES.loopBound(n) ; i < bound ; i += LANES)
+		{
+			DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOff + i);
+			DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOff + i);
+
+			va.add(vb).intoArray(d, dOff + i);
+		}
+
+		for ( ; i < n ; ++i)
+			d[dOff + i] = a[aOff + i] + b[bOff + i];
+	}
+
+	@Override
+	void subtract(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+	{
+		int i = 0;
+
+		for (int bound = SPECIES.loopBound(n) ; i < bound ; i += LANES)
+		{
+			DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOff + i);
+			DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOff + i);
+
+			va.sub(vb).intoArray(d, dOff + i);
+		}
+
+		for ( ; i < n ; ++i)
+			d[dOff + i] = a[aOff + i] - b[bOff + i];
+	}
+
+	@Override
+	void scale(double scalar, double[] a, int aOff, double[] d, int dOff, int n)
+	{
+		int i = 0;
+
+		for (int bound = SPECIES.loopBound(n) ; i < bound ; i += LANES)
+			DoubleVector.fromArray(SPECIES, a, aOff + i).mul(scalar).intoArray(d, dOff + i);
+
+		for ( ; i < n ; ++i)
+			d[dOff + i] = scalar * a[aOff + i];
+	}
+
+	@Override
+	void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int n)
+	{
+		int i = 0;
+
+		for (int bound = SPECIES.loopBound(n) ; i < bound ; i += LANES)
+		{
+			DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOff + i);
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOff + i);
+
+			vy.add(vx.mul(alpha)).intoArray(y, yOff + i);
+		}
+
+		for ( ; i < n ; ++i)
+			y[yOff + i] += alpha * x[xOff + i];
+	}
+
+	/**
+	 * Each lane keeps its own partial sum, and the lanes are added at the end.
+	 */
+	@Override
+	double dot(double[] x, int xOff, double[] y, int yOff, int n)
+	{
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int i = 0;
+
+		for (int bound = SPECIES.loopBound(n) ; i < bound ; i += LANES)
+		{
+			DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOff + i);
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOff + i);
+
+			acc = acc.add(vx.mul(vy));
+		}
+
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+
+		for ( ; i < n ; ++i)
+			sum += x[xOff + i] * y[yOff + i];
+
+		return sum;
+	}
+
+	@Override
+	void microKernel(int kc, double[] pa, int aOff, double[] pb, int bOff, double[] c, int cOff, int ldc)
+	{
+		DoubleVector c0 = DoubleVector.zero(SPECIES);
+		DoubleVector c1 = c0;
+		DoubleVector c2 = c0;
+		DoubleVector c3 = c0;
+
+		int ai = aOff;
+		int bi = bOff;
+
+		for (int p = 0 ; p < kc ; ++p)
+		{
+			DoubleVector b = DoubleVector.fromArray(SPECIES, pb, bi);
+
+			c0 = c0.add(b.mul(pa[ai]));
+			c1 = c1.add(b.mul(pa[ai + 1]));
+			c2 = c2.add(b.mul(pa[ai + 2]));
+			c3 = c3.add(b.mul(pa[ai + 3]));
+
+			ai += 4;
+			bi += 4;
+		}
+
+		int r0 = cOff;
+		int r1 = r0 + ldc;
+		int r2 = r1 + ldc;
+		int r3 = r2 + ldc;
+
+		DoubleVector.fromArray(SPECIES, c, r0).add(c0).intoArray(c, r0);
+		DoubleVector.fromArray(SPECIES, c, r1).add(c1).intoArray(c, r1);
+		DoubleVector.fromArray(SPECIES, c, r2).add(c2).intoArray(c, r2);
+		DoubleVector.fromArray(SPECIES, c, r3).add(c3).intoArray(c, r3);
+	}
+}
@@ -0,0 +1,24 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Callback invoked by Matrix.forEachNonNull() and its row and column variants
+ * with each non-null element.
+ *
+ * @author antko
+ *
+ * @param <E>
+ */
+public interface EntryVisitor<E>
+{
+	/**
+	 * Called with one non-null element.
+	 *
+	 * @param row
+	 *            - the row of the element
+	 * @param col
+	 *            - the column of the element
+	 * @param value
+	 *            - the element, which is not null
+	 */
+	void visit(int row, int col, E value);
+}
@@ -0,0 +1,156 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Incomplete LU preconditioner without fill-in, ILU(0): M = L * U, where L is
+ * unit lower triangular, U is upper triangular, and both have the nonzero
+ * structure of the corresponding parts of A. Fill-in outside that structure
+ * is dropped, so the factors take the same storage as A and one application
+ * costs about as much as one product with A.
+ *
+ * The factors are computed row by row on a compressed row copy of A, without
+ * pivoting, so every diagonal element of A must be stored and the pivots must
+ * stay nonzero.
+ *
+ * @author antko
+ *
+ */
+public class IncompleteLUPreconditioner implements Preconditioner
+{
+	/**
+	 * The dimension of the factored matrix.
+	 */
+	private final int m_n;
+
+	/**
+	 * L (below the diagonal, unit diagonal implied) and U (on and above the
+	 * diagonal) in compressed row form, with the structure of A.
+	 */
+	private final int[] m_pointers;
+	private final int[] m_indices;
+	private final double[] m_values;
+
+	/**
+	 * Position of the diagonal element of each row in m_indices and m_values.
+	 */
+	private final int[] m_diagonal;
+
+	/**
+	 * Factor the given square matrix.
+	 *
+	 * @param m
+	 *            - the system matrix
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 *             if a diagonal element is not stored, or a pivot is zero
+	 */
+	public IncompleteLUPreconditioner(DoubleMatrix m) throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (null == m)
+			throw new NullPointerException();
+
+		if (m.getRowDimension() != m.getColumnDimension())
+			throw new InvalidMatrixDimensionException();
+
+		DoubleCompressedMatrix csr = SparseKernels.toCompressedRows(m);
+		int n = m.getRowDimension();
+
+		m_n = n;
+		m_pointers = csr.m_pointers;
+		m_indices = csr.m_indices;
+		m_values = csr.m_nonZeroValues.clone();
+		m_diagonal = new int[n];
+
+		for (int i = 0 ; i < n ; ++i)
+		{
+			int p = Arrays.binarySearch(m_indices, m_pointers[i], m_pointers[i + 1], i);
+
+			if (p < 0)
+				throw new SingularMatrixException();
+
+			m_diagonal[i] = p;
+		}
+
+		factor();
+	}
+
+	/**
+	 * Helper function to factor m_values in place. Row i is reduced by each
+	 * earlier row k it holds an element for, in ascending order of k, updating
+	 * only the positions that row i already stores.
+	 */
+	private void factor() throws SingularMatrixException
+	{
+		int[] ptr = m_pointers;
+		int[] idx = m_indices;
+		double[] val = m_values;
+
+		// Position of each column in the current row, or -1.
+		int[] position = new int[m_n];
+
+		Arrays.fill(position, -1);
+
+		for (int i = 0 ; i < m_n ; ++i)
+		{
+			for (int p = ptr[i] ; p < ptr[i + 1] ; ++p)
+				position[idx[p]] = p;
+
+			for (int p = ptr[i] ; p < m_diagonal[i] ; ++p)
+			{
+				int k = idx[p];
+				double f = val[p] / val[m_diagonal[k]];
+
+				val[p] = f;
+
+				for (int q = m_diagonal[k] + 1 ; q < ptr[k + 1] ; ++q)
+				{
+					int t = position[idx[q]];
+
+					if (t >= 0)
+						val[t] -= f * val[q];
+				}
+			}
+
+			if (val[m_diagonal[i]] == 0.0)
+				throw new SingularMatrixException();
+
+			for (int p = ptr[i] ; p < ptr[i + 1] ; ++p)
+				position[idx[p]] = -1;
+		}
+	}
+
+	/**
+	 * Solve L * U * z = r by forward and back substitution.
+	 *
+	 * @param r
+	 * @param z
+	 */
+	@Override
+	public void apply(double[] r, double[] z)
+	{
+		int[] ptr = m_pointers;
+		int[] idx = m_indices;
+		double[] val = m_values;
+
+		for (int i = 0 ; i < m_n ; ++i)
+		{
+			double sum = r[i];
+
+			for (int p = ptr[i] ; p < m_diagonal[i] ; ++p)
+				sum -= val[p] * z[idx[p]];
+
+			z[i] = sum;
+		}
+
+		for (int i = m_n - 1 ; i >= 0 ; --i)
+		{
+			double sum = z[i];
+
+			for (int p = m_diagonal[i] + 1 ; p < ptr[i + 1] ; ++p)
+				sum -= val[p] * z[idx[p]];
+
+			z[i] = sum / val[m_diagonal[i]];
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Callback invoked by IterativeSolver after each iteration, to monitor the
+ * convergence or to stop the iteration early.
+ *
+ * @author antko
+ *
+ */
+public interface IterationListener
+{
+	/**
+	 * Called after each iteration with the norm of the current residual. For
+	 * conjugate gradients and BiCGSTAB this is the recursively updated
+	 * residual; for GMRES it is the estimate from the least squares problem.
+	 *
+	 * @param iteration
+	 *            - the number of iterations completed, starting at 1
+	 * @param residualNorm
+	 *            - the 2-norm of b - A * x
+	 * @return - true to continue iterating, false to stop
+	 */
+	boolean iterationCompleted(int iteration, double residualNorm);
+}
@@ -0,0 +1,641 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Iterative Krylov subspace solvers for A * x = b, for large sparse systems
+ * whose direct factorization would fill in too much. Each iteration costs one
+ * or two products with A, computed over the nonzeros of a compressed row copy
+ * of A taken when the solver is constructed, plus a few vector operations.
+ *
+ * - conjugateGradient() for symmetric positive definite matrices
+ * - biCgStab() for general matrices, with short recurrences
+ * - gmres() for general matrices, restarted every few iterations
+ *
+ * An optional Preconditioner M is applied on the left for conjugate gradients
+ * and on the right for the other two, so that the residual that is tested is
+ * always that of the original system. The iteration stops when ||b - A * x||
+ * is at most max(tolerance * ||b||, absoluteTolerance), after the maximum
+ * number of iterations, on breakdown, or when the IterationListener asks it
+ * to.
+ *
+ * @author antko
+ *
+ */
+public class IterativeSolver
+{
+	/**
+	 * Default tolerance on the residual norm, relative to the norm of b.
+	 */
+	public static final double DEFAULT_TOLERANCE = 1e-8;
+
+	/**
+	 * Default maximum number of iterations.
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 10000;
+
+	/**
+	 * Default number of GMRES iterations between restarts.
+	 */
+	public static final int DEFAULT_RESTART = 30;
+
+	private static final DoubleKernels KERNELS = DoubleKernels.INSTANCE;
+
+	/**
+	 * The system matrix in compressed row form.
+	 */
+	private final DoubleCompressedMatrix m_matrix;
+
+	/**
+	 * The dimension of the system.
+	 */
+	private final int m_n;
+
+	private double m_tolerance;
+	private double m_absoluteTolerance;
+	private int m_maxIterations;
+	private Preconditioner m_preconditioner;
+	private IterationListener m_listener;
+
+	/**
+	 * Construct a solver for systems with the given square matrix, with the
+	 * default tolerance and maximum number of iterations and no
+	 * preconditioner.
+	 *
+	 * @param m
+	 *            - the system matrix
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public IterativeSolver(DoubleMatrix m) throws InvalidMatrixDimensionException
+	{
+		if (null == m)
+			throw new NullPointerException();
+
+		if (m.getRowDimension() != m.getColumnDimension())
+			throw new InvalidMatrixDimensionException();
+
+		m_matrix = SparseKernels.toCompressedRows(m);
+		m_n = m.getRowDimension();
+		m_tolerance = DEFAULT_TOLERANCE;
+		m_absoluteTolerance = 0.0;
+		m_maxIterations = DEFAULT_MAX_ITERATIONS;
+	}
+
+	/**
+	 * Solve A * x = b by BiCGSTAB, starting from zero.
+	 *
+	 * @param b
+	 *            - the right-hand side
+	 * @return - the solution and convergence information
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public IterativeSolverResult biCgStab(double[] b) throws InvalidMatrixDimensionException
+	{
+		return biCgStab(b, null);
+	}
+
+	/**
+	 * Solve A * x = b by the stabilized biconjugate gradient method
+	 * (BiCGSTAB), which handles nonsymmetric matrices with two products and
+	 * two preconditioner applications per iteration, and a fixed amount of
+	 * memory.
+	 *
+	 * @param b
+	 *            - the right-hand side
+	 * @param x0
+	 *            - the initial guess, or null to start from zero
+	 * @return - the solution and convergence information
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public IterativeSolverResult biCgStab(double[] b, double[] x0) throws InvalidMatrixDimensionException
+	{
+		int n = m_n;
+		double[] x = start(b, x0);
+		double[] r = new double[n];
+
+		residual(b, x, r);
+
+		double bNorm = norm(b);
+		double threshold = threshold(bNorm);
+
+		if (norm(r) <= threshold)
+			return result(b, x, 0, bNorm, true);
+
+		double[] rHat = r.clone();
+		double[] p = new double[n];
+		double[] pHat = new double[n];
+		double[] v = new double[n];
+		double[] sHat = new double[n];
+		double[] t = new double[n];
+
+		double rho = 1.0;
+		double alpha = 1.0;
+		double omega = 1.0;
+		int iteration = 0;
+		boolean converged = false;
+
+		while (iteration < m_maxIterations)
+		{
+			double rhoNext = KERNELS.dot(rHat, 0, r, 0, n);
+
+			if (rhoNext == 0.0)
+				break;
+
+			if (iteration == 0)
+			{
+				System.arraycopy(r, 0, p, 0, n);
+			}
+			else
+			{
+				// p = r + beta * (p - omega * v)
+				KERNELS.axpy(-omega, v, 0, p, 0, n);
+				KERNELS.scale((rhoNext / rho) * (alpha / omega), p, 0, p, 0, n);
+				KERNELS.axpy(1.0, r, 0, p, 0, n);
+			}
+
+			rho = rhoNext;
+
+			precondition(p, pHat);
+			SparseKernels.multiplyInto(m_matrix, pHat, v);
+
+			double rv = KERNELS.dot(rHat, 0, v, 0, n);
+
+			if (rv == 0.0)
+				break;
+
+			alpha = rho / rv;
+
+			// r now holds s = r - alpha * v.
+			KERNELS.axpy(-alpha, v, 0, r, 0, n);
+			KERNELS.axpy(alpha, pHat, 0, x, 0, n);
+
+			++iteration;
+
+			double rNorm = norm(r);
+
+			if (rNorm <= threshold)
+			{
+				converged = true;
+				notifyListener(iteration, rNorm);
+				break;
+			}
+
+			precondition(r, sHat);
+			SparseKernels.multiplyInto(m_matrix, sHat, t);
+
+			double tt = KERNELS.dot(t, 0, t, 0, n);
+
+			if (tt == 0.0)
+				break;
+
+			omega = KERNELS.dot(t, 0, r, 0, n) / tt;
+
+			KERNELS.axpy(omega, sHat, 0, x, 0, n);
+			KERNELS.axpy(-omega, t, 0, r, 0, n);
+
+			rNorm = norm(r);
+			converged = (rNorm <= threshold);
+
+			if (!notifyListener(iteration, rNorm) || converged || omega == 0.0)
+				break;
+		}
+
+		return result(b, x, iteration, bNorm, converged);
+	}
+
+	/**
+	 * Solve A * x = b by conjugate gradients, starting from zero.
+	 *
+	 * @param b
+	 *            - the right-hand side
+	 * @return - the solution and convergence information
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public IterativeSolverResult conjugateGradient(double[] b) throws InvalidMatrixDimensionException
+	{
+		return conjugateGradient(b, null);
+	}
+
+	/**
+	 * Solve A * x = b by the preconditioned conjugate gradient method, with
+	 * one product and one preconditioner application per iteration. A must be
+	 * symmetric positive definite, and so must the preconditioner.
+	 *
+	 * @param b
+	 *            - the right-hand side
+	 * @param x0
+	 *            - the initial guess, or null to start from zero
+	 * @return - the solution and convergence information
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public IterativeSolverResult conjugateGradient(double[] b, double[] x0) throws InvalidMatrixDimensionException
+	{
+		int n = m_n;
+		double[] x = start(b, x0);
+		double[] r = new double[n];
+
+		residual(b, x, r);
+
+		double bNorm = norm(b);
+		double threshold = threshold(bNorm);
+
+		if (norm(r) <= threshold)
+			return result(b, x, 0, bNorm, true);
+
+		double[] z = new double[n];
+		double[] p = new double[n];
+		double[] q = new double[n];
+
+		precondition(r, z);
+		System.arraycopy(z, 0, p, 0, n);
+
+		double rz = KERNELS.dot(r, 0, z, 0, n);
+		int iteration = 0;
+		boolean converged = false;
+
+		while (iteration < m_maxIterations)
+		{
+			SparseKernels.multiplyInto(m_matrix, p, q);
+
+			double pq = KERNELS.dot(p, 0, q, 0, n);
+
+			if (pq == 0.0 || rz == 0.0)
+				break;
+
+			double alpha = rz / pq;
+
+			KERNELS.axpy(alpha, p, 0, x, 0, n);
+			KERNELS.axpy(-alpha, q, 0, r, 0, n);
+
+			++iteration;
+
+			double rNorm = norm(r);
+
+			converged = (rNorm <= threshold);
+
+			if (!notifyListener(iteration, rNorm) || converged)
+				break;
+
+			precondition(r, z);
+
+			double rzNext = KERNELS.dot(r, 0, z, 0, n);
+
+			// p = z + beta * p
+			KERNELS.scale(rzNext / rz, p, 0, p, 0, n);
+			KERNELS.axpy(1.0, z, 0, p, 0, n);
+
+			rz = rzNext;
+		}
+
+		return result(b, x, iteration, bNorm, converged);
+	}
+
+	/**
+	 * Returns the absolute tolerance on the residual norm.
+	 *
+	 * @return - the absolute tolerance
+	 */
+	public double getAbsoluteTolerance()
+	{
+		return m_absoluteTolerance;
+	}
+
+	/**
+	 * Returns the listener called after each iteration.
+	 *
+	 * @return - the listener, or null
+	 */
+	public IterationListener getIterationListener()
+	{
+		return m_listener;
+	}
+
+	/**
+	 * Returns the maximum number of iterations.
+	 *
+	 * @return - the maximum number of iterations
+	 */
+	public int getMaxIterations()
+	{
+		return m_maxIterations;
+	}
+
+	/**
+	 * Returns the preconditioner.
+	 *
+	 * @return - the preconditioner, or null
+	 */
+	public Preconditioner getPreconditioner()
+	{
+		return m_preconditioner;
+	}
+
+	/**
+	 * Returns the tolerance on the residual norm, relative to the norm of b.
+	 *
+	 * @return - the relative tolerance
+	 */
+	public double getTolerance()
+	{
+		return m_tolerance;
+	}
+
+	/**
+	 * Solve A * x = b by GMRES, starting from zero and restarting every
+	 * DEFAULT_RESTART iterations.
+	 *
+	 * @param b
+	 *            - the right-hand side
+	 * @return - the solution and convergence information
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public IterativeSolverResult gmres(double[] b) throws InvalidMatrixDimensionException
+	{
+		return gmres(b, null, DEFAULT_RESTART);
+	}
+
+	/**
+	 * Solve A * x = b by the restarted generalized minimal residual method,
+	 * GMRES(restart). Each iteration extends an orthonormal basis of the
+	 * Krylov subspace by one vector, and the residual is minimized over the
+	 * subspace with Givens rotations; every restart iterations the solution is
+	 * updated and the basis discarded, which bounds the memory to restart + 1
+	 * vectors.
+	 *
+	 * @param b
+	 *            - the right-hand side
+	 * @param x0
+	 *            - the initial guess, or null to start from zero
+	 * @param restart
+	 *            - the number of iterations between restarts
+	 * @return - the solution and convergence information
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public IterativeSolverResult gmres(double[] b, double[] x0, int restart) throws InvalidMatrixDimensionException
+	{
+		if (restart < 1)
+			throw new IllegalArgumentException("restart must be positive");
+
+		int n = m_n;
+		double[] x = start(b, x0);
+		double bNorm = norm(b);
+		double threshold = threshold(bNorm);
+
+		int m = Math.min(restart, n);
+		double[][] v = new double[m + 1][n];
+		double[][] h = new double[m + 1][m];
+		double[] cs = new double[m];
+		double[] sn = new double[m];
+		double[] g = new double[m + 1];
+		double[] w = new double[n];
+		double[] z = new double[n];
+
+		int iteration = 0;
+		boolean converged = false;
+		boolean stopped = false;
+
+		while (true)
+		{
+			residual(b, x, v[0]);
+
+			double beta = norm(v[0]);
+
+			if (beta <= threshold)
+			{
+				converged = true;
+				break;
+			}
+
+			if (stopped || iteration >= m_maxIterations)
+				break;
+
+			KERNELS.scale(1.0 / beta, v[0], 0, v[0], 0, n);
+			Arrays.fill(g, 0.0);
+			g[0] = beta;
+
+			int k = 0;
+
+			while (k < m && iteration < m_maxIterations)
+			{
+				precondition(v[k], z);
+				SparseKernels.multiplyInto(m_matrix, z, w);
+
+				// Modified Gram-Schmidt against the basis so far.
+				for (int i = 0 ; i <= k ; ++i)
+				{
+					h[i][k] = KERNELS.dot(w, 0, v[i], 0, n);
+					KERNELS.axpy(-h[i][k], v[i], 0, w, 0, n);
+				}
+
+				double hNext = norm(w);
+
+				for (int i = 0 ; i < k ; ++i)
+				{
+					double hi = h[i][k];
+
+					h[i][k] = cs[i] * hi + sn[i] * h[i + 1][k];
+					h[i + 1][k] = -sn[i] * hi + cs[i] * h[i + 1][k];
+				}
+
+				double d = Math.hypot(h[k][k], hNext);
+
+				if (d == 0.0)
+				{
+					stopped = true;
+					break;
+				}
+
+				cs[k] = h[k][k] / d;
+				sn[k] = hNext / d;
+				h[k][k] = d;
+				g[k + 1] = -sn[k] * g[k];
+				g[k] = cs[k] * g[k];
+
+				++k;
+				++iteration;
+
+				if (hNext != 0.0)
+					KERNELS.scale(1.0 / hNext, w, 0, v[k], 0, n);
+
+				double rNorm = Math.abs(g[k]);
+
+				if (!notifyListener(iteration, rNorm))
+				{
+					stopped = true;
+					break;
+				}
+
+				if (rNorm <= threshold || hNext == 0.0)
+					break;
+			}
+
+			if (k == 0)
+				break;
+
+			// x += M^-1 * V * y, where H * y = g.
+			double[] y = new double[k];
+
+			for (int i = k - 1 ; i >= 0 ; --i)
+			{
+				double sum = g[i];
+
+				for (int j = i + 1 ; j < k ; ++j)
+					sum -= h[i][j] * y[j];
+
+				y[i] = sum / h[i][i];
+			}
+
+			Arrays.fill(w, 0.0);
+
+			for (int i = 0 ; i < k ; ++i)
+				KERNELS.axpy(y[i], v[i], 0, w, 0, n);
+
+			precondition(w, z);
+			KERNELS.axpy(1.0, z, 0, x, 0, n);
+		}
+
+		return result(b, x, iteration, bNorm, converged);
+	}
+
+	/**
+	 * Set the absolute tolerance on the residual norm, which takes over from
+	 * the relative tolerance when b is small. The default is zero.
+	 *
+	 * @param tolerance
+	 *            - a nonnegative tolerance
+	 */
+	public void setAbsoluteTolerance(double tolerance)
+	{
+		if (!(tolerance >= 0.0))
+			throw new IllegalArgumentException("tolerance must be nonnegative");
+
+		m_absoluteTolerance = tolerance;
+	}
+
+	/**
+	 * Set the listener called after each iteration.
+	 *
+	 * @param listener
+	 *            - the listener, or null for none
+	 */
+	public void setIterationListener(IterationListener listener)
+	{
+		m_listener = listener;
+	}
+
+	/**
+	 * Set the maximum number of iterations.
+	 *
+	 * @param maxIterations
+	 *            - a nonnegative number of iterations
+	 */
+	public void setMaxIterations(int maxIterations)
+	{
+		if (maxIterations < 0)
+			throw new IllegalArgumentException("maxIterations must be nonnegative");
+
+		m_maxIterations = maxIterations;
+	}
+
+	/**
+	 * Set the preconditioner, which must have been built for a matrix of the
+	 * same dimension.
+	 *
+	 * @param preconditioner
+	 *            - the preconditioner, or null for none
+	 */
+	public void setPreconditioner(Preconditioner preconditioner)
+	{
+		m_preconditioner = preconditioner;
+	}
+
+	/**
+	 * Set the tolerance on the residual norm, relative to the norm of b.
+	 *
+	 * @param tolerance
+	 *            - a nonnegative tolerance
+	 */
+	public void setTolerance(double tolerance)
+	{
+		if (!(tolerance >= 0.0))
+			throw new IllegalArgumentException("tolerance must be nonnegative");
+
+		m_tolerance = tolerance;
+	}
+
+	/**
+	 * Helper function to return the 2-norm of a vector of dimension n.
+	 */
+	private double norm(double[] v)
+	{
+		return Math.sqrt(KERNELS.dot(v, 0, v, 0, m_n));
+	}
+
+	/**
+	 * Helper function to call the listener, if any.
+	 *
+	 * @return - false if the iteration should stop
+	 */
+	private boolean notifyListener(int iteration, double residualNorm)
+	{
+		return (m_listener == null || m_listener.iterationCompleted(iteration, residualNorm));
+	}
+
+	/**
+	 * Helper function to compute z = M^-1 * r, or copy r when there is no
+	 * preconditioner.
+	 */
+	private void precondition(double[] r, double[] z)
+	{
+		if (m_preconditioner == null)
+			System.arraycopy(r, 0, z, 0, m_n);
+		else
+			m_preconditioner.apply(r, z);
+	}
+
+	/**
+	 * Helper function to compute r = b - A * x.
+	 */
+	private void residual(double[] b, double[] x, double[] r)
+	{
+		SparseKernels.multiplyInto(m_matrix, x, r);
+		KERNELS.subtract(b, 0, r, 0, r, 0, m_n);
+	}
+
+	/**
+	 * Helper function to build the result, with the true residual of the final
+	 * iterate.
+	 */
+	private IterativeSolverResult result(double[] b, double[] x, int iterations, double bNorm, boolean converged)
+	{
+		double[] r = new double[m_n];
+
+		residual(b, x, r);
+
+		return new IterativeSolverResult(x, iterations, norm(r), bNorm, converged);
+	}
+
+	/**
+	 * Helper function to check the right-hand side and initial guess, and
+	 * return the first iterate.
+	 */
+	private double[] start(double[] b, double[] x0) throws InvalidMatrixDimensionException
+	{
+		if (null == b)
+			throw new NullPointerException();
+
+		if (b.length != m_n || (x0 != null && x0.length != m_n))
+			throw new InvalidMatrixDimensionException();
+
+		return (x0 == null) ? new double[m_n] : x0.clone();
+	}
+
+	/**
+	 * Helper function to return the residual norm at which the iteration has
+	 * converged.
+	 */
+	private double threshold(double bNorm)
+	{
+		return Math.max(m_tolerance * bNorm, m_absoluteTolerance);
+	}
+}
@@ -0,0 +1,94 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Outcome of an IterativeSolver method: the approximate solution, and how the
+ * iteration went.
+ *
+ * @author antko
+ *
+ */
+public class IterativeSolverResult
+{
+	private final double[] m_solution;
+	private final int m_iterations;
+	private final double m_residualNorm;
+	private final double m_rhsNorm;
+	private final boolean m_converged;
+
+	/**
+	 * Construct a result.
+	 *
+	 * @param solution
+	 *            - the final iterate, which is not copied
+	 * @param iterations
+	 *            - the number of iterations performed
+	 * @param residualNorm
+	 *            - the 2-norm of b - A * x for the final iterate
+	 * @param rhsNorm
+	 *            - the 2-norm of b
+	 * @param converged
+	 *            - true if the tolerance was met
+	 */
+	IterativeSolverResult(double[] solution, int iterations, double residualNorm, double rhsNorm, boolean converged)
+	{
+		m_solution = solution;
+		m_iterations = iterations;
+		m_residualNorm = residualNorm;
+		m_rhsNorm = rhsNorm;
+		m_converged = converged;
+	}
+
+	/**
+	 * Returns the number of iterations performed. For GMRES, each inner step
+	 * counts as one iteration.
+	 *
+	 * @return - the number of iterations
+	 */
+	public int getIterations()
+	{
+		return m_iterations;
+	}
+
+	/**
+	 * Returns the residual norm relative to the norm of the right-hand side.
+	 *
+	 * @return - ||b - A * x|| / ||b||, or the residual norm when b is zero
+	 */
+	public double getRelativeResidual()
+	{
+		return (m_rhsNorm == 0.0) ? m_residualNorm : m_residualNorm / m_rhsNorm;
+	}
+
+	/**
+	 * Returns the 2-norm of the residual b - A * x, computed from the final
+	 * iterate rather than from the recurrence.
+	 *
+	 * @return - the residual norm
+	 */
+	public double getResidualNorm()
+	{
+		return m_residualNorm;
+	}
+
+	/**
+	 * Returns the approximate solution. The array is not copied.
+	 *
+	 * @return - the final iterate
+	 */
+	public double[] getSolution()
+	{
+		return m_solution;
+	}
+
+	/**
+	 * Returns true if the iteration stopped because the tolerance was met,
+	 * and false if it ran out of iterations, broke down or was stopped by the
+	 * listener.
+	 *
+	 * @return - true if converged
+	 */
+	public boolean isConverged()
+	{
+		return m_converged;
+	}
+}
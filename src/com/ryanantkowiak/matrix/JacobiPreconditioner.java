@@ -0,0 +1,63 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Jacobi (diagonal) preconditioner: M is the diagonal of A. It costs one
+ * multiplication per element to apply, and suits diagonally dominant
+ * matrices and matrices whose rows are scaled very differently.
+ *
+ * @author antko
+ *
+ */
+public class JacobiPreconditioner implements Preconditioner
+{
+	/**
+	 * The reciprocal of each diagonal element.
+	 */
+	private final double[] m_inverseDiagonal;
+
+	/**
+	 * Construct the preconditioner from the diagonal of the given square
+	 * matrix.
+	 *
+	 * @param m
+	 *            - the system matrix
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 *             if a diagonal element is zero
+	 */
+	public JacobiPreconditioner(DoubleMatrix m) throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (null == m)
+			throw new NullPointerException();
+
+		if (m.getRowDimension() != m.getColumnDimension())
+			throw new InvalidMatrixDimensionException();
+
+		int n = m.getRowDimension();
+
+		m_inverseDiagonal = new double[n];
+
+		for (int i = 0 ; i < n ; ++i)
+		{
+			double d = m.getDouble(i, i);
+
+			if (d == 0.0)
+				throw new SingularMatrixException();
+
+			m_inverseDiagonal[i] = 1.0 / d;
+		}
+	}
+
+	/**
+	 * Solve M * z = r by dividing by the diagonal.
+	 *
+	 * @param r
+	 * @param z
+	 */
+	@Override
+	public void apply(double[] r, double[] z)
+	{
+		for (int i = 0 ; i < m_inverseDiagonal.length ; ++i)
+			z[i] = r[i] * m_inverseDiagonal[i];
+	}
+}
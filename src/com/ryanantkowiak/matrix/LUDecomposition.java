@@ -0,0 +1,345 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * LU decomposition of a square matrix with partial pivoting, such that P * A =
+ * L * U, where P is a row permutation, L is unit lower triangular and U is
+ * upper triangular.
+ *
+ * The factorization is computed once in O(n^3) and can then be reused for the
+ * determinant, for solving any number of right-hand sides and for the inverse.
+ * It is computed a panel of DenseFactorKernels.NB columns at a time, so that
+ * most of the work is done by the matrix multiplication kernel.
+ *
+ * @author antko
+ *
+ */
+public class LUDecomposition
+{
+	/**
+	 * The dimension of the factored matrix.
+	 */
+	private final int m_n;
+
+	/**
+	 * Row-major storage of L (below the diagonal, unit diagonal implied) and U
+	 * (on and above the diagonal).
+	 */
+	private final double[] m_lu;
+
+	/**
+	 * Row i of P * A is row m_pivot[i] of A.
+	 */
+	private final int[] m_pivot;
+
+	/**
+	 * The determinant of P, either 1 or -1.
+	 */
+	private final int m_pivotSign;
+
+	/**
+	 * Factor the given square matrix.
+	 *
+	 * @param m
+	 *            - the matrix to factor
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public LUDecomposition(DoubleMatrix m) throws InvalidMatrixDimensionException
+	{
+		if (null == m)
+			throw new NullPointerException();
+
+		if (m.getRowDimension() != m.getColumnDimension())
+			throw new InvalidMatrixDimensionException();
+
+		int n = m.getRowDimension();
+
+		m_n = n;
+		m_lu = new double[n * n];
+		m_pivot = new int[n];
+
+		if (m.m_values != null)
+			for (int r = 0 ; r < n ; ++r)
+				System.arraycopy(m.m_values, m.m_offset + r * m.m_rowStride, m_lu, r * n, n);
+		else
+			for (int r = 0 ; r < n ; ++r)
+				for (int c = 0 ; c < n ; ++c)
+					m_lu[r * n + c] = m.getDouble(r, c);
+
+		for (int i = 0 ; i < n ; ++i)
+			m_pivot[i] = i;
+
+		m_pivotSign = factor(m_lu, m_pivot, n);
+	}
+
+	/**
+	 * Helper function to factor the row-major n x n array in place, a panel of
+	 * DenseFactorKernels.NB columns at a time. Each panel is factored with
+	 * partial pivoting, swapping whole rows; the rows of U to its right are then
+	 * solved with the panel's L, and the trailing matrix is updated with one
+	 * product, which does most of the work.
+	 *
+	 * @param a
+	 * @param pivot
+	 * @param n
+	 * @return - the sign of the row permutation
+	 */
+	private static int factor(double[] a, int[] pivot, int n)
+	{
+		int sign = 1;
+
+		for (int j = 0 ; j < n ; j += DenseFactorKernels.NB)
+		{
+			int nb = Math.min(DenseFactorKernels.NB, n - j);
+			int end = j + nb;
+
+			for (int k = j ; k < end ; ++k)
+			{
+				int p = k;
+				double max = Math.abs(a[k * n + k]);
+
+				for (int i = k + 1 ; i < n ; ++i)
+				{
+					double v = Math.abs(a[i * n + k]);
+
+					if (v > max)
+					{
+						max = v;
+						p = i;
+					}
+				}
+
+				if (p != k)
+				{
+					for (int c = 0 ; c < n ; ++c)
+					{
+						double t = a[p * n + c];
+						a[p * n + c] = a[k * n + c];
+						a[k * n + c] = t;
+					}
+
+					int t = pivot[p];
+					pivot[p] = pivot[k];
+					pivot[k] = t;
+
+					sign = -sign;
+				}
+
+				double diag = a[k * n + k];
+
+				if (diag == 0.0)
+					continue;
+
+				for (int i = k + 1 ; i < n ; ++i)
+				{
+					int row = i * n;
+					double l = a[row + k] / diag;
+
+					a[row + k] = l;
+
+					if (l == 0.0)
+						continue;
+
+					int pivotRow = k * n;
+
+					for (int c = k + 1 ; c < end ; ++c)
+						a[row + c] -= l * a[pivotRow + c];
+				}
+			}
+
+			int rest = n - end;
+
+			if (rest == 0)
+				continue;
+
+			DenseFactorKernels.solveTriangular(nb, rest, a, j * n + j, n, true, false, true, a, j * n + end, n);
+			DenseFactorKernels.subtractProduct(rest, rest, nb, a, end * n + j, n, false, a, j * n + end, n, a,
+					end * n + end, n);
+		}
+
+		return sign;
+	}
+
+	/**
+	 * Returns the determinant of the factored matrix.
+	 *
+	 * @return - the determinant
+	 */
+	public double determinant()
+	{
+		double det = m_pivotSign;
+
+		for (int i = 0 ; i < m_n ; ++i)
+			det *= m_lu[i * m_n + i];
+
+		return det;
+	}
+
+	/**
+	 * Returns true if the factored matrix is singular.
+	 *
+	 * @return - true if U has a zero on its diagonal
+	 */
+	public boolean isSingular()
+	{
+		for (int i = 0 ; i < m_n ; ++i)
+			if (m_lu[i * m_n + i] == 0.0)
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * Returns the unit lower triangular factor L.
+	 *
+	 * @return - a new matrix holding L
+	 */
+	public DoubleMatrix getL()
+	{
+		DoubleMatrix l = new DoubleMatrix(m_n, m_n);
+
+		for (int r = 0 ; r < m_n ; ++r)
+		{
+			for (int c = 0 ; c < r ; ++c)
+				l.setDouble(r, c, m_lu[r * m_n + c]);
+
+			l.setDouble(r, r, 1.0);
+		}
+
+		return l;
+	}
+
+	/**
+	 * Returns the upper triangular factor U.
+	 *
+	 * @return - a new matrix holding U
+	 */
+	public DoubleMatrix getU()
+	{
+		DoubleMatrix u = new DoubleMatrix(m_n, m_n);
+
+		for (int r = 0 ; r < m_n ; ++r)
+			for (int c = r ; c < m_n ; ++c)
+				u.setDouble(r, c, m_lu[r * m_n + c]);
+
+		return u;
+	}
+
+	/**
+	 * Returns the row permutation: row i of P * A is row getPivot()[i] of A.
+	 *
+	 * @return - a copy of the pivot indices
+	 */
+	public int[] getPivot()
+	{
+		return m_pivot.clone();
+	}
+
+	/**
+	 * Returns the permutation matrix P.
+	 *
+	 * @return - a new matrix holding P
+	 */
+	public DoubleMatrix getP()
+	{
+		DoubleMatrix p = new DoubleMatrix(m_n, m_n);
+
+		for (int i = 0 ; i < m_n ; ++i)
+			p.setDouble(i, m_pivot[i], 1.0);
+
+		return p;
+	}
+
+	/**
+	 * Solve A * x = b for a single right-hand side.
+	 *
+	 * @param b
+	 *            - the right-hand side, of length n
+	 * @return - the solution x
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 */
+	public double[] solve(double[] b) throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (null == b)
+			throw new NullPointerException();
+
+		if (b.length != m_n)
+			throw new InvalidMatrixDimensionException();
+
+		double[] x = new double[m_n];
+
+		for (int i = 0 ; i < m_n ; ++i)
+			x[i] = b[m_pivot[i]];
+
+		substitute(x, 1);
+
+		return x;
+	}
+
+	/**
+	 * Solve A * X = B for every column of B at once.
+	 *
+	 * @param b
+	 *            - the right-hand sides, with n rows
+	 * @return - the solution X, with the same shape as B
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 */
+	public DoubleMatrix solve(DoubleMatrix b) throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (null == b)
+			throw new NullPointerException();
+
+		if (b.getRowDimension() != m_n)
+			throw new InvalidMatrixDimensionException();
+
+		int nrhs = b.getColumnDimension();
+
+		DoubleMatrix x = new DoubleMatrix(m_n, nrhs);
+		double[] xv = x.m_values;
+
+		for (int i = 0 ; i < m_n ; ++i)
+			for (int j = 0 ; j < nrhs ; ++j)
+				xv[i * nrhs + j] = b.getDouble(m_pivot[i], j);
+
+		substitute(xv, nrhs);
+
+		return x;
+	}
+
+	/**
+	 * Returns the inverse of the factored matrix.
+	 *
+	 * @return - a new matrix holding the inverse
+	 * @throws SingularMatrixException
+	 */
+	public DoubleMatrix inverse() throws SingularMatrixException
+	{
+		DoubleMatrix x = new DoubleMatrix(m_n, m_n);
+		double[] xv = x.m_values;
+
+		for (int i = 0 ; i < m_n ; ++i)
+			xv[i * m_n + m_pivot[i]] = 1.0;
+
+		substitute(xv, m_n);
+
+		return x;
+	}
+
+	/**
+	 * Helper function to solve L * U * X = Y in place, where Y holds the
+	 * permuted right-hand sides as a row-major n x nrhs array.
+	 *
+	 * @param x
+	 * @param nrhs
+	 * @throws SingularMatrixException
+	 */
+	private void substitute(double[] x, int nrhs) throws SingularMatrixException
+	{
+		if (isSingular())
+			throw new SingularMatrixException();
+
+		DenseFactorKernels.solveTriangular(m_n, nrhs, m_lu, 0, m_n, true, false, true, x, 0, nrhs);
+		DenseFactorKernels.solveTriangular(m_n, nrhs, m_lu, 0, m_n, false, false, false, x, 0, nrhs);
+	}
+}
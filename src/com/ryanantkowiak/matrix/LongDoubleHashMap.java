@@ -0,0 +1,371 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from nonnegative long keys to primitive doubles,
+ * used as the storage of DoubleSparseMatrix. Keys and values are held in two
+ * parallel arrays, so reading, setting and removing a value allocate nothing,
+ * and each entry takes two 8-byte slots instead of the key, value and node
+ * objects of a HashMap.
+ *
+ * Collisions are resolved by linear probing from a Fibonacci hash of the key.
+ * Removal shifts the rest of the probe run back over the freed slot
+ * (backward-shift deletion), so no tombstones build up under mixed set and
+ * remove workloads. The table is kept at most half full.
+ *
+ * Absent keys read as 0.0. The entries are visited by scanning the slots of
+ * m_keys for keys other than EMPTY; the value of slot i is m_values[i].
+ *
+ * @author antko
+ *
+ */
+final class LongDoubleHashMap
+{
+	/**
+	 * Key marking an unused slot.
+	 */
+	static final long EMPTY = -1L;
+
+	/**
+	 * Smallest number of slots.
+	 */
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Largest number of slots.
+	 */
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	/**
+	 * Key of each slot, or EMPTY.
+	 */
+	long[] m_keys;
+
+	/**
+	 * Value of each used slot.
+	 */
+	double[] m_values;
+
+	/**
+	 * Number of used slots.
+	 */
+	private int m_size;
+
+	/**
+	 * 64 minus the base 2 logarithm of the number of slots.
+	 */
+	private int m_shift;
+
+	/**
+	 * Construct an empty map.
+	 */
+	LongDoubleHashMap()
+	{
+		this(0);
+	}
+
+	/**
+	 * Construct an empty map that holds the given number of entries without
+	 * growing.
+	 *
+	 * @param expectedSize
+	 */
+	LongDoubleHashMap(long expectedSize)
+	{
+		allocate(capacityFor(expectedSize));
+	}
+
+	/**
+	 * Construct a copy of the given map.
+	 *
+	 * @param m
+	 */
+	LongDoubleHashMap(LongDoubleHashMap m)
+	{
+		m_keys = m.m_keys.clone();
+		m_values = m.m_values.clone();
+		m_size = m.m_size;
+		m_shift = m.m_shift;
+	}
+
+	/**
+	 * Helper function to allocate an empty table with the given number of
+	 * slots, a power of two.
+	 */
+	private void allocate(int capacity)
+	{
+		m_keys = new long[capacity];
+		m_values = new double[capacity];
+		m_shift = 64 - Integer.numberOfTrailingZeros(capacity);
+
+		Arrays.fill(m_keys, EMPTY);
+	}
+
+	/**
+	 * Helper function to return the number of slots for a table holding the
+	 * given number of entries at most half full.
+	 */
+	private static int capacityFor(long size)
+	{
+		if (size > MAX_CAPACITY / 2)
+			throw new IllegalStateException("Too many entries: " + size);
+
+		int capacity = MIN_CAPACITY;
+
+		while (capacity < 2 * size)
+			capacity <<= 1;
+
+		return capacity;
+	}
+
+	/**
+	 * Remove every entry, keeping the table.
+	 */
+	void clear()
+	{
+		Arrays.fill(m_keys, EMPTY);
+		m_size = 0;
+	}
+
+	/**
+	 * Helper function to empty slot hole and move later entries of its probe
+	 * run back, so that every entry stays reachable from its home slot.
+	 */
+	private void delete(int hole)
+	{
+		int mask = m_keys.length - 1;
+
+		for (int i = (hole + 1) & mask ; m_keys[i] != EMPTY ; i = (i + 1) & mask)
+		{
+			// The entry may move back unless its home slot lies after the hole.
+			if (((i - slot(m_keys[i])) & mask) >= ((i - hole) & mask))
+			{
+				m_keys[hole] = m_keys[i];
+				m_values[hole] = m_values[i];
+				hole = i;
+			}
+		}
+
+		m_keys[hole] = EMPTY;
+		--m_size;
+	}
+
+	/**
+	 * Helper function to return the slot holding the given key, or -1 if the
+	 * key is absent.
+	 */
+	private int find(long key)
+	{
+		int mask = m_keys.length - 1;
+
+		for (int i = slot(key) ; m_keys[i] != EMPTY ; i = (i + 1) & mask)
+			if (m_keys[i] == key)
+				return i;
+
+		return -1;
+	}
+
+	/**
+	 * Returns the value for the given key.
+	 *
+	 * @param key
+	 * @return - the value, or 0.0 if the key is absent
+	 */
+	double get(long key)
+	{
+		int i = find(key);
+
+		return (i < 0) ? 0.0 : m_values[i];
+	}
+
+	/**
+	 * Helper function to double the number of slots.
+	 */
+	private void grow()
+	{
+		long[] keys = m_keys;
+		double[] values = m_values;
+
+		if (keys.length == MAX_CAPACITY)
+			throw new IllegalStateException("Too many entries: " + m_size);
+
+		allocate(2 * keys.length);
+
+		int mask = m_keys.length - 1;
+
+		for (int j = 0 ; j < keys.length ; ++j)
+		{
+			if (keys[j] == EMPTY)
+				continue;
+
+			int i = slot(keys[j]);
+
+			while (m_keys[i] != EMPTY)
+				i = (i + 1) & mask;
+
+			m_keys[i] = keys[j];
+			m_values[i] = values[j];
+		}
+	}
+
+	/**
+	 * Set the value for the given key.
+	 *
+	 * @param key
+	 *            - a nonnegative key
+	 * @param value
+	 * @return - the previous value, or 0.0 if the key was absent
+	 */
+	double put(long key, double value)
+	{
+		int mask = m_keys.length - 1;
+		int i = slot(key);
+
+		for ( ; m_keys[i] != EMPTY ; i = (i + 1) & mask)
+		{
+			if (m_keys[i] == key)
+			{
+				double old = m_values[i];
+
+				m_values[i] = value;
+
+				return old;
+			}
+		}
+
+		m_keys[i] = key;
+		m_values[i] = value;
+
+		if (++m_size > m_keys.length / 2)
+			grow();
+
+		return 0.0;
+	}
+
+	/**
+	 * Set every entry of the given map in this one.
+	 *
+	 * @param m
+	 */
+	void putAll(LongDoubleHashMap m)
+	{
+		for (int i = 0 ; i < m.m_keys.length ; ++i)
+			if (m.m_keys[i] != EMPTY)
+				put(m.m_keys[i], m.m_values[i]);
+	}
+
+	/**
+	 * Remove the given key.
+	 *
+	 * @param key
+	 * @return - the removed value, or 0.0 if the key was absent
+	 */
+	double remove(long key)
+	{
+		int i = find(key);
+
+		if (i < 0)
+			return 0.0;
+
+		double old = m_values[i];
+
+		delete(i);
+
+		return old;
+	}
+
+	/**
+	 * Remove every entry whose value is zero, such as after the values were
+	 * scaled in place.
+	 */
+	void removeZeros()
+	{
+		long[] keys = m_keys;
+		double[] values = m_values;
+
+		allocate(keys.length);
+		m_size = 0;
+
+		for (int j = 0 ; j < keys.length ; ++j)
+			if (keys[j] != EMPTY && values[j] != 0.0)
+				put(keys[j], values[j]);
+	}
+
+	/**
+	 * Returns the slots holding the keys k with first <= k < last and k - first
+	 * a multiple of step, such as the keys of one row or column of a matrix, in
+	 * ascending order of key. Each candidate key is looked up when there are
+	 * fewer candidates than slots; otherwise every slot is scanned and the
+	 * matching keys are sorted.
+	 *
+	 * @param first
+	 *            - the smallest candidate key, which is not negative
+	 * @param last
+	 *            - one past the largest candidate key
+	 * @param step
+	 *            - the distance between candidate keys
+	 * @return - the slots, valid until the map is changed
+	 */
+	int[] slotsOf(long first, long last, long step)
+	{
+		long[] keys = new long[16];
+		int n = 0;
+
+		if ((last - first + step - 1) / step <= m_keys.length)
+		{
+			for (long key = first ; key < last ; key += step)
+			{
+				if (find(key) < 0)
+					continue;
+
+				if (n == keys.length)
+					keys = Arrays.copyOf(keys, 2 * n);
+
+				keys[n++] = key;
+			}
+		}
+		else
+		{
+			for (long key : m_keys)
+			{
+				if (key < first || key >= last || (key - first) % step != 0)
+					continue;
+
+				if (n == keys.length)
+					keys = Arrays.copyOf(keys, 2 * n);
+
+				keys[n++] = key;
+			}
+
+			Arrays.sort(keys, 0, n);
+		}
+
+		int[] slots = new int[n];
+
+		for (int j = 0 ; j < n ; ++j)
+			slots[j] = find(keys[j]);
+
+		return slots;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * @return - the number of entries
+	 */
+	int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Helper function to return the home slot of a key: the top bits of its
+	 * product with 2^64 divided by the golden ratio, which spreads the
+	 * consecutive keys of a matrix row over the table.
+	 */
+	private int slot(long key)
+	{
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> m_shift);
+	}
+}
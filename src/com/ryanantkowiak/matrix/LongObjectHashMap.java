@@ -0,0 +1,303 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from nonnegative long keys to objects, used as the
+ * storage of SparseMatrix. It is laid out and probed like LongDoubleHashMap:
+ * the keys are held in a primitive array, so no key is boxed, and removal
+ * shifts the rest of the probe run back instead of leaving tombstones.
+ *
+ * Absent keys read as null. The entries are visited by scanning the slots of
+ * m_keys for keys other than EMPTY; the value of slot i is m_values[i].
+ *
+ * @author antko
+ *
+ * @param <E>
+ */
+final class LongObjectHashMap<E>
+{
+	/**
+	 * Key marking an unused slot.
+	 */
+	static final long EMPTY = -1L;
+
+	/**
+	 * Smallest number of slots.
+	 */
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Largest number of slots.
+	 */
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	/**
+	 * Key of each slot, or EMPTY.
+	 */
+	long[] m_keys;
+
+	/**
+	 * Value of each used slot, and null in unused slots.
+	 */
+	Object[] m_values;
+
+	/**
+	 * Number of used slots.
+	 */
+	private int m_size;
+
+	/**
+	 * 64 minus the base 2 logarithm of the number of slots.
+	 */
+	private int m_shift;
+
+	/**
+	 * Construct an empty map.
+	 */
+	LongObjectHashMap()
+	{
+		allocate(MIN_CAPACITY);
+	}
+
+	/**
+	 * Construct a copy of the given map, sharing its values.
+	 *
+	 * @param m
+	 */
+	LongObjectHashMap(LongObjectHashMap<E> m)
+	{
+		m_keys = m.m_keys.clone();
+		m_values = m.m_values.clone();
+		m_size = m.m_size;
+		m_shift = m.m_shift;
+	}
+
+	/**
+	 * Helper function to allocate an empty table with the given number of
+	 * slots, a power of two.
+	 */
+	private void allocate(int capacity)
+	{
+		m_keys = new long[capacity];
+		m_values = new Object[capacity];
+		m_shift = 64 - Integer.numberOfTrailingZeros(capacity);
+
+		Arrays.fill(m_keys, EMPTY);
+	}
+
+	/**
+	 * Helper function to empty slot hole and move later entries of its probe
+	 * run back, so that every entry stays reachable from its home slot.
+	 */
+	private void delete(int hole)
+	{
+		int mask = m_keys.length - 1;
+
+		for (int i = (hole + 1) & mask ; m_keys[i] != EMPTY ; i = (i + 1) & mask)
+		{
+			// The entry may move back unless its home slot lies after the hole.
+			if (((i - slot(m_keys[i])) & mask) >= ((i - hole) & mask))
+			{
+				m_keys[hole] = m_keys[i];
+				m_values[hole] = m_values[i];
+				hole = i;
+			}
+		}
+
+		m_keys[hole] = EMPTY;
+		m_values[hole] = null;
+		--m_size;
+	}
+
+	/**
+	 * Helper function to return the slot holding the given key, or -1 if the
+	 * key is absent.
+	 */
+	private int find(long key)
+	{
+		int mask = m_keys.length - 1;
+
+		for (int i = slot(key) ; m_keys[i] != EMPTY ; i = (i + 1) & mask)
+			if (m_keys[i] == key)
+				return i;
+
+		return -1;
+	}
+
+	/**
+	 * Returns the value for the given key.
+	 *
+	 * @param key
+	 * @return - the value, or null if the key is absent
+	 */
+	@SuppressWarnings("unchecked")
+	E get(long key)
+	{
+		int i = find(key);
+
+		return (i < 0) ? null : (E) m_values[i];
+	}
+
+	/**
+	 * Helper function to double the number of slots.
+	 */
+	private void grow()
+	{
+		long[] keys = m_keys;
+		Object[] values = m_values;
+
+		if (keys.length == MAX_CAPACITY)
+			throw new IllegalStateException("Too many entries: " + m_size);
+
+		allocate(2 * keys.length);
+
+		int mask = m_keys.length - 1;
+
+		for (int j = 0 ; j < keys.length ; ++j)
+		{
+			if (keys[j] == EMPTY)
+				continue;
+
+			int i = slot(keys[j]);
+
+			while (m_keys[i] != EMPTY)
+				i = (i + 1) & mask;
+
+			m_keys[i] = keys[j];
+			m_values[i] = values[j];
+		}
+	}
+
+	/**
+	 * Set the value for the given key.
+	 *
+	 * @param key
+	 *            - a nonnegative key
+	 * @param value
+	 * @return - the previous value, or null if the key was absent
+	 */
+	@SuppressWarnings("unchecked")
+	E put(long key, E value)
+	{
+		int mask = m_keys.length - 1;
+		int i = slot(key);
+
+		for ( ; m_keys[i] != EMPTY ; i = (i + 1) & mask)
+		{
+			if (m_keys[i] == key)
+			{
+				E old = (E) m_values[i];
+
+				m_values[i] = value;
+
+				return old;
+			}
+		}
+
+		m_keys[i] = key;
+		m_values[i] = value;
+
+		if (++m_size > m_keys.length / 2)
+			grow();
+
+		return null;
+	}
+
+	/**
+	 * Remove the given key.
+	 *
+	 * @param key
+	 * @return - the removed value, or null if the key was absent
+	 */
+	@SuppressWarnings("unchecked")
+	E remove(long key)
+	{
+		int i = find(key);
+
+		if (i < 0)
+			return null;
+
+		E old = (E) m_values[i];
+
+		delete(i);
+
+		return old;
+	}
+
+	/**
+	 * Returns the slots holding the keys k with first <= k < last and k - first
+	 * a multiple of step, such as the keys of one row or column of a matrix, in
+	 * ascending order of key. Each candidate key is looked up when there are
+	 * fewer candidates than slots; otherwise every slot is scanned and the
+	 * matching keys are sorted.
+	 *
+	 * @param first
+	 *            - the smallest candidate key, which is not negative
+	 * @param last
+	 *            - one past the largest candidate key
+	 * @param step
+	 *            - the distance between candidate keys
+	 * @return - the slots, valid until the map is changed
+	 */
+	int[] slotsOf(long first, long last, long step)
+	{
+		long[] keys = new long[16];
+		int n = 0;
+
+		if ((last - first + step - 1) / step <= m_keys.length)
+		{
+			for (long key = first ; key < last ; key += step)
+			{
+				if (find(key) < 0)
+					continue;
+
+				if (n == keys.length)
+					keys = Arrays.copyOf(keys, 2 * n);
+
+				keys[n++] = key;
+			}
+		}
+		else
+		{
+			for (long key : m_keys)
+			{
+				if (key < first || key >= last || (key - first) % step != 0)
+					continue;
+
+				if (n == keys.length)
+					keys = Arrays.copyOf(keys, 2 * n);
+
+				keys[n++] = key;
+			}
+
+			Arrays.sort(keys, 0, n);
+		}
+
+		int[] slots = new int[n];
+
+		for (int j = 0 ; j < n ; ++j)
+			slots[j] = find(keys[j]);
+
+		return slots;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * @return - the number of entries
+	 */
+	int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Helper function to return the home slot of a key, as LongDoubleHashMap
+	 * does.
+	 */
+	private int slot(long key)
+	{
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> m_shift);
+	}
+}
@@ -27,6 +27,12 @@ public class Matrix<E>
 	 */
 	protected List<E> m_data;
 
+	/**
+	 * Hash code of the elements, kept up to date by set(), or 0 if it has not
+	 * been computed since the last bulk change.
+	 */
+	private int m_hashCode;
+
 	/**
 	 * Unused default constructor.
 	 */
@@ -54,12 +60,53 @@ public class Matrix<E>
 		initializeDataStructures();
 	}
 
+	/**
+	 * Construct a matrix with the specified dimensions, without initializing
+	 * the underlying data structures. Used by matrices that share or provide
+	 * their own storage, such as views.
+	 * 
+	 * @param rows
+	 *            - row dimension
+	 * @param cols
+	 *            - column dimension
+	 * @param initialize
+	 *            - true to initialize the underlying data structures
+	 */
+	protected Matrix(int rows, int cols, boolean initialize)
+	{
+		if (rows < 0 || cols < 0)
+			throw new IndexOutOfBoundsException();
+
+		m_rows = rows;
+		m_columns = cols;
+
+		if (initialize)
+			initializeDataStructures();
+	}
+
 	/**
 	 * Clear the values of the matrix.
 	 */
 	public void clear()
 	{
 		initializeDataStructures();
+		invalidateHashCode();
+	}
+
+	/**
+	 * Return a copy of this matrix that does not share storage with it.
+	 * 
+	 * @return - a new matrix holding the same elements
+	 */
+	public Matrix<E> copy()
+	{
+		Matrix<E> m = new Matrix<E>(m_rows, m_columns);
+
+		for (int row = 0 ; row < m_rows ; ++row)
+			for (int col = 0 ; col < m_columns ; ++col)
+				m.set(row, col, get(row, col));
+
+		return m;
 	}
 
 	/**
@@ -76,6 +123,75 @@ public class Matrix<E>
 		return ((row * m_columns) + col);
 	}
 
+	/**
+	 * Convert a row and column offset into the key of a sparse entry. Keys are
+	 * longs, so they do not overflow when rows * columns exceeds the range of
+	 * an int.
+	 * 
+	 * @param row
+	 *            - row value used in conversion
+	 * @param col
+	 *            - column value used in conversion
+	 * @return - the row-major key of the element
+	 */
+	protected long convertRowAndColToKey(int row, int col)
+	{
+		return ((long) row * m_columns) + col;
+	}
+
+	/**
+	 * Returns the sum of elementHashCode() over the elements of this matrix.
+	 * Subclasses override this to visit only their stored elements.
+	 * 
+	 * @return - the sum of the element hash codes
+	 */
+	protected int computeHashCode()
+	{
+		int h = 0;
+
+		for (int row = 0 ; row < m_rows ; ++row)
+		{
+			for (int col = 0 ; col < m_columns ; ++col)
+			{
+				E e = get(row, col);
+
+				if (e != null)
+					h += elementHashCode(row, col, e.hashCode());
+			}
+		}
+
+		return h;
+	}
+
+	/**
+	 * Returns the hash code of one element, as summed by hashCode(): zero for
+	 * an element whose hash code is zero (such as null or 0.0), so that
+	 * elements a sparse matrix does not store need not be visited.
+	 * 
+	 * @param row
+	 *            - the row of the element
+	 * @param col
+	 *            - the column of the element
+	 * @param valueHashCode
+	 *            - the hash code of the element, or 0 for null
+	 * @return - the contribution of the element to the hash code
+	 */
+	protected static int elementHashCode(int row, int col, int valueHashCode)
+	{
+		if (valueHashCode == 0)
+			return 0;
+
+		int h = (row * 0x9E3779B1 + col) * 0x85EBCA6B + valueHashCode;
+
+		h ^= h >>> 15;
+		h *= 0x2C1B3C6D;
+		h ^= h >>> 12;
+		h *= 0x297A2D39;
+		h ^= h >>> 15;
+
+		return h;
+	}
+
 	/**
 	 * Equals comparison operator.
 	 */
@@ -97,6 +213,9 @@ public class Matrix<E>
 		if (m_rows != rhs.m_rows || m_columns != rhs.m_columns)
 			return false;
 
+		if (hashCodesDiffer(rhs))
+			return false;
+
 		for (int row = 0 ; row < m_rows ; ++row)
 		{
 			for (int col = 0 ; col < m_columns ; ++col)
@@ -118,6 +237,67 @@ public class Matrix<E>
 		return true;
 	}
 
+	/**
+	 * Call the visitor with every non-null element of this matrix. Matrices
+	 * that store only some of their elements visit just those, in no
+	 * particular order; the others visit in row-major order. The visitor must
+	 * not change the matrix.
+	 * 
+	 * @param visitor
+	 *            - the visitor to call with each element
+	 */
+	public void forEachNonNull(EntryVisitor<? super E> visitor)
+	{
+		for (int row = 0 ; row < m_rows ; ++row)
+			forEachNonNullInRow(row, visitor);
+	}
+
+	/**
+	 * Call the visitor with every non-null element of the given column, in
+	 * ascending row order. The visitor must not change the matrix.
+	 * 
+	 * @param col
+	 *            - the column to visit
+	 * @param visitor
+	 *            - the visitor to call with each element
+	 */
+	public void forEachNonNullInColumn(int col, EntryVisitor<? super E> visitor)
+	{
+		if (col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		for (int row = 0 ; row < m_rows ; ++row)
+		{
+			E value = get(row, col);
+
+			if (value != null)
+				visitor.visit(row, col, value);
+		}
+	}
+
+	/**
+	 * Call the visitor with every non-null element of the given row, in
+	 * ascending column order. The visitor must not change the matrix.
+	 * 
+	 * @param row
+	 *            - the row to visit
+	 * @param visitor
+	 *            - the visitor to call with each element
+	 */
+	public void forEachNonNullInRow(int row, EntryVisitor<? super E> visitor)
+	{
+		if (row < 0 || row >= m_rows)
+			throw new IndexOutOfBoundsException();
+
+		for (int col = 0 ; col < m_columns ; ++col)
+		{
+			E value = get(row, col);
+
+			if (value != null)
+				visitor.visit(row, col, value);
+		}
+	}
+
 	/**
 	 * Returns the element at the specified row and column.
 	 * 
@@ -155,6 +335,44 @@ public class Matrix<E>
 		return m_rows;
 	}
 
+	/**
+	 * Returns a hash code consistent with equals(): the dimensions combined
+	 * with the sum of the hash codes of the elements mixed with their
+	 * positions. The sum is cached and updated by set(), so repeated calls are
+	 * constant time unless the matrix shares storage with other matrices.
+	 */
+	@Override
+	public int hashCode()
+	{
+		int h = m_hashCode;
+
+		if (h != 0)
+			return h;
+
+		h = 31 * (31 * m_rows + m_columns) + computeHashCode();
+
+		if (isHashCodeCacheable())
+			m_hashCode = h;
+
+		return h;
+	}
+
+	/**
+	 * Returns true if both matrices have a cached hash code and the two differ,
+	 * in which case they are not equal.
+	 * 
+	 * @param m
+	 *            - the matrix to compare with
+	 * @return - true if the matrices are known to differ
+	 */
+	protected boolean hashCodesDiffer(Matrix<?> m)
+	{
+		int h1 = m_hashCode;
+		int h2 = m.m_hashCode;
+
+		return (h1 != 0 && h2 != 0 && h1 != h2);
+	}
+
 	/**
 	 * Initialize the underlying data structures.
 	 */
@@ -168,6 +386,26 @@ public class Matrix<E>
 			m_data.add(null);
 	}
 
+	/**
+	 * Discard the cached hash code. Called after changes made other than
+	 * through set().
+	 */
+	protected void invalidateHashCode()
+	{
+		m_hashCode = 0;
+	}
+
+	/**
+	 * Returns true if the hash code may be cached: false for matrices whose
+	 * storage can be changed through another matrix, such as views.
+	 * 
+	 * @return - true if the hash code may be cached
+	 */
+	protected boolean isHashCodeCacheable()
+	{
+		return true;
+	}
+
 	/**
 	 * Set the data at the given row and column.
 	 * 
@@ -183,7 +421,9 @@ public class Matrix<E>
 		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
 			throw new IndexOutOfBoundsException();
 
-		m_data.set(convertRowAndColToIndex(row, col), element);
+		E old = m_data.set(convertRowAndColToIndex(row, col), element);
+
+		updateHashCode(row, col, (old == null) ? 0 : old.hashCode(), (element == null) ? 0 : element.hashCode());
 	}
 
 	/**
@@ -229,6 +469,28 @@ public class Matrix<E>
 		return m;
 	}
 
+	/**
+	 * Return a view of the sub-matrix with the given indices. The view shares
+	 * storage with this matrix, so changes to either are visible in both. Use
+	 * copy() on the view to detach it.
+	 * 
+	 * @param firstRowIndex
+	 * @param lastRowIndex
+	 * @param firstColIndex
+	 * @param lastColIndex
+	 * @return
+	 */
+	public Matrix<E> subMatrixView(int firstRowIndex, int lastRowIndex, int firstColIndex, int lastColIndex)
+	{
+		if (firstRowIndex < 0 || lastRowIndex > m_rows || firstRowIndex >= lastRowIndex)
+			throw new IndexOutOfBoundsException();
+
+		if (firstColIndex < 0 || lastColIndex > m_columns || firstColIndex >= lastColIndex)
+			throw new IndexOutOfBoundsException();
+
+		return new MatrixView<E>(this, firstRowIndex, lastRowIndex, firstColIndex, lastColIndex);
+	}
+
 	/**
 	 * Return string representation of this object.
 	 */
@@ -252,4 +514,24 @@ public class Matrix<E>
 
 		return sb.toString();
 	}
+
+	/**
+	 * Update the cached hash code, if any, for a change of one element.
+	 * 
+	 * @param row
+	 *            - the row of the element
+	 * @param col
+	 *            - the column of the element
+	 * @param oldValueHashCode
+	 *            - the hash code of the previous element, or 0 for null
+	 * @param newValueHashCode
+	 *            - the hash code of the new element, or 0 for null
+	 */
+	protected void updateHashCode(int row, int col, int oldValueHashCode, int newValueHashCode)
+	{
+		int h = m_hashCode;
+
+		if (h != 0 && oldValueHashCode != newValueHashCode)
+			m_hashCode = h - elementHashCode(row, col, oldValueHashCode) + elementHashCode(row, col, newValueHashCode);
+	}
 }
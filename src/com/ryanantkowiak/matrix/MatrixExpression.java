@@ -0,0 +1,619 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lazily evaluated expression over matrices of doubles. Building an expression
+ * only records the operations and checks the dimensions; nothing is computed
+ * until evaluate() or evaluateInto() is called. For example,
+ *
+ * <pre>
+ * DoubleMatrix m = MatrixExpression.of(a).add(b).scalarMultiply(k).subtract(c).evaluate();
+ * </pre>
+ *
+ * computes (a + b) * k - c in a single pass over memory: instead of writing a
+ * temporary matrix per operation, each row is computed in short segments that
+ * stay in the L1 cache, so every operand is read once and the result written
+ * once. The operations are applied in the order written, so the values are
+ * exactly those of the equivalent MatrixMath calls.
+ *
+ * Products cannot be computed a segment at a time, so each chain of products
+ * (such as a * b * c * d) is computed before the element-wise pass, in the
+ * order of multiplication that needs the fewest multiply-adds for the
+ * dimensions of its factors.
+ *
+ * Expressions are immutable, and the matrices are read at evaluation, not when
+ * the expression is built.
+ *
+ * @author antko
+ *
+ */
+public abstract class MatrixExpression
+{
+	/**
+	 * Number of values of a row computed at a time in the element-wise pass.
+	 */
+	private static final int SEGMENT = 512;
+
+	/**
+	 * Kernels for the element-wise operations on segments.
+	 */
+	private static final DoubleKernels KERNELS = DoubleKernels.INSTANCE;
+
+	/**
+	 * Dimensions of the result.
+	 */
+	private final int m_rows;
+	private final int m_columns;
+
+	/**
+	 * Construct an expression whose result has the given dimensions.
+	 */
+	private MatrixExpression(int rows, int cols)
+	{
+		m_rows = rows;
+		m_columns = cols;
+	}
+
+	/**
+	 * Return an expression for the given matrix.
+	 *
+	 * @param m
+	 *            - the matrix
+	 * @return - an expression whose value is m
+	 */
+	public static MatrixExpression of(DoubleMatrix m)
+	{
+		if (m == null)
+			throw new NullPointerException();
+
+		return new Operand(m);
+	}
+
+	/**
+	 * Returns the number of rows of the result.
+	 *
+	 * @return - the number of rows
+	 */
+	public int getRowDimension()
+	{
+		return m_rows;
+	}
+
+	/**
+	 * Returns the number of columns of the result.
+	 *
+	 * @return - the number of columns
+	 */
+	public int getColumnDimension()
+	{
+		return m_columns;
+	}
+
+	/**
+	 * Return an expression for this expression plus another.
+	 *
+	 * @param e
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public MatrixExpression add(MatrixExpression e) throws InvalidMatrixDimensionException
+	{
+		return new Sum(this, e, false);
+	}
+
+	/**
+	 * Return an expression for this expression plus a matrix.
+	 *
+	 * @param m
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public MatrixExpression add(DoubleMatrix m) throws InvalidMatrixDimensionException
+	{
+		return add(of(m));
+	}
+
+	/**
+	 * Return an expression for this expression minus another.
+	 *
+	 * @param e
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public MatrixExpression subtract(MatrixExpression e) throws InvalidMatrixDimensionException
+	{
+		return new Sum(this, e, true);
+	}
+
+	/**
+	 * Return an expression for this expression minus a matrix.
+	 *
+	 * @param m
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public MatrixExpression subtract(DoubleMatrix m) throws InvalidMatrixDimensionException
+	{
+		return subtract(of(m));
+	}
+
+	/**
+	 * Return an expression for this expression multiplied by a scalar.
+	 *
+	 * @param scalar
+	 * @return
+	 */
+	public MatrixExpression scalarMultiply(double scalar)
+	{
+		return new Scale(this, scalar);
+	}
+
+	/**
+	 * Return an expression for the product of this expression and another.
+	 *
+	 * @param e
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public MatrixExpression multiply(MatrixExpression e) throws InvalidMatrixDimensionException
+	{
+		return new Product(this, e);
+	}
+
+	/**
+	 * Return an expression for the product of this expression and a matrix.
+	 *
+	 * @param m
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public MatrixExpression multiply(DoubleMatrix m) throws InvalidMatrixDimensionException
+	{
+		return multiply(of(m));
+	}
+
+	/**
+	 * Compute the value of this expression in a new matrix.
+	 *
+	 * @return - a new matrix holding the result
+	 */
+	public DoubleMatrix evaluate()
+	{
+		DoubleMatrix m = new DoubleMatrix(m_rows, m_columns);
+
+		write(m);
+
+		return m;
+	}
+
+	/**
+	 * Compute the value of this expression into the given matrix, which may be
+	 * one of the operands.
+	 *
+	 * @param dst
+	 *            - the matrix that receives the result
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public void evaluateInto(DoubleMatrix dst) throws InvalidMatrixDimensionException
+	{
+		if (dst == null)
+			throw new NullPointerException();
+
+		if (dst.getRowDimension() != m_rows || dst.getColumnDimension() != m_columns)
+			throw new InvalidMatrixDimensionException();
+
+		dst.invalidateHashCode();
+
+		write(dst);
+	}
+
+	/**
+	 * Compute the value of this expression into dst, which has the dimensions
+	 * of the result. Products are computed first, then the element-wise
+	 * operations in one pass over the rows.
+	 */
+	void write(DoubleMatrix dst)
+	{
+		if (m_rows == 0 || m_columns == 0)
+			return;
+
+		MatrixExpression e = resolve(dst);
+
+		int length = Math.min(SEGMENT, m_columns);
+		double[] out = new double[length];
+		double[][] buffers = new double[e.height()][length];
+
+		for (int r = 0 ; r < m_rows ; ++r)
+		{
+			for (int c = 0 ; c < m_columns ; c += length)
+			{
+				int n = Math.min(length, m_columns - c);
+
+				e.segment(r, c, n, out, 0, buffers, 0);
+
+				MatrixMath.writeRow(dst, r, c, out, 0, n);
+			}
+		}
+	}
+
+	/**
+	 * Return an equivalent expression without products, whose operands can be
+	 * read a segment at a time while the result is written to dst: products
+	 * are computed, and operands that partly overlap dst are copied.
+	 */
+	abstract MatrixExpression resolve(DoubleMatrix dst);
+
+	/**
+	 * Returns the number of scratch segments needed to compute this expression.
+	 */
+	abstract int height();
+
+	/**
+	 * Compute n values of row r, starting at column c, into out[outOff..],
+	 * using buffers[depth..] as scratch space.
+	 */
+	abstract void segment(int r, int c, int n, double[] out, int outOff, double[][] buffers, int depth);
+
+	/**
+	 * Helper function to multiply two matrices whose dimensions have already
+	 * been checked.
+	 */
+	private static DoubleMatrix multiply(DoubleMatrix m1, DoubleMatrix m2)
+	{
+		try
+		{
+			return MatrixMath.multiply(m1, m2);
+		}
+		catch (InvalidMatrixDimensionException e)
+		{
+			// Checked when the expression was built.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A matrix.
+	 */
+	private static final class Operand extends MatrixExpression
+	{
+		private final DoubleMatrix m_matrix;
+
+		Operand(DoubleMatrix m)
+		{
+			super(m.getRowDimension(), m.getColumnDimension());
+
+			m_matrix = m;
+		}
+
+		@Override
+		MatrixExpression resolve(DoubleMatrix dst)
+		{
+			DoubleMatrix m = MatrixMath.unalias(dst, m_matrix);
+
+			return (m == m_matrix) ? this : new Operand(m);
+		}
+
+		@Override
+		int height()
+		{
+			return 0;
+		}
+
+		@Override
+		void segment(int r, int c, int n, double[] out, int outOff, double[][] buffers, int depth)
+		{
+			MatrixMath.readRow(m_matrix, r, c, out, outOff, n);
+		}
+
+		/**
+		 * Returns true if the values can be read directly from the array.
+		 */
+		boolean isArrayBacked()
+		{
+			return (m_matrix.m_values != null);
+		}
+
+		/**
+		 * Returns the index of the given element in the array.
+		 */
+		int index(int r, int c)
+		{
+			return m_matrix.m_offset + r * m_matrix.m_rowStride + c;
+		}
+	}
+
+	/**
+	 * The sum or difference of two expressions.
+	 */
+	private static final class Sum extends MatrixExpression
+	{
+		private final MatrixExpression m_left;
+		private final MatrixExpression m_right;
+		private final boolean m_subtract;
+
+		Sum(MatrixExpression left, MatrixExpression right, boolean subtract) throws InvalidMatrixDimensionException
+		{
+			super(left.getRowDimension(), left.getColumnDimension());
+
+			if (right.getRowDimension() != left.getRowDimension()
+					|| right.getColumnDimension() != left.getColumnDimension())
+				throw new InvalidMatrixDimensionException();
+
+			m_left = left;
+			m_right = right;
+			m_subtract = subtract;
+		}
+
+		@Override
+		MatrixExpression resolve(DoubleMatrix dst)
+		{
+			MatrixExpression left = m_left.resolve(dst);
+			MatrixExpression right = m_right.resolve(dst);
+
+			if (left == m_left && right == m_right)
+				return this;
+
+			try
+			{
+				return new Sum(left, right, m_subtract);
+			}
+			catch (InvalidMatrixDimensionException e)
+			{
+				// Resolving does not change the dimensions.
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		int height()
+		{
+			return 1 + Math.max(m_left.height(), m_right.height());
+		}
+
+		@Override
+		void segment(int r, int c, int n, double[] out, int outOff, double[][] buffers, int depth)
+		{
+			double[] a = out;
+			int ia = outOff;
+
+			if (isArrayOperand(m_left))
+			{
+				a = ((Operand) m_left).m_matrix.m_values;
+				ia = ((Operand) m_left).index(r, c);
+			}
+			else
+			{
+				m_left.segment(r, c, n, out, outOff, buffers, depth + 1);
+			}
+
+			double[] b = buffers[depth];
+			int ib = 0;
+
+			if (isArrayOperand(m_right))
+			{
+				b = ((Operand) m_right).m_matrix.m_values;
+				ib = ((Operand) m_right).index(r, c);
+			}
+			else
+			{
+				m_right.segment(r, c, n, b, 0, buffers, depth + 1);
+			}
+
+			if (m_subtract)
+				KERNELS.subtract(a, ia, b, ib, out, outOff, n);
+			else
+				KERNELS.add(a, ia, b, ib, out, outOff, n);
+		}
+	}
+
+	/**
+	 * An expression multiplied by a scalar.
+	 */
+	private static final class Scale extends MatrixExpression
+	{
+		private final MatrixExpression m_expression;
+		private final double m_scalar;
+
+		Scale(MatrixExpression e, double scalar)
+		{
+			super(e.getRowDimension(), e.getColumnDimension());
+
+			m_expression = e;
+			m_scalar = scalar;
+		}
+
+		@Override
+		MatrixExpression resolve(DoubleMatrix dst)
+		{
+			MatrixExpression e = m_expression.resolve(dst);
+
+			return (e == m_expression) ? this : new Scale(e, m_scalar);
+		}
+
+		@Override
+		int height()
+		{
+			return m_expression.height();
+		}
+
+		@Override
+		void segment(int r, int c, int n, double[] out, int outOff, double[][] buffers, int depth)
+		{
+			if (isArrayOperand(m_expression))
+			{
+				Operand o = (Operand) m_expression;
+
+				KERNELS.scale(m_scalar, o.m_matrix.m_values, o.index(r, c), out, outOff, n);
+				return;
+			}
+
+			m_expression.segment(r, c, n, out, outOff, buffers, depth);
+
+			KERNELS.scale(m_scalar, out, outOff, out, outOff, n);
+		}
+	}
+
+	/**
+	 * The product of two expressions. Nested products form a chain whose
+	 * factors are multiplied in the cheapest order.
+	 */
+	private static final class Product extends MatrixExpression
+	{
+		private final MatrixExpression m_left;
+		private final MatrixExpression m_right;
+
+		Product(MatrixExpression left, MatrixExpression right) throws InvalidMatrixDimensionException
+		{
+			super(left.getRowDimension(), right.getColumnDimension());
+
+			if (left.getColumnDimension() != right.getRowDimension())
+				throw new InvalidMatrixDimensionException();
+
+			m_left = left;
+			m_right = right;
+		}
+
+		/**
+		 * The product is computed into a new matrix, which cannot overlap dst.
+		 */
+		@Override
+		MatrixExpression resolve(DoubleMatrix dst)
+		{
+			return new Operand(evaluate());
+		}
+
+		@Override
+		int height()
+		{
+			return 0;
+		}
+
+		@Override
+		void segment(int r, int c, int n, double[] out, int outOff, double[][] buffers, int depth)
+		{
+			throw new IllegalStateException("Products are resolved before evaluation");
+		}
+
+		/**
+		 * Multiply the factors of the chain in the cheapest order, computing
+		 * the last product directly into dst.
+		 */
+		@Override
+		void write(DoubleMatrix dst)
+		{
+			List<MatrixExpression> chain = new ArrayList<MatrixExpression>();
+
+			factors(this, chain);
+
+			int count = chain.size();
+			DoubleMatrix[] factors = new DoubleMatrix[count];
+
+			for (int i = 0 ; i < count ; ++i)
+			{
+				MatrixExpression e = chain.get(i);
+
+				factors[i] = (e instanceof Operand) ? ((Operand) e).m_matrix : e.evaluate();
+			}
+
+			int[][] split = order(factors);
+			int k = split[0][count - 1];
+
+			DoubleMatrix left = multiply(factors, split, 0, k);
+			DoubleMatrix right = multiply(factors, split, k + 1, count - 1);
+
+			try
+			{
+				MatrixMath.multiplyInto(dst, left, right);
+			}
+			catch (InvalidMatrixDimensionException e)
+			{
+				// Checked when the expression was built.
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Helper function to collect the factors of a chain of products, left
+		 * to right.
+		 */
+		private static void factors(MatrixExpression e, List<MatrixExpression> chain)
+		{
+			if (e instanceof Product)
+			{
+				factors(((Product) e).m_left, chain);
+				factors(((Product) e).m_right, chain);
+			}
+			else
+			{
+				chain.add(e);
+			}
+		}
+
+		/**
+		 * Helper function to find the cheapest order in which to multiply a
+		 * chain of matrices, by dynamic programming over the sub-chains.
+		 * Returns split, where the product of factors i..j is cheapest as
+		 * (i..split[i][j]) * (split[i][j] + 1..j).
+		 */
+		private static int[][] order(DoubleMatrix[] factors)
+		{
+			int count = factors.length;
+			long[] dims = new long[count + 1];
+
+			for (int i = 0 ; i < count ; ++i)
+				dims[i] = factors[i].getRowDimension();
+
+			dims[count] = factors[count - 1].getColumnDimension();
+
+			long[][] cost = new long[count][count];
+			int[][] split = new int[count][count];
+
+			for (int length = 2 ; length <= count ; ++length)
+			{
+				for (int i = 0 ; i + length <= count ; ++i)
+				{
+					int j = i + length - 1;
+
+					cost[i][j] = Long.MAX_VALUE;
+
+					for (int k = i ; k < j ; ++k)
+					{
+						long c = cost[i][k] + cost[k + 1][j] + dims[i] * dims[k + 1] * dims[j + 1];
+
+						if (c < cost[i][j])
+						{
+							cost[i][j] = c;
+							split[i][j] = k;
+						}
+					}
+				}
+			}
+
+			return split;
+		}
+
+		/**
+		 * Helper function to multiply factors i..j in the order given by split.
+		 */
+		private static DoubleMatrix multiply(DoubleMatrix[] factors, int[][] split, int i, int j)
+		{
+			if (i == j)
+				return factors[i];
+
+			int k = split[i][j];
+
+			return MatrixExpression.multiply(multiply(factors, split, i, k), multiply(factors, split, k + 1, j));
+		}
+	}
+
+	/**
+	 * Helper function to determine whether an expression is a matrix whose
+	 * values can be read directly from its array.
+	 */
+	private static boolean isArrayOperand(MatrixExpression e)
+	{
+		return (e instanceof Operand && ((Operand) e).isArrayBacked());
+	}
+}
@@ -0,0 +1,450 @@
+package com.ryanantkowiak.matrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file format for matrices of doubles.
+ *
+ * A file starts with a 32 byte little-endian header:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  magic, the characters "MTX1"
+ *      4     4  format version (1)
+ *      8     1  element type (1 = 64-bit IEEE double)
+ *      9     1  layout (0 = dense row-major, 1 = compressed sparse rows)
+ *     10     2  reserved, zero
+ *     12     4  number of rows
+ *     16     4  number of columns
+ *     20     4  reserved, zero
+ *     24     8  number of stored values
+ * </pre>
+ *
+ * A dense file continues with rows * columns doubles in row-major order. A
+ * compressed file continues with rows + 1 int row pointers, one int column
+ * index per stored value, zero padding to a multiple of 8 bytes, and one
+ * double per stored value. Values always start on an 8 byte boundary.
+ *
+ * Dense files are opened by mapping them into memory, so opening costs no
+ * copy and values are read on demand. Compressed files are read into a
+ * DoubleCompressedRowMatrix with bulk copies.
+ *
+ * @author antko
+ *
+ */
+public final class MatrixFile
+{
+	/**
+	 * The characters "MTX1" read as a little-endian int.
+	 */
+	static final int MAGIC = 0x3158544D;
+
+	/**
+	 * The format version written by this class.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Size of the header in bytes.
+	 */
+	static final int HEADER_SIZE = 32;
+
+	/**
+	 * Element type code for 64-bit IEEE doubles.
+	 */
+	static final byte TYPE_DOUBLE = 1;
+
+	/**
+	 * Layout code for dense row-major values.
+	 */
+	static final byte LAYOUT_DENSE = 0;
+
+	/**
+	 * Layout code for compressed sparse rows.
+	 */
+	static final byte LAYOUT_COMPRESSED_ROWS = 1;
+
+	/**
+	 * Largest number of bytes mapped at once, below the 2 GB limit of a
+	 * MappedByteBuffer.
+	 */
+	static final long MAX_MAPPING = 1L << 30;
+
+	/**
+	 * Size in bytes of the buffer used when writing.
+	 */
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Unused default constructor.
+	 */
+	private MatrixFile()
+	{
+	}
+
+	/**
+	 * Write a matrix to a file, replacing any existing file. Sparse and
+	 * compressed matrices are written as compressed sparse rows, other matrices
+	 * as dense rows.
+	 *
+	 * @param m
+	 *            - the matrix to write
+	 * @param path
+	 *            - the file to write
+	 * @throws IOException
+	 */
+	public static void write(DoubleMatrix m, Path path) throws IOException
+	{
+		if (null == m || null == path)
+			throw new NullPointerException();
+
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			if (SparseKernels.hasSparseStorage(m))
+				writeCompressed(ch, SparseKernels.toCompressedRows(m));
+			else
+				writeDense(ch, m);
+		}
+	}
+
+	/**
+	 * Helper function to write the header.
+	 */
+	private static void writeHeader(FileChannel ch, byte layout, int rows, int cols, long count) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.put(TYPE_DOUBLE);
+		header.put(layout);
+		header.putShort((short) 0);
+		header.putInt(rows);
+		header.putInt(cols);
+		header.putInt(0);
+		header.putLong(count);
+		header.flip();
+
+		writeFully(ch, header);
+	}
+
+	/**
+	 * Helper function to write the values of a matrix a row at a time.
+	 */
+	private static void writeDense(FileChannel ch, DoubleMatrix m) throws IOException
+	{
+		int rows = m.getRowDimension();
+		int cols = m.getColumnDimension();
+
+		writeHeader(ch, LAYOUT_DENSE, rows, cols, (long) rows * cols);
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		DoubleBuffer doubles = buffer.asDoubleBuffer();
+		double[] row = (m.m_values == null) ? new double[cols] : null;
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			double[] src = m.m_values;
+			int start = (src == null) ? 0 : m.m_offset + r * m.m_rowStride;
+
+			if (src == null)
+			{
+				for (int c = 0 ; c < cols ; ++c)
+					row[c] = m.getDouble(r, c);
+
+				src = row;
+			}
+
+			for (int c = 0 ; c < cols ; )
+			{
+				int n = Math.min(cols - c, doubles.remaining());
+
+				doubles.put(src, start + c, n);
+				c += n;
+
+				if (!doubles.hasRemaining())
+					flush(ch, buffer, doubles);
+			}
+		}
+
+		flush(ch, buffer, doubles);
+	}
+
+	/**
+	 * Helper function to write a matrix in compressed row form.
+	 */
+	private static void writeCompressed(FileChannel ch, DoubleCompressedMatrix m) throws IOException
+	{
+		int rows = m.getRowDimension();
+		int nnz = m.getNonZeroCount();
+
+		writeHeader(ch, LAYOUT_COMPRESSED_ROWS, rows, m.getColumnDimension(), nnz);
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		IntBuffer ints = buffer.asIntBuffer();
+		writeInts(ch, buffer, ints, m.m_pointers, rows + 1);
+		writeInts(ch, buffer, ints, m.m_indices, nnz);
+		flush(ch, buffer, ints.position() * 4);
+
+		if ((rows + 1 + nnz) % 2 != 0)
+			writeFully(ch, ByteBuffer.allocate(4));
+
+		DoubleBuffer doubles = buffer.asDoubleBuffer();
+
+		for (int p = 0 ; p < nnz ; )
+		{
+			int n = Math.min(nnz - p, doubles.remaining());
+
+			doubles.put(m.m_nonZeroValues, p, n);
+			p += n;
+
+			if (!doubles.hasRemaining())
+				flush(ch, buffer, doubles);
+		}
+
+		flush(ch, buffer, doubles);
+	}
+
+	/**
+	 * Helper function to write the first count ints of an array through the
+	 * buffer.
+	 */
+	private static void writeInts(FileChannel ch, ByteBuffer buffer, IntBuffer ints, int[] values, int count)
+			throws IOException
+	{
+		for (int p = 0 ; p < count ; )
+		{
+			int n = Math.min(count - p, ints.remaining());
+
+			ints.put(values, p, n);
+			p += n;
+
+			if (!ints.hasRemaining())
+			{
+				flush(ch, buffer, ints.position() * 4);
+				ints.clear();
+			}
+		}
+	}
+
+	/**
+	 * Helper function to write the doubles put into the buffer so far.
+	 */
+	private static void flush(FileChannel ch, ByteBuffer buffer, DoubleBuffer doubles) throws IOException
+	{
+		flush(ch, buffer, doubles.position() * 8);
+		doubles.clear();
+	}
+
+	/**
+	 * Helper function to write the first bytes of the buffer.
+	 */
+	private static void flush(FileChannel ch, ByteBuffer buffer, int bytes) throws IOException
+	{
+		buffer.clear();
+		buffer.limit(bytes);
+
+		writeFully(ch, buffer);
+
+		buffer.clear();
+	}
+
+	/**
+	 * Helper function to write all remaining bytes of a buffer.
+	 */
+	private static void writeFully(FileChannel ch, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+			ch.write(buffer);
+	}
+
+	/**
+	 * Open a matrix file for reading. A dense file is mapped into memory and
+	 * returned as a read-only DoubleMappedMatrix; a compressed file is returned
+	 * as a DoubleCompressedRowMatrix.
+	 *
+	 * @param path
+	 *            - the file to open
+	 * @return - the matrix stored in the file
+	 * @throws IOException
+	 *             - if the file cannot be read or is not a matrix file
+	 */
+	public static DoubleMatrix read(Path path) throws IOException
+	{
+		return open(path, false);
+	}
+
+	/**
+	 * Open a matrix file. A dense file is mapped into memory and returned as a
+	 * DoubleMappedMatrix, whose changes are written to the file when writable is
+	 * true; a compressed file is returned as a DoubleCompressedRowMatrix, which
+	 * is immutable.
+	 *
+	 * @param path
+	 *            - the file to open
+	 * @param writable
+	 *            - true to map a dense file for reading and writing
+	 * @return - the matrix stored in the file
+	 * @throws IOException
+	 *             - if the file cannot be read or is not a matrix file
+	 */
+	public static DoubleMatrix open(Path path, boolean writable) throws IOException
+	{
+		if (null == path)
+			throw new NullPointerException();
+
+		try (FileChannel ch = writable
+				? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(path, StandardOpenOption.READ))
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+			while (header.hasRemaining())
+				if (ch.read(header, header.position()) < 0)
+					throw new IOException("Not a matrix file: " + path);
+
+			header.flip();
+
+			if (header.getInt() != MAGIC)
+				throw new IOException("Not a matrix file: " + path);
+
+			if (header.getInt() != VERSION)
+				throw new IOException("Unsupported matrix file version: " + path);
+
+			if (header.get() != TYPE_DOUBLE)
+				throw new IOException("Unsupported matrix element type: " + path);
+
+			byte layout = header.get();
+			header.getShort();
+			int rows = header.getInt();
+			int cols = header.getInt();
+			header.getInt();
+			long count = header.getLong();
+
+			if (rows < 0 || cols < 0)
+				throw new IOException("Invalid matrix dimensions: " + path);
+
+			if (layout == LAYOUT_DENSE)
+				return mapDense(ch, rows, cols, writable, path);
+
+			if (layout == LAYOUT_COMPRESSED_ROWS)
+				return readCompressed(ch, rows, cols, count, path);
+
+			throw new IOException("Unsupported matrix layout: " + path);
+		}
+	}
+
+	/**
+	 * Helper function to map the values of a dense file in blocks of whole
+	 * rows.
+	 */
+	private static DoubleMappedMatrix mapDense(FileChannel ch, int rows, int cols, boolean writable, Path path)
+			throws IOException
+	{
+		long rowBytes = 8L * cols;
+
+		if (ch.size() < HEADER_SIZE + rowBytes * rows)
+			throw new IOException("Truncated matrix file: " + path);
+
+		if (rowBytes > DoubleBufferMatrix.MAX_CHUNK_BYTES)
+			throw new IOException("Matrix rows too long to map: " + path);
+
+		int rowsPerChunk = DoubleBufferMatrix.rowsPerChunk(rows, cols);
+		int chunkCount = DoubleBufferMatrix.chunkCount(rows, rowsPerChunk);
+		DoubleBuffer[] chunks = new DoubleBuffer[chunkCount];
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+
+		for (int i = 0 ; i < chunkCount ; ++i)
+		{
+			int first = i * rowsPerChunk;
+			int n = Math.min(rowsPerChunk, rows - first);
+
+			MappedByteBuffer map = ch.map(mode, HEADER_SIZE + first * rowBytes, n * rowBytes);
+			chunks[i] = map.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		}
+
+		return new DoubleMappedMatrix(rows, cols, chunks, rowsPerChunk);
+	}
+
+	/**
+	 * Helper function to read the arrays of a compressed file.
+	 */
+	private static DoubleCompressedRowMatrix readCompressed(FileChannel ch, int rows, int cols, long count, Path path)
+			throws IOException
+	{
+		if (count < 0 || count > Integer.MAX_VALUE - 8)
+			throw new IOException("Invalid number of values: " + path);
+
+		int nnz = (int) count;
+		long intBytes = 4L * (rows + 1 + (long) nnz);
+		long valueStart = HEADER_SIZE + ((intBytes + 7) & ~7L);
+
+		if (ch.size() < valueStart + 8L * nnz)
+			throw new IOException("Truncated matrix file: " + path);
+
+		int[] pointers = new int[rows + 1];
+		int[] indices = new int[nnz];
+		double[] values = new double[nnz];
+
+		long pos = HEADER_SIZE;
+
+		pos = readInts(ch, pos, pointers);
+		readInts(ch, pos, indices);
+
+		for (int p = 0 ; p < nnz ; )
+		{
+			int n = (int) Math.min(nnz - p, MAX_MAPPING / 8);
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, valueStart + 8L * p, 8L * n);
+
+			map.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values, p, n);
+			p += n;
+		}
+
+		if (pointers[0] != 0 || pointers[rows] != nnz)
+			throw new IOException("Invalid row pointers: " + path);
+
+		for (int r = 0 ; r < rows ; ++r)
+			if (pointers[r] > pointers[r + 1])
+				throw new IOException("Invalid row pointers: " + path);
+
+		for (int p = 0 ; p < nnz ; ++p)
+			if (indices[p] < 0 || indices[p] >= cols)
+				throw new IOException("Invalid column index: " + path);
+
+		for (int r = 0 ; r < rows ; ++r)
+			for (int p = pointers[r] + 1 ; p < pointers[r + 1] ; ++p)
+				if (indices[p - 1] >= indices[p])
+					throw new IOException("Invalid column index: " + path);
+
+		return new DoubleCompressedRowMatrix(rows, cols, pointers, indices, values);
+	}
+
+	/**
+	 * Helper function to read an array of ints starting at the given position.
+	 *
+	 * @return - the position after the array
+	 */
+	private static long readInts(FileChannel ch, long pos, int[] values) throws IOException
+	{
+		for (int p = 0 ; p < values.length ; )
+		{
+			int n = (int) Math.min(values.length - p, MAX_MAPPING / 4);
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, pos + 4L * p, 4L * n);
+
+			map.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, p, n);
+			p += n;
+		}
+
+		return pos + 4L * values.length;
+	}
+}
@@ -1,5 +1,7 @@
 package com.ryanantkowiak.matrix;
 
+import java.util.Arrays;
+
 /**
  * Math functions on matrices of doubles.
  * 
@@ -9,7 +11,26 @@ package com.ryanantkowiak.matrix;
 public class MatrixMath
 {
 	/**
-	 * Calculate the determinant of the given matrix.
+	 * Size of the square tiles in which products of matrices stored outside
+	 * the heap are computed.
+	 */
+	private static final int TILE = 512;
+
+	/**
+	 * Longest row segment read at once from matrices stored outside the heap.
+	 */
+	private static final int ROW_SEGMENT = 4096;
+
+	/**
+	 * Kernels for the element-wise loops over rows of primitive values.
+	 */
+	private static final DoubleKernels KERNELS = DoubleKernels.INSTANCE;
+
+	/**
+	 * Calculate the determinant of the given matrix, using an LU decomposition
+	 * with partial pivoting. The determinant of a triangular or diagonal matrix
+	 * is the product of its diagonal, and that of a narrow banded matrix is
+	 * computed in band storage.
 	 * 
 	 * @param m
 	 *            - the matrix to calculate the determinant of
@@ -24,11 +45,15 @@ public class MatrixMath
 		if (m.getRowDimension() != m.getColumnDimension())
 			throw new InvalidMatrixDimensionException();
 
-		return determinant(m, m.getRowDimension());
+		if (StructuredKernels.hasBandedDeterminant(m))
+			return StructuredKernels.determinant((DoubleStructuredMatrix) m);
+
+		return new LUDecomposition(m).determinant();
 	}
 
 	/**
-	 * Calculate the determinant of the given sparse matrix.
+	 * Calculate the determinant of the given sparse matrix, using a sparse LU
+	 * decomposition with a fill-reducing ordering.
 	 * 
 	 * @param m
 	 *            - the sparse matrix to calculate the determinant of
@@ -43,109 +68,27 @@ public class MatrixMath
 		if (m.getRowDimension() != m.getColumnDimension())
 			throw new InvalidMatrixDimensionException();
 
-		return determinantSparse(m, m.getRowDimension());
-	}
-
-	/**
-	 * Helper function to help calculate a determinant of a matrix.
-	 * 
-	 * @param a
-	 * @param n
-	 * @return
-	 */
-	private static double determinant(DoubleMatrix a, int n)
-	{
-		double det = 0;
-		int sign = 1;
-		int p = 0;
-		int q = 0;
-
-		if (n == 1)
-			det = a.get(0, 0);
-		else
-		{
-			DoubleMatrix b = new DoubleMatrix(n - 1, n - 1);
-
-			for (int x = 0 ; x < n ; x++)
-			{
-				p = 0;
-				q = 0;
-
-				for (int i = 1 ; i < n ; ++i)
-				{
-					for (int j = 0 ; j < n ; ++j)
-					{
-						if (j != x)
-						{
-							b.set(p, q++, a.get(i, j));
-
-							if (q % (n - 1) == 0)
-							{
-								++p;
-								q = 0;
-							}
-						}
-					}
-				}
-
-				det = det + a.get(0, x) * determinant(b, n - 1) * sign;
-
-				sign = -sign;
-			}
-		}
-
-		return det;
+		return new SparseLUDecomposition(m).determinant();
 	}
 
 	/**
-	 * Helper function to help calculate the determinant of a sparse matrix.
+	 * Calculate the determinant of the given compressed sparse matrix, using a
+	 * sparse LU decomposition with a fill-reducing ordering.
 	 * 
-	 * @param a
-	 * @param n
-	 * @return
+	 * @param m
+	 *            - the compressed matrix to calculate the determinant of
+	 * @return - the determinant of the matrix
+	 * @throws InvalidMatrixDimensionException
 	 */
-	private static double determinantSparse(DoubleSparseMatrix a, int n)
+	public static double determinantSparse(DoubleCompressedMatrix m) throws InvalidMatrixDimensionException
 	{
-		double det = 0;
-		int sign = 1;
-		int p = 0;
-		int q = 0;
-
-		if (n == 1)
-			det = a.get(0, 0);
-		else
-		{
-			DoubleSparseMatrix b = new DoubleSparseMatrix(n - 1, n - 1);
-
-			for (int x = 0 ; x < n ; x++)
-			{
-				p = 0;
-				q = 0;
-
-				for (int i = 1 ; i < n ; ++i)
-				{
-					for (int j = 0 ; j < n ; ++j)
-					{
-						if (j != x)
-						{
-							b.set(p, q++, a.get(i, j));
-
-							if (q % (n - 1) == 0)
-							{
-								++p;
-								q = 0;
-							}
-						}
-					}
-				}
-
-				det = det + a.get(0, x) * determinant(b, n - 1) * sign;
+		if (null == m)
+			throw new NullPointerException();
 
-				sign = -sign;
-			}
-		}
+		if (m.getRowDimension() != m.getColumnDimension())
+			throw new InvalidMatrixDimensionException();
 
-		return det;
+		return new SparseLUDecomposition(m).determinant();
 	}
 
 	/**
@@ -170,7 +113,11 @@ public class MatrixMath
 	}
 
 	/**
-	 * Add two matrices and return the result in a new matrix.
+	 * Add two matrices and return the result in a new matrix. When both
+	 * matrices are structured and their sum fits a band, a triangle or a
+	 * symmetric matrix, the result has that structure and is computed from the
+	 * stored elements only. When either matrix is stored outside the heap, the
+	 * result is a DoubleOffHeapMatrix, which the caller should close().
 	 * 
 	 * @param m1
 	 * @param m2
@@ -188,17 +135,73 @@ public class MatrixMath
 		int rows = m1.getRowDimension();
 		int cols = m1.getColumnDimension();
 
-		DoubleMatrix m = new DoubleMatrix(rows, cols);
+		DoubleMatrix s = StructuredKernels.add(m1, m2, false);
 
-		for (int r = 0 ; r < rows ; ++r)
-			for (int c = 0 ; c < cols ; ++c)
-				m.set(r, c, m1.get(r, c) + m2.get(r, c));
+		if (s != null)
+			return s;
+
+		DoubleMatrix m = denseTarget(rows, cols, m1, m2);
+
+		elementWise(m, m1, m2, false);
 
 		return m;
 	}
 
 	/**
-	 * Add two matrices and return the result in a new sparse matrix.
+	 * Add matrix m2 to matrix m1, storing the result in m1. When m1 is a sparse
+	 * matrix and m2 stores only its nonzeros, only those are visited.
+	 * 
+	 * @param m1
+	 *            - the matrix to add to, which receives the result
+	 * @param m2
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static void addInPlace(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	{
+		if (m1 == null || m2 == null)
+			throw new NullPointerException();
+
+		if (!dimensionsEqual(m1, m2))
+			throw new InvalidMatrixDimensionException();
+
+		m1.invalidateHashCode();
+
+		if (m1 instanceof DoubleSparseMatrix && SparseKernels.hasSparseStorage(m2))
+		{
+			SparseKernels.addInPlace((DoubleSparseMatrix) m1, (m1 == m2) ? m2.copy() : m2, false);
+			return;
+		}
+
+		elementWise(m1, m1, unalias(m1, m2), false);
+	}
+
+	/**
+	 * Add two matrices and store the result in the given destination matrix,
+	 * which may be one of the operands.
+	 * 
+	 * @param dst
+	 *            - the matrix that receives the result
+	 * @param m1
+	 * @param m2
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static void addInto(DoubleMatrix dst, DoubleMatrix m1, DoubleMatrix m2)
+			throws InvalidMatrixDimensionException
+	{
+		if (dst == null || m1 == null || m2 == null)
+			throw new NullPointerException();
+
+		if (!dimensionsEqual(m1, m2) || !dimensionsEqual(dst, m1))
+			throw new InvalidMatrixDimensionException();
+
+		dst.invalidateHashCode();
+
+		elementWise(dst, unalias(dst, m1), unalias(dst, m2), false);
+	}
+
+	/**
+	 * Add two matrices and return the result in a new sparse matrix. When both
+	 * matrices store only their nonzeros, only those are visited.
 	 * 
 	 * @param m1
 	 * @param m2
@@ -213,21 +216,40 @@ public class MatrixMath
 		if (!dimensionsEqual(m1, m2))
 			throw new InvalidMatrixDimensionException();
 
-		int rows = m1.getRowDimension();
-		int cols = m1.getColumnDimension();
+		DoubleSparseMatrix m = new DoubleSparseMatrix(m1.getRowDimension(), m1.getColumnDimension());
 
-		DoubleSparseMatrix m = new DoubleSparseMatrix(rows, cols);
+		elementWiseSparse(m, m1, m2, false);
 
-		for (int r = 0 ; r < rows ; ++r)
-			for (int c = 0 ; c < cols ; ++c)
-			{
-				double val = m1.get(r, c) + m2.get(r, c);
+		return m;
+	}
 
-				if (val != 0.0)
-					m.set(r, c, val);
-			}
+	/**
+	 * Add two matrices and store the result in the given sparse destination
+	 * matrix, which may be one of the operands. The storage of the destination
+	 * is reused.
+	 * 
+	 * @param dst
+	 *            - the matrix that receives the result
+	 * @param m1
+	 * @param m2
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static void addSparseInto(DoubleSparseMatrix dst, DoubleMatrix m1, DoubleMatrix m2)
+			throws InvalidMatrixDimensionException
+	{
+		if (dst == null || m1 == null || m2 == null)
+			throw new NullPointerException();
 
-		return m;
+		if (!dimensionsEqual(m1, m2) || !dimensionsEqual(dst, m1))
+			throw new InvalidMatrixDimensionException();
+
+		dst.invalidateHashCode();
+
+		DoubleSparseMatrix m = sparseTarget(dst, m1, m2);
+
+		elementWiseSparse(m, m1, m2, false);
+
+		dst.m_sparseData = m.m_sparseData;
 	}
 
 	/**
@@ -250,6 +272,27 @@ public class MatrixMath
 		return m;
 	}
 
+	/**
+	 * Construct and return a diagonal identity matrix with dimensions n by n,
+	 * which stores only its n diagonal elements.
+	 * 
+	 * @param n
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleDiagonalMatrix identityDiagonal(int n) throws InvalidMatrixDimensionException
+	{
+		if (n < 1)
+			throw new InvalidMatrixDimensionException();
+
+		DoubleDiagonalMatrix m = new DoubleDiagonalMatrix(n);
+
+		for (int i = 0 ; i < n ; ++i)
+			m.setDouble(i, i, 1.0);
+
+		return m;
+	}
+
 	/**
 	 * Construct and return a sparse identity matrix with dimensions n by n.
 	 * 
@@ -271,50 +314,82 @@ public class MatrixMath
 	}
 
 	/**
-	 * Multiply two given matrices and return the result in a new matrix.
+	 * Calculate the inverse of the given square matrix, by solving for the
+	 * columns of the identity as solve() does.
 	 * 
-	 * @param m1
-	 * @param m2
+	 * @param m
 	 * @return
 	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
 	 */
-	public static DoubleMatrix multiply(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	public static DoubleMatrix inverse(DoubleMatrix m) throws InvalidMatrixDimensionException, SingularMatrixException
 	{
-		if (m1 == null || m2 == null)
+		if (null == m)
 			throw new NullPointerException();
 
-		if (m1.getColumnDimension() != m2.getRowDimension())
+		if (m.getRowDimension() != m.getColumnDimension())
 			throw new InvalidMatrixDimensionException();
 
-		DoubleMatrix m = new DoubleMatrix(m1.getRowDimension(), m2.getColumnDimension());
+		return solve(m, identity(m.getRowDimension()));
+	}
 
-		for (int r = 0 ; r < m.getRowDimension() ; ++r)
-		{
-			for (int c = 0 ; c < m.getColumnDimension() ; ++c)
-			{
-				double val = 0.0;
+	/**
+	 * Find the x that minimizes the 2-norm of a * x - b, using a Householder
+	 * QR decomposition. The matrix must have at least as many rows as
+	 * columns; when it is square the result is the solution of a * x = b.
+	 * 
+	 * @param a
+	 * @param b
+	 *            - the right-hand side, with one element per row of a
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 *             if the columns of a are linearly dependent
+	 */
+	public static double[] leastSquares(DoubleMatrix a, double[] b)
+			throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (a == null || b == null)
+			throw new NullPointerException();
 
-				for (int z = 0 ; z < m1.getColumnDimension() ; ++z)
-					val += m1.get(r, z) * m2.get(z, c);
+		return new QRDecomposition(a).solve(b);
+	}
 
-				m.set(r, c, val);
-			}
-		}
+	/**
+	 * Find the X that minimizes the 2-norm of each column of a * X - b, using
+	 * one Householder QR decomposition for all of the right-hand sides.
+	 * 
+	 * @param a
+	 * @param b
+	 *            - the right-hand sides, with as many rows as a
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 *             if the columns of a are linearly dependent
+	 */
+	public static DoubleMatrix leastSquares(DoubleMatrix a, DoubleMatrix b)
+			throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (a == null || b == null)
+			throw new NullPointerException();
 
-		return m;
+		return new QRDecomposition(a).solve(b);
 	}
 
 	/**
-	 * Multiply two given sparse matrices and return the result in a new sparse
-	 * matrix.
+	 * Multiply two given matrices and return the result in a new matrix. When
+	 * both matrices are array-backed the cache-blocked kernel is used. A banded,
+	 * diagonal or triangular operand is multiplied over its band only; the
+	 * product of two of them is banded, diagonal or triangular when its band
+	 * is, and dense otherwise. When either matrix is stored outside the heap,
+	 * the result is a DoubleOffHeapMatrix, which the caller should close().
 	 * 
 	 * @param m1
 	 * @param m2
 	 * @return
 	 * @throws InvalidMatrixDimensionException
 	 */
-	public static DoubleSparseMatrix multiplySparse(DoubleMatrix m1, DoubleMatrix m2)
-			throws InvalidMatrixDimensionException
+	public static DoubleMatrix multiply(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
 	{
 		if (m1 == null || m2 == null)
 			throw new NullPointerException();
@@ -322,132 +397,975 @@ public class MatrixMath
 		if (m1.getColumnDimension() != m2.getRowDimension())
 			throw new InvalidMatrixDimensionException();
 
-		DoubleSparseMatrix m = new DoubleSparseMatrix(m1.getRowDimension(), m2.getColumnDimension());
+		DoubleMatrix s = StructuredKernels.multiply(m1, m2);
 
-		for (int r = 0 ; r < m.getRowDimension() ; ++r)
-		{
-			for (int c = 0 ; c < m.getColumnDimension() ; ++c)
-			{
-				double val = 0.0;
+		if (s != null)
+			return s;
 
-				for (int z = 0 ; z < m1.getColumnDimension() ; ++z)
-					val += m1.get(r, z) * m2.get(z, c);
+		DoubleMatrix m = denseTarget(m1.getRowDimension(), m2.getColumnDimension(), m1, m2);
 
-				if (val != 0.0)
-					m.set(r, c, val);
-			}
-		}
+		product(m, m1, m2);
 
 		return m;
 	}
 
 	/**
-	 * Multiply the given matrix by a scalar and return the result in a new matrix.
+	 * Multiply two given matrices and store the result in the given destination
+	 * matrix. When the destination shares storage with either operand the
+	 * product is computed into a temporary matrix and then copied; otherwise no
+	 * memory is allocated.
 	 * 
-	 * @param m
-	 * @param scalar
-	 * @return
+	 * @param dst
+	 *            - the matrix that receives the result
+	 * @param m1
+	 * @param m2
+	 * @throws InvalidMatrixDimensionException
 	 */
-	public static DoubleMatrix scalarMultiply(DoubleMatrix m, double scalar)
+	public static void multiplyInto(DoubleMatrix dst, DoubleMatrix m1, DoubleMatrix m2)
+			throws InvalidMatrixDimensionException
 	{
-		if (m == null)
+		if (dst == null || m1 == null || m2 == null)
 			throw new NullPointerException();
 
-		DoubleMatrix v = new DoubleMatrix(m.getRowDimension(), m.getColumnDimension());
+		if (m1.getColumnDimension() != m2.getRowDimension() || dst.getRowDimension() != m1.getRowDimension()
+				|| dst.getColumnDimension() != m2.getColumnDimension())
+			throw new InvalidMatrixDimensionException();
+
+		dst.invalidateHashCode();
 
-		for (int r = 0 ; r < m.getRowDimension() ; ++r)
-			for (int c = 0 ; c < m.getColumnDimension() ; ++c)
-				v.set(r, c, scalar * m.get(r, c));
+		if (overlaps(dst, m1) || overlaps(dst, m2))
+		{
+			int rows = dst.getRowDimension();
+			int cols = dst.getColumnDimension();
 
-		return v;
+			if (isBufferBacked(dst))
+			{
+				try (DoubleOffHeapMatrix m = new DoubleOffHeapMatrix(rows, cols))
+				{
+					product(m, m1, m2);
+					elementWise(dst, m, null, false);
+				}
+
+				return;
+			}
+
+			DoubleMatrix m = new DoubleMatrix(rows, cols);
+
+			product(m, m1, m2);
+			elementWise(dst, m, null, false);
+			return;
+		}
+
+		product(dst, m1, m2);
 	}
 
 	/**
-	 * Multiply the given sparse matrix by a scalar and return the result in a new
-	 * matrix.
+	 * Multiply two given sparse matrices and return the result in a new sparse
+	 * matrix. The product is computed row by row from the stored nonzeros only
+	 * (Gustavson's algorithm), so its cost scales with the number of nonzeros
+	 * and multiply-adds rather than with the dimensions.
 	 * 
-	 * @param m
-	 * @param scalar
+	 * @param m1
+	 * @param m2
 	 * @return
+	 * @throws InvalidMatrixDimensionException
 	 */
-	public static DoubleMatrix scalarMultiplySparse(DoubleMatrix m, double scalar)
+	public static DoubleSparseMatrix multiplySparse(DoubleMatrix m1, DoubleMatrix m2)
+			throws InvalidMatrixDimensionException
 	{
-		if (m == null)
+		if (m1 == null || m2 == null)
 			throw new NullPointerException();
 
-		DoubleSparseMatrix v = new DoubleSparseMatrix(m.getRowDimension(), m.getColumnDimension());
+		if (m1.getColumnDimension() != m2.getRowDimension())
+			throw new InvalidMatrixDimensionException();
 
-		for (int r = 0 ; r < m.getRowDimension() ; ++r)
-			for (int c = 0 ; c < m.getColumnDimension() ; ++c)
-			{
-				double val = scalar * m.get(r, c);
-				if (val != 0.0)
-					v.set(r, c, val);
-			}
+		DoubleSparseMatrix m = new DoubleSparseMatrix(m1.getRowDimension(), m2.getColumnDimension());
 
-		return v;
+		productSparse(m, m1, m2);
+
+		return m;
 	}
 
 	/**
-	 * Subtract matrix m2 from matrix m1 and return the result in a new matrix.
-	 * (e.g. returns m1-m2).
+	 * Multiply two given matrices and store the result in the given sparse
+	 * destination matrix, which may be one of the operands. The storage of the
+	 * destination is reused.
 	 * 
+	 * @param dst
+	 *            - the matrix that receives the result
 	 * @param m1
 	 * @param m2
-	 * @return
 	 * @throws InvalidMatrixDimensionException
 	 */
-	public static DoubleMatrix subtract(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	public static void multiplySparseInto(DoubleSparseMatrix dst, DoubleMatrix m1, DoubleMatrix m2)
+			throws InvalidMatrixDimensionException
 	{
-		if (m1 == null || m2 == null)
+		if (dst == null || m1 == null || m2 == null)
 			throw new NullPointerException();
 
-		if (!dimensionsEqual(m1, m2))
+		if (m1.getColumnDimension() != m2.getRowDimension() || dst.getRowDimension() != m1.getRowDimension()
+				|| dst.getColumnDimension() != m2.getColumnDimension())
 			throw new InvalidMatrixDimensionException();
 
-		int rows = m1.getRowDimension();
-		int cols = m1.getColumnDimension();
+		dst.invalidateHashCode();
 
-		DoubleMatrix m = new DoubleMatrix(rows, cols);
+		DoubleSparseMatrix m = sparseTarget(dst, m1, m2);
 
-		for (int r = 0 ; r < rows ; ++r)
-			for (int c = 0 ; c < cols ; ++c)
-				m.set(r, c, m1.get(r, c) - m2.get(r, c));
+		productSparse(m, m1, m2);
 
-		return m;
+		dst.m_sparseData = m.m_sparseData;
 	}
 
 	/**
-	 * Subtract sparse matrix m2 from sparse matrix m1 and return the result in a
-	 * new sparse matrix. (e.g. returns m1-m2).
+	 * Multiply two given sparse matrices and return the result in a new
+	 * compressed sparse row matrix, computed from the stored nonzeros only.
 	 * 
 	 * @param m1
 	 * @param m2
 	 * @return
 	 * @throws InvalidMatrixDimensionException
 	 */
-	public static DoubleSparseMatrix subtractSparse(DoubleMatrix m1, DoubleMatrix m2)
+	public static DoubleCompressedRowMatrix multiplyCompressed(DoubleMatrix m1, DoubleMatrix m2)
 			throws InvalidMatrixDimensionException
 	{
 		if (m1 == null || m2 == null)
 			throw new NullPointerException();
 
-		if (!dimensionsEqual(m1, m2))
+		if (m1.getColumnDimension() != m2.getRowDimension())
 			throw new InvalidMatrixDimensionException();
 
-		int rows = m1.getRowDimension();
-		int cols = m1.getColumnDimension();
+		DoubleCompressedMatrix a = SparseKernels.toFiniteCompressedRows(m1);
+		DoubleCompressedMatrix b = (a == null) ? null : SparseKernels.toFiniteCompressedRows(m2);
 
-		DoubleSparseMatrix m = new DoubleSparseMatrix(rows, cols);
+		if (a != null && b != null)
+			return SparseKernels.multiply(a, b);
 
-		for (int r = 0 ; r < rows ; ++r)
-			for (int c = 0 ; c < cols ; ++c)
-			{
-				double val = m1.get(r, c) - m2.get(r, c);
+		return multiplySparse(m1, m2).toCompressedRowMatrix();
+	}
 
-				if (val != 0.0)
-					m.set(r, c, val);
-			}
+	/**
+	 * Multiply the given matrix by a vector and return the result in a new
+	 * vector. For sparse, compressed and structured matrices only the stored
+	 * elements are visited.
+	 * 
+	 * @param m
+	 * @param x
+	 *            - the vector, with one entry per column of m
+	 * @return - the product, with one entry per row of m
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static double[] multiply(DoubleMatrix m, double[] x) throws InvalidMatrixDimensionException
+	{
+		if (m == null || x == null)
+			throw new NullPointerException();
+
+		if (m.getColumnDimension() != x.length)
+			throw new InvalidMatrixDimensionException();
+
+		if (m instanceof DoubleStructuredMatrix)
+			return StructuredKernels.multiply((DoubleStructuredMatrix) m, x);
+
+		return SparseKernels.multiply(m, x);
+	}
+
+	/**
+	 * Multiply the given matrix by a scalar and return the result in a new matrix.
+	 * A structured matrix multiplied by a finite scalar keeps its structure, and
+	 * a matrix stored outside the heap gives a DoubleOffHeapMatrix, which the
+	 * caller should close().
+	 * 
+	 * @param m
+	 * @param scalar
+	 * @return
+	 */
+	public static DoubleMatrix scalarMultiply(DoubleMatrix m, double scalar)
+	{
+		if (m == null)
+			throw new NullPointerException();
+
+		if (m instanceof DoubleStructuredMatrix && !Double.isNaN(scalar) && !Double.isInfinite(scalar))
+			return StructuredKernels.scalarMultiply((DoubleStructuredMatrix) m, scalar);
+
+		DoubleMatrix v = denseTarget(m.getRowDimension(), m.getColumnDimension(), m, null);
+
+		scale(v, m, scalar);
+
+		return v;
+	}
+
+	/**
+	 * Multiply the given matrix by a scalar and store the result in the given
+	 * destination matrix, which may be the matrix itself.
+	 * 
+	 * @param dst
+	 *            - the matrix that receives the result
+	 * @param m
+	 * @param scalar
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static void scalarMultiplyInto(DoubleMatrix dst, DoubleMatrix m, double scalar)
+			throws InvalidMatrixDimensionException
+	{
+		if (dst == null || m == null)
+			throw new NullPointerException();
+
+		if (!dimensionsEqual(dst, m))
+			throw new InvalidMatrixDimensionException();
+
+		dst.invalidateHashCode();
+
+		scale(dst, unalias(dst, m), scalar);
+	}
+
+	/**
+	 * Multiply the given sparse matrix by a scalar and return the result in a new
+	 * matrix. When the matrix stores only its nonzeros and the scalar is finite,
+	 * only the nonzeros are visited.
+	 * 
+	 * @param m
+	 * @param scalar
+	 * @return
+	 */
+	public static DoubleMatrix scalarMultiplySparse(DoubleMatrix m, double scalar)
+	{
+		if (m == null)
+			throw new NullPointerException();
+
+		DoubleSparseMatrix v = new DoubleSparseMatrix(m.getRowDimension(), m.getColumnDimension());
+
+		scaleSparse(v, m, scalar);
+
+		return v;
+	}
+
+	/**
+	 * Multiply the given matrix by a scalar and store the result in the given
+	 * sparse destination matrix, which may be the matrix itself. The storage of
+	 * the destination is reused.
+	 * 
+	 * @param dst
+	 *            - the matrix that receives the result
+	 * @param m
+	 * @param scalar
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static void scalarMultiplySparseInto(DoubleSparseMatrix dst, DoubleMatrix m, double scalar)
+			throws InvalidMatrixDimensionException
+	{
+		if (dst == null || m == null)
+			throw new NullPointerException();
+
+		if (!dimensionsEqual(dst, m))
+			throw new InvalidMatrixDimensionException();
+
+		dst.invalidateHashCode();
+
+		DoubleSparseMatrix v = sparseTarget(dst, m, m);
+
+		scaleSparse(v, m, scalar);
+
+		dst.m_sparseData = v.m_sparseData;
+	}
+
+	/**
+	 * Multiply the given matrix by a scalar in place. For a sparse matrix and a
+	 * finite scalar only the stored nonzeros are visited.
+	 * 
+	 * @param m
+	 *            - the matrix to scale, which receives the result
+	 * @param scalar
+	 */
+	public static void scaleInPlace(DoubleMatrix m, double scalar)
+	{
+		if (m == null)
+			throw new NullPointerException();
+
+		m.invalidateHashCode();
+
+		if (m instanceof DoubleSparseMatrix && !Double.isNaN(scalar) && !Double.isInfinite(scalar))
+		{
+			SparseKernels.scaleInPlace((DoubleSparseMatrix) m, scalar);
+			return;
+		}
+
+		scale(m, m, scalar);
+	}
+
+	/**
+	 * Solve a * x = b for the given square matrix. A triangular or diagonal
+	 * matrix is solved by substitution over its band, a symmetric matrix by a
+	 * Cholesky decomposition when it is positive definite, and any other
+	 * matrix by an LU decomposition with partial pivoting.
+	 * 
+	 * @param a
+	 * @param b
+	 *            - the right-hand side, with one element per row of a
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 */
+	public static double[] solve(DoubleMatrix a, double[] b) throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (a == null || b == null)
+			throw new NullPointerException();
+
+		if (a.getRowDimension() != a.getColumnDimension() || b.length != a.getRowDimension())
+			throw new InvalidMatrixDimensionException();
+
+		if (StructuredKernels.isTriangular(a))
+		{
+			double[] x = b.clone();
+
+			StructuredKernels.solveTriangular((DoubleStructuredMatrix) a, x, 1);
+
+			return x;
+		}
+
+		if (a instanceof DoubleSymmetricMatrix)
+		{
+			try
+			{
+				return new CholeskyDecomposition(a).solve(b);
+			}
+			catch (NotPositiveDefiniteException e)
+			{
+				// Indefinite; fall back to LU.
+			}
+		}
+
+		return new LUDecomposition(a).solve(b);
+	}
+
+	/**
+	 * Solve a * X = b for every column of b, factoring the square matrix once
+	 * as solve(DoubleMatrix, double[]) does.
+	 * 
+	 * @param a
+	 * @param b
+	 *            - the right-hand sides, with as many rows as a
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 */
+	public static DoubleMatrix solve(DoubleMatrix a, DoubleMatrix b)
+			throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (a == null || b == null)
+			throw new NullPointerException();
+
+		if (a.getRowDimension() != a.getColumnDimension() || b.getRowDimension() != a.getRowDimension())
+			throw new InvalidMatrixDimensionException();
+
+		if (StructuredKernels.isTriangular(a))
+		{
+			int n = b.getRowDimension();
+			int nrhs = b.getColumnDimension();
+			DoubleMatrix x = new DoubleMatrix(n, nrhs);
+
+			for (int i = 0 ; i < n ; ++i)
+				readRow(b, i, 0, x.m_values, i * nrhs, nrhs);
+
+			StructuredKernels.solveTriangular((DoubleStructuredMatrix) a, x.m_values, nrhs);
+
+			return x;
+		}
+
+		if (a instanceof DoubleSymmetricMatrix)
+		{
+			try
+			{
+				return new CholeskyDecomposition(a).solve(b);
+			}
+			catch (NotPositiveDefiniteException e)
+			{
+				// Indefinite; fall back to LU.
+			}
+		}
+
+		return new LUDecomposition(a).solve(b);
+	}
+
+	/**
+	 * Subtract matrix m2 from matrix m1 and return the result in a new matrix.
+	 * (e.g. returns m1-m2). Structured matrices and matrices stored outside the
+	 * heap are handled as in add().
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleMatrix subtract(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	{
+		if (m1 == null || m2 == null)
+			throw new NullPointerException();
+
+		if (!dimensionsEqual(m1, m2))
+			throw new InvalidMatrixDimensionException();
+
+		int rows = m1.getRowDimension();
+		int cols = m1.getColumnDimension();
+
+		DoubleMatrix s = StructuredKernels.add(m1, m2, true);
+
+		if (s != null)
+			return s;
+
+		DoubleMatrix m = denseTarget(rows, cols, m1, m2);
+
+		elementWise(m, m1, m2, true);
+
+		return m;
+	}
+
+	/**
+	 * Subtract matrix m2 from matrix m1, storing the result in m1. When m1 is a
+	 * sparse matrix and m2 stores only its nonzeros, only those are visited.
+	 * 
+	 * @param m1
+	 *            - the matrix to subtract from, which receives the result
+	 * @param m2
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static void subtractInPlace(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	{
+		if (m1 == null || m2 == null)
+			throw new NullPointerException();
+
+		if (!dimensionsEqual(m1, m2))
+			throw new InvalidMatrixDimensionException();
+
+		m1.invalidateHashCode();
+
+		if (m1 instanceof DoubleSparseMatrix && SparseKernels.hasSparseStorage(m2))
+		{
+			SparseKernels.addInPlace((DoubleSparseMatrix) m1, (m1 == m2) ? m2.copy() : m2, true);
+			return;
+		}
+
+		elementWise(m1, m1, unalias(m1, m2), true);
+	}
+
+	/**
+	 * Subtract matrix m2 from matrix m1 and store the result in the given
+	 * destination matrix, which may be one of the operands.
+	 * 
+	 * @param dst
+	 *            - the matrix that receives the result
+	 * @param m1
+	 * @param m2
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static void subtractInto(DoubleMatrix dst, DoubleMatrix m1, DoubleMatrix m2)
+			throws InvalidMatrixDimensionException
+	{
+		if (dst == null || m1 == null || m2 == null)
+			throw new NullPointerException();
+
+		if (!dimensionsEqual(m1, m2) || !dimensionsEqual(dst, m1))
+			throw new InvalidMatrixDimensionException();
+
+		dst.invalidateHashCode();
+
+		elementWise(dst, unalias(dst, m1), unalias(dst, m2), true);
+	}
+
+	/**
+	 * Subtract sparse matrix m2 from sparse matrix m1 and return the result in a
+	 * new sparse matrix. (e.g. returns m1-m2). When both matrices store only
+	 * their nonzeros, only those are visited.
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleSparseMatrix subtractSparse(DoubleMatrix m1, DoubleMatrix m2)
+			throws InvalidMatrixDimensionException
+	{
+		if (m1 == null || m2 == null)
+			throw new NullPointerException();
+
+		if (!dimensionsEqual(m1, m2))
+			throw new InvalidMatrixDimensionException();
+
+		DoubleSparseMatrix m = new DoubleSparseMatrix(m1.getRowDimension(), m1.getColumnDimension());
+
+		elementWiseSparse(m, m1, m2, true);
+
+		return m;
+	}
+
+	/**
+	 * Subtract matrix m2 from matrix m1 and store the result in the given sparse
+	 * destination matrix, which may be one of the operands. The storage of the
+	 * destination is reused.
+	 * 
+	 * @param dst
+	 *            - the matrix that receives the result
+	 * @param m1
+	 * @param m2
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static void subtractSparseInto(DoubleSparseMatrix dst, DoubleMatrix m1, DoubleMatrix m2)
+			throws InvalidMatrixDimensionException
+	{
+		if (dst == null || m1 == null || m2 == null)
+			throw new NullPointerException();
+
+		if (!dimensionsEqual(m1, m2) || !dimensionsEqual(dst, m1))
+			throw new InvalidMatrixDimensionException();
+
+		dst.invalidateHashCode();
+
+		DoubleSparseMatrix m = sparseTarget(dst, m1, m2);
+
+		elementWiseSparse(m, m1, m2, true);
+
+		dst.m_sparseData = m.m_sparseData;
+	}
+
+	/**
+	 * Helper function to compute dst = m1 + m2 (or m1 - m2) element by element,
+	 * or to copy m1 into dst when m2 is null. Each element of dst is written
+	 * only after the same element of the operands has been read.
+	 */
+	private static void elementWise(DoubleMatrix dst, DoubleMatrix m1, DoubleMatrix m2, boolean subtract)
+	{
+		int rows = dst.getRowDimension();
+		int cols = dst.getColumnDimension();
+
+		if (dst.m_values != null && m1.m_values != null && (m2 == null || m2.m_values != null))
+		{
+			double[] a = m1.m_values;
+			double[] d = dst.m_values;
+
+			for (int r = 0 ; r < rows ; ++r)
+			{
+				int ia = m1.m_offset + r * m1.m_rowStride;
+				int id = dst.m_offset + r * dst.m_rowStride;
+
+				if (m2 == null)
+				{
+					System.arraycopy(a, ia, d, id, cols);
+					continue;
+				}
+
+				double[] b = m2.m_values;
+				int ib = m2.m_offset + r * m2.m_rowStride;
+
+				if (subtract)
+					KERNELS.subtract(a, ia, b, ib, d, id, cols);
+				else
+					KERNELS.add(a, ia, b, ib, d, id, cols);
+			}
+
+			return;
+		}
+
+		if (readsByRow(dst) || readsByRow(m1) || readsByRow(m2))
+		{
+			elementWiseRows(dst, m1, m2, subtract);
+			return;
+		}
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			for (int c = 0 ; c < cols ; ++c)
+			{
+				double a = m1.getDouble(r, c);
+
+				if (m2 == null)
+					dst.setDouble(r, c, a);
+				else
+					dst.setDouble(r, c, subtract ? a - m2.getDouble(r, c) : a + m2.getDouble(r, c));
+			}
+		}
+	}
+
+	/**
+	 * Helper function to compute m1 + m2 (or m1 - m2) into the empty sparse
+	 * matrix dst.
+	 */
+	private static void elementWiseSparse(DoubleSparseMatrix dst, DoubleMatrix m1, DoubleMatrix m2,
+			boolean subtract)
+	{
+		if (SparseKernels.hasSparseStorage(m1) && SparseKernels.hasSparseStorage(m2))
+		{
+			SparseKernels.add(dst, m1, m2, subtract);
+			return;
+		}
+
+		// Each position receives at most one nonzero from each operand, so the
+		// accumulated sum is exactly m1.get(r, c) +/- m2.get(r, c).
+		m1.forEachNonZero(dst::accumulate);
+
+		if (subtract)
+			m2.forEachNonZero((row, col, value) -> dst.accumulate(row, col, -value));
+		else
+			m2.forEachNonZero(dst::accumulate);
+	}
+
+	/**
+	 * Helper function to compute dst = scalar * m element by element.
+	 */
+	private static void scale(DoubleMatrix dst, DoubleMatrix m, double scalar)
+	{
+		int rows = dst.getRowDimension();
+		int cols = dst.getColumnDimension();
+
+		if (dst.m_values != null && m.m_values != null)
+		{
+			double[] a = m.m_values;
+			double[] d = dst.m_values;
+
+			for (int r = 0 ; r < rows ; ++r)
+			{
+				int ia = m.m_offset + r * m.m_rowStride;
+				int id = dst.m_offset + r * dst.m_rowStride;
+
+				KERNELS.scale(scalar, a, ia, d, id, cols);
+			}
+
+			return;
+		}
+
+		if (readsByRow(dst) || readsByRow(m))
+		{
+			double[] row = new double[Math.min(cols, ROW_SEGMENT)];
+
+			for (int r = 0 ; r < rows ; ++r)
+			{
+				for (int c = 0 ; c < cols ; c += row.length)
+				{
+					int n = Math.min(row.length, cols - c);
+
+					readRow(m, r, c, row, 0, n);
+
+					KERNELS.scale(scalar, row, 0, row, 0, n);
+
+					writeRow(dst, r, c, row, 0, n);
+				}
+			}
+
+			return;
+		}
+
+		for (int r = 0 ; r < rows ; ++r)
+			for (int c = 0 ; c < cols ; ++c)
+				dst.setDouble(r, c, scalar * m.getDouble(r, c));
+	}
+
+	/**
+	 * Helper function to compute scalar * m into the empty sparse matrix dst.
+	 */
+	private static void scaleSparse(DoubleSparseMatrix dst, DoubleMatrix m, double scalar)
+	{
+		if (SparseKernels.hasSparseStorage(m) && !Double.isNaN(scalar) && !Double.isInfinite(scalar))
+		{
+			SparseKernels.scalarMultiply(dst, m, scalar);
+			return;
+		}
+
+		for (int r = 0 ; r < m.getRowDimension() ; ++r)
+		{
+			for (int c = 0 ; c < m.getColumnDimension() ; ++c)
+			{
+				double val = scalar * m.getDouble(r, c);
+
+				if (val != 0.0)
+					dst.setDouble(r, c, val);
+			}
+		}
+	}
+
+	/**
+	 * Helper function to compute dst = m1 * m2, where dst does not share storage
+	 * with either operand.
+	 */
+	private static void product(DoubleMatrix dst, DoubleMatrix m1, DoubleMatrix m2)
+	{
+		int rows = dst.getRowDimension();
+		int cols = dst.getColumnDimension();
+		int inner = m1.getColumnDimension();
+
+		if (dst.m_values != null && m1.m_values != null && m2.m_values != null)
+		{
+			for (int r = 0 ; r < rows ; ++r)
+			{
+				int id = dst.m_offset + r * dst.m_rowStride;
+				Arrays.fill(dst.m_values, id, id + cols, 0.0);
+			}
+
+			DoubleGemm.multiply(rows, cols, inner, m1.m_values, m1.m_offset, m1.m_rowStride, m2.m_values,
+					m2.m_offset, m2.m_rowStride, dst.m_values, dst.m_offset, dst.m_rowStride);
+
+			return;
+		}
+
+		if (readsByRow(dst) || readsByRow(m1) || readsByRow(m2))
+		{
+			productTiled(dst, m1, m2);
+			return;
+		}
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			for (int c = 0 ; c < cols ; ++c)
+			{
+				double val = 0.0;
+
+				for (int z = 0 ; z < inner ; ++z)
+					val += m1.getDouble(r, z) * m2.getDouble(z, c);
+
+				dst.setDouble(r, c, val);
+			}
+		}
+	}
+
+	/**
+	 * Helper function to compute dst = m1 * m2 in square tiles when an operand
+	 * is stored outside the heap. Each tile of the operands is read into a
+	 * reusable heap buffer with bulk row copies and multiplied with the
+	 * cache-blocked kernel, so the matrices are never copied whole.
+	 */
+	private static void productTiled(DoubleMatrix dst, DoubleMatrix m1, DoubleMatrix m2)
+	{
+		int rows = dst.getRowDimension();
+		int cols = dst.getColumnDimension();
+		int inner = m1.getColumnDimension();
+
+		double[] a = new double[Math.min(TILE, rows) * Math.min(TILE, inner)];
+		double[] b = new double[Math.min(TILE, inner) * Math.min(TILE, cols)];
+		double[] c = new double[Math.min(TILE, rows) * Math.min(TILE, cols)];
+
+		for (int i = 0 ; i < rows ; i += TILE)
+		{
+			int h = Math.min(TILE, rows - i);
+
+			for (int j = 0 ; j < cols ; j += TILE)
+			{
+				int w = Math.min(TILE, cols - j);
+
+				Arrays.fill(c, 0, h * w, 0.0);
+
+				for (int p = 0 ; p < inner ; p += TILE)
+				{
+					int k = Math.min(TILE, inner - p);
+
+					for (int r = 0 ; r < h ; ++r)
+						readRow(m1, i + r, p, a, r * k, k);
+
+					for (int z = 0 ; z < k ; ++z)
+						readRow(m2, p + z, j, b, z * w, w);
+
+					DoubleGemm.multiply(h, w, k, a, 0, k, b, 0, w, c, 0, w);
+				}
+
+				for (int r = 0 ; r < h ; ++r)
+					writeRow(dst, i + r, j, c, r * w, w);
+			}
+		}
+	}
+
+	/**
+	 * Helper function to compute dst = m1 + m2 (or m1 - m2, or a copy of m1
+	 * when m2 is null) a row segment at a time, with bulk reads and writes of
+	 * matrices stored outside the heap.
+	 */
+	private static void elementWiseRows(DoubleMatrix dst, DoubleMatrix m1, DoubleMatrix m2, boolean subtract)
+	{
+		int rows = dst.getRowDimension();
+		int cols = dst.getColumnDimension();
+
+		double[] a = new double[Math.min(cols, ROW_SEGMENT)];
+		double[] b = (m2 == null) ? null : new double[a.length];
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			for (int c = 0 ; c < cols ; c += a.length)
+			{
+				int n = Math.min(a.length, cols - c);
+
+				readRow(m1, r, c, a, 0, n);
+
+				if (m2 != null)
+				{
+					readRow(m2, r, c, b, 0, n);
+
+					if (subtract)
+						KERNELS.subtract(a, 0, b, 0, a, 0, n);
+					else
+						KERNELS.add(a, 0, b, 0, a, 0, n);
+				}
+
+				writeRow(dst, r, c, a, 0, n);
+			}
+		}
+	}
+
+	/**
+	 * Helper function to return a new dense matrix for the result of an
+	 * operation: in direct memory when an operand is stored outside the heap,
+	 * so that the result may be as large as the operands, and array-backed
+	 * otherwise.
+	 */
+	private static DoubleMatrix denseTarget(int rows, int cols, DoubleMatrix m1, DoubleMatrix m2)
+	{
+		if (isBufferBacked(m1) || (m2 != null && isBufferBacked(m2)))
+			return new DoubleOffHeapMatrix(rows, cols);
+
+		return new DoubleMatrix(rows, cols);
+	}
+
+	/**
+	 * Helper function to determine whether a matrix is stored outside the heap.
+	 */
+	private static boolean isBufferBacked(DoubleMatrix m)
+	{
+		return (m instanceof DoubleBufferMatrix);
+	}
+
+	/**
+	 * Helper function to determine whether a matrix without an array is read a
+	 * row segment at a time with readRow(): matrices stored outside the heap
+	 * and structured matrices.
+	 */
+	private static boolean readsByRow(DoubleMatrix m)
+	{
+		return (isBufferBacked(m) || m instanceof DoubleStructuredMatrix);
+	}
+
+	/**
+	 * Helper function to copy n values of a row of m, starting at the given
+	 * column, to dst[off..].
+	 */
+	static void readRow(DoubleMatrix m, int row, int col, double[] dst, int off, int n)
+	{
+		if (m.m_values != null)
+			System.arraycopy(m.m_values, m.m_offset + row * m.m_rowStride + col, dst, off, n);
+		else if (m instanceof DoubleBufferMatrix)
+			((DoubleBufferMatrix) m).getRow(row, col, dst, off, n);
+		else if (m instanceof DoubleStructuredMatrix)
+			((DoubleStructuredMatrix) m).getRow(row, col, dst, off, n);
+		else
+			for (int i = 0 ; i < n ; ++i)
+				dst[off + i] = m.getDouble(row, col + i);
+	}
+
+	/**
+	 * Helper function to copy n values from src[off..] into a row of m,
+	 * starting at the given column.
+	 */
+	static void writeRow(DoubleMatrix m, int row, int col, double[] src, int off, int n)
+	{
+		if (m.m_values != null)
+			System.arraycopy(src, off, m.m_values, m.m_offset + row * m.m_rowStride + col, n);
+		else if (m instanceof DoubleBufferMatrix)
+			((DoubleBufferMatrix) m).putRow(row, col, src, off, n);
+		else
+			for (int i = 0 ; i < n ; ++i)
+				m.setDouble(row, col + i, src[off + i]);
+	}
+
+	/**
+	 * Helper function to compute m1 * m2 into the empty sparse matrix dst, from
+	 * the stored nonzeros when no NaN or infinite values are stored.
+	 */
+	private static void productSparse(DoubleSparseMatrix dst, DoubleMatrix m1, DoubleMatrix m2)
+	{
+		DoubleCompressedMatrix a = SparseKernels.toFiniteCompressedRows(m1);
+		DoubleCompressedMatrix b = (a == null) ? null : SparseKernels.toFiniteCompressedRows(m2);
+
+		if (a != null && b != null)
+		{
+			DoubleCompressedMatrix p = SparseKernels.multiply(a, b);
+
+			for (int r = 0 ; r < p.getRowDimension() ; ++r)
+				for (int k = p.m_pointers[r] ; k < p.m_pointers[r + 1] ; ++k)
+					dst.setDouble(r, p.m_indices[k], p.m_nonZeroValues[k]);
+
+			return;
+		}
+
+		for (int r = 0 ; r < dst.getRowDimension() ; ++r)
+		{
+			for (int c = 0 ; c < dst.getColumnDimension() ; ++c)
+			{
+				double val = 0.0;
+
+				for (int z = 0 ; z < m1.getColumnDimension() ; ++z)
+					val += m1.getDouble(r, z) * m2.getDouble(z, c);
+
+				if (val != 0.0)
+					dst.setDouble(r, c, val);
+			}
+		}
+	}
+
+	/**
+	 * Helper function to return the sparse matrix that an Into operation should
+	 * fill: the destination itself, emptied, unless it shares storage with an
+	 * operand, in which case a new matrix whose storage is then moved to the
+	 * destination.
+	 */
+	private static DoubleSparseMatrix sparseTarget(DoubleSparseMatrix dst, DoubleMatrix m1, DoubleMatrix m2)
+	{
+		if (overlaps(dst, m1) || overlaps(dst, m2))
+			return new DoubleSparseMatrix(dst.getRowDimension(), dst.getColumnDimension());
+
+		dst.m_sparseData.clear();
+
+		return dst;
+	}
+
+	/**
+	 * Helper function to return the given operand, or a copy of it if writing
+	 * the result of an element-wise operation to dst could overwrite an element
+	 * of the operand before it is read. Operands that occupy exactly the same
+	 * elements as dst are safe, since each element is read before it is
+	 * written.
+	 */
+	static DoubleMatrix unalias(DoubleMatrix dst, DoubleMatrix m)
+	{
+		if (dst == m || !overlaps(dst, m))
+			return m;
+
+		if (dst.m_values != null && dst.m_values == m.m_values && dst.m_offset == m.m_offset
+				&& dst.m_rowStride == m.m_rowStride)
+			return m;
+
+		return m.copy();
+	}
+
+	/**
+	 * Helper function to determine whether two matrices may share storage:
+	 * array-backed matrices whose element ranges intersect within the same
+	 * array, or views of the same matrix.
+	 */
+	private static boolean overlaps(DoubleMatrix m1, DoubleMatrix m2)
+	{
+		if (m1.m_values != null || m2.m_values != null)
+		{
+			if (m1.m_values != m2.m_values)
+				return false;
+
+			int end1 = m1.m_offset + (m1.getRowDimension() - 1) * m1.m_rowStride + m1.getColumnDimension();
+			int end2 = m2.m_offset + (m2.getRowDimension() - 1) * m2.m_rowStride + m2.getColumnDimension();
+
+			return (m1.m_offset < end2 && m2.m_offset < end1);
+		}
+
+		return (storageOf(m1) == storageOf(m2));
+	}
+
+	/**
+	 * Helper function to return the matrix whose storage a matrix uses.
+	 */
+	private static DoubleMatrix storageOf(DoubleMatrix m)
+	{
+		while (m instanceof DoubleMatrixView)
+			m = ((DoubleMatrixView) m).m_parent;
 
 		return m;
 	}
@@ -0,0 +1,1098 @@
+package com.ryanantkowiak.matrix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming parser for matrices of doubles written as text.
+ *
+ * Values are separated by whitespace, commas or semicolons. The text is read
+ * through a fixed-size character buffer and each value is converted straight
+ * from the buffer, so no token strings are created and memory use does not
+ * grow with the size of the input (other than the matrix itself). Values whose
+ * digits fit exactly in a double and whose exponent is small are converted
+ * with one floating point multiply or divide (Clinger's fast path); anything
+ * else, such as NaN, Infinity or very long mantissas, falls back to
+ * Double.parseDouble.
+ *
+ * When the dimensions are given, values fill the matrix in row-major order and
+ * line breaks are ignored; missing values are left zero and extra values are
+ * ignored. When they are not given, each non-empty line is a row and every row
+ * must hold the same number of values.
+ *
+ * @author antko
+ *
+ */
+public final class MatrixParser
+{
+	/**
+	 * Separators besides whitespace used by the public methods.
+	 */
+	static final String DEFAULT_SEPARATORS = ",;";
+
+	/**
+	 * Characters read from the input at a time.
+	 */
+	static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Default number of characters below which text is not split into chunks for
+	 * parallel parsing.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Exact powers of ten representable as doubles.
+	 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Largest mantissa that a double holds exactly.
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	/**
+	 * Most significant digits accumulated before falling back, so the mantissa
+	 * cannot overflow a long.
+	 */
+	private static final int MAX_DIGITS = 18;
+
+	/**
+	 * Unused default constructor.
+	 */
+	private MatrixParser()
+	{
+	}
+
+	/**
+	 * Parse a matrix from a reader, inferring its dimensions from the lines of
+	 * the text.
+	 *
+	 * @param in
+	 * @return - a new matrix holding the parsed values
+	 * @throws IOException
+	 * @throws InvalidMatrixDimensionException
+	 *             - if the rows hold different numbers of values
+	 */
+	public static DoubleMatrix parse(Reader in) throws IOException, InvalidMatrixDimensionException
+	{
+		if (null == in)
+			throw new NullPointerException();
+
+		try
+		{
+			return parseInferred(new Scanner(in, DEFAULT_SEPARATORS), false);
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Parse a matrix with the given dimensions from a reader.
+	 *
+	 * @param in
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 * @return - a new matrix holding the parsed values
+	 * @throws IOException
+	 */
+	public static DoubleMatrix parse(Reader in, int rows, int cols) throws IOException
+	{
+		if (null == in)
+			throw new NullPointerException();
+
+		DoubleMatrix m = new DoubleMatrix(rows, cols);
+
+		try
+		{
+			parseInto(new Scanner(in, DEFAULT_SEPARATORS), m);
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+
+		return m;
+	}
+
+	/**
+	 * Parse a matrix from a stream of UTF-8 text, inferring its dimensions from
+	 * the lines of the text.
+	 *
+	 * @param in
+	 * @return - a new matrix holding the parsed values
+	 * @throws IOException
+	 * @throws InvalidMatrixDimensionException
+	 *             - if the rows hold different numbers of values
+	 */
+	public static DoubleMatrix parse(InputStream in) throws IOException, InvalidMatrixDimensionException
+	{
+		return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Parse a matrix with the given dimensions from a stream of UTF-8 text.
+	 *
+	 * @param in
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 * @return - a new matrix holding the parsed values
+	 * @throws IOException
+	 */
+	public static DoubleMatrix parse(InputStream in, int rows, int cols) throws IOException
+	{
+		return parse(new InputStreamReader(in, StandardCharsets.UTF_8), rows, cols);
+	}
+
+	/**
+	 * Parse a matrix from text, such as a String or CharBuffer, inferring its
+	 * dimensions from the lines of the text.
+	 *
+	 * @param text
+	 * @return - a new matrix holding the parsed values
+	 * @throws InvalidMatrixDimensionException
+	 *             - if the rows hold different numbers of values
+	 */
+	public static DoubleMatrix parse(CharSequence text) throws InvalidMatrixDimensionException
+	{
+		if (null == text)
+			throw new NullPointerException();
+
+		return parseInferred(new Scanner(text, 0, text.length(), DEFAULT_SEPARATORS), false);
+	}
+
+	/**
+	 * Parse a matrix with the given dimensions from text, such as a String or
+	 * CharBuffer.
+	 *
+	 * @param text
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 * @return - a new matrix holding the parsed values
+	 */
+	public static DoubleMatrix parse(CharSequence text, int rows, int cols)
+	{
+		return parse(text, rows, cols, DEFAULT_SEPARATORS);
+	}
+
+	/**
+	 * Parse a matrix with the given dimensions from text, with the given
+	 * separators in addition to whitespace.
+	 */
+	static DoubleMatrix parse(CharSequence text, int rows, int cols, String separators)
+	{
+		if (null == text)
+			throw new NullPointerException();
+
+		DoubleMatrix m = new DoubleMatrix(rows, cols);
+
+		parseInto(new Scanner(text, 0, text.length(), separators), m);
+
+		return m;
+	}
+
+	/**
+	 * Parse a sparse matrix from a reader, inferring its dimensions from the
+	 * lines of the text. Only the nonzero values are stored.
+	 *
+	 * @param in
+	 * @return - a new sparse matrix holding the parsed values
+	 * @throws IOException
+	 * @throws InvalidMatrixDimensionException
+	 *             - if the rows hold different numbers of values
+	 */
+	public static DoubleSparseMatrix parseSparse(Reader in) throws IOException, InvalidMatrixDimensionException
+	{
+		if (null == in)
+			throw new NullPointerException();
+
+		try
+		{
+			return (DoubleSparseMatrix) parseInferred(new Scanner(in, DEFAULT_SEPARATORS), true);
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Parse a sparse matrix with the given dimensions from a reader. Only the
+	 * nonzero values are stored.
+	 *
+	 * @param in
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 * @return - a new sparse matrix holding the parsed values
+	 * @throws IOException
+	 */
+	public static DoubleSparseMatrix parseSparse(Reader in, int rows, int cols) throws IOException
+	{
+		if (null == in)
+			throw new NullPointerException();
+
+		DoubleSparseMatrix m = new DoubleSparseMatrix(rows, cols);
+
+		try
+		{
+			parseInto(new Scanner(in, DEFAULT_SEPARATORS), m);
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+
+		return m;
+	}
+
+	/**
+	 * Parse a sparse matrix from text, such as a String or CharBuffer, inferring
+	 * its dimensions from the lines of the text. Only the nonzero values are
+	 * stored.
+	 *
+	 * @param text
+	 * @return - a new sparse matrix holding the parsed values
+	 * @throws InvalidMatrixDimensionException
+	 *             - if the rows hold different numbers of values
+	 */
+	public static DoubleSparseMatrix parseSparse(CharSequence text) throws InvalidMatrixDimensionException
+	{
+		if (null == text)
+			throw new NullPointerException();
+
+		return (DoubleSparseMatrix) parseInferred(new Scanner(text, 0, text.length(), DEFAULT_SEPARATORS), true);
+	}
+
+	/**
+	 * Parse a sparse matrix with the given dimensions from text, such as a
+	 * String or CharBuffer. Only the nonzero values are stored.
+	 *
+	 * @param text
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 * @return - a new sparse matrix holding the parsed values
+	 */
+	public static DoubleSparseMatrix parseSparse(CharSequence text, int rows, int cols)
+	{
+		if (null == text)
+			throw new NullPointerException();
+
+		DoubleSparseMatrix m = new DoubleSparseMatrix(rows, cols);
+
+		parseInto(new Scanner(text, 0, text.length(), DEFAULT_SEPARATORS), m);
+
+		return m;
+	}
+
+	/**
+	 * Parse a matrix from text in parallel on the common pool, inferring its
+	 * dimensions from the lines of the text.
+	 *
+	 * @param text
+	 * @return - a new matrix holding the parsed values
+	 * @throws InvalidMatrixDimensionException
+	 *             - if the rows hold different numbers of values
+	 */
+	public static DoubleMatrix parseParallel(CharSequence text) throws InvalidMatrixDimensionException
+	{
+		return parseParallel(text, -1, -1, false, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Parse a matrix with the given dimensions from text in parallel on the
+	 * common pool.
+	 *
+	 * @param text
+	 * @param rows
+	 *            - the number of rows in the matrix
+	 * @param cols
+	 *            - the number of columns in the matrix
+	 * @return - a new matrix holding the parsed values
+	 */
+	public static DoubleMatrix parseParallel(CharSequence text, int rows, int cols)
+	{
+		try
+		{
+			return parseParallel(text, rows, cols, false, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+		}
+		catch (InvalidMatrixDimensionException e)
+		{
+			// Only thrown when the dimensions are inferred.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Parse a sparse matrix from text in parallel on the common pool, inferring
+	 * its dimensions from the lines of the text.
+	 *
+	 * @param text
+	 * @return - a new sparse matrix holding the parsed values
+	 * @throws InvalidMatrixDimensionException
+	 *             - if the rows hold different numbers of values
+	 */
+	public static DoubleSparseMatrix parseSparseParallel(CharSequence text) throws InvalidMatrixDimensionException
+	{
+		return (DoubleSparseMatrix) parseParallel(text, -1, -1, true, ForkJoinPool.commonPool(),
+				DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Parse a matrix from text in parallel on the given pool. The text is split
+	 * at line breaks (or, when the dimensions are given, at any separator) into
+	 * chunks of about chunkSize characters. A first pass counts the values in
+	 * each chunk so that a second pass can parse every chunk straight into its
+	 * place in the matrix.
+	 *
+	 * @param text
+	 * @param rows
+	 *            - the number of rows in the matrix, or -1 to infer the
+	 *            dimensions
+	 * @param cols
+	 *            - the number of columns in the matrix, or -1 to infer the
+	 *            dimensions
+	 * @param sparse
+	 *            - true to return a sparse matrix
+	 * @param pool
+	 *            - the pool that runs the tasks
+	 * @param chunkSize
+	 *            - the number of characters below which text is not split
+	 * @return - a new matrix holding the parsed values
+	 * @throws InvalidMatrixDimensionException
+	 *             - if the dimensions are inferred and the rows hold different
+	 *             numbers of values
+	 */
+	public static DoubleMatrix parseParallel(final CharSequence text, int rows, int cols, final boolean sparse,
+			ForkJoinPool pool, int chunkSize) throws InvalidMatrixDimensionException
+	{
+		if (null == text || null == pool)
+			throw new NullPointerException();
+
+		if (chunkSize < 1)
+			throw new IllegalArgumentException();
+
+		final boolean infer = (rows < 0 || cols < 0);
+		final int[] bounds = chunkBounds(text, infer, chunkSize);
+		final int chunks = bounds.length - 1;
+
+		// First pass: count the values (and, when inferring, the rows) of each
+		// chunk.
+		List<Callable<long[]>> counters = new ArrayList<Callable<long[]>>(chunks);
+
+		for (int i = 0 ; i < chunks ; ++i)
+		{
+			final int start = bounds[i];
+			final int end = bounds[i + 1];
+
+			counters.add(new Callable<long[]>()
+			{
+				@Override
+				public long[] call()
+				{
+					return new Scanner(text, start, end, DEFAULT_SEPARATORS).count();
+				}
+			});
+		}
+
+		List<long[]> counts = invokeAll(pool, counters);
+
+		final long[] firstIndex = new long[chunks + 1];
+		long width = -1;
+		long lines = 0;
+
+		for (int i = 0 ; i < chunks ; ++i)
+		{
+			long[] count = counts.get(i);
+
+			firstIndex[i + 1] = firstIndex[i] + count[0];
+
+			if (infer && count[1] > 0)
+			{
+				if (count[2] < 0 || (width >= 0 && count[2] != width))
+					throw new InvalidMatrixDimensionException();
+
+				width = count[2];
+				lines += count[1];
+			}
+		}
+
+		if (infer)
+		{
+			rows = (int) lines;
+			cols = (width < 0) ? 0 : (int) width;
+		}
+
+		final DoubleMatrix m = sparse ? new DoubleSparseMatrix(rows, cols) : new DoubleMatrix(rows, cols);
+		final long size = (long) rows * cols;
+
+		// Second pass: parse each chunk into place. Sparse chunks collect their
+		// nonzeros, which are then stored sequentially.
+		List<Callable<Object>> parsers = new ArrayList<Callable<Object>>(chunks);
+
+		for (int i = 0 ; i < chunks ; ++i)
+		{
+			final int start = bounds[i];
+			final int end = bounds[i + 1];
+			final long first = firstIndex[i];
+
+			parsers.add(new Callable<Object>()
+			{
+				@Override
+				public Object call()
+				{
+					Scanner scanner = new Scanner(text, start, end, DEFAULT_SEPARATORS);
+
+					if (!sparse)
+					{
+						double[] values = m.m_values;
+
+						for (long index = first ; index < size && scanner.next() ; ++index)
+							values[(int) index] = scanner.value();
+
+						return null;
+					}
+
+					NonZeros nonZeros = new NonZeros();
+
+					for (long index = first ; index < size && scanner.next() ; ++index)
+						if (scanner.value() != 0.0)
+							nonZeros.add(index, scanner.value());
+
+					return nonZeros;
+				}
+			});
+		}
+
+		List<Object> results = invokeAll(pool, parsers);
+
+		if (sparse)
+		{
+			DoubleSparseMatrix s = (DoubleSparseMatrix) m;
+
+			for (Object result : results)
+			{
+				NonZeros nonZeros = (NonZeros) result;
+
+				for (int i = 0 ; i < nonZeros.m_count ; ++i)
+					s.m_sparseData.put(nonZeros.m_indices[i], nonZeros.m_values[i]);
+			}
+		}
+
+		return m;
+	}
+
+	/**
+	 * Returns the separators equivalent to a delimiter expression for
+	 * String.split, or null if it is not one of the simple forms recognized: a
+	 * single literal or escaped ASCII character, or whitespace. Other characters
+	 * are left to String.split, since the scanner only separates on ASCII.
+	 *
+	 * @param regex
+	 * @return - the separators besides whitespace, or null
+	 */
+	static String literalSeparators(String regex)
+	{
+		if (regex.equals("\\s") || regex.equals("\\s+"))
+			return "";
+
+		String literal = regex;
+
+		if (regex.length() == 2 && regex.charAt(0) == '\\' && !Character.isLetterOrDigit(regex.charAt(1)))
+			literal = regex.substring(1);
+		else if (regex.length() != 1 || ".$|()[]{}^?*+\\".indexOf(regex.charAt(0)) >= 0)
+			return null;
+
+		char c = literal.charAt(0);
+
+		if (c >= 128 || Character.isLetterOrDigit(c) || c == '.' || c == '+' || c == '-')
+			return null;
+
+		return literal;
+	}
+
+	/**
+	 * Helper function to split text into chunks of about chunkSize characters.
+	 * Each chunk after the first starts just after a line break when byLine is
+	 * true, or at a separator otherwise, so no value is split.
+	 *
+	 * @return - the start of each chunk, followed by the length of the text
+	 */
+	private static int[] chunkBounds(CharSequence text, boolean byLine, int chunkSize)
+	{
+		int length = text.length();
+		boolean[] separators = Scanner.separatorTable(DEFAULT_SEPARATORS);
+
+		int[] bounds = new int[16];
+		int count = 1;
+
+		int pos = 0;
+
+		while (pos < length)
+		{
+			pos = (int) Math.min(length, (long) pos + chunkSize);
+
+			while (pos < length)
+			{
+				char c = text.charAt(pos - 1);
+
+				if (byLine ? c == '\n' : Scanner.isSeparator(separators, c))
+					break;
+
+				++pos;
+			}
+
+			if (count == bounds.length)
+				bounds = Arrays.copyOf(bounds, 2 * count);
+
+			bounds[count++] = pos;
+		}
+
+		if (count == 1)
+			bounds[count++] = 0;
+
+		return Arrays.copyOf(bounds, count);
+	}
+
+	/**
+	 * Helper function to run tasks on the pool and return their results in
+	 * order.
+	 */
+	private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks)
+	{
+		List<T> results = new ArrayList<T>(tasks.size());
+
+		for (Future<T> f : pool.invokeAll(tasks))
+		{
+			try
+			{
+				results.add(f.get());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Helper function to parse values in row-major order into a matrix of known
+	 * dimensions.
+	 */
+	private static void parseInto(Scanner scanner, DoubleMatrix m)
+	{
+		long size = (long) m.getRowDimension() * m.getColumnDimension();
+
+		if (m.m_values != null)
+		{
+			double[] values = m.m_values;
+
+			for (int index = 0 ; index < size && scanner.next() ; ++index)
+				values[index] = scanner.value();
+
+			return;
+		}
+
+		DoubleSparseMatrix s = (DoubleSparseMatrix) m;
+
+		for (long index = 0 ; index < size && scanner.next() ; ++index)
+			if (scanner.value() != 0.0)
+				s.m_sparseData.put(index, scanner.value());
+	}
+
+	/**
+	 * Helper function to parse values line by line, inferring the dimensions.
+	 */
+	private static DoubleMatrix parseInferred(Scanner scanner, boolean sparse) throws InvalidMatrixDimensionException
+	{
+		double[] values = sparse ? null : new double[1024];
+		NonZeros nonZeros = sparse ? new NonZeros() : null;
+
+		int cols = -1;
+		int rows = 0;
+		long index = 0;
+		int inLine = 0;
+
+		while (scanner.next())
+		{
+			if (scanner.isNewLine() && inLine > 0)
+			{
+				if (cols < 0)
+					cols = inLine;
+				else if (inLine != cols)
+					throw new InvalidMatrixDimensionException();
+
+				++rows;
+				inLine = 0;
+			}
+
+			double v = scanner.value();
+
+			if (sparse)
+			{
+				if (v != 0.0)
+					nonZeros.add(index, v);
+			}
+			else
+			{
+				if (index == values.length)
+					values = Arrays.copyOf(values, 2 * values.length);
+
+				values[(int) index] = v;
+			}
+
+			++index;
+			++inLine;
+		}
+
+		if (inLine > 0)
+		{
+			if (cols >= 0 && inLine != cols)
+				throw new InvalidMatrixDimensionException();
+
+			cols = inLine;
+			++rows;
+		}
+
+		if (cols < 0)
+			cols = 0;
+
+		if (sparse)
+		{
+			DoubleSparseMatrix m = new DoubleSparseMatrix(rows, cols);
+
+			for (int i = 0 ; i < nonZeros.m_count ; ++i)
+				m.m_sparseData.put(nonZeros.m_indices[i], nonZeros.m_values[i]);
+
+			return m;
+		}
+
+		DoubleMatrix m = new DoubleMatrix(rows, cols, false);
+
+		m.m_values = (values.length == index) ? values : Arrays.copyOf(values, (int) index);
+		m.m_offset = 0;
+		m.m_rowStride = cols;
+
+		return m;
+	}
+
+	/**
+	 * Growable list of nonzeros, by row-major index.
+	 */
+	private static final class NonZeros
+	{
+		private long[] m_indices = new long[16];
+		private double[] m_values = new double[16];
+		private int m_count;
+
+		/**
+		 * Append a nonzero.
+		 */
+		void add(long index, double value)
+		{
+			if (m_count == m_indices.length)
+			{
+				m_indices = Arrays.copyOf(m_indices, 2 * m_count);
+				m_values = Arrays.copyOf(m_values, 2 * m_count);
+			}
+
+			m_indices[m_count] = index;
+			m_values[m_count++] = value;
+		}
+	}
+
+	/**
+	 * Convert the characters buf[start..end) to a double. The fast path handles
+	 * plain decimal numbers whose value is the product or quotient of two
+	 * exactly representable doubles, so a single correctly rounded operation
+	 * gives the correctly rounded result. Other input is passed to
+	 * Double.parseDouble.
+	 *
+	 * @return - the parsed value
+	 * @throws NumberFormatException
+	 *             - if the characters are not a number
+	 */
+	static double parseDouble(char[] buf, int start, int end)
+	{
+		int i = start;
+		boolean negative = false;
+
+		if (i < end && (buf[i] == '-' || buf[i] == '+'))
+			negative = (buf[i++] == '-');
+
+		long mantissa = 0;
+		int significant = 0;
+		int exponent = 0;
+		boolean digits = false;
+
+		for ( ; i < end && buf[i] >= '0' && buf[i] <= '9' ; ++i)
+		{
+			digits = true;
+
+			if (mantissa == 0 && buf[i] == '0')
+				continue;
+
+			if (++significant > MAX_DIGITS)
+				return slowParse(buf, start, end);
+
+			mantissa = 10 * mantissa + (buf[i] - '0');
+		}
+
+		if (i < end && buf[i] == '.')
+		{
+			for (++i ; i < end && buf[i] >= '0' && buf[i] <= '9' ; ++i)
+			{
+				digits = true;
+				--exponent;
+
+				if (mantissa == 0 && buf[i] == '0')
+					continue;
+
+				if (++significant > MAX_DIGITS)
+					return slowParse(buf, start, end);
+
+				mantissa = 10 * mantissa + (buf[i] - '0');
+			}
+		}
+
+		if (!digits)
+			return slowParse(buf, start, end);
+
+		if (i < end && (buf[i] == 'e' || buf[i] == 'E'))
+		{
+			boolean negativeExponent = false;
+
+			if (++i < end && (buf[i] == '-' || buf[i] == '+'))
+				negativeExponent = (buf[i++] == '-');
+
+			if (i == end)
+				return slowParse(buf, start, end);
+
+			int e = 0;
+
+			for ( ; i < end && buf[i] >= '0' && buf[i] <= '9' ; ++i)
+				if (e < 100000)
+					e = 10 * e + (buf[i] - '0');
+
+			exponent += negativeExponent ? -e : e;
+		}
+
+		if (i != end)
+			return slowParse(buf, start, end);
+
+		if (mantissa == 0)
+			return negative ? -0.0 : 0.0;
+
+		if (mantissa > MAX_EXACT_MANTISSA)
+			return slowParse(buf, start, end);
+
+		// Move surplus powers of ten into the mantissa while it stays exact.
+		while (exponent > 22 && mantissa < MAX_EXACT_MANTISSA / 10)
+		{
+			mantissa *= 10;
+			--exponent;
+		}
+
+		if (exponent < -22 || exponent > 22)
+			return slowParse(buf, start, end);
+
+		double value = (double) mantissa;
+
+		if (exponent < 0)
+			value /= POWERS_OF_TEN[-exponent];
+		else
+			value *= POWERS_OF_TEN[exponent];
+
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Helper function to convert characters with Double.parseDouble.
+	 */
+	private static double slowParse(char[] buf, int start, int end)
+	{
+		return Double.parseDouble(new String(buf, start, end - start));
+	}
+
+	/**
+	 * Reads values one at a time from a reader or a range of a character
+	 * sequence through a reusable buffer.
+	 */
+	static final class Scanner
+	{
+		private final Reader m_reader;
+		private final CharSequence m_text;
+		private int m_textPos;
+		private final int m_textEnd;
+
+		private final boolean[] m_separators;
+
+		private char[] m_buffer;
+		private int m_pos;
+		private int m_limit;
+		private boolean m_eof;
+
+		private int m_tokenStart;
+		private int m_tokenEnd;
+		private boolean m_newLine;
+
+		/**
+		 * Construct a scanner over a reader.
+		 */
+		Scanner(Reader reader, String separators)
+		{
+			m_reader = reader;
+			m_text = null;
+			m_textEnd = 0;
+			m_separators = separatorTable(separators);
+			m_buffer = new char[BUFFER_SIZE];
+		}
+
+		/**
+		 * Construct a scanner over text[start..end).
+		 */
+		Scanner(CharSequence text, int start, int end, String separators)
+		{
+			m_reader = null;
+			m_text = text;
+			m_textPos = start;
+			m_textEnd = end;
+			m_separators = separatorTable(separators);
+			m_buffer = new char[Math.max(16, Math.min(BUFFER_SIZE, end - start))];
+		}
+
+		/**
+		 * Returns a table of the ASCII characters that separate values:
+		 * whitespace, control characters and the given characters.
+		 */
+		static boolean[] separatorTable(String separators)
+		{
+			boolean[] table = new boolean[128];
+
+			for (int c = 0 ; c <= ' ' ; ++c)
+				table[c] = true;
+
+			for (int i = 0 ; i < separators.length() ; ++i)
+				if (separators.charAt(i) < 128)
+					table[separators.charAt(i)] = true;
+
+			return table;
+		}
+
+		/**
+		 * Returns true if the character separates values.
+		 */
+		static boolean isSeparator(boolean[] table, char c)
+		{
+			return (c < 128 && table[c]);
+		}
+
+		/**
+		 * Advance to the next value.
+		 *
+		 * @return - false at the end of the input
+		 */
+		boolean next()
+		{
+			m_newLine = false;
+
+			for (;;)
+			{
+				if (m_pos == m_limit)
+				{
+					m_pos = 0;
+					m_limit = 0;
+
+					if (!read())
+						return false;
+				}
+
+				char c = m_buffer[m_pos];
+
+				if (!isSeparator(m_separators, c))
+					break;
+
+				if (c == '\n' || c == '\r')
+					m_newLine = true;
+
+				++m_pos;
+			}
+
+			int start = m_pos;
+
+			for (;;)
+			{
+				if (m_pos == m_limit)
+				{
+					// The value may continue past the buffer: move it to the front
+					// and read more.
+					int length = m_limit - start;
+
+					if (length == m_buffer.length)
+						m_buffer = Arrays.copyOf(m_buffer, 2 * length);
+
+					System.arraycopy(m_buffer, start, m_buffer, 0, length);
+
+					start = 0;
+					m_pos = length;
+					m_limit = length;
+
+					if (!read())
+						break;
+				}
+
+				if (isSeparator(m_separators, m_buffer[m_pos]))
+					break;
+
+				++m_pos;
+			}
+
+			m_tokenStart = start;
+			m_tokenEnd = m_pos;
+
+			return true;
+		}
+
+		/**
+		 * Returns the current value.
+		 */
+		double value()
+		{
+			return parseDouble(m_buffer, m_tokenStart, m_tokenEnd);
+		}
+
+		/**
+		 * Returns true if a line break precedes the current value.
+		 */
+		boolean isNewLine()
+		{
+			return m_newLine;
+		}
+
+		/**
+		 * Count the remaining values without converting them.
+		 *
+		 * @return - the number of values, the number of non-empty lines, and the
+		 *         number of values on each line (-1 if the lines differ)
+		 */
+		long[] count()
+		{
+			long values = 0;
+			long lines = 0;
+			long width = -1;
+			long inLine = 0;
+
+			while (next())
+			{
+				if (m_newLine && inLine > 0)
+				{
+					width = (lines == 0 || width == inLine) ? inLine : -1;
+					++lines;
+					inLine = 0;
+				}
+
+				++values;
+				++inLine;
+			}
+
+			if (inLine > 0)
+			{
+				width = (lines == 0 || width == inLine) ? inLine : -1;
+				++lines;
+			}
+
+			return new long[] { values, lines, width };
+		}
+
+		/**
+		 * Helper function to read more characters into the buffer after m_limit.
+		 * Errors from the reader are rethrown as UncheckedIOException.
+		 *
+		 * @return - false if no more characters are available
+		 */
+		private boolean read()
+		{
+			if (m_eof)
+				return false;
+
+			int space = m_buffer.length - m_limit;
+			int n;
+
+			if (m_reader != null)
+			{
+				try
+				{
+					n = m_reader.read(m_buffer, m_limit, space);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+			else
+			{
+				n = Math.min(space, m_textEnd - m_textPos);
+
+				if (n <= 0)
+				{
+					n = -1;
+				}
+				else if (m_text instanceof String)
+				{
+					((String) m_text).getChars(m_textPos, m_textPos + n, m_buffer, m_limit);
+				}
+				else
+				{
+					for (int i = 0 ; i < n ; ++i)
+						m_buffer[m_limit + i] = m_text.charAt(m_textPos + i);
+				}
+
+				if (n > 0)
+					m_textPos += n;
+			}
+
+			if (n < 0)
+			{
+				m_eof = true;
+				return false;
+			}
+
+			m_limit += n;
+
+			return true;
+		}
+	}
+}
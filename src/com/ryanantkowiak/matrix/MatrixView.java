@@ -0,0 +1,134 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * View of a rectangular window of another matrix. Elements are read from and
+ * written to the parent matrix, so no data is copied.
+ * 
+ * @author antko
+ *
+ * @param <E>
+ */
+public class MatrixView<E> extends Matrix<E>
+{
+	/**
+	 * The matrix whose storage this view shares.
+	 */
+	protected final Matrix<E> m_parent;
+
+	/**
+	 * The row of the parent at which this view starts.
+	 */
+	protected final int m_firstRow;
+
+	/**
+	 * The column of the parent at which this view starts.
+	 */
+	protected final int m_firstColumn;
+
+	/**
+	 * Construct a view of the given window of a parent matrix.
+	 * 
+	 * @param parent
+	 *            - the matrix to view
+	 * @param firstRowIndex
+	 * @param lastRowIndex
+	 * @param firstColIndex
+	 * @param lastColIndex
+	 */
+	MatrixView(Matrix<E> parent, int firstRowIndex, int lastRowIndex, int firstColIndex, int lastColIndex)
+	{
+		super(lastRowIndex - firstRowIndex, lastColIndex - firstColIndex, false);
+
+		m_parent = parent;
+		m_firstRow = firstRowIndex;
+		m_firstColumn = firstColIndex;
+	}
+
+	/**
+	 * Clear the elements of the window in the parent matrix.
+	 */
+	@Override
+	public void clear()
+	{
+		for (int row = 0 ; row < m_rows ; ++row)
+			for (int col = 0 ; col < m_columns ; ++col)
+				m_parent.set(m_firstRow + row, m_firstColumn + col, null);
+	}
+
+	/**
+	 * Return a detached copy of the viewed window, of the same kind as the
+	 * parent matrix.
+	 */
+	@Override
+	public Matrix<E> copy()
+	{
+		return m_parent.subMatrix(m_firstRow, m_firstRow + m_rows, m_firstColumn, m_firstColumn + m_columns);
+	}
+
+	/**
+	 * Returns the element at the specified row and column of the view.
+	 */
+	@Override
+	public E get(int row, int col)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		return m_parent.get(m_firstRow + row, m_firstColumn + col);
+	}
+
+	/**
+	 * The elements can be changed through the parent, so the hash code is not
+	 * cached.
+	 */
+	@Override
+	protected boolean isHashCodeCacheable()
+	{
+		return false;
+	}
+
+	/**
+	 * Set the element at the specified row and column of the view.
+	 */
+	@Override
+	public void set(int row, int col, E element)
+	{
+		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		m_parent.set(m_firstRow + row, m_firstColumn + col, element);
+	}
+
+	/**
+	 * Return a detached copy of the sub-matrix with the given indices.
+	 */
+	@Override
+	public Matrix<E> subMatrix(int firstRowIndex, int lastRowIndex, int firstColIndex, int lastColIndex)
+	{
+		if (firstRowIndex < 0 || lastRowIndex > m_rows || firstRowIndex >= lastRowIndex)
+			throw new IndexOutOfBoundsException();
+
+		if (firstColIndex < 0 || lastColIndex > m_columns || firstColIndex >= lastColIndex)
+			throw new IndexOutOfBoundsException();
+
+		return m_parent.subMatrix(m_firstRow + firstRowIndex, m_firstRow + lastRowIndex,
+				m_firstColumn + firstColIndex, m_firstColumn + lastColIndex);
+	}
+
+	/**
+	 * Return a view of the sub-matrix with the given indices, sharing storage
+	 * with the parent matrix.
+	 */
+	@Override
+	public Matrix<E> subMatrixView(int firstRowIndex, int lastRowIndex, int firstColIndex, int lastColIndex)
+	{
+		if (firstRowIndex < 0 || lastRowIndex > m_rows || firstRowIndex >= lastRowIndex)
+			throw new IndexOutOfBoundsException();
+
+		if (firstColIndex < 0 || lastColIndex > m_columns || firstColIndex >= lastColIndex)
+			throw new IndexOutOfBoundsException();
+
+		return new MatrixView<E>(m_parent, m_firstRow + firstRowIndex, m_firstRow + lastRowIndex,
+				m_firstColumn + firstColIndex, m_firstColumn + lastColIndex);
+	}
+}
@@ -0,0 +1,370 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Fill-reducing minimum degree ordering on the pattern of A + A^T.
+ *
+ * Vertices are eliminated one at a time, always choosing a vertex of least
+ * approximate degree. The elimination graph is kept as a quotient graph: an
+ * eliminated vertex becomes an element that lists the variables it connects,
+ * instead of a clique of explicit edges between them, and any element that is
+ * adjacent to the pivot, or whose variables all belong to the pivot's element,
+ * is absorbed into it. The graph therefore never takes more space than the
+ * original pattern, and eliminating a vertex costs time proportional to the
+ * lists it touches. Degrees are bounded from above as in AMD rather than
+ * counted exactly. Dense vertices, whose degree exceeds a threshold
+ * proportional to sqrt(n), are set aside and ordered last so they do not
+ * dominate the running time.
+ *
+ * @author antko
+ *
+ */
+final class MinimumDegreeOrdering
+{
+	/**
+	 * Vertices with more than DENSE_FACTOR * sqrt(n) neighbours are ordered last.
+	 */
+	private static final double DENSE_FACTOR = 10.0;
+
+	/**
+	 * State of a vertex not yet eliminated.
+	 */
+	private static final byte VARIABLE = 0;
+
+	/**
+	 * State of an eliminated vertex whose element is still in the graph.
+	 */
+	private static final byte ELEMENT = 1;
+
+	/**
+	 * State of an eliminated vertex whose element was absorbed into another.
+	 */
+	private static final byte ABSORBED = 2;
+
+	/**
+	 * State of a dense vertex, which is ordered last.
+	 */
+	private static final byte DENSE = 3;
+
+	/**
+	 * Unused default constructor.
+	 */
+	private MinimumDegreeOrdering()
+	{
+	}
+
+	/**
+	 * Compute a fill-reducing ordering of a square matrix in compressed column
+	 * form.
+	 *
+	 * @param n
+	 *            - the dimension of the matrix
+	 * @param colPtr
+	 *            - column pointers (length n + 1)
+	 * @param rowIdx
+	 *            - row indices
+	 * @return - the ordering: position k holds the index eliminated k-th
+	 */
+	static int[] order(int n, int[] colPtr, int[] rowIdx)
+	{
+		// The variables adjacent to each variable, and the number of them still
+		// in the graph. Edges between variables of the same element are dropped.
+		int[][] vars = symmetricPattern(n, colPtr, rowIdx);
+		int[] varCount = new int[n];
+
+		// The elements adjacent to each variable, and the number of them.
+		int[][] elems = new int[n][];
+		int[] elemCount = new int[n];
+
+		// The variables of each element, and the state of each vertex.
+		int[][] members = new int[n][];
+		byte[] state = new byte[n];
+
+		int denseLimit = (int) Math.max(16, DENSE_FACTOR * Math.sqrt(n));
+		int denseCount = 0;
+
+		for (int v = 0 ; v < n ; ++v)
+		{
+			if (vars[v].length > denseLimit)
+			{
+				state[v] = DENSE;
+				vars[v] = null;
+				++denseCount;
+			}
+		}
+
+		int[] degree = new int[n];
+
+		int[] head = new int[n];
+		int[] next = new int[n];
+		int[] prev = new int[n];
+
+		Arrays.fill(head, -1);
+
+		for (int v = 0 ; v < n ; ++v)
+		{
+			if (state[v] == DENSE)
+				continue;
+
+			int count = 0;
+
+			for (int u : vars[v])
+				if (state[u] != DENSE)
+					vars[v][count++] = u;
+
+			varCount[v] = count;
+			elems[v] = new int[4];
+			degree[v] = count;
+			insert(v, count, head, next, prev);
+		}
+
+		// mark[i] == k + 1 while the k-th pivot's element is built and used.
+		int[] mark = new int[n];
+
+		// weight[e] counts the variables of element e outside the pivot's
+		// element, once weightMark[e] == k + 1.
+		int[] weight = new int[n];
+		int[] weightMark = new int[n];
+
+		int[] le = new int[n];
+
+		int[] perm = new int[n];
+		int live = n - denseCount;
+		int k = 0;
+		int minDegree = 0;
+
+		while (k < n - denseCount)
+		{
+			while (head[minDegree] == -1)
+				++minDegree;
+
+			int p = head[minDegree];
+
+			remove(p, degree[p], head, next, prev);
+
+			perm[k++] = p;
+			--live;
+
+			int stamp = k;
+			int size = 0;
+
+			mark[p] = stamp;
+
+			// The pivot's element: its variables and the variables of the
+			// elements adjacent to it, which are absorbed.
+			for (int t = 0 ; t < elemCount[p] ; ++t)
+			{
+				int e = elems[p][t];
+
+				if (state[e] != ELEMENT)
+					continue;
+
+				for (int i : members[e])
+				{
+					if (state[i] == VARIABLE && mark[i] != stamp)
+					{
+						mark[i] = stamp;
+						le[size++] = i;
+					}
+				}
+
+				state[e] = ABSORBED;
+				members[e] = null;
+			}
+
+			for (int t = 0 ; t < varCount[p] ; ++t)
+			{
+				int i = vars[p][t];
+
+				if (state[i] == VARIABLE && mark[i] != stamp)
+				{
+					mark[i] = stamp;
+					le[size++] = i;
+				}
+			}
+
+			state[p] = ELEMENT;
+			members[p] = Arrays.copyOf(le, size);
+			vars[p] = null;
+			elems[p] = null;
+
+			// Weigh the other elements of the pivot's variables by the number
+			// of their variables outside the pivot's element.
+			for (int t = 0 ; t < size ; ++t)
+			{
+				int i = le[t];
+
+				for (int s = 0 ; s < elemCount[i] ; ++s)
+				{
+					int e = elems[i][s];
+
+					if (state[e] != ELEMENT)
+						continue;
+
+					if (weightMark[e] != stamp)
+					{
+						weightMark[e] = stamp;
+						weight[e] = members[e].length;
+					}
+
+					--weight[e];
+				}
+			}
+
+			for (int t = 0 ; t < size ; ++t)
+			{
+				int i = le[t];
+				int external = 0;
+
+				// Drop absorbed elements, absorbing those whose variables all
+				// belong to the pivot's element, and add the pivot's element.
+				int[] ei = elems[i];
+				int count = 0;
+
+				for (int s = 0 ; s < elemCount[i] ; ++s)
+				{
+					int e = ei[s];
+
+					if (state[e] != ELEMENT)
+						continue;
+
+					if (weight[e] == 0)
+					{
+						state[e] = ABSORBED;
+						members[e] = null;
+						continue;
+					}
+
+					ei[count++] = e;
+					external += weight[e];
+				}
+
+				if (count == ei.length)
+					elems[i] = ei = Arrays.copyOf(ei, 2 * count);
+
+				ei[count++] = p;
+				elemCount[i] = count;
+
+				// Drop edges that the pivot's element now covers.
+				int[] vi = vars[i];
+				count = 0;
+
+				for (int s = 0 ; s < varCount[i] ; ++s)
+				{
+					int j = vi[s];
+
+					if (state[j] == VARIABLE && mark[j] != stamp)
+						vi[count++] = j;
+				}
+
+				varCount[i] = count;
+
+				int d = Math.min(live - 1, Math.min(degree[i] + size - 1, count + size - 1 + external));
+
+				remove(i, degree[i], head, next, prev);
+				degree[i] = d;
+				insert(i, d, head, next, prev);
+
+				if (d < minDegree)
+					minDegree = d;
+			}
+		}
+
+		for (int v = 0 ; v < n ; ++v)
+			if (state[v] == DENSE)
+				perm[k++] = v;
+
+		return perm;
+	}
+
+	/**
+	 * Build the sorted adjacency lists of the pattern of A + A^T, excluding the
+	 * diagonal.
+	 */
+	private static int[][] symmetricPattern(int n, int[] colPtr, int[] rowIdx)
+	{
+		int[] count = new int[n];
+
+		for (int col = 0 ; col < n ; ++col)
+		{
+			for (int p = colPtr[col] ; p < colPtr[col + 1] ; ++p)
+			{
+				int row = rowIdx[p];
+
+				if (row != col)
+				{
+					++count[row];
+					++count[col];
+				}
+			}
+		}
+
+		int[][] adj = new int[n][];
+
+		for (int v = 0 ; v < n ; ++v)
+			adj[v] = new int[count[v]];
+
+		Arrays.fill(count, 0);
+
+		for (int col = 0 ; col < n ; ++col)
+		{
+			for (int p = colPtr[col] ; p < colPtr[col + 1] ; ++p)
+			{
+				int row = rowIdx[p];
+
+				if (row != col)
+				{
+					adj[row][count[row]++] = col;
+					adj[col][count[col]++] = row;
+				}
+			}
+		}
+
+		for (int v = 0 ; v < n ; ++v)
+		{
+			int[] a = adj[v];
+
+			Arrays.sort(a);
+
+			int unique = 0;
+
+			for (int i = 0 ; i < a.length ; ++i)
+				if (unique == 0 || a[unique - 1] != a[i])
+					a[unique++] = a[i];
+
+			if (unique != a.length)
+				adj[v] = Arrays.copyOf(a, unique);
+		}
+
+		return adj;
+	}
+
+	/**
+	 * Insert vertex v into the bucket for the given degree.
+	 */
+	private static void insert(int v, int degree, int[] head, int[] next, int[] prev)
+	{
+		next[v] = head[degree];
+		prev[v] = -1;
+
+		if (head[degree] != -1)
+			prev[head[degree]] = v;
+
+		head[degree] = v;
+	}
+
+	/**
+	 * Remove vertex v from the bucket for the given degree.
+	 */
+	private static void remove(int v, int degree, int[] head, int[] next, int[] prev)
+	{
+		if (prev[v] != -1)
+			next[prev[v]] = next[v];
+		else
+			head[degree] = next[v];
+
+		if (next[v] != -1)
+			prev[next[v]] = prev[v];
+	}
+}
@@ -0,0 +1,21 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Exception for a matrix that is not symmetric positive definite where one is
+ * required
+ * 
+ * @author antko
+ *
+ */
+public class NotPositiveDefiniteException extends Exception
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default constructor
+	 */
+	public NotPositiveDefiniteException()
+	{
+	}
+
+}
@@ -0,0 +1,555 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel math functions on matrices of doubles.
+ *
+ * Each operation splits its result into blocks of rows and columns and
+ * computes the blocks as fork-join tasks. Blocks holding fewer than the cutoff
+ * number of elements (or multiply-adds, for multiplication) are not split
+ * further, so small matrices are computed sequentially on the calling thread.
+ *
+ * Every element of a result is computed by exactly one task, using the same
+ * operations in the same order as the corresponding MatrixMath function, so
+ * the results are deterministic and identical to the sequential results.
+ *
+ * @author antko
+ *
+ */
+public class ParallelMatrixMath
+{
+	/**
+	 * Default number of elements below which element-wise work is not split.
+	 */
+	public static final int DEFAULT_ELEMENT_CUTOFF = 1 << 16;
+
+	/**
+	 * Default number of multiply-adds below which multiplication work is not
+	 * split.
+	 */
+	public static final long DEFAULT_MULTIPLY_CUTOFF = 1L << 20;
+
+	/**
+	 * Kernels for the element-wise loops over rows of primitive values.
+	 */
+	private static final DoubleKernels KERNELS = DoubleKernels.INSTANCE;
+
+	/**
+	 * Operation on a rectangular block of a result matrix.
+	 */
+	private interface BlockOperation
+	{
+		/**
+		 * Compute the result rows [firstRow, lastRow) and columns [firstCol,
+		 * lastCol).
+		 */
+		void compute(int firstRow, int lastRow, int firstCol, int lastCol);
+	}
+
+	/**
+	 * Fork-join task that splits a block of the result along its longer side
+	 * until the work in a block falls below the cutoff.
+	 */
+	private static class BlockTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final BlockOperation m_operation;
+		private final int m_firstRow;
+		private final int m_lastRow;
+		private final int m_firstCol;
+		private final int m_lastCol;
+		private final long m_workPerElement;
+		private final long m_cutoff;
+
+		BlockTask(BlockOperation operation, int firstRow, int lastRow, int firstCol, int lastCol,
+				long workPerElement, long cutoff)
+		{
+			m_operation = operation;
+			m_firstRow = firstRow;
+			m_lastRow = lastRow;
+			m_firstCol = firstCol;
+			m_lastCol = lastCol;
+			m_workPerElement = workPerElement;
+			m_cutoff = cutoff;
+		}
+
+		private BlockTask split(int firstRow, int lastRow, int firstCol, int lastCol)
+		{
+			return new BlockTask(m_operation, firstRow, lastRow, firstCol, lastCol, m_workPerElement, m_cutoff);
+		}
+
+		@Override
+		protected void compute()
+		{
+			int rows = m_lastRow - m_firstRow;
+			int cols = m_lastCol - m_firstCol;
+
+			if ((long) rows * cols * m_workPerElement <= m_cutoff || (rows < 2 && cols < 2))
+			{
+				m_operation.compute(m_firstRow, m_lastRow, m_firstCol, m_lastCol);
+				return;
+			}
+
+			if (rows >= cols)
+			{
+				int mid = m_firstRow + rows / 2;
+
+				invokeAll(split(m_firstRow, mid, m_firstCol, m_lastCol), split(mid, m_lastRow, m_firstCol, m_lastCol));
+			}
+			else
+			{
+				int mid = m_firstCol + cols / 2;
+
+				invokeAll(split(m_firstRow, m_lastRow, m_firstCol, mid), split(m_firstRow, m_lastRow, mid, m_lastCol));
+			}
+		}
+	}
+
+	/**
+	 * Run the given operation over every block of a rows x cols result.
+	 */
+	private static void run(ForkJoinPool pool, BlockOperation operation, int rows, int cols, long workPerElement,
+			long cutoff)
+	{
+		if (rows == 0 || cols == 0)
+			return;
+
+		BlockTask task = new BlockTask(operation, 0, rows, 0, cols, Math.max(1, workPerElement), Math.max(1, cutoff));
+
+		if ((long) rows * cols * workPerElement <= cutoff)
+			task.compute();
+		else
+			pool.invoke(task);
+	}
+
+	/**
+	 * Add two matrices in parallel on the common pool and return the result in a
+	 * new matrix.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleMatrix add(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	{
+		return add(m1, m2, ForkJoinPool.commonPool(), DEFAULT_ELEMENT_CUTOFF);
+	}
+
+	/**
+	 * Add two matrices in parallel on the given pool and return the result in a
+	 * new matrix.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @param pool
+	 *            - the pool to run the tasks on
+	 * @param cutoff
+	 *            - the number of elements below which work is not split
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleMatrix add(DoubleMatrix m1, DoubleMatrix m2, ForkJoinPool pool, int cutoff)
+			throws InvalidMatrixDimensionException
+	{
+		return elementWise(m1, m2, false, pool, cutoff);
+	}
+
+	/**
+	 * Subtract matrix m2 from matrix m1 in parallel on the common pool and return
+	 * the result in a new matrix. (e.g. returns m1-m2).
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleMatrix subtract(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	{
+		return subtract(m1, m2, ForkJoinPool.commonPool(), DEFAULT_ELEMENT_CUTOFF);
+	}
+
+	/**
+	 * Subtract matrix m2 from matrix m1 in parallel on the given pool and return
+	 * the result in a new matrix. (e.g. returns m1-m2).
+	 *
+	 * @param m1
+	 * @param m2
+	 * @param pool
+	 *            - the pool to run the tasks on
+	 * @param cutoff
+	 *            - the number of elements below which work is not split
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleMatrix subtract(DoubleMatrix m1, DoubleMatrix m2, ForkJoinPool pool, int cutoff)
+			throws InvalidMatrixDimensionException
+	{
+		return elementWise(m1, m2, true, pool, cutoff);
+	}
+
+	/**
+	 * Helper function to add or subtract two matrices.
+	 */
+	private static DoubleMatrix elementWise(final DoubleMatrix m1, final DoubleMatrix m2, final boolean subtract,
+			ForkJoinPool pool, int cutoff) throws InvalidMatrixDimensionException
+	{
+		if (m1 == null || m2 == null || pool == null)
+			throw new NullPointerException();
+
+		if (!MatrixMath.dimensionsEqual(m1, m2))
+			throw new InvalidMatrixDimensionException();
+
+		final int cols = m1.getColumnDimension();
+		final DoubleMatrix m = new DoubleMatrix(m1.getRowDimension(), cols);
+
+		BlockOperation operation;
+
+		if (m1.m_values != null && m2.m_values != null)
+		{
+			final double[] a = m1.m_values;
+			final double[] b = m2.m_values;
+			final double[] dst = m.m_values;
+
+			operation = new BlockOperation()
+			{
+				@Override
+				public void compute(int firstRow, int lastRow, int firstCol, int lastCol)
+				{
+					for (int r = firstRow ; r < lastRow ; ++r)
+					{
+						int ia = m1.m_offset + r * m1.m_rowStride + firstCol;
+						int ib = m2.m_offset + r * m2.m_rowStride + firstCol;
+						int id = r * cols + firstCol;
+
+						if (subtract)
+							KERNELS.subtract(a, ia, b, ib, dst, id, lastCol - firstCol);
+						else
+							KERNELS.add(a, ia, b, ib, dst, id, lastCol - firstCol);
+					}
+				}
+			};
+		}
+		else
+		{
+			operation = new BlockOperation()
+			{
+				@Override
+				public void compute(int firstRow, int lastRow, int firstCol, int lastCol)
+				{
+					for (int r = firstRow ; r < lastRow ; ++r)
+						for (int c = firstCol ; c < lastCol ; ++c)
+							m.setDouble(r, c, subtract ? m1.getDouble(r, c) - m2.getDouble(r, c)
+									: m1.getDouble(r, c) + m2.getDouble(r, c));
+				}
+			};
+		}
+
+		run(pool, operation, m.getRowDimension(), cols, 1, cutoff);
+
+		return m;
+	}
+
+	/**
+	 * Multiply the given matrix by a scalar in parallel on the common pool and
+	 * return the result in a new matrix.
+	 *
+	 * @param m
+	 * @param scalar
+	 * @return
+	 */
+	public static DoubleMatrix scalarMultiply(DoubleMatrix m, double scalar)
+	{
+		return scalarMultiply(m, scalar, ForkJoinPool.commonPool(), DEFAULT_ELEMENT_CUTOFF);
+	}
+
+	/**
+	 * Multiply the given matrix by a scalar in parallel on the given pool and
+	 * return the result in a new matrix.
+	 *
+	 * @param m
+	 * @param scalar
+	 * @param pool
+	 *            - the pool to run the tasks on
+	 * @param cutoff
+	 *            - the number of elements below which work is not split
+	 * @return
+	 */
+	public static DoubleMatrix scalarMultiply(final DoubleMatrix m, final double scalar, ForkJoinPool pool,
+			int cutoff)
+	{
+		if (m == null || pool == null)
+			throw new NullPointerException();
+
+		final int cols = m.getColumnDimension();
+		final DoubleMatrix v = new DoubleMatrix(m.getRowDimension(), cols);
+
+		BlockOperation operation;
+
+		if (m.m_values != null)
+		{
+			final double[] a = m.m_values;
+			final double[] dst = v.m_values;
+
+			operation = new BlockOperation()
+			{
+				@Override
+				public void compute(int firstRow, int lastRow, int firstCol, int lastCol)
+				{
+					for (int r = firstRow ; r < lastRow ; ++r)
+					{
+						int ia = m.m_offset + r * m.m_rowStride + firstCol;
+						int id = r * cols + firstCol;
+
+						KERNELS.scale(scalar, a, ia, dst, id, lastCol - firstCol);
+					}
+				}
+			};
+		}
+		else
+		{
+			operation = new BlockOperation()
+			{
+				@Override
+				public void compute(int firstRow, int lastRow, int firstCol, int lastCol)
+				{
+					for (int r = firstRow ; r < lastRow ; ++r)
+						for (int c = firstCol ; c < lastCol ; ++c)
+							v.setDouble(r, c, scalar * m.getDouble(r, c));
+				}
+			};
+		}
+
+		run(pool, operation, v.getRowDimension(), cols, 1, cutoff);
+
+		return v;
+	}
+
+	/**
+	 * Multiply two given matrices in parallel on the common pool and return the
+	 * result in a new matrix.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleMatrix multiply(DoubleMatrix m1, DoubleMatrix m2) throws InvalidMatrixDimensionException
+	{
+		return multiply(m1, m2, ForkJoinPool.commonPool(), DEFAULT_MULTIPLY_CUTOFF);
+	}
+
+	/**
+	 * Multiply two given matrices in parallel on the given pool and return the
+	 * result in a new matrix. The result is split into blocks only, never along
+	 * the inner dimension, so each element is reduced in a fixed order and the
+	 * result is identical to MatrixMath.multiply.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @param pool
+	 *            - the pool to run the tasks on
+	 * @param cutoff
+	 *            - the number of multiply-adds below which work is not split
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleMatrix multiply(final DoubleMatrix m1, final DoubleMatrix m2, ForkJoinPool pool,
+			long cutoff) throws InvalidMatrixDimensionException
+	{
+		if (m1 == null || m2 == null || pool == null)
+			throw new NullPointerException();
+
+		if (m1.getColumnDimension() != m2.getRowDimension())
+			throw new InvalidMatrixDimensionException();
+
+		final int rows = m1.getRowDimension();
+		final int inner = m1.getColumnDimension();
+		final int cols = m2.getColumnDimension();
+		final DoubleMatrix m = new DoubleMatrix(rows, cols);
+
+		BlockOperation operation;
+
+		if (m1.m_values != null && m2.m_values != null)
+		{
+			final double[] a = m1.m_values;
+			final double[] b = m2.m_values;
+			final double[] dst = m.m_values;
+			final boolean small = DoubleGemm.isSmall(rows, cols, inner);
+
+			operation = new BlockOperation()
+			{
+				@Override
+				public void compute(int firstRow, int lastRow, int firstCol, int lastCol)
+				{
+					int aOff = m1.m_offset + firstRow * m1.m_rowStride;
+					int bOff = m2.m_offset + firstCol;
+
+					if (small)
+						DoubleGemm.multiplySimple(lastRow - firstRow, lastCol - firstCol, inner, a, aOff,
+								m1.m_rowStride, b, bOff, m2.m_rowStride, dst, firstRow * cols + firstCol, cols);
+					else
+						DoubleGemm.multiplyBlocked(lastRow - firstRow, lastCol - firstCol, inner, a, aOff,
+								m1.m_rowStride, b, bOff, m2.m_rowStride, dst, firstRow * cols + firstCol, cols);
+				}
+			};
+		}
+		else
+		{
+			operation = new BlockOperation()
+			{
+				@Override
+				public void compute(int firstRow, int lastRow, int firstCol, int lastCol)
+				{
+					for (int r = firstRow ; r < lastRow ; ++r)
+					{
+						for (int c = firstCol ; c < lastCol ; ++c)
+						{
+							double val = 0.0;
+
+							for (int z = 0 ; z < inner ; ++z)
+								val += m1.getDouble(r, z) * m2.getDouble(z, c);
+
+							m.setDouble(r, c, val);
+						}
+					}
+				}
+			};
+		}
+
+		run(pool, operation, rows, cols, inner, cutoff);
+
+		return m;
+	}
+
+	/**
+	 * Multiply two given sparse matrices in parallel on the common pool and
+	 * return the result in a new sparse matrix.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleSparseMatrix multiplySparse(DoubleMatrix m1, DoubleMatrix m2)
+			throws InvalidMatrixDimensionException
+	{
+		return multiplySparse(m1, m2, ForkJoinPool.commonPool(), DEFAULT_MULTIPLY_CUTOFF);
+	}
+
+	/**
+	 * Multiply two given sparse matrices in parallel on the given pool and return
+	 * the result in a new sparse matrix. Tasks compute blocks of rows from the
+	 * stored nonzeros into private buffers, which are then stored into the
+	 * result on the calling thread.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @param pool
+	 *            - the pool to run the tasks on
+	 * @param cutoff
+	 *            - the number of multiply-adds below which work is not split
+	 * @return
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public static DoubleSparseMatrix multiplySparse(final DoubleMatrix m1, final DoubleMatrix m2,
+			ForkJoinPool pool, long cutoff) throws InvalidMatrixDimensionException
+	{
+		if (m1 == null || m2 == null || pool == null)
+			throw new NullPointerException();
+
+		if (m1.getColumnDimension() != m2.getRowDimension())
+			throw new InvalidMatrixDimensionException();
+
+		final int rows = m1.getRowDimension();
+		final int inner = m1.getColumnDimension();
+		final int cols = m2.getColumnDimension();
+
+		final int[][] rowColumns = new int[rows][];
+		final double[][] rowValues = new double[rows][];
+
+		final DoubleCompressedMatrix a = SparseKernels.toFiniteCompressedRows(m1);
+		final DoubleCompressedMatrix b = (a == null) ? null : SparseKernels.toFiniteCompressedRows(m2);
+
+		BlockOperation operation;
+		long workPerRow;
+
+		if (a != null && b != null)
+		{
+			operation = new BlockOperation()
+			{
+				@Override
+				public void compute(int firstRow, int lastRow, int firstCol, int lastCol)
+				{
+					SparseKernels.RowAccumulator acc = new SparseKernels.RowAccumulator(cols);
+
+					int[] colBuffer = new int[cols];
+					double[] valBuffer = new double[cols];
+
+					for (int r = firstRow ; r < lastRow ; ++r)
+					{
+						int count = acc.multiplyRow(a, b, r, colBuffer, valBuffer);
+
+						rowColumns[r] = Arrays.copyOf(colBuffer, count);
+						rowValues[r] = Arrays.copyOf(valBuffer, count);
+					}
+				}
+			};
+
+			// Estimate the multiply-adds per row from the average row lengths.
+			workPerRow = Math.max(1, ((long) a.getNonZeroCount() * (b.getNonZeroCount() / Math.max(1, inner) + 1))
+					/ Math.max(1, rows));
+		}
+		else
+		{
+			operation = new BlockOperation()
+			{
+				@Override
+				public void compute(int firstRow, int lastRow, int firstCol, int lastCol)
+				{
+					int[] colBuffer = new int[cols];
+					double[] valBuffer = new double[cols];
+
+					for (int r = firstRow ; r < lastRow ; ++r)
+					{
+						int count = 0;
+
+						for (int c = 0 ; c < cols ; ++c)
+						{
+							double val = 0.0;
+
+							for (int z = 0 ; z < inner ; ++z)
+								val += m1.getDouble(r, z) * m2.getDouble(z, c);
+
+							if (val != 0.0)
+							{
+								colBuffer[count] = c;
+								valBuffer[count] = val;
+								++count;
+							}
+						}
+
+						rowColumns[r] = Arrays.copyOf(colBuffer, count);
+						rowValues[r] = Arrays.copyOf(valBuffer, count);
+					}
+				}
+			};
+
+			workPerRow = (long) inner * cols;
+		}
+
+		run(pool, operation, rows, 1, workPerRow, cutoff);
+
+		DoubleSparseMatrix m = new DoubleSparseMatrix(rows, cols);
+
+		for (int r = 0 ; r < rows ; ++r)
+			for (int i = 0 ; i < rowColumns[r].length ; ++i)
+				m.setDouble(r, rowColumns[r][i], rowValues[r][i]);
+
+		return m;
+	}
+}
@@ -0,0 +1,22 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Preconditioner for the iterative methods of IterativeSolver: an
+ * approximation M of the system matrix A whose systems M * z = r are cheap to
+ * solve. The closer M is to A, the fewer iterations are needed.
+ *
+ * @author antko
+ *
+ */
+public interface Preconditioner
+{
+	/**
+	 * Solve M * z = r.
+	 *
+	 * @param r
+	 *            - the vector to precondition, which must not be modified
+	 * @param z
+	 *            - receives the solution; never the same array as r
+	 */
+	void apply(double[] r, double[] z);
+}
@@ -0,0 +1,414 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Householder QR decomposition of an m x n matrix with m >= n, such that A = Q
+ * * R, where Q has orthonormal columns and R is n x n upper triangular. It
+ * solves least squares problems, minimizing the 2-norm of A * x - b.
+ *
+ * Q is stored as the product of n Householder reflectors H(k) = I - tau(k) *
+ * v(k) * v(k)^T. The reflectors of each panel of DenseFactorKernels.NB columns
+ * are combined into one block reflector I - V * T * V^T, where T is upper
+ * triangular, so that applying them to the rest of the matrix or to
+ * right-hand sides is done by the matrix multiplication kernel.
+ *
+ * @author antko
+ *
+ */
+public class QRDecomposition
+{
+	private static final DoubleKernels KERNELS = DoubleKernels.INSTANCE;
+
+	/**
+	 * The row dimension of the factored matrix.
+	 */
+	private final int m_m;
+
+	/**
+	 * The column dimension of the factored matrix.
+	 */
+	private final int m_n;
+
+	/**
+	 * Row-major m x n storage of R (on and above the diagonal) and of the
+	 * Householder vectors (below the diagonal, with an implied leading one).
+	 */
+	private final double[] m_qr;
+
+	/**
+	 * The scalar factor of each reflector.
+	 */
+	private final double[] m_tau;
+
+	/**
+	 * The triangular factor T of each panel's block reflector, row-major.
+	 */
+	private final double[][] m_t;
+
+	/**
+	 * Factor the given matrix.
+	 *
+	 * @param m
+	 *            - the matrix to factor, with at least as many rows as columns
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public QRDecomposition(DoubleMatrix m) throws InvalidMatrixDimensionException
+	{
+		if (null == m)
+			throw new NullPointerException();
+
+		if (m.getRowDimension() < m.getColumnDimension())
+			throw new InvalidMatrixDimensionException();
+
+		m_m = m.getRowDimension();
+		m_n = m.getColumnDimension();
+		m_qr = new double[m_m * m_n];
+		m_tau = new double[m_n];
+		m_t = new double[(m_n + DenseFactorKernels.NB - 1) / DenseFactorKernels.NB][];
+
+		for (int r = 0 ; r < m_m ; ++r)
+			MatrixMath.readRow(m, r, 0, m_qr, r * m_n, m_n);
+
+		factor();
+	}
+
+	/**
+	 * Helper function to factor m_qr in place, one panel at a time: the panel
+	 * is factored column by column, its block reflector is formed, and the
+	 * block reflector is applied to the columns to its right.
+	 */
+	private void factor()
+	{
+		int m = m_m;
+		int n = m_n;
+		double[] a = m_qr;
+		double[] w = new double[DenseFactorKernels.NB];
+
+		for (int j = 0 ; j < n ; j += DenseFactorKernels.NB)
+		{
+			int nb = Math.min(DenseFactorKernels.NB, n - j);
+			int end = j + nb;
+
+			for (int k = j ; k < end ; ++k)
+			{
+				double tau = reflect(k);
+
+				m_tau[k] = tau;
+
+				int cols = end - k - 1;
+
+				if (tau == 0.0 || cols == 0)
+					continue;
+
+				// w = v^T * A(k:m, k+1:end), then A(k:m, k+1:end) -= tau * v * w.
+				System.arraycopy(a, k * n + k + 1, w, 0, cols);
+
+				for (int i = k + 1 ; i < m ; ++i)
+					KERNELS.axpy(a[i * n + k], a, i * n + k + 1, w, 0, cols);
+
+				KERNELS.axpy(-tau, w, 0, a, k * n + k + 1, cols);
+
+				for (int i = k + 1 ; i < m ; ++i)
+					KERNELS.axpy(-tau * a[i * n + k], w, 0, a, i * n + k + 1, cols);
+			}
+
+			double[] v = panelVectors(j, nb);
+			double[] t = blockFactor(j, nb, v);
+
+			m_t[j / DenseFactorKernels.NB] = t;
+
+			if (end < n)
+				applyBlock(v, t, m - j, nb, true, a, j * n + end, n, n - end);
+		}
+	}
+
+	/**
+	 * Helper function to compute C = (I - V * op(T) * V^T) * C, where V is the
+	 * h x nb array of a panel's vectors, op(T) is T or T^T, and C is h x cols.
+	 */
+	private static void applyBlock(double[] v, double[] t, int h, int nb, boolean trans, double[] c, int cOff,
+			int ldc, int cols)
+	{
+		double[] vt = new double[nb * h];
+
+		for (int i = 0 ; i < h ; ++i)
+			for (int p = 0 ; p < nb ; ++p)
+				vt[p * h + i] = v[i * nb + p];
+
+		double[] w = new double[nb * cols];
+
+		DoubleGemm.multiply(nb, cols, h, vt, 0, h, c, cOff, ldc, w, 0, cols);
+
+		// w = op(T) * w, in place. Row q of T^T * w uses rows 0..q of w, so the
+		// rows are replaced from the bottom up; for T itself, from the top down.
+		for (int s = 0 ; s < nb ; ++s)
+		{
+			int q = trans ? nb - 1 - s : s;
+			int row = q * cols;
+
+			KERNELS.scale(t[q * nb + q], w, row, w, row, cols);
+
+			int first = trans ? 0 : q + 1;
+			int last = trans ? q : nb;
+
+			for (int p = first ; p < last ; ++p)
+			{
+				double f = trans ? t[p * nb + q] : t[q * nb + p];
+
+				if (f != 0.0)
+					KERNELS.axpy(f, w, p * cols, w, row, cols);
+			}
+		}
+
+		DenseFactorKernels.subtractProduct(h, cols, nb, v, 0, nb, false, w, 0, cols, c, cOff, ldc);
+	}
+
+	/**
+	 * Helper function to form the upper triangular T of a panel's block
+	 * reflector from its vectors, such that H(j) * ... * H(j+nb-1) = I - V * T *
+	 * V^T.
+	 */
+	private double[] blockFactor(int j, int nb, double[] v)
+	{
+		int h = m_m - j;
+
+		double[] vt = new double[nb * h];
+
+		for (int i = 0 ; i < h ; ++i)
+			for (int p = 0 ; p < nb ; ++p)
+				vt[p * h + i] = v[i * nb + p];
+
+		double[] g = new double[nb * nb];
+
+		DoubleGemm.multiply(nb, nb, h, vt, 0, h, v, 0, nb, g, 0, nb);
+
+		double[] t = new double[nb * nb];
+		double[] z = new double[nb];
+
+		for (int q = 0 ; q < nb ; ++q)
+		{
+			double tau = m_tau[j + q];
+
+			t[q * nb + q] = tau;
+
+			// T(0:q, q) = -tau * T(0:q, 0:q) * V(:, 0:q)^T * v(q)
+			for (int p = 0 ; p < q ; ++p)
+				z[p] = -tau * g[p * nb + q];
+
+			for (int p = 0 ; p < q ; ++p)
+			{
+				double sum = 0.0;
+
+				for (int s = p ; s < q ; ++s)
+					sum += t[p * nb + s] * z[s];
+
+				t[p * nb + q] = sum;
+			}
+		}
+
+		return t;
+	}
+
+	/**
+	 * Returns the orthonormal factor Q, with m rows and n columns.
+	 *
+	 * @return - a new matrix holding Q
+	 */
+	public DoubleMatrix getQ()
+	{
+		DoubleMatrix q = new DoubleMatrix(m_m, m_n);
+		double[] qv = q.m_values;
+
+		for (int i = 0 ; i < m_n ; ++i)
+			qv[i * m_n + i] = 1.0;
+
+		int panels = m_t.length;
+
+		// Columns before j are still zero in rows j and below.
+		for (int b = panels - 1 ; b >= 0 ; --b)
+		{
+			int j = b * DenseFactorKernels.NB;
+			int nb = Math.min(DenseFactorKernels.NB, m_n - j);
+
+			applyBlock(panelVectors(j, nb), m_t[b], m_m - j, nb, false, qv, j * m_n + j, m_n, m_n - j);
+		}
+
+		return q;
+	}
+
+	/**
+	 * Returns the upper triangular factor R.
+	 *
+	 * @return - a new n x n matrix holding R
+	 */
+	public DoubleUpperTriangularMatrix getR()
+	{
+		DoubleUpperTriangularMatrix r = new DoubleUpperTriangularMatrix(m_n);
+
+		for (int i = 0 ; i < m_n ; ++i)
+			System.arraycopy(m_qr, i * m_n + i, r.m_elements, r.index(i, i), m_n - i);
+
+		return r;
+	}
+
+	/**
+	 * Returns true if the factored matrix has full column rank.
+	 *
+	 * @return - true if R has no zero on its diagonal
+	 */
+	public boolean isFullRank()
+	{
+		for (int i = 0 ; i < m_n ; ++i)
+			if (m_qr[i * m_n + i] == 0.0)
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Helper function to copy the vectors of the panel starting at column j
+	 * into an (m - j) x nb row-major array, with their implied ones and zeros.
+	 */
+	private double[] panelVectors(int j, int nb)
+	{
+		int h = m_m - j;
+		double[] v = new double[h * nb];
+
+		for (int i = 0 ; i < h ; ++i)
+		{
+			int row = (j + i) * m_n + j;
+
+			for (int p = 0 ; p < nb && p <= i ; ++p)
+				v[i * nb + p] = (p == i) ? 1.0 : m_qr[row + p];
+		}
+
+		return v;
+	}
+
+	/**
+	 * Helper function to compute the reflector that zeroes column k below the
+	 * diagonal, storing beta on the diagonal and the vector below it.
+	 *
+	 * @param k
+	 * @return - tau, or zero if the column is already zero below the diagonal
+	 */
+	private double reflect(int k)
+	{
+		int n = m_n;
+		double[] a = m_qr;
+
+		double max = 0.0;
+
+		for (int i = k + 1 ; i < m_m ; ++i)
+			max = Math.max(max, Math.abs(a[i * n + k]));
+
+		if (max == 0.0)
+			return 0.0;
+
+		double sum = 0.0;
+
+		for (int i = k + 1 ; i < m_m ; ++i)
+		{
+			double x = a[i * n + k] / max;
+
+			sum += x * x;
+		}
+
+		double alpha = a[k * n + k];
+		double beta = -Math.copySign(Math.hypot(alpha, max * Math.sqrt(sum)), alpha);
+		double scale = 1.0 / (alpha - beta);
+
+		for (int i = k + 1 ; i < m_m ; ++i)
+			a[i * n + k] *= scale;
+
+		a[k * n + k] = beta;
+
+		return (beta - alpha) / beta;
+	}
+
+	/**
+	 * Find the least squares solution x of A * x = b for a single right-hand
+	 * side.
+	 *
+	 * @param b
+	 *            - the right-hand side, of length m
+	 * @return - the solution x, of length n
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 *             if A does not have full column rank
+	 */
+	public double[] solve(double[] b) throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (null == b)
+			throw new NullPointerException();
+
+		if (b.length != m_m)
+			throw new InvalidMatrixDimensionException();
+
+		double[] x = b.clone();
+
+		substitute(x, 1);
+
+		return Arrays.copyOf(x, m_n);
+	}
+
+	/**
+	 * Find the least squares solution X of A * X = B for every column of B at
+	 * once.
+	 *
+	 * @param b
+	 *            - the right-hand sides, with m rows
+	 * @return - the solution X, with n rows and one column per column of B
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 *             if A does not have full column rank
+	 */
+	public DoubleMatrix solve(DoubleMatrix b) throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (null == b)
+			throw new NullPointerException();
+
+		if (b.getRowDimension() != m_m)
+			throw new InvalidMatrixDimensionException();
+
+		int nrhs = b.getColumnDimension();
+
+		double[] y = new double[m_m * nrhs];
+
+		for (int i = 0 ; i < m_m ; ++i)
+			MatrixMath.readRow(b, i, 0, y, i * nrhs, nrhs);
+
+		substitute(y, nrhs);
+
+		DoubleMatrix x = new DoubleMatrix(m_n, nrhs);
+
+		System.arraycopy(y, 0, x.m_values, 0, m_n * nrhs);
+
+		return x;
+	}
+
+	/**
+	 * Helper function to replace the first n rows of the row-major m x nrhs
+	 * array y with the solution of R * X = (Q^T * Y)(0:n).
+	 *
+	 * @param y
+	 * @param nrhs
+	 * @throws SingularMatrixException
+	 */
+	private void substitute(double[] y, int nrhs) throws SingularMatrixException
+	{
+		if (!isFullRank())
+			throw new SingularMatrixException();
+
+		for (int b = 0 ; b < m_t.length ; ++b)
+		{
+			int j = b * DenseFactorKernels.NB;
+			int nb = Math.min(DenseFactorKernels.NB, m_n - j);
+
+			applyBlock(panelVectors(j, nb), m_t[b], m_m - j, nb, true, y, j * nrhs, nrhs, nrhs);
+		}
+
+		DenseFactorKernels.solveTriangular(m_n, nrhs, m_qr, 0, m_n, false, false, false, y, 0, nrhs);
+	}
+}
@@ -0,0 +1,20 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Exception for a singular matrix where an invertible one is required
+ * 
+ * @author antko
+ *
+ */
+public class SingularMatrixException extends Exception
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default constructor
+	 */
+	public SingularMatrixException()
+	{
+	}
+
+}
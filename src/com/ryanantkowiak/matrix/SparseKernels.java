@@ -0,0 +1,852 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Kernels for sparse matrix products whose cost scales with the number of
+ * stored nonzeros and floating point operations rather than with the
+ * dimensions.
+ *
+ * @author antko
+ *
+ */
+final class SparseKernels
+{
+	/**
+	 * Unused default constructor.
+	 */
+	private SparseKernels()
+	{
+	}
+
+	/**
+	 * Returns true if the given matrix stores only its nonzeros.
+	 *
+	 * @param m
+	 * @return - true for sparse and compressed matrices
+	 */
+	static boolean hasSparseStorage(DoubleMatrix m)
+	{
+		return (m instanceof DoubleSparseMatrix || m instanceof DoubleCompressedMatrix);
+	}
+
+	/**
+	 * Compare the values stored by a sparse or compressed matrix with the
+	 * values at the same positions of another matrix of the same dimensions,
+	 * as Double.equals does.
+	 *
+	 * @param m
+	 *            - a matrix for which hasSparseStorage() is true
+	 * @param other
+	 * @return - the number of stored values other than 0.0, or -1 if a stored
+	 *         value differs
+	 */
+	static long matchStoredValues(DoubleMatrix m, DoubleMatrix other)
+	{
+		long count = 0;
+
+		if (m instanceof DoubleSparseMatrix)
+		{
+			int cols = m.getColumnDimension();
+
+			LongDoubleHashMap data = ((DoubleSparseMatrix) m).m_sparseData;
+
+			for (int i = 0 ; i < data.m_keys.length ; ++i)
+			{
+				long key = data.m_keys[i];
+
+				if (key == LongDoubleHashMap.EMPTY)
+					continue;
+
+				long bits = Double.doubleToLongBits(data.m_values[i]);
+
+				if (bits != Double.doubleToLongBits(other.getDouble((int) (key / cols), (int) (key % cols))))
+					return -1;
+
+				if (bits != 0L)
+					++count;
+			}
+
+			return count;
+		}
+
+		DoubleCompressedMatrix cm = (DoubleCompressedMatrix) m;
+
+		for (int major = 0 ; major < cm.getMajorDimension() ; ++major)
+		{
+			for (int p = cm.m_pointers[major] ; p < cm.m_pointers[major + 1] ; ++p)
+			{
+				int row = cm.m_rowMajor ? major : cm.m_indices[p];
+				int col = cm.m_rowMajor ? cm.m_indices[p] : major;
+				long bits = Double.doubleToLongBits(cm.m_nonZeroValues[p]);
+
+				if (bits != Double.doubleToLongBits(other.getDouble(row, col)))
+					return -1;
+
+				if (bits != 0L)
+					++count;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns true if every value stored by a sparse or compressed matrix is
+	 * within epsilon of the value at the same position of another matrix of
+	 * the same dimensions.
+	 *
+	 * @param m
+	 *            - a matrix for which hasSparseStorage() is true
+	 * @param other
+	 * @param epsilon
+	 * @return - true if all stored values are close
+	 */
+	static boolean storedValuesClose(DoubleMatrix m, DoubleMatrix other, double epsilon)
+	{
+		if (m instanceof DoubleSparseMatrix)
+		{
+			int cols = m.getColumnDimension();
+
+			LongDoubleHashMap data = ((DoubleSparseMatrix) m).m_sparseData;
+
+			for (int i = 0 ; i < data.m_keys.length ; ++i)
+			{
+				long key = data.m_keys[i];
+
+				if (key != LongDoubleHashMap.EMPTY && !DoubleMatrix.isClose(data.m_values[i],
+						other.getDouble((int) (key / cols), (int) (key % cols)), epsilon))
+					return false;
+			}
+
+			return true;
+		}
+
+		DoubleCompressedMatrix cm = (DoubleCompressedMatrix) m;
+
+		for (int major = 0 ; major < cm.getMajorDimension() ; ++major)
+		{
+			for (int p = cm.m_pointers[major] ; p < cm.m_pointers[major + 1] ; ++p)
+			{
+				int row = cm.m_rowMajor ? major : cm.m_indices[p];
+				int col = cm.m_rowMajor ? cm.m_indices[p] : major;
+
+				if (!DoubleMatrix.isClose(cm.m_nonZeroValues[p], other.getDouble(row, col), epsilon))
+					return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Return the nonzeros of the given matrix in compressed row form.
+	 *
+	 * @param m
+	 * @return - the matrix in compressed row form
+	 */
+	static DoubleCompressedMatrix toCompressedRows(DoubleMatrix m)
+	{
+		if (m instanceof DoubleCompressedMatrix)
+			return ((DoubleCompressedMatrix) m).m_rowMajor ? (DoubleCompressedMatrix) m
+					: new DoubleCompressedRowMatrix((DoubleCompressedMatrix) m);
+
+		if (m instanceof DoubleSparseMatrix)
+			return new DoubleCompressedRowMatrix((DoubleSparseMatrix) m);
+
+		return compressRows(m);
+	}
+
+	/**
+	 * Return the nonzeros of the given matrix in compressed row form, or null if
+	 * the matrix stores a NaN or infinite value. Such values must meet the
+	 * implicit zeros of the other operand (0 * Inf is NaN), so they are left to
+	 * the element-by-element path.
+	 *
+	 * @param m
+	 * @return - the matrix in compressed row form, or null
+	 */
+	static DoubleCompressedMatrix toFiniteCompressedRows(DoubleMatrix m)
+	{
+		DoubleCompressedMatrix csr = toCompressedRows(m);
+
+		for (double v : csr.m_nonZeroValues)
+			if (Double.isNaN(v) || Double.isInfinite(v))
+				return null;
+
+		return csr;
+	}
+
+	/**
+	 * Return an array-backed matrix as is, and any other matrix in compressed
+	 * row form, or null if the matrix stores a NaN or infinite value, for
+	 * kernels that skip zeros.
+	 *
+	 * @param m
+	 * @return - the matrix in a form multiplyDense() accepts, or null
+	 */
+	static DoubleMatrix toFiniteRows(DoubleMatrix m)
+	{
+		if (m.m_values == null)
+			return toFiniteCompressedRows(m);
+
+		for (int r = 0 ; r < m.getRowDimension() ; ++r)
+		{
+			int start = m.m_offset + r * m.m_rowStride;
+
+			for (int c = start ; c < start + m.getColumnDimension() ; ++c)
+				if (Double.isNaN(m.m_values[c]) || Double.isInfinite(m.m_values[c]))
+					return null;
+		}
+
+		return m;
+	}
+
+	/**
+	 * Collect the nonzeros of a matrix without sparse storage in compressed row
+	 * form, visiting each row, so that structured matrices cost only their
+	 * stored elements.
+	 */
+	private static DoubleCompressedMatrix compressRows(DoubleMatrix m)
+	{
+		int rows = m.getRowDimension();
+
+		int[] rowPtr = new int[rows + 1];
+		RowCollector collector = new RowCollector();
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			m.forEachNonZeroInRow(r, collector);
+
+			rowPtr[r + 1] = collector.m_nnz;
+		}
+
+		return new DoubleCompressedRowMatrix(rows, m.getColumnDimension(), rowPtr, collector.m_colIdx,
+				collector.m_values);
+	}
+
+	/**
+	 * Compress coordinate (COO) entries into compressed row form, summing the
+	 * values of entries at the same position and dropping sums of zero. The
+	 * entries are given as segments, such as the buffers of several threads:
+	 * segment s holds counts[s] entries in rowIdx[s], colIdx[s] and values[s].
+	 *
+	 * The entries are bucketed by column and then stably by row, so the
+	 * columns end up sorted within each row in time linear in the number of
+	 * entries; duplicates are then adjacent and are summed in the order they
+	 * were given.
+	 *
+	 * @param rows
+	 * @param cols
+	 * @param rowIdx
+	 * @param colIdx
+	 * @param values
+	 * @param counts
+	 * @return - the compressed matrix
+	 */
+	static DoubleCompressedRowMatrix compressTriplets(int rows, int cols, int[][] rowIdx, int[][] colIdx,
+			double[][] values, int[] counts)
+	{
+		long total = 0;
+
+		for (int count : counts)
+			total += count;
+
+		if (total > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Too many entries: " + total);
+
+		int nnz = (int) total;
+		int[] colPtr = new int[cols + 1];
+		int[] pointers = new int[rows + 1];
+
+		for (int s = 0 ; s < counts.length ; ++s)
+		{
+			for (int k = 0 ; k < counts[s] ; ++k)
+			{
+				++colPtr[colIdx[s][k] + 1];
+				++pointers[rowIdx[s][k] + 1];
+			}
+		}
+
+		for (int c = 0 ; c < cols ; ++c)
+			colPtr[c + 1] += colPtr[c];
+
+		for (int r = 0 ; r < rows ; ++r)
+			pointers[r + 1] += pointers[r];
+
+		int[] byColRow = new int[nnz];
+		double[] byColValue = new double[nnz];
+
+		for (int s = 0 ; s < counts.length ; ++s)
+		{
+			for (int k = 0 ; k < counts[s] ; ++k)
+			{
+				int p = colPtr[colIdx[s][k]]++;
+
+				byColRow[p] = rowIdx[s][k];
+				byColValue[p] = values[s][k];
+			}
+		}
+
+		int[] indices = new int[nnz];
+		double[] vals = new double[nnz];
+		int[] fill = Arrays.copyOf(pointers, rows);
+		int p = 0;
+
+		for (int c = 0 ; c < cols ; ++c)
+		{
+			for ( ; p < colPtr[c] ; ++p)
+			{
+				int q = fill[byColRow[p]]++;
+
+				indices[q] = c;
+				vals[q] = byColValue[p];
+			}
+		}
+
+		// Sum the duplicates of each row in place and drop zeros.
+		int out = 0;
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			int start = pointers[r];
+			int end = pointers[r + 1];
+
+			pointers[r] = out;
+
+			for (int q = start ; q < end ; )
+			{
+				int c = indices[q];
+				double sum = vals[q];
+
+				while (++q < end && indices[q] == c)
+					sum += vals[q];
+
+				if (sum != 0.0)
+				{
+					indices[out] = c;
+					vals[out++] = sum;
+				}
+			}
+		}
+
+		pointers[rows] = out;
+
+		return new DoubleCompressedRowMatrix(rows, cols, pointers, Arrays.copyOf(indices, out),
+				Arrays.copyOf(vals, out));
+	}
+
+	/**
+	 * Dense accumulator for one row of a sparse product (Gustavson's algorithm).
+	 */
+	static class RowAccumulator
+	{
+		private final double[] m_values;
+		private final int[] m_marker;
+		private final int[] m_pattern;
+		private int m_stamp;
+
+		/**
+		 * Construct an accumulator for rows of the given length.
+		 */
+		RowAccumulator(int cols)
+		{
+			m_values = new double[cols];
+			m_marker = new int[cols];
+			m_pattern = new int[cols];
+		}
+
+		/**
+		 * Compute row r of A * B, where both are in compressed row form, and write
+		 * its nonzeros in ascending column order to outCols and outValues.
+		 *
+		 * @return - the number of nonzeros written
+		 */
+		int multiplyRow(DoubleCompressedMatrix a, DoubleCompressedMatrix b, int r, int[] outCols, double[] outValues)
+		{
+			++m_stamp;
+
+			int count = 0;
+
+			for (int pa = a.m_pointers[r] ; pa < a.m_pointers[r + 1] ; ++pa)
+			{
+				int z = a.m_indices[pa];
+				double av = a.m_nonZeroValues[pa];
+
+				for (int pb = b.m_pointers[z] ; pb < b.m_pointers[z + 1] ; ++pb)
+				{
+					int c = b.m_indices[pb];
+
+					if (m_marker[c] != m_stamp)
+					{
+						m_marker[c] = m_stamp;
+						m_values[c] = av * b.m_nonZeroValues[pb];
+						m_pattern[count++] = c;
+					}
+					else
+					{
+						m_values[c] += av * b.m_nonZeroValues[pb];
+					}
+				}
+			}
+
+			Arrays.sort(m_pattern, 0, count);
+
+			int written = 0;
+
+			for (int i = 0 ; i < count ; ++i)
+			{
+				int c = m_pattern[i];
+				double v = m_values[c];
+
+				if (v != 0.0)
+				{
+					outCols[written] = c;
+					outValues[written++] = v;
+				}
+			}
+
+			return written;
+		}
+	}
+
+	/**
+	 * Multiply a matrix in compressed row form by a matrix that is either
+	 * array-backed or in compressed row form, into a new array-backed matrix,
+	 * for products that are expected to be dense. Each nonzero of a adds its
+	 * multiple of the matching row of b straight into the result, so no
+	 * sparse accumulator is needed. Neither operand may store a NaN or
+	 * infinite value, since the zeros of the other are skipped.
+	 *
+	 * @param a
+	 * @param b
+	 *            - an array-backed matrix or a compressed row matrix
+	 * @return - the product
+	 */
+	static DoubleMatrix multiplyDense(DoubleCompressedMatrix a, DoubleMatrix b)
+	{
+		int rows = a.getRowDimension();
+		int cols = b.getColumnDimension();
+
+		DoubleMatrix m = new DoubleMatrix(rows, cols);
+		double[] c = m.m_values;
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			int rc = r * cols;
+
+			for (int p = a.m_pointers[r] ; p < a.m_pointers[r + 1] ; ++p)
+			{
+				int z = a.m_indices[p];
+				double av = a.m_nonZeroValues[p];
+
+				if (b.m_values != null)
+				{
+					DoubleKernels.INSTANCE.axpy(av, b.m_values, b.m_offset + z * b.m_rowStride, c, rc, cols);
+					continue;
+				}
+
+				DoubleCompressedMatrix cb = (DoubleCompressedMatrix) b;
+
+				for (int q = cb.m_pointers[z] ; q < cb.m_pointers[z + 1] ; ++q)
+					c[rc + cb.m_indices[q]] += av * cb.m_nonZeroValues[q];
+			}
+		}
+
+		return m;
+	}
+
+	/**
+	 * Estimate the fraction of nonzero elements in the product of a matrix in
+	 * compressed row form and a matrix that is either array-backed or in
+	 * compressed row form. The number of multiply-adds is counted exactly, and
+	 * they are taken to land on random elements of the result, so a result
+	 * with e elements and f multiply-adds is estimated to be 1 - exp(-f / e)
+	 * full.
+	 *
+	 * @param a
+	 * @param b
+	 *            - an array-backed matrix or a compressed row matrix
+	 * @return - the estimated density of the product, from 0 to 1
+	 */
+	static double productDensity(DoubleCompressedMatrix a, DoubleMatrix b)
+	{
+		double elements = (double) a.getRowDimension() * b.getColumnDimension();
+
+		if (elements == 0.0)
+			return 0.0;
+
+		double multiplyAdds;
+
+		if (b.m_values != null)
+		{
+			multiplyAdds = (double) a.m_pointers[a.getRowDimension()] * b.getColumnDimension();
+		}
+		else
+		{
+			int[] bPtr = ((DoubleCompressedMatrix) b).m_pointers;
+			long count = 0;
+
+			for (int p = 0 ; p < a.m_pointers[a.getRowDimension()] ; ++p)
+				count += bPtr[a.m_indices[p] + 1] - bPtr[a.m_indices[p]];
+
+			multiplyAdds = count;
+		}
+
+		return -Math.expm1(-multiplyAdds / elements);
+	}
+
+	/**
+	 * Multiply two matrices in compressed row form.
+	 *
+	 * @param a
+	 * @param b
+	 * @return - the product in compressed row form
+	 */
+	static DoubleCompressedRowMatrix multiply(DoubleCompressedMatrix a, DoubleCompressedMatrix b)
+	{
+		int rows = a.getRowDimension();
+		int cols = b.getColumnDimension();
+
+		RowAccumulator acc = new RowAccumulator(cols);
+
+		int[] rowCols = new int[cols];
+		double[] rowValues = new double[cols];
+
+		int[] rowPtr = new int[rows + 1];
+		int[] colIdx = new int[Math.max(16, a.getNonZeroCount() + b.getNonZeroCount())];
+		double[] values = new double[colIdx.length];
+		int nnz = 0;
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			int count = acc.multiplyRow(a, b, r, rowCols, rowValues);
+
+			if (nnz + count > colIdx.length)
+			{
+				int size = Math.max(2 * colIdx.length, nnz + count);
+				colIdx = Arrays.copyOf(colIdx, size);
+				values = Arrays.copyOf(values, size);
+			}
+
+			System.arraycopy(rowCols, 0, colIdx, nnz, count);
+			System.arraycopy(rowValues, 0, values, nnz, count);
+
+			nnz += count;
+			rowPtr[r + 1] = nnz;
+		}
+
+		return new DoubleCompressedRowMatrix(rows, cols, rowPtr, Arrays.copyOf(colIdx, nnz),
+				Arrays.copyOf(values, nnz));
+	}
+
+	/**
+	 * Add (or subtract) two sparse matrices by merging their stored nonzeros.
+	 * Each result entry is computed exactly as m1.get(r, c) +/- m2.get(r, c),
+	 * and entries that cancel to zero are not stored.
+	 *
+	 * @param m
+	 *            - the empty matrix that receives the result
+	 * @param m1
+	 * @param m2
+	 * @param subtract
+	 *            - true to compute m1 - m2, false to compute m1 + m2
+	 */
+	static void add(DoubleSparseMatrix m, DoubleMatrix m1, DoubleMatrix m2, boolean subtract)
+	{
+		int rows = m1.getRowDimension();
+		int cols = m1.getColumnDimension();
+
+		if (m1 instanceof DoubleSparseMatrix && m2 instanceof DoubleSparseMatrix)
+		{
+			m.m_sparseData = new LongDoubleHashMap(((DoubleSparseMatrix) m1).m_sparseData);
+
+			mergeInto(m.m_sparseData, ((DoubleSparseMatrix) m2).m_sparseData, subtract);
+
+			return;
+		}
+
+		DoubleCompressedMatrix a = toCompressedRows(m1);
+		DoubleCompressedMatrix b = toCompressedRows(m2);
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			int pa = a.m_pointers[r];
+			int pb = b.m_pointers[r];
+			int endA = a.m_pointers[r + 1];
+			int endB = b.m_pointers[r + 1];
+
+			while (pa < endA || pb < endB)
+			{
+				int ca = (pa < endA) ? a.m_indices[pa] : cols;
+				int cb = (pb < endB) ? b.m_indices[pb] : cols;
+
+				double va = 0.0;
+				double vb = 0.0;
+				int c;
+
+				if (ca <= cb)
+				{
+					c = ca;
+					va = a.m_nonZeroValues[pa++];
+				}
+				else
+				{
+					c = cb;
+				}
+
+				if (cb == c)
+					vb = b.m_nonZeroValues[pb++];
+
+				double val = subtract ? va - vb : va + vb;
+
+				if (val != 0.0)
+					m.setDouble(r, c, val);
+			}
+		}
+	}
+
+	/**
+	 * Helper function to add (or subtract) every entry of src to dst, removing
+	 * the entries of dst that cancel to zero.
+	 */
+	private static void mergeInto(LongDoubleHashMap dst, LongDoubleHashMap src, boolean subtract)
+	{
+		for (int i = 0 ; i < src.m_keys.length ; ++i)
+		{
+			long key = src.m_keys[i];
+
+			if (key == LongDoubleHashMap.EMPTY)
+				continue;
+
+			double a = dst.get(key);
+			double val = subtract ? a - src.m_values[i] : a + src.m_values[i];
+
+			if (val == 0.0)
+				dst.remove(key);
+			else
+				dst.put(key, val);
+		}
+	}
+
+	/**
+	 * Multiply the stored nonzeros of a sparse matrix by a finite scalar.
+	 * Entries that become zero are not stored.
+	 *
+	 * @param v
+	 *            - the empty matrix that receives the result
+	 * @param m
+	 * @param scalar
+	 */
+	static void scalarMultiply(DoubleSparseMatrix v, DoubleMatrix m, double scalar)
+	{
+		if (m instanceof DoubleSparseMatrix)
+		{
+			LongDoubleHashMap data = ((DoubleSparseMatrix) m).m_sparseData;
+
+			for (int i = 0 ; i < data.m_keys.length ; ++i)
+			{
+				if (data.m_keys[i] == LongDoubleHashMap.EMPTY)
+					continue;
+
+				double val = scalar * data.m_values[i];
+
+				if (val != 0.0)
+					v.m_sparseData.put(data.m_keys[i], val);
+			}
+
+			return;
+		}
+
+		DoubleCompressedMatrix a = toCompressedRows(m);
+
+		for (int r = 0 ; r < a.getRowDimension() ; ++r)
+		{
+			for (int p = a.m_pointers[r] ; p < a.m_pointers[r + 1] ; ++p)
+			{
+				double val = scalar * a.m_nonZeroValues[p];
+
+				if (val != 0.0)
+					v.setDouble(r, a.m_indices[p], val);
+			}
+		}
+	}
+
+	/**
+	 * Add (or subtract) the stored nonzeros of m2 to the sparse matrix m1 in
+	 * place. Entries of m1 that cancel to zero are removed. m2 must store only
+	 * its nonzeros and must not be m1.
+	 *
+	 * @param m1
+	 *            - the matrix that receives the result
+	 * @param m2
+	 * @param subtract
+	 *            - true to compute m1 - m2, false to compute m1 + m2
+	 */
+	static void addInPlace(DoubleSparseMatrix m1, DoubleMatrix m2, boolean subtract)
+	{
+		if (m2 instanceof DoubleSparseMatrix)
+		{
+			mergeInto(m1.m_sparseData, ((DoubleSparseMatrix) m2).m_sparseData, subtract);
+
+			return;
+		}
+
+		DoubleCompressedMatrix b = (DoubleCompressedMatrix) m2;
+
+		for (int major = 0 ; major < b.getMajorDimension() ; ++major)
+		{
+			for (int p = b.m_pointers[major] ; p < b.m_pointers[major + 1] ; ++p)
+			{
+				int r = b.m_rowMajor ? major : b.m_indices[p];
+				int c = b.m_rowMajor ? b.m_indices[p] : major;
+				double a = m1.getDouble(r, c);
+
+				m1.setDouble(r, c, subtract ? a - b.m_nonZeroValues[p] : a + b.m_nonZeroValues[p]);
+			}
+		}
+	}
+
+	/**
+	 * Multiply the stored nonzeros of a sparse matrix by a finite scalar in
+	 * place. Entries that become zero are removed.
+	 *
+	 * @param m
+	 * @param scalar
+	 */
+	static void scaleInPlace(DoubleSparseMatrix m, double scalar)
+	{
+		LongDoubleHashMap data = m.m_sparseData;
+		boolean zeros = false;
+
+		for (int i = 0 ; i < data.m_keys.length ; ++i)
+		{
+			if (data.m_keys[i] != LongDoubleHashMap.EMPTY)
+			{
+				data.m_values[i] *= scalar;
+				zeros |= (data.m_values[i] == 0.0);
+			}
+		}
+
+		if (zeros)
+			data.removeZeros();
+	}
+
+	/**
+	 * Compute y = m * x, touching only the stored entries of sparse matrices.
+	 *
+	 * @param m
+	 * @param x
+	 * @return - the product vector
+	 */
+	static double[] multiply(DoubleMatrix m, double[] x)
+	{
+		int rows = m.getRowDimension();
+		int cols = m.getColumnDimension();
+
+		double[] y = new double[rows];
+
+		if (m.m_values != null)
+		{
+			double[] a = m.m_values;
+
+			for (int r = 0 ; r < rows ; ++r)
+				y[r] = DoubleKernels.INSTANCE.dot(a, m.m_offset + r * m.m_rowStride, x, 0, cols);
+		}
+		else if (m instanceof DoubleCompressedMatrix)
+		{
+			DoubleCompressedMatrix cm = (DoubleCompressedMatrix) m;
+
+			if (cm.m_rowMajor)
+			{
+				multiplyInto(cm, x, y);
+			}
+			else
+			{
+				for (int c = 0 ; c < cols ; ++c)
+				{
+					double xc = x[c];
+
+					for (int p = cm.m_pointers[c] ; p < cm.m_pointers[c + 1] ; ++p)
+						y[cm.m_indices[p]] += cm.m_nonZeroValues[p] * xc;
+				}
+			}
+		}
+		else if (m instanceof DoubleSparseMatrix)
+		{
+			LongDoubleHashMap data = ((DoubleSparseMatrix) m).m_sparseData;
+
+			for (int i = 0 ; i < data.m_keys.length ; ++i)
+			{
+				long key = data.m_keys[i];
+
+				if (key != LongDoubleHashMap.EMPTY)
+					y[(int) (key / cols)] += data.m_values[i] * x[(int) (key % cols)];
+			}
+		}
+		else
+		{
+			for (int r = 0 ; r < rows ; ++r)
+			{
+				double sum = 0.0;
+
+				for (int c = 0 ; c < cols ; ++c)
+					sum += m.getDouble(r, c) * x[c];
+
+				y[r] = sum;
+			}
+		}
+
+		return y;
+	}
+
+	/**
+	 * Compute y = m * x for a matrix in compressed row form, overwriting y, so
+	 * that iterative methods can reuse their vectors.
+	 *
+	 * @param m
+	 *            - a compressed matrix with m_rowMajor set
+	 * @param x
+	 * @param y
+	 */
+	static void multiplyInto(DoubleCompressedMatrix m, double[] x, double[] y)
+	{
+		int[] ptr = m.m_pointers;
+		int[] idx = m.m_indices;
+		double[] val = m.m_nonZeroValues;
+
+		for (int r = 0 ; r < m.getRowDimension() ; ++r)
+		{
+			double sum = 0.0;
+
+			for (int p = ptr[r] ; p < ptr[r + 1] ; ++p)
+				sum += val[p] * x[idx[p]];
+
+			y[r] = sum;
+		}
+	}
+
+	/**
+	 * Visitor that appends the columns and values of the nonzeros of each row
+	 * it visits to growable arrays.
+	 */
+	private static final class RowCollector implements DoubleEntryVisitor
+	{
+		private int[] m_colIdx = new int[16];
+		private double[] m_values = new double[16];
+		private int m_nnz;
+
+		@Override
+		public void visit(int row, int col, double value)
+		{
+			if (m_nnz == m_colIdx.length)
+			{
+				m_colIdx = Arrays.copyOf(m_colIdx, 2 * m_nnz);
+				m_values = Arrays.copyOf(m_values, 2 * m_nnz);
+			}
+
+			m_colIdx[m_nnz] = col;
+			m_values[m_nnz++] = value;
+		}
+	}
+}
@@ -0,0 +1,472 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Arrays;
+
+/**
+ * Sparse LU decomposition of a square sparse matrix, such that P * A * Q = L *
+ * U, where Q is a fill-reducing column ordering, P is the row permutation
+ * chosen by threshold partial pivoting, L is unit lower triangular and U is
+ * upper triangular.
+ *
+ * The factorization works column by column on the nonzero structure only
+ * (left-looking, Gilbert-Peierls): each column of A is solved against the part
+ * of L computed so far by a sparse triangular solve whose cost is proportional
+ * to the number of floating point operations, not to the dimension.
+ *
+ * The column ordering is a minimum degree ordering of A + A^T, applied
+ * symmetrically, and the diagonal entry is preferred as pivot when it is within
+ * PIVOT_TOLERANCE of the largest candidate, so the ordering is preserved as far
+ * as stability allows.
+ *
+ * @author antko
+ *
+ */
+public class SparseLUDecomposition
+{
+	/**
+	 * The diagonal is chosen as pivot if its magnitude is at least this fraction
+	 * of the largest magnitude in the column.
+	 */
+	public static final double PIVOT_TOLERANCE = 0.1;
+
+	/**
+	 * The dimension of the factored matrix.
+	 */
+	private final int m_n;
+
+	/**
+	 * Column ordering: column k of A * Q is column m_colPerm[k] of A.
+	 */
+	private final int[] m_colPerm;
+
+	/**
+	 * Inverse row permutation: row i of A is row m_rowPermInv[i] of P * A.
+	 */
+	private final int[] m_rowPermInv;
+
+	/**
+	 * L in compressed column form, with the unit diagonal stored first in each
+	 * column.
+	 */
+	private int[] m_lColPtr;
+	private int[] m_lRowIdx;
+	private double[] m_lValues;
+
+	/**
+	 * U in compressed column form, with the diagonal stored last in each column.
+	 */
+	private int[] m_uColPtr;
+	private int[] m_uRowIdx;
+	private double[] m_uValues;
+
+	/**
+	 * True if no nonzero pivot could be found for some column.
+	 */
+	private boolean m_singular;
+
+	/**
+	 * Factor the given square sparse matrix.
+	 *
+	 * @param m
+	 *            - the matrix to factor
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public SparseLUDecomposition(DoubleSparseMatrix m) throws InvalidMatrixDimensionException
+	{
+		this(new DoubleCompressedColumnMatrix(m));
+	}
+
+	/**
+	 * Factor the given square compressed matrix.
+	 *
+	 * @param m
+	 *            - the matrix to factor
+	 * @throws InvalidMatrixDimensionException
+	 */
+	public SparseLUDecomposition(DoubleCompressedMatrix m) throws InvalidMatrixDimensionException
+	{
+		if (null == m)
+			throw new NullPointerException();
+
+		if (m.getRowDimension() != m.getColumnDimension())
+			throw new InvalidMatrixDimensionException();
+
+		if (m.m_rowMajor)
+			m = new DoubleCompressedColumnMatrix(m);
+
+		int n = m.getRowDimension();
+
+		m_n = n;
+		m_colPerm = MinimumDegreeOrdering.order(n, m.m_pointers, m.m_indices);
+		m_rowPermInv = new int[n];
+
+		factor(m.m_pointers, m.m_indices, m.m_nonZeroValues);
+	}
+
+	/**
+	 * Helper function to compute the factorization of the compressed column
+	 * matrix.
+	 */
+	private void factor(int[] colPtr, int[] rowIdx, double[] values)
+	{
+		int n = m_n;
+		int[] pinv = m_rowPermInv;
+
+		Arrays.fill(pinv, -1);
+
+		int capacity = 4 * colPtr[n] + n;
+
+		m_lColPtr = new int[n + 1];
+		m_lRowIdx = new int[capacity];
+		m_lValues = new double[capacity];
+
+		m_uColPtr = new int[n + 1];
+		m_uRowIdx = new int[capacity];
+		m_uValues = new double[capacity];
+
+		double[] x = new double[n];
+		int[] xi = new int[2 * n];
+		int[] mark = new int[n];
+
+		int lnz = 0;
+		int unz = 0;
+
+		for (int k = 0 ; k < n ; ++k)
+		{
+			m_lColPtr[k] = lnz;
+			m_uColPtr[k] = unz;
+
+			if (lnz + n > m_lRowIdx.length)
+			{
+				int size = 2 * m_lRowIdx.length + n;
+				m_lRowIdx = Arrays.copyOf(m_lRowIdx, size);
+				m_lValues = Arrays.copyOf(m_lValues, size);
+			}
+
+			if (unz + n > m_uRowIdx.length)
+			{
+				int size = 2 * m_uRowIdx.length + n;
+				m_uRowIdx = Arrays.copyOf(m_uRowIdx, size);
+				m_uValues = Arrays.copyOf(m_uValues, size);
+			}
+
+			int col = m_colPerm[k];
+			int top = sparseSolve(colPtr, rowIdx, values, col, xi, x, mark, k + 1);
+
+			int pivotRow = -1;
+			double max = -1.0;
+
+			for (int p = top ; p < n ; ++p)
+			{
+				int i = xi[p];
+
+				if (pinv[i] < 0)
+				{
+					double v = Math.abs(x[i]);
+
+					if (v > max)
+					{
+						max = v;
+						pivotRow = i;
+					}
+				}
+				else
+				{
+					m_uRowIdx[unz] = pinv[i];
+					m_uValues[unz++] = x[i];
+				}
+			}
+
+			if (pivotRow == -1 || max <= 0.0)
+			{
+				m_singular = true;
+
+				for (int p = top ; p < n ; ++p)
+					x[xi[p]] = 0.0;
+
+				// Close off column k and leave the columns not reached empty.
+				Arrays.fill(m_lColPtr, k + 1, n + 1, lnz);
+				Arrays.fill(m_uColPtr, k + 1, n + 1, unz);
+
+				return;
+			}
+
+			if (pinv[col] < 0 && Math.abs(x[col]) >= max * PIVOT_TOLERANCE)
+				pivotRow = col;
+
+			double pivot = x[pivotRow];
+
+			m_uRowIdx[unz] = k;
+			m_uValues[unz++] = pivot;
+
+			pinv[pivotRow] = k;
+
+			m_lRowIdx[lnz] = pivotRow;
+			m_lValues[lnz++] = 1.0;
+
+			for (int p = top ; p < n ; ++p)
+			{
+				int i = xi[p];
+
+				if (pinv[i] < 0)
+				{
+					m_lRowIdx[lnz] = i;
+					m_lValues[lnz++] = x[i] / pivot;
+				}
+
+				x[i] = 0.0;
+			}
+		}
+
+		m_lColPtr[n] = lnz;
+		m_uColPtr[n] = unz;
+
+		for (int p = 0 ; p < lnz ; ++p)
+			m_lRowIdx[p] = pinv[m_lRowIdx[p]];
+	}
+
+	/**
+	 * Helper function to solve L * x = A(:, col) with the part of L computed so
+	 * far. On return x holds the solution in the rows xi[top..n-1].
+	 *
+	 * @return - the start of the nonzero pattern in xi
+	 */
+	private int sparseSolve(int[] colPtr, int[] rowIdx, double[] values, int col, int[] xi, double[] x, int[] mark,
+			int stamp)
+	{
+		int n = m_n;
+		int[] pinv = m_rowPermInv;
+
+		int top = reach(colPtr, rowIdx, col, xi, mark, stamp);
+
+		for (int p = top ; p < n ; ++p)
+			x[xi[p]] = 0.0;
+
+		for (int p = colPtr[col] ; p < colPtr[col + 1] ; ++p)
+			x[rowIdx[p]] = values[p];
+
+		for (int px = top ; px < n ; ++px)
+		{
+			int j = xi[px];
+			int jj = pinv[j];
+
+			if (jj < 0)
+				continue;
+
+			double xj = x[j];
+
+			for (int p = m_lColPtr[jj] + 1 ; p < m_lColPtr[jj + 1] ; ++p)
+				x[m_lRowIdx[p]] -= m_lValues[p] * xj;
+		}
+
+		return top;
+	}
+
+	/**
+	 * Helper function to compute, in topological order, the rows reachable in the
+	 * graph of L from the nonzeros of A(:, col).
+	 *
+	 * @return - the start of the reach in xi
+	 */
+	private int reach(int[] colPtr, int[] rowIdx, int col, int[] xi, int[] mark, int stamp)
+	{
+		int n = m_n;
+		int top = n;
+
+		for (int p = colPtr[col] ; p < colPtr[col + 1] ; ++p)
+			if (mark[rowIdx[p]] != stamp)
+				top = depthFirst(rowIdx[p], top, xi, mark, stamp);
+
+		return top;
+	}
+
+	/**
+	 * Helper function for a non-recursive depth first search from row j. The
+	 * lower half of xi is the search stack, the upper half (from top) collects
+	 * finished rows.
+	 */
+	private int depthFirst(int j, int top, int[] xi, int[] mark, int stamp)
+	{
+		int n = m_n;
+		int[] pinv = m_rowPermInv;
+		int[] stack = xi;
+		int head = 0;
+
+		stack[0] = j;
+
+		// Progress through each column is kept in the pivot slots of xi[n..2n).
+		while (head >= 0)
+		{
+			j = stack[head];
+			int jj = pinv[j];
+
+			if (mark[j] != stamp)
+			{
+				mark[j] = stamp;
+				xi[n + head] = (jj < 0) ? 0 : m_lColPtr[jj] + 1;
+			}
+
+			boolean done = true;
+			int end = (jj < 0) ? 0 : m_lColPtr[jj + 1];
+
+			for (int p = xi[n + head] ; p < end ; ++p)
+			{
+				int i = m_lRowIdx[p];
+
+				if (mark[i] == stamp)
+					continue;
+
+				xi[n + head] = p;
+				stack[++head] = i;
+				done = false;
+				break;
+			}
+
+			if (done)
+			{
+				--head;
+				xi[--top] = j;
+			}
+		}
+
+		return top;
+	}
+
+	/**
+	 * Returns true if the factored matrix is singular.
+	 *
+	 * @return - true if no nonzero pivot was found for some column
+	 */
+	public boolean isSingular()
+	{
+		return m_singular;
+	}
+
+	/**
+	 * Returns the number of nonzeros stored in L and U, including the unit
+	 * diagonal of L.
+	 *
+	 * @return - the number of stored nonzeros in the factors
+	 */
+	public int getFactorNonZeros()
+	{
+		return m_lColPtr[m_n] + m_uColPtr[m_n];
+	}
+
+	/**
+	 * Returns the fill-reducing column ordering: column k of A * Q is column
+	 * getColumnOrdering()[k] of A.
+	 *
+	 * @return - a copy of the column ordering
+	 */
+	public int[] getColumnOrdering()
+	{
+		return m_colPerm.clone();
+	}
+
+	/**
+	 * Returns the determinant of the factored matrix.
+	 *
+	 * @return - the determinant
+	 */
+	public double determinant()
+	{
+		if (m_singular)
+			return 0.0;
+
+		double det = permutationSign(m_colPerm) * permutationSign(m_rowPermInv);
+
+		for (int k = 0 ; k < m_n ; ++k)
+			det *= m_uValues[m_uColPtr[k + 1] - 1];
+
+		return det;
+	}
+
+	/**
+	 * Helper function to compute the sign of a permutation from its cycles.
+	 */
+	private static int permutationSign(int[] perm)
+	{
+		boolean[] visited = new boolean[perm.length];
+		int sign = 1;
+
+		for (int i = 0 ; i < perm.length ; ++i)
+		{
+			if (visited[i])
+				continue;
+
+			int length = 0;
+
+			for (int j = i ; !visited[j] ; j = perm[j])
+			{
+				visited[j] = true;
+				++length;
+			}
+
+			if (length % 2 == 0)
+				sign = -sign;
+		}
+
+		return sign;
+	}
+
+	/**
+	 * Solve A * x = b.
+	 *
+	 * @param b
+	 *            - the right-hand side, of length n
+	 * @return - the solution x
+	 * @throws InvalidMatrixDimensionException
+	 * @throws SingularMatrixException
+	 */
+	public double[] solve(double[] b) throws InvalidMatrixDimensionException, SingularMatrixException
+	{
+		if (null == b)
+			throw new NullPointerException();
+
+		if (b.length != m_n)
+			throw new InvalidMatrixDimensionException();
+
+		if (m_singular)
+			throw new SingularMatrixException();
+
+		int n = m_n;
+		double[] y = new double[n];
+
+		for (int i = 0 ; i < n ; ++i)
+			y[m_rowPermInv[i]] = b[i];
+
+		for (int j = 0 ; j < n ; ++j)
+		{
+			double yj = y[j];
+
+			if (yj == 0.0)
+				continue;
+
+			for (int p = m_lColPtr[j] + 1 ; p < m_lColPtr[j + 1] ; ++p)
+				y[m_lRowIdx[p]] -= m_lValues[p] * yj;
+		}
+
+		for (int j = n - 1 ; j >= 0 ; --j)
+		{
+			int diag = m_uColPtr[j + 1] - 1;
+
+			y[j] /= m_uValues[diag];
+
+			double yj = y[j];
+
+			if (yj == 0.0)
+				continue;
+
+			for (int p = m_uColPtr[j] ; p < diag ; ++p)
+				y[m_uRowIdx[p]] -= m_uValues[p] * yj;
+		}
+
+		double[] x = new double[n];
+
+		for (int k = 0 ; k < n ; ++k)
+			x[m_colPerm[k]] = y[k];
+
+		return x;
+	}
+}
@@ -1,10 +1,9 @@
 package com.ryanantkowiak.matrix;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
- * Sparse Matrix class.
+ * Sparse Matrix class. Only the non-null elements are stored, in a hash map
+ * from their long row-major key, so any dimensions whose product fits in a
+ * long are supported.
  * 
  * @author antko
  *
@@ -15,7 +14,7 @@ public class SparseMatrix<E> extends Matrix<E>
 	/**
 	 * Underlying data representation of a SparseMatrix
 	 */
-	protected Map<Integer, E> m_sparseData;
+	protected LongObjectHashMap<E> m_sparseData;
 
 	/**
 	 * Constructor
@@ -30,6 +29,120 @@ public class SparseMatrix<E> extends Matrix<E>
 		super(rows, cols);
 	}
 
+	/**
+	 * Return a copy of this matrix that does not share storage with it.
+	 * 
+	 * @return - a new sparse matrix holding the same elements
+	 */
+	@Override
+	public SparseMatrix<E> copy()
+	{
+		SparseMatrix<E> m = new SparseMatrix<E>(m_rows, m_columns);
+
+		m.m_sparseData = new LongObjectHashMap<E>(m_sparseData);
+
+		return m;
+	}
+
+	/**
+	 * Sum the element hash codes over the stored elements only.
+	 */
+	@Override
+	protected int computeHashCode()
+	{
+		long[] keys = m_sparseData.m_keys;
+		Object[] values = m_sparseData.m_values;
+		int h = 0;
+
+		for (int i = 0 ; i < keys.length ; ++i)
+		{
+			long key = keys[i];
+
+			if (key != LongObjectHashMap.EMPTY)
+				h += elementHashCode((int) (key / m_columns), (int) (key % m_columns), values[i].hashCode());
+		}
+
+		return h;
+	}
+
+	/**
+	 * Equals comparison operator. Two sparse matrices are compared through
+	 * their stored elements only.
+	 */
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o instanceof SparseMatrix<?> == false || o == this)
+			return super.equals(o);
+
+		SparseMatrix<?> rhs = (SparseMatrix<?>) o;
+
+		if (m_rows != rhs.m_rows || m_columns != rhs.m_columns)
+			return false;
+
+		if (hashCodesDiffer(rhs))
+			return false;
+
+		return storedElementsMatch(this, rhs) && storedElementsMatch(rhs, this);
+	}
+
+	/**
+	 * Helper function to determine whether every non-null element stored by m1
+	 * equals the element of m2 at the same position.
+	 */
+	private static boolean storedElementsMatch(SparseMatrix<?> m1, SparseMatrix<?> m2)
+	{
+		long[] keys = m1.m_sparseData.m_keys;
+		Object[] values = m1.m_sparseData.m_values;
+
+		for (int i = 0 ; i < keys.length ; ++i)
+			if (keys[i] != LongObjectHashMap.EMPTY && !values[i].equals(m2.m_sparseData.get(keys[i])))
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Visit the stored elements only, in no particular order.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void forEachNonNull(EntryVisitor<? super E> visitor)
+	{
+		long[] keys = m_sparseData.m_keys;
+		Object[] values = m_sparseData.m_values;
+
+		for (int i = 0 ; i < keys.length ; ++i)
+			if (keys[i] != LongObjectHashMap.EMPTY)
+				visitor.visit((int) (keys[i] / m_columns), (int) (keys[i] % m_columns), (E) values[i]);
+	}
+
+	/**
+	 * Visit the stored elements of the column only.
+	 */
+	@Override
+	public void forEachNonNullInColumn(int col, EntryVisitor<? super E> visitor)
+	{
+		if (col < 0 || col >= m_columns)
+			throw new IndexOutOfBoundsException();
+
+		visitSlots(m_sparseData.slotsOf(col, (long) m_rows * m_columns, m_columns), visitor);
+	}
+
+	/**
+	 * Visit the stored elements of the row only.
+	 */
+	@Override
+	public void forEachNonNullInRow(int row, EntryVisitor<? super E> visitor)
+	{
+		if (row < 0 || row >= m_rows)
+			throw new IndexOutOfBoundsException();
+
+		long first = convertRowAndColToKey(row, 0);
+
+		visitSlots(m_sparseData.slotsOf(first, first + m_columns, 1), visitor);
+	}
+
 	/**
 	 * Returns the element at the specified row and column.
 	 * 
@@ -44,7 +157,7 @@ public class SparseMatrix<E> extends Matrix<E>
 		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
 			throw new IndexOutOfBoundsException();
 
-		return m_sparseData.get(convertRowAndColToIndex(row, col));
+		return m_sparseData.get(convertRowAndColToKey(row, col));
 	}
 
 	@Override
@@ -53,7 +166,7 @@ public class SparseMatrix<E> extends Matrix<E>
 	 */
 	protected void initializeDataStructures()
 	{
-		m_sparseData = new HashMap<Integer, E>();
+		m_sparseData = new LongObjectHashMap<E>();
 	}
 
 	/**
@@ -64,7 +177,8 @@ public class SparseMatrix<E> extends Matrix<E>
 	 * @param col
 	 *            - the column at which to set the element
 	 * @param element
-	 *            - the element to set at the given row and column
+	 *            - the element to set at the given row and column, or null
+	 *            to clear it
 	 */
 	@Override
 	public void set(int row, int col, E element)
@@ -72,7 +186,10 @@ public class SparseMatrix<E> extends Matrix<E>
 		if (row < 0 || row >= m_rows || col < 0 || col >= m_columns)
 			throw new IndexOutOfBoundsException();
 
-		m_sparseData.put(convertRowAndColToIndex(row, col), element);
+		long key = convertRowAndColToKey(row, col);
+		E old = (element == null) ? m_sparseData.remove(key) : m_sparseData.put(key, element);
+
+		updateHashCode(row, col, (old == null) ? 0 : old.hashCode(), (element == null) ? 0 : element.hashCode());
 	}
 
 	/**
@@ -97,6 +214,26 @@ public class SparseMatrix<E> extends Matrix<E>
 
 		SparseMatrix<E> m = new SparseMatrix<E>(newRows, newCols);
 
+		// Visit whichever is smaller: the stored entries or the window.
+		if (m_sparseData.size() < (long) newRows * newCols)
+		{
+			long[] keys = m_sparseData.m_keys;
+
+			for (int i = 0 ; i < keys.length ; ++i)
+			{
+				if (keys[i] == LongObjectHashMap.EMPTY)
+					continue;
+
+				int row = (int) (keys[i] / m_columns);
+				int col = (int) (keys[i] % m_columns);
+
+				if (row >= firstRowIndex && row < lastRowIndex && col >= firstColIndex && col < lastColIndex)
+					m.set(row - firstRowIndex, col - firstColIndex, m_sparseData.get(keys[i]));
+			}
+
+			return m;
+		}
+
 		for (int row = firstRowIndex ; row < lastRowIndex ; ++row)
 		{
 			for (int col = firstColIndex ; col < lastColIndex ; ++col)
@@ -111,4 +248,19 @@ public class SparseMatrix<E> extends Matrix<E>
 		return m;
 	}
 
+	/**
+	 * Helper function to call the visitor with the elements in the given
+	 * slots of m_sparseData.
+	 */
+	@SuppressWarnings("unchecked")
+	private void visitSlots(int[] slots, EntryVisitor<? super E> visitor)
+	{
+		for (int i : slots)
+		{
+			long key = m_sparseData.m_keys[i];
+
+			visitor.visit((int) (key / m_columns), (int) (key % m_columns), (E) m_sparseData.m_values[i]);
+		}
+	}
+
 }
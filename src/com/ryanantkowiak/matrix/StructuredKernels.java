@@ -0,0 +1,517 @@
+package com.ryanantkowiak.matrix;
+
+/**
+ * Kernels for banded, diagonal, triangular and symmetric matrices whose cost
+ * scales with the stored elements rather than with the dimensions.
+ *
+ * Products skip the zeros outside the structure, so they are only computed
+ * here when every stored value is finite (a NaN or infinite value times such a
+ * zero must give NaN); otherwise MatrixMath computes them densely.
+ *
+ * @author antko
+ *
+ */
+final class StructuredKernels
+{
+	private static final DoubleKernels KERNELS = DoubleKernels.INSTANCE;
+
+	/**
+	 * Unused default constructor.
+	 */
+	private StructuredKernels()
+	{
+	}
+
+	/**
+	 * Returns m1 + m2 (or m1 - m2) in the structure that holds the nonzeros of
+	 * both operands, or null when an operand is not structured or the sum needs
+	 * dense storage.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @param subtract
+	 * @return - the sum, or null
+	 */
+	static DoubleStructuredMatrix add(DoubleMatrix m1, DoubleMatrix m2, boolean subtract)
+	{
+		if (!(m1 instanceof DoubleStructuredMatrix) || !(m2 instanceof DoubleStructuredMatrix))
+			return null;
+
+		DoubleStructuredMatrix a = (DoubleStructuredMatrix) m1;
+		DoubleStructuredMatrix b = (DoubleStructuredMatrix) m2;
+		DoubleStructuredMatrix s = sumTarget(a, b);
+
+		if (s == null)
+			return null;
+
+		double[] d = s.m_elements;
+
+		if (sameLayout(s, a) && sameLayout(s, b))
+		{
+			if (subtract)
+				KERNELS.subtract(a.m_elements, 0, b.m_elements, 0, d, 0, d.length);
+			else
+				KERNELS.add(a.m_elements, 0, b.m_elements, 0, d, 0, d.length);
+
+			return s;
+		}
+
+		double[] row = new double[s.getColumnDimension()];
+
+		for (int r = 0 ; r < s.getRowDimension() ; ++r)
+		{
+			int first = s.firstColumn(r);
+			int n = s.lastColumn(r) - first;
+
+			if (n <= 0)
+				continue;
+
+			int id = s.index(r, first);
+
+			a.getRow(r, first, d, id, n);
+			b.getRow(r, first, row, 0, n);
+
+			if (subtract)
+				KERNELS.subtract(d, id, row, 0, d, id, n);
+			else
+				KERNELS.add(d, id, row, 0, d, id, n);
+		}
+
+		return s;
+	}
+
+	/**
+	 * Helper function to return true if every stored value of an array-backed
+	 * or structured matrix is finite.
+	 */
+	private static boolean allFinite(DoubleMatrix m)
+	{
+		if (m instanceof DoubleStructuredMatrix)
+		{
+			for (double v : ((DoubleStructuredMatrix) m).m_elements)
+				if (Double.isNaN(v) || Double.isInfinite(v))
+					return false;
+
+			return true;
+		}
+
+		for (int r = 0 ; r < m.getRowDimension() ; ++r)
+		{
+			int start = m.m_offset + r * m.m_rowStride;
+
+			for (int i = start ; i < start + m.getColumnDimension() ; ++i)
+				if (Double.isNaN(m.m_values[i]) || Double.isInfinite(m.m_values[i]))
+					return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Helper function to compute the determinant of a square banded matrix
+	 * from an LU decomposition with partial pivoting in band storage. Row swaps
+	 * widen the upper band of U by the lower bandwidth, so row i of the work
+	 * array holds columns i - lower to i + lower + upper. The cost is O(n *
+	 * lower * (lower + upper)).
+	 */
+	private static double bandedDeterminant(DoubleStructuredMatrix m, int lower, int upper)
+	{
+		int n = m.getRowDimension();
+		int width = 2 * lower + upper + 1;
+		double[] a = new double[n * width];
+
+		for (int i = 0 ; i < n ; ++i)
+		{
+			int first = m.firstColumn(i);
+
+			m.getRow(i, first, a, i * width + first - i + lower, m.lastColumn(i) - first);
+		}
+
+		double det = 1.0;
+
+		for (int j = 0 ; j < n ; ++j)
+		{
+			int lastRow = Math.min(n - 1, j + lower);
+			int end = Math.min(n, j + lower + upper + 1);
+
+			int p = j;
+			double max = Math.abs(a[j * width + lower]);
+
+			for (int i = j + 1 ; i <= lastRow ; ++i)
+			{
+				double v = Math.abs(a[i * width + j - i + lower]);
+
+				if (v > max)
+				{
+					max = v;
+					p = i;
+				}
+			}
+
+			// a[rj + c] is the element at (j, c).
+			int rj = j * width - j + lower;
+
+			if (p != j)
+			{
+				int rp = p * width - p + lower;
+
+				for (int c = j ; c < end ; ++c)
+				{
+					double t = a[rp + c];
+					a[rp + c] = a[rj + c];
+					a[rj + c] = t;
+				}
+
+				det = -det;
+			}
+
+			double diag = a[rj + j];
+
+			det *= diag;
+
+			if (diag == 0.0)
+				continue;
+
+			for (int i = j + 1 ; i <= lastRow ; ++i)
+			{
+				int ri = i * width - i + lower;
+				double l = a[ri + j] / diag;
+
+				if (l == 0.0)
+					continue;
+
+				for (int c = j + 1 ; c < end ; ++c)
+					a[ri + c] -= l * a[rj + c];
+			}
+		}
+
+		return det;
+	}
+
+	/**
+	 * Returns a zeroed matrix with the given bandwidths in the cheapest
+	 * structure that holds them: diagonal, triangular or banded. Returns null
+	 * when the band is so wide that dense storage and kernels are better.
+	 *
+	 * @param rows
+	 * @param cols
+	 * @param lower
+	 *            - the number of nonzero diagonals below the main diagonal
+	 * @param upper
+	 *            - the number of nonzero diagonals above the main diagonal
+	 * @return - a new structured matrix, or null
+	 */
+	static DoubleStructuredMatrix create(int rows, int cols, long lower, long upper)
+	{
+		int kl = (int) Math.min(lower, Math.max(0, rows - 1));
+		int ku = (int) Math.min(upper, Math.max(0, cols - 1));
+
+		if (rows == cols)
+		{
+			if (kl == 0 && ku == 0)
+				return new DoubleDiagonalMatrix(rows);
+
+			if (kl == 0 && ku == cols - 1)
+				return new DoubleUpperTriangularMatrix(rows);
+
+			if (ku == 0 && kl == rows - 1)
+				return new DoubleLowerTriangularMatrix(rows);
+		}
+
+		if (2L * (kl + ku + 1) > cols)
+			return null;
+
+		return new DoubleBandedMatrix(rows, cols, kl, ku);
+	}
+
+	/**
+	 * Returns the determinant of a square banded or triangular matrix: the
+	 * product of the diagonal when it is triangular, and otherwise from a
+	 * banded LU decomposition.
+	 *
+	 * @param m
+	 *            - a matrix for which hasBandedDeterminant() is true
+	 * @return - the determinant
+	 */
+	static double determinant(DoubleStructuredMatrix m)
+	{
+		int lower = m.getLowerBandwidth();
+		int upper = m.getUpperBandwidth();
+
+		if (lower != 0 && upper != 0)
+			return bandedDeterminant(m, lower, upper);
+
+		double det = 1.0;
+
+		for (int i = 0 ; i < m.getRowDimension() ; ++i)
+			det *= m.m_elements[m.index(i, i)];
+
+		return det;
+	}
+
+	/**
+	 * Returns true if the determinant of the given square matrix is cheaper to
+	 * compute from its band than from a dense LU decomposition: triangular
+	 * and diagonal matrices, and banded matrices with narrow bands.
+	 *
+	 * @param m
+	 * @return - true if determinant() should be used
+	 */
+	static boolean hasBandedDeterminant(DoubleMatrix m)
+	{
+		DoubleStructuredMatrix s = runsOf(m);
+
+		if (s == null)
+			return false;
+
+		int n = s.getRowDimension();
+		long width = 2L * s.getLowerBandwidth() + s.getUpperBandwidth() + 1;
+
+		if (s.getLowerBandwidth() == 0 || s.getUpperBandwidth() == 0)
+			return true;
+
+		return (2 * width <= n && n * width <= Integer.MAX_VALUE - 8);
+	}
+
+	/**
+	 * Returns true if a structured operand stores at most a quarter of its
+	 * elements, so that a product over its runs beats the dense kernel.
+	 */
+	private static boolean isSparse(DoubleStructuredMatrix m)
+	{
+		return (m != null && 4L * m.getStoredCount() <= (long) m.getRowDimension() * m.getColumnDimension());
+	}
+
+	/**
+	 * Helper function to return true if a structured matrix is symmetric by
+	 * construction: a symmetric or diagonal matrix.
+	 */
+	private static boolean isSymmetric(DoubleStructuredMatrix m)
+	{
+		return (m instanceof DoubleSymmetricMatrix || (m.getLowerBandwidth() == 0 && m.getUpperBandwidth() == 0));
+	}
+
+	/**
+	 * Returns true if the given matrix is a square triangular or diagonal
+	 * matrix, so that systems in it are solved by substitution over its runs.
+	 *
+	 * @param m
+	 * @return - true if solveTriangular() should be used
+	 */
+	static boolean isTriangular(DoubleMatrix m)
+	{
+		DoubleStructuredMatrix s = runsOf(m);
+
+		if (s == null || s.getRowDimension() != s.getColumnDimension())
+			return false;
+
+		return (s.getLowerBandwidth() == 0 || s.getUpperBandwidth() == 0);
+	}
+
+	/**
+	 * Returns m1 * m2 computed from the runs of the structured operands, or
+	 * null when the product is better computed densely: when neither operand
+	 * is a banded or triangular matrix, when the other operand is not
+	 * array-backed, when the structure saves too little work, or when an
+	 * operand holds NaN or infinite values. The product of two structured
+	 * operands is structured when its band is narrow or triangular.
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return - the product, or null
+	 */
+	static DoubleMatrix multiply(DoubleMatrix m1, DoubleMatrix m2)
+	{
+		DoubleStructuredMatrix a = runsOf(m1);
+		DoubleStructuredMatrix b = runsOf(m2);
+
+		if ((a == null && m1.m_values == null) || (b == null && m2.m_values == null) || (a == null && b == null))
+			return null;
+
+		int rows = m1.getRowDimension();
+		int inner = m1.getColumnDimension();
+		int cols = m2.getColumnDimension();
+
+		DoubleStructuredMatrix s = null;
+
+		if (a != null && b != null)
+			s = create(rows, cols, (long) a.getLowerBandwidth() + b.getLowerBandwidth(),
+					(long) a.getUpperBandwidth() + b.getUpperBandwidth());
+
+		if ((s == null && !isSparse(a) && !isSparse(b)) || !allFinite(m1) || !allFinite(m2))
+			return null;
+
+		DoubleMatrix dst = (s != null) ? s : new DoubleMatrix(rows, cols);
+
+		double[] av = (a != null) ? a.m_elements : m1.m_values;
+		double[] bv = (b != null) ? b.m_elements : m2.m_values;
+		double[] d = (s != null) ? s.m_elements : dst.m_values;
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			int ia = (a != null) ? a.index(r, 0) : m1.m_offset + r * m1.m_rowStride;
+			int id = (s != null) ? s.index(r, 0) : r * cols;
+			int firstK = (a != null) ? a.firstColumn(r) : 0;
+			int lastK = (a != null) ? a.lastColumn(r) : inner;
+
+			for (int k = firstK ; k < lastK ; ++k)
+			{
+				int ib = (b != null) ? b.index(k, 0) : m2.m_offset + k * m2.m_rowStride;
+				int first = (b != null) ? b.firstColumn(k) : 0;
+				int last = (b != null) ? b.lastColumn(k) : cols;
+
+				if (first < last)
+					KERNELS.axpy(av[ia + k], bv, ib + first, d, id + first, last - first);
+			}
+		}
+
+		return dst;
+	}
+
+	/**
+	 * Compute y = m * x from the stored elements. A symmetric matrix uses each
+	 * stored element below the diagonal for both of its positions.
+	 *
+	 * @param m
+	 * @param x
+	 * @return - the product vector
+	 */
+	static double[] multiply(DoubleStructuredMatrix m, double[] x)
+	{
+		int rows = m.getRowDimension();
+		double[] el = m.m_elements;
+		double[] y = new double[rows];
+
+		if (m instanceof DoubleSymmetricMatrix)
+		{
+			for (int r = 0 ; r < rows ; ++r)
+			{
+				int base = m.index(r, 0);
+
+				y[r] += KERNELS.dot(el, base, x, 0, r + 1);
+
+				KERNELS.axpy(x[r], el, base, y, 0, r);
+			}
+
+			return y;
+		}
+
+		for (int r = 0 ; r < rows ; ++r)
+		{
+			int first = m.firstColumn(r);
+			int n = m.lastColumn(r) - first;
+
+			if (n > 0)
+				y[r] = KERNELS.dot(el, m.index(r, first), x, first, n);
+		}
+
+		return y;
+	}
+
+	/**
+	 * Helper function to return the given matrix if it is structured and each
+	 * row's run holds all of the row's nonzeros, which excludes symmetric
+	 * matrices, and null otherwise.
+	 */
+	private static DoubleStructuredMatrix runsOf(DoubleMatrix m)
+	{
+		if (!(m instanceof DoubleStructuredMatrix) || m instanceof DoubleSymmetricMatrix)
+			return null;
+
+		return (DoubleStructuredMatrix) m;
+	}
+
+	/**
+	 * Helper function to return true if two structured matrices store their
+	 * elements at the same positions.
+	 */
+	private static boolean sameLayout(DoubleStructuredMatrix m1, DoubleStructuredMatrix m2)
+	{
+		return (m1.getClass() == m2.getClass() && m1.getLowerBandwidth() == m2.getLowerBandwidth()
+				&& m1.getUpperBandwidth() == m2.getUpperBandwidth());
+	}
+
+	/**
+	 * Returns scalar * m with the structure of m. The scalar must be finite,
+	 * since the zeros outside the structure are not multiplied.
+	 *
+	 * @param m
+	 * @param scalar
+	 * @return - the scaled matrix
+	 */
+	static DoubleStructuredMatrix scalarMultiply(DoubleStructuredMatrix m, double scalar)
+	{
+		DoubleStructuredMatrix v = m.emptyCopy();
+
+		KERNELS.scale(scalar, m.m_elements, 0, v.m_elements, 0, m.m_elements.length);
+
+		return v;
+	}
+
+	/**
+	 * Solve m * X = B in place by forward or back substitution over the rows'
+	 * runs, where m is a matrix for which isTriangular() is true and B is a
+	 * row-major n x nrhs array.
+	 *
+	 * @param m
+	 * @param x
+	 *            - data of X, holding B on entry
+	 * @param nrhs
+	 * @throws SingularMatrixException
+	 *             if the diagonal holds a zero
+	 */
+	static void solveTriangular(DoubleStructuredMatrix m, double[] x, int nrhs) throws SingularMatrixException
+	{
+		int n = m.getRowDimension();
+		double[] el = m.m_elements;
+		boolean lower = (m.getUpperBandwidth() == 0);
+
+		for (int i = 0 ; i < n ; ++i)
+			if (el[m.index(i, i)] == 0.0)
+				throw new SingularMatrixException();
+
+		for (int s = 0 ; s < n ; ++s)
+		{
+			int i = lower ? s : n - 1 - s;
+			int base = m.index(i, 0);
+			int first = lower ? m.firstColumn(i) : i + 1;
+			int last = lower ? i : m.lastColumn(i);
+
+			for (int k = first ; k < last ; ++k)
+			{
+				double f = el[base + k];
+
+				if (f != 0.0)
+					KERNELS.axpy(-f, x, k * nrhs, x, i * nrhs, nrhs);
+			}
+
+			double diag = el[base + i];
+
+			for (int j = 0 ; j < nrhs ; ++j)
+				x[i * nrhs + j] /= diag;
+		}
+	}
+
+	/**
+	 * Helper function to return an empty matrix whose structure holds the
+	 * nonzeros of both operands, or null if it would be dense. The sum of a
+	 * symmetric matrix is symmetric only when the other operand is symmetric or
+	 * diagonal.
+	 */
+	private static DoubleStructuredMatrix sumTarget(DoubleStructuredMatrix a, DoubleStructuredMatrix b)
+	{
+		int rows = a.getRowDimension();
+		int cols = a.getColumnDimension();
+
+		if (a instanceof DoubleSymmetricMatrix || b instanceof DoubleSymmetricMatrix)
+		{
+			if (isSymmetric(a) && isSymmetric(b))
+				return new DoubleSymmetricMatrix(rows);
+
+			return null;
+		}
+
+		return create(rows, cols, Math.max(a.getLowerBandwidth(), b.getLowerBandwidth()),
+				Math.max(a.getUpperBandwidth(), b.getUpperBandwidth()));
+	}
+}
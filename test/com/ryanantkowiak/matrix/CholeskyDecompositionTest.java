@@ -0,0 +1,136 @@
+package com.ryanantkowiak.matrix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests for CholeskyDecomposition and its use by MatrixMath.solve() on
+ * symmetric matrices, at sizes around the block size DenseFactorKernels.NB =
+ * 64.
+ *
+ * @author antko
+ *
+ */
+class CholeskyDecompositionTest
+{
+	/**
+	 * Largest backward error accepted from a solve.
+	 */
+	private static final double TOLERANCE = 1e-13;
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void factorReproducesMatrix(int n) throws Exception
+	{
+		DoubleSymmetricMatrix a = TestMatrices.randomSpd(n, n);
+		DoubleMatrix l = new CholeskyDecomposition(a).getL();
+		DoubleMatrix llt = new DoubleMatrix(n, n);
+
+		for (int r = 0 ; r < n ; ++r)
+		{
+			for (int c = 0 ; c < n ; ++c)
+			{
+				double sum = 0.0;
+
+				for (int k = 0 ; k <= Math.min(r, c) ; ++k)
+					sum += l.getDouble(r, k) * l.getDouble(c, k);
+
+				llt.setDouble(r, c, sum);
+			}
+		}
+
+		assertTrue(TestMatrices.relativeDifference(llt, a) < TOLERANCE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void solveHasSmallResidual(int n) throws Exception
+	{
+		DoubleSymmetricMatrix a = TestMatrices.randomSpd(n, n);
+		double[] b = TestMatrices.randomVector(n, -n);
+
+		assertTrue(TestMatrices.backwardError(a, new CholeskyDecomposition(a).solve(b), b) < TOLERANCE);
+		assertTrue(TestMatrices.backwardError(a, MatrixMath.solve(a, b), b) < TOLERANCE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void solveManyHasSmallResidual(int n) throws Exception
+	{
+		DoubleSymmetricMatrix a = TestMatrices.randomSpd(n, n);
+		DoubleMatrix b = TestMatrices.random(n, 3, -n);
+
+		assertTrue(TestMatrices.backwardError(a, MatrixMath.solve(a, b), b) < TOLERANCE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void inverseHasSmallResidual(int n) throws Exception
+	{
+		DoubleSymmetricMatrix a = TestMatrices.randomSpd(n, n);
+		DoubleMatrix inverse = new CholeskyDecomposition(a).inverse();
+
+		assertTrue(TestMatrices.backwardError(a, inverse, MatrixMath.identity(n)) < TOLERANCE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void determinantMatchesLU(int n) throws Exception
+	{
+		// Scaled so that the determinant stays in range.
+		DoubleSymmetricMatrix a = TestMatrices.randomSpd(n, n);
+		DoubleSymmetricMatrix scaled = new DoubleSymmetricMatrix(n);
+
+		for (int r = 0 ; r < n ; ++r)
+			for (int c = 0 ; c <= r ; ++c)
+				scaled.setDouble(r, c, a.getDouble(r, c) / (2.0 * n));
+
+		double expected = new LUDecomposition(scaled).determinant();
+
+		assertEquals(expected, new CholeskyDecomposition(scaled).determinant(), 1e-10 * Math.abs(expected));
+	}
+
+	@Test
+	void indefiniteMatrixIsRejected()
+	{
+		DoubleMatrix a = DoubleMatrix.fromString(2, 2, "1 2 2 1", " ");
+
+		assertThrows(NotPositiveDefiniteException.class, () -> new CholeskyDecomposition(a));
+	}
+
+	@Test
+	void nonSymmetricMatrixIsRejected()
+	{
+		DoubleMatrix a = DoubleMatrix.fromString(2, 2, "4 1 2 4", " ");
+
+		assertThrows(NotPositiveDefiniteException.class, () -> new CholeskyDecomposition(a));
+	}
+
+	@Test
+	void matrixIndefiniteInLastBlockIsRejected()
+	{
+		// Positive definite except in its last element, past the first block.
+		DoubleSymmetricMatrix a = TestMatrices.randomSpd(130, 130);
+
+		a.setDouble(129, 129, -1.0);
+
+		assertThrows(NotPositiveDefiniteException.class, () -> new CholeskyDecomposition(a));
+	}
+
+	@Test
+	void solveFallsBackToLUForIndefiniteSymmetricMatrix() throws Exception
+	{
+		DoubleSymmetricMatrix a = TestMatrices.randomSpd(65, 65);
+
+		a.setDouble(64, 64, -1.0);
+
+		double[] b = TestMatrices.randomVector(65, 7);
+
+		assertTrue(TestMatrices.backwardError(a, MatrixMath.solve(a, b), b) < TOLERANCE);
+	}
+}
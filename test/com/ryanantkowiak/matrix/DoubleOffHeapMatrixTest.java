@@ -0,0 +1,69 @@
+package com.ryanantkowiak.matrix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for DoubleOffHeapMatrix and the MatrixMath operations that return new
+ * matrices for operands stored outside the heap.
+ *
+ * @author antko
+ *
+ */
+class DoubleOffHeapMatrixTest
+{
+	@Test
+	void operationsOnOffHeapOperandsReturnOffHeapResults() throws Exception
+	{
+		DoubleMatrix a = TestMatrices.random(70, 70, 1);
+		DoubleMatrix b = TestMatrices.random(70, 70, 2);
+
+		try (DoubleOffHeapMatrix oa = new DoubleOffHeapMatrix(a))
+		{
+			DoubleMatrix[] results = { MatrixMath.add(oa, b), MatrixMath.subtract(b, oa), MatrixMath.multiply(oa, b),
+					MatrixMath.scalarMultiply(oa, 3.0) };
+			DoubleMatrix[] expected = { MatrixMath.add(a, b), MatrixMath.subtract(b, a), MatrixMath.multiply(a, b),
+					MatrixMath.scalarMultiply(a, 3.0) };
+
+			for (int i = 0 ; i < results.length ; ++i)
+			{
+				try (DoubleOffHeapMatrix result = (DoubleOffHeapMatrix) results[i])
+				{
+					assertTrue(TestMatrices.relativeDifference(result, expected[i]) < 1e-14);
+				}
+			}
+		}
+	}
+
+	@Test
+	void operationsOnHeapOperandsReturnHeapResults() throws Exception
+	{
+		DoubleMatrix a = TestMatrices.random(5, 5, 3);
+
+		assertFalse(MatrixMath.add(a, a) instanceof DoubleBufferMatrix);
+		assertFalse(MatrixMath.multiply(a, a) instanceof DoubleBufferMatrix);
+	}
+
+	@Test
+	void heapMatrixTooLargeForAnArrayIsRejected()
+	{
+		// 65536 * 65537 elements would wrap around to 65536 in an int.
+		assertThrows(IndexOutOfBoundsException.class, () -> new DoubleMatrix(65536, 65537));
+	}
+
+	@Test
+	void valuesRoundTrip()
+	{
+		try (DoubleOffHeapMatrix m = new DoubleOffHeapMatrix(3, 4))
+		{
+			m.setDouble(2, 3, 1.5);
+
+			assertEquals(1.5, m.getDouble(2, 3), 0.0);
+			assertEquals(0.0, m.getDouble(0, 0), 0.0);
+		}
+	}
+}
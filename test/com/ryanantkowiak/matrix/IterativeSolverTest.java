@@ -0,0 +1,326 @@
+package com.ryanantkowiak.matrix;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for IterativeSolver and its preconditioners, on two-dimensional
+ * Poisson and convection-diffusion matrices.
+ *
+ * @author antko
+ *
+ */
+class IterativeSolverTest
+{
+	/**
+	 * Points along each side of the grids.
+	 */
+	private static final int GRID = 30;
+
+	/**
+	 * Returns the five-point Laplacian on a g x g grid, which is symmetric
+	 * positive definite.
+	 */
+	private static DoubleSparseMatrix poisson(int g)
+	{
+		return convectionDiffusion(g, 0.0);
+	}
+
+	/**
+	 * Returns the five-point convection-diffusion operator on a g x g grid,
+	 * with central differences for a flow along the rows. Any nonzero beta
+	 * makes it nonsymmetric.
+	 */
+	private static DoubleSparseMatrix convectionDiffusion(int g, double beta)
+	{
+		int n = g * g;
+		DoubleSparseMatrix m = new DoubleSparseMatrix(n, n);
+
+		for (int i = 0 ; i < g ; ++i)
+		{
+			for (int j = 0 ; j < g ; ++j)
+			{
+				int r = i * g + j;
+
+				m.setDouble(r, r, 4.0);
+
+				if (i > 0)
+					m.setDouble(r, r - g, -1.0);
+
+				if (i < g - 1)
+					m.setDouble(r, r + g, -1.0);
+
+				if (j > 0)
+					m.setDouble(r, r - 1, -1.0 - beta);
+
+				if (j < g - 1)
+					m.setDouble(r, r + 1, -1.0 + beta);
+			}
+		}
+
+		return m;
+	}
+
+	/**
+	 * Check that the result converged and that its solution meets the
+	 * tolerance, measured from scratch.
+	 */
+	private static void assertConverged(DoubleMatrix a, double[] b, IterativeSolverResult result)
+	{
+		assertTrue(result.isConverged());
+		assertTrue(result.getRelativeResidual() <= IterativeSolver.DEFAULT_TOLERANCE);
+
+		double[] x = result.getSolution();
+		double rr = 0.0;
+		double bb = 0.0;
+
+		for (int r = 0 ; r < b.length ; ++r)
+		{
+			double sum = b[r];
+
+			for (int c = 0 ; c < x.length ; ++c)
+				sum -= a.getDouble(r, c) * x[c];
+
+			rr += sum * sum;
+			bb += b[r] * b[r];
+		}
+
+		assertEquals(Math.sqrt(rr), result.getResidualNorm(), 1e-12 * Math.sqrt(bb));
+		assertTrue(Math.sqrt(rr / bb) <= IterativeSolver.DEFAULT_TOLERANCE);
+	}
+
+	@Test
+	void conjugateGradientConvergesOnPoisson() throws Exception
+	{
+		DoubleSparseMatrix a = poisson(GRID);
+		double[] b = TestMatrices.randomVector(a.getRowDimension(), 1);
+		IterativeSolver solver = new IterativeSolver(a);
+
+		IterativeSolverResult plain = solver.conjugateGradient(b);
+
+		assertConverged(a, b, plain);
+
+		solver.setPreconditioner(new JacobiPreconditioner(a));
+
+		IterativeSolverResult jacobi = solver.conjugateGradient(b);
+
+		assertConverged(a, b, jacobi);
+	}
+
+	@Test
+	void biCgStabConvergesOnNonsymmetricMatrix() throws Exception
+	{
+		DoubleSparseMatrix a = convectionDiffusion(GRID, 0.5);
+		double[] b = TestMatrices.randomVector(a.getRowDimension(), 2);
+		IterativeSolver solver = new IterativeSolver(a);
+
+		IterativeSolverResult plain = solver.biCgStab(b);
+
+		assertConverged(a, b, plain);
+
+		solver.setPreconditioner(new IncompleteLUPreconditioner(a));
+
+		IterativeSolverResult ilu = solver.biCgStab(b);
+
+		assertConverged(a, b, ilu);
+		assertTrue(ilu.getIterations() < plain.getIterations());
+	}
+
+	@Test
+	void gmresConvergesOnNonsymmetricMatrix() throws Exception
+	{
+		DoubleSparseMatrix a = convectionDiffusion(GRID, 0.5);
+		double[] b = TestMatrices.randomVector(a.getRowDimension(), 3);
+		IterativeSolver solver = new IterativeSolver(a);
+
+		IterativeSolverResult plain = solver.gmres(b);
+
+		assertConverged(a, b, plain);
+
+		solver.setPreconditioner(new IncompleteLUPreconditioner(a));
+
+		IterativeSolverResult ilu = solver.gmres(b);
+
+		assertConverged(a, b, ilu);
+		assertTrue(ilu.getIterations() < plain.getIterations());
+	}
+
+	@Test
+	void gmresWithoutRestartConvergesWithinDimension() throws Exception
+	{
+		DoubleMatrix a = TestMatrices.random(20, 20, 4);
+		double[] b = TestMatrices.randomVector(20, 5);
+		IterativeSolver solver = new IterativeSolver(a);
+
+		solver.setTolerance(1e-10);
+
+		IterativeSolverResult result = solver.gmres(b, null, 20);
+
+		assertTrue(result.isConverged());
+		assertTrue(result.getIterations() <= 20);
+	}
+
+	@Test
+	void gmresRestartsKeepConverging() throws Exception
+	{
+		DoubleSparseMatrix a = convectionDiffusion(GRID, 0.5);
+		double[] b = TestMatrices.randomVector(a.getRowDimension(), 6);
+		IterativeSolver solver = new IterativeSolver(a);
+
+		IterativeSolverResult full = solver.gmres(b, null, 200);
+		IterativeSolverResult restarted = solver.gmres(b, null, 5);
+
+		assertConverged(a, b, full);
+		assertConverged(a, b, restarted);
+		assertTrue(full.getIterations() < 200);
+		assertTrue(restarted.getIterations() > 5);
+		assertTrue(restarted.getIterations() >= full.getIterations());
+	}
+
+	@Test
+	void gmresStagnatesWhenRestartIsTooShort() throws Exception
+	{
+		// A * b is orthogonal to b, so GMRES(1) makes no progress at all,
+		// while GMRES(2) solves the system exactly.
+		DoubleMatrix a = DoubleMatrix.fromString(2, 2, "0 1 -1 0", " ");
+		double[] b = { 1.0, 0.0 };
+		IterativeSolver solver = new IterativeSolver(a);
+
+		solver.setMaxIterations(50);
+
+		IterativeSolverResult stagnated = solver.gmres(b, null, 1);
+
+		assertFalse(stagnated.isConverged());
+		assertEquals(50, stagnated.getIterations());
+		assertEquals(1.0, stagnated.getRelativeResidual(), 1e-15);
+
+		IterativeSolverResult solved = solver.gmres(b, null, 2);
+
+		assertTrue(solved.isConverged());
+		assertEquals(2, solved.getIterations());
+		assertArrayEquals(new double[] { 0.0, 1.0 }, solved.getSolution(), 1e-15);
+	}
+
+	@Test
+	void iterationLimitReturnsUnconvergedResult() throws Exception
+	{
+		DoubleSparseMatrix a = poisson(GRID);
+		double[] b = TestMatrices.randomVector(a.getRowDimension(), 7);
+		IterativeSolver solver = new IterativeSolver(a);
+
+		solver.setMaxIterations(3);
+
+		IterativeSolverResult cg = solver.conjugateGradient(b);
+		IterativeSolverResult gmres = solver.gmres(b);
+
+		assertFalse(cg.isConverged());
+		assertEquals(3, cg.getIterations());
+		assertTrue(cg.getRelativeResidual() > IterativeSolver.DEFAULT_TOLERANCE);
+		assertTrue(cg.getRelativeResidual() < 1.0);
+
+		assertFalse(gmres.isConverged());
+		assertEquals(3, gmres.getIterations());
+	}
+
+	@Test
+	void biCgStabBreakdownReturnsUnconvergedResult() throws Exception
+	{
+		// The shadow residual is orthogonal to A * r, so the first step breaks
+		// down.
+		DoubleMatrix a = DoubleMatrix.fromString(2, 2, "0 1 -1 0", " ");
+		double[] b = { 1.0, 0.0 };
+
+		IterativeSolverResult result = new IterativeSolver(a).biCgStab(b);
+
+		assertFalse(result.isConverged());
+		assertEquals(0, result.getIterations());
+		assertEquals(1.0, result.getResidualNorm(), 0.0);
+	}
+
+	@Test
+	void listenerStopsIteration() throws Exception
+	{
+		DoubleSparseMatrix a = poisson(GRID);
+		double[] b = TestMatrices.randomVector(a.getRowDimension(), 8);
+		IterativeSolver solver = new IterativeSolver(a);
+		int[] calls = new int[1];
+
+		solver.setIterationListener((iteration, residualNorm) -> ++calls[0] < 4);
+
+		IterativeSolverResult result = solver.conjugateGradient(b);
+
+		assertFalse(result.isConverged());
+		assertEquals(4, calls[0]);
+		assertEquals(4, result.getIterations());
+	}
+
+	@Test
+	void initialGuessThatSolvesTheSystemTakesNoIterations() throws Exception
+	{
+		DoubleSparseMatrix a = poisson(GRID);
+		double[] b = TestMatrices.randomVector(a.getRowDimension(), 9);
+		IterativeSolver solver = new IterativeSolver(a);
+
+		double[] x = solver.conjugateGradient(b).getSolution();
+		IterativeSolverResult again = solver.conjugateGradient(b, x);
+
+		assertTrue(again.isConverged());
+		assertEquals(0, again.getIterations());
+	}
+
+	@Test
+	void jacobiPreconditionerDividesByDiagonal() throws Exception
+	{
+		DoubleMatrix a = DoubleMatrix.fromString(3, 3, "2 1 0 1 4 1 0 1 8", " ");
+		double[] z = new double[3];
+
+		new JacobiPreconditioner(a).apply(new double[] { 2.0, 2.0, 2.0 }, z);
+
+		assertArrayEquals(new double[] { 1.0, 0.5, 0.25 }, z, 0.0);
+		assertThrows(SingularMatrixException.class,
+				() -> new JacobiPreconditioner(DoubleMatrix.fromString(2, 2, "0 1 1 1", " ")));
+	}
+
+	@Test
+	void incompleteLUIsExactWithoutFill() throws Exception
+	{
+		// A tridiagonal matrix has no fill, so ILU(0) is its exact LU.
+		int n = 50;
+		DoubleSparseMatrix a = new DoubleSparseMatrix(n, n);
+
+		for (int i = 0 ; i < n ; ++i)
+		{
+			a.setDouble(i, i, 3.0 + i % 3);
+
+			if (i > 0)
+				a.setDouble(i, i - 1, -1.0);
+
+			if (i < n - 1)
+				a.setDouble(i, i + 1, -2.0);
+		}
+
+		double[] r = TestMatrices.randomVector(n, 10);
+		double[] z = new double[n];
+
+		new IncompleteLUPreconditioner(a).apply(r, z);
+
+		assertTrue(TestMatrices.backwardError(a, z, r) < 1e-15);
+	}
+
+	@Test
+	void incompleteLURequiresStoredDiagonal()
+	{
+		DoubleSparseMatrix a = new DoubleSparseMatrix(2, 2);
+
+		a.setDouble(0, 1, 1.0);
+		a.setDouble(1, 0, 1.0);
+		a.setDouble(1, 1, 1.0);
+
+		assertThrows(SingularMatrixException.class, () -> new IncompleteLUPreconditioner(a));
+	}
+}
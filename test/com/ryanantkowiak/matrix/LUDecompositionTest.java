@@ -0,0 +1,178 @@
+package com.ryanantkowiak.matrix;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests for LUDecomposition and the MatrixMath entry points that use it, at
+ * sizes around the block size DenseFactorKernels.NB = 64.
+ *
+ * @author antko
+ *
+ */
+class LUDecompositionTest
+{
+	/**
+	 * Largest backward error accepted from a solve.
+	 */
+	private static final double TOLERANCE = 1e-13;
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void factorsReproducePermutedMatrix(int n) throws Exception
+	{
+		DoubleMatrix a = TestMatrices.random(n, n, n);
+		LUDecomposition lu = new LUDecomposition(a);
+
+		DoubleMatrix pa = MatrixMath.multiply(lu.getP(), a);
+		DoubleMatrix product = MatrixMath.multiply(lu.getL(), lu.getU());
+
+		assertTrue(TestMatrices.relativeDifference(product, pa) < TOLERANCE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void solveHasSmallResidual(int n) throws Exception
+	{
+		DoubleMatrix a = TestMatrices.random(n, n, n);
+		double[] b = TestMatrices.randomVector(n, -n);
+
+		double[] x = MatrixMath.solve(a, b);
+
+		assertTrue(TestMatrices.backwardError(a, x, b) < TOLERANCE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void solveManyHasSmallResidual(int n) throws Exception
+	{
+		DoubleMatrix a = TestMatrices.random(n, n, n);
+		DoubleMatrix b = TestMatrices.random(n, 3, -n);
+
+		DoubleMatrix x = MatrixMath.solve(a, b);
+
+		assertTrue(TestMatrices.backwardError(a, x, b) < TOLERANCE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void inverseHasSmallResidual(int n) throws Exception
+	{
+		DoubleMatrix a = TestMatrices.random(n, n, n);
+		DoubleMatrix identity = MatrixMath.identity(n);
+
+		DoubleMatrix inverse = MatrixMath.inverse(a);
+
+		assertTrue(TestMatrices.backwardError(a, inverse, identity) < TOLERANCE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void determinantKeepsSignOfPivoting(int n) throws Exception
+	{
+		// A = Q * L * U for a random row permutation Q, so that pivoting must
+		// undo it; det(A) = sign(Q) * prod(diag(U)). The off-diagonal parts of
+		// L and U are scaled down to keep A well conditioned.
+		Random random = new Random(n);
+		DoubleMatrix l = TestMatrices.random(n, n, n);
+		DoubleMatrix u = TestMatrices.random(n, n, -n);
+		double expected = 1.0;
+
+		for (int r = 0 ; r < n ; ++r)
+		{
+			for (int c = 0 ; c < n ; ++c)
+			{
+				if (c > r)
+				{
+					l.setDouble(r, c, 0.0);
+					u.setDouble(r, c, u.getDouble(r, c) / n);
+				}
+				else if (c < r)
+				{
+					l.setDouble(r, c, l.getDouble(r, c) / n);
+					u.setDouble(r, c, 0.0);
+				}
+			}
+
+			double d = (random.nextBoolean() ? 1.0 : -1.0) * (0.5 + random.nextDouble());
+
+			l.setDouble(r, r, 1.0);
+			u.setDouble(r, r, d);
+			expected *= d;
+		}
+
+		int[] perm = new int[n];
+
+		for (int i = 0 ; i < n ; ++i)
+			perm[i] = i;
+
+		for (int i = n - 1 ; i > 0 ; --i)
+		{
+			int j = random.nextInt(i + 1);
+
+			if (j != i)
+			{
+				int t = perm[i];
+				perm[i] = perm[j];
+				perm[j] = t;
+				expected = -expected;
+			}
+		}
+
+		DoubleMatrix lu = MatrixMath.multiply(l, u);
+		DoubleMatrix a = new DoubleMatrix(n, n);
+
+		for (int r = 0 ; r < n ; ++r)
+			for (int c = 0 ; c < n ; ++c)
+				a.setDouble(perm[r], c, lu.getDouble(r, c));
+
+		assertEquals(expected, new LUDecomposition(a).determinant(), 1e-9 * Math.abs(expected));
+		assertEquals(expected, MatrixMath.determinant(a), 1e-9 * Math.abs(expected));
+	}
+
+	@Test
+	void determinantOfRowSwapIsNegative() throws Exception
+	{
+		DoubleMatrix swap = DoubleMatrix.fromString(2, 2, "0 1 1 0", " ");
+		DoubleMatrix a = DoubleMatrix.fromString(3, 3, "0 2 1 1 1 1 2 1 0", " ");
+
+		assertEquals(-1.0, new LUDecomposition(swap).determinant(), 0.0);
+		assertEquals(3.0, new LUDecomposition(a).determinant(), 1e-15);
+	}
+
+	@Test
+	void pivotPermutesRows() throws Exception
+	{
+		DoubleMatrix a = DoubleMatrix.fromString(3, 3, "1 2 3 7 8 10 4 5 6", " ");
+
+		assertArrayEquals(new int[] { 1, 0, 2 }, new LUDecomposition(a).getPivot());
+	}
+
+	@Test
+	void singularMatrixIsReported() throws Exception
+	{
+		DoubleMatrix a = DoubleMatrix.fromString(3, 3, "1 2 3 2 4 6 1 1 1", " ");
+		LUDecomposition lu = new LUDecomposition(a);
+
+		assertTrue(lu.isSingular());
+		assertEquals(0.0, lu.determinant(), 0.0);
+		assertThrows(SingularMatrixException.class, () -> lu.solve(new double[] { 1.0, 2.0, 3.0 }));
+		assertThrows(SingularMatrixException.class, () -> MatrixMath.inverse(a));
+	}
+
+	@Test
+	void nonSquareMatrixIsRejected()
+	{
+		assertThrows(InvalidMatrixDimensionException.class, () -> new LUDecomposition(new DoubleMatrix(2, 3)));
+		assertThrows(InvalidMatrixDimensionException.class,
+				() -> MatrixMath.solve(new DoubleMatrix(2, 2), new double[3]));
+	}
+}
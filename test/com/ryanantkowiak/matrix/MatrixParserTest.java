@@ -0,0 +1,37 @@
+package com.ryanantkowiak.matrix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests for the delimiters that DoubleMatrix.fromString() hands to
+ * MatrixParser.
+ *
+ * @author antko
+ *
+ */
+class MatrixParserTest
+{
+	@ParameterizedTest
+	@ValueSource(strings = { " ", ",", ";", "\\|", "\t", "·", "§", " " })
+	void fromStringSplitsOnSingleCharacterDelimiter(String delim)
+	{
+		String sep = delim.startsWith("\\") ? delim.substring(1) : delim;
+		DoubleMatrix m = DoubleMatrix.fromString(2, 2, "1" + sep + "2" + sep + "3" + sep + "4", delim);
+
+		assertEquals(1.0, m.getDouble(0, 0), 0.0);
+		assertEquals(2.0, m.getDouble(0, 1), 0.0);
+		assertEquals(3.0, m.getDouble(1, 0), 0.0);
+		assertEquals(4.0, m.getDouble(1, 1), 0.0);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "·", "§", " ", "€" })
+	void nonAsciiDelimiterIsLeftToSplit(String delim)
+	{
+		assertNull(MatrixParser.literalSeparators(delim));
+	}
+}
@@ -0,0 +1,135 @@
+package com.ryanantkowiak.matrix;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests for QRDecomposition and MatrixMath.leastSquares(), on matrices whose
+ * column counts straddle the block size DenseFactorKernels.NB = 64.
+ *
+ * @author antko
+ *
+ */
+class QRDecompositionTest
+{
+	/**
+	 * Largest relative error accepted from a factorization or a solve.
+	 */
+	private static final double TOLERANCE = 1e-13;
+
+	/**
+	 * Rows added to the column count to make the least squares problems
+	 * overdetermined.
+	 */
+	private static final int EXTRA_ROWS = 9;
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void factorsReproduceMatrix(int n) throws Exception
+	{
+		DoubleMatrix a = TestMatrices.random(n + EXTRA_ROWS, n, n);
+		QRDecomposition qr = new QRDecomposition(a);
+		DoubleMatrix q = qr.getQ();
+
+		assertTrue(TestMatrices.relativeDifference(MatrixMath.multiply(q, qr.getR()), a) < TOLERANCE);
+
+		// Q^T * Q = I
+		DoubleMatrix qtq = new DoubleMatrix(n, n);
+
+		for (int r = 0 ; r < n ; ++r)
+		{
+			for (int c = 0 ; c < n ; ++c)
+			{
+				double sum = 0.0;
+
+				for (int k = 0 ; k < q.getRowDimension() ; ++k)
+					sum += q.getDouble(k, r) * q.getDouble(k, c);
+
+				qtq.setDouble(r, c, sum);
+			}
+		}
+
+		assertTrue(TestMatrices.relativeDifference(qtq, MatrixMath.identity(n)) < TOLERANCE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void leastSquaresResidualIsOrthogonalToColumns(int n) throws Exception
+	{
+		int m = n + EXTRA_ROWS;
+		DoubleMatrix a = TestMatrices.random(m, n, n);
+		double[] b = TestMatrices.randomVector(m, -n);
+
+		double[] x = MatrixMath.leastSquares(a, b);
+
+		// The normal equations A^T * (b - A * x) = 0 hold up to rounding.
+		double[] r = b.clone();
+
+		for (int i = 0 ; i < m ; ++i)
+			for (int j = 0 ; j < n ; ++j)
+				r[i] -= a.getDouble(i, j) * x[j];
+
+		double aNorm = TestMatrices.normInf(a);
+		double scale = aNorm * (aNorm * TestMatrices.normInf(x) + TestMatrices.normInf(b));
+
+		for (int j = 0 ; j < n ; ++j)
+		{
+			double sum = 0.0;
+
+			for (int i = 0 ; i < m ; ++i)
+				sum += a.getDouble(i, j) * r[i];
+
+			assertTrue(Math.abs(sum) < TOLERANCE * scale);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void leastSquaresSolvesConsistentSystem(int n) throws Exception
+	{
+		int m = n + EXTRA_ROWS;
+		DoubleMatrix a = TestMatrices.random(m, n, n);
+		DoubleMatrix expected = TestMatrices.random(n, 3, -n);
+		DoubleMatrix b = MatrixMath.multiply(a, expected);
+
+		DoubleMatrix x = MatrixMath.leastSquares(a, b);
+
+		assertTrue(TestMatrices.backwardError(a, x, b) < TOLERANCE);
+		assertTrue(TestMatrices.relativeDifference(x, expected) < 1e-10);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 63, 64, 65, 130 })
+	void squareSolveHasSmallResidual(int n) throws Exception
+	{
+		DoubleMatrix a = TestMatrices.random(n, n, n);
+		double[] b = TestMatrices.randomVector(n, -n);
+
+		assertTrue(TestMatrices.backwardError(a, new QRDecomposition(a).solve(b), b) < TOLERANCE);
+	}
+
+	@Test
+	void rankDeficientMatrixIsRejected() throws Exception
+	{
+		DoubleMatrix a = TestMatrices.random(70, 66, 1);
+
+		for (int r = 0 ; r < 70 ; ++r)
+			a.setDouble(r, 65, 0.0);
+
+		QRDecomposition qr = new QRDecomposition(a);
+
+		assertFalse(qr.isFullRank());
+		assertThrows(SingularMatrixException.class, () -> qr.solve(new double[70]));
+	}
+
+	@Test
+	void wideMatrixIsRejected()
+	{
+		assertThrows(InvalidMatrixDimensionException.class, () -> new QRDecomposition(new DoubleMatrix(2, 3)));
+	}
+}
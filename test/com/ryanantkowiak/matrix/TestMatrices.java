@@ -0,0 +1,148 @@
+package com.ryanantkowiak.matrix;
+
+import java.util.Random;
+
+/**
+ * Matrices and error measures shared by the tests.
+ *
+ * @author antko
+ *
+ */
+final class TestMatrices
+{
+	/**
+	 * Unused default constructor.
+	 */
+	private TestMatrices()
+	{
+	}
+
+	/**
+	 * Returns the infinity norm of the matrix: the largest row sum of
+	 * absolute values.
+	 */
+	static double normInf(DoubleMatrix m)
+	{
+		double max = 0.0;
+
+		for (int r = 0 ; r < m.getRowDimension() ; ++r)
+		{
+			double sum = 0.0;
+
+			for (int c = 0 ; c < m.getColumnDimension() ; ++c)
+				sum += Math.abs(m.getDouble(r, c));
+
+			max = Math.max(max, sum);
+		}
+
+		return max;
+	}
+
+	/**
+	 * Returns the infinity norm of the vector: its largest absolute value.
+	 */
+	static double normInf(double[] v)
+	{
+		double max = 0.0;
+
+		for (double d : v)
+			max = Math.max(max, Math.abs(d));
+
+		return max;
+	}
+
+	/**
+	 * Returns a rows x cols matrix of uniform random values in [-1, 1).
+	 */
+	static DoubleMatrix random(int rows, int cols, long seed)
+	{
+		Random random = new Random(seed);
+		DoubleMatrix m = new DoubleMatrix(rows, cols);
+
+		for (int r = 0 ; r < rows ; ++r)
+			for (int c = 0 ; c < cols ; ++c)
+				m.setDouble(r, c, 2.0 * random.nextDouble() - 1.0);
+
+		return m;
+	}
+
+	/**
+	 * Returns a vector of uniform random values in [-1, 1).
+	 */
+	static double[] randomVector(int n, long seed)
+	{
+		Random random = new Random(seed);
+		double[] v = new double[n];
+
+		for (int i = 0 ; i < n ; ++i)
+			v[i] = 2.0 * random.nextDouble() - 1.0;
+
+		return v;
+	}
+
+	/**
+	 * Returns a symmetric positive definite matrix, B * B^T + n * I for a
+	 * random B.
+	 */
+	static DoubleSymmetricMatrix randomSpd(int n, long seed)
+	{
+		DoubleMatrix b = random(n, n, seed);
+		DoubleSymmetricMatrix m = new DoubleSymmetricMatrix(n);
+
+		for (int r = 0 ; r < n ; ++r)
+		{
+			for (int c = 0 ; c <= r ; ++c)
+			{
+				double sum = (r == c) ? n : 0.0;
+
+				for (int k = 0 ; k < n ; ++k)
+					sum += b.getDouble(r, k) * b.getDouble(c, k);
+
+				m.setDouble(r, c, sum);
+			}
+		}
+
+		return m;
+	}
+
+	/**
+	 * Returns the normwise backward error of x as a solution of a * x = b:
+	 * ||a * x - b|| / (||a|| * ||x|| + ||b||), in the infinity norm.
+	 */
+	static double backwardError(DoubleMatrix a, double[] x, double[] b)
+	{
+		double max = 0.0;
+
+		for (int r = 0 ; r < a.getRowDimension() ; ++r)
+		{
+			double sum = -b[r];
+
+			for (int c = 0 ; c < a.getColumnDimension() ; ++c)
+				sum += a.getDouble(r, c) * x[c];
+
+			max = Math.max(max, Math.abs(sum));
+		}
+
+		return max / (normInf(a) * normInf(x) + normInf(b));
+	}
+
+	/**
+	 * Returns the normwise backward error of x as a solution of a * x = b for
+	 * every column of b at once.
+	 */
+	static double backwardError(DoubleMatrix a, DoubleMatrix x, DoubleMatrix b) throws InvalidMatrixDimensionException
+	{
+		DoubleMatrix r = MatrixMath.subtract(MatrixMath.multiply(a, x), b);
+
+		return normInf(r) / (normInf(a) * normInf(x) + normInf(b));
+	}
+
+	/**
+	 * Returns the largest absolute difference between two matrices of the
+	 * same dimensions, relative to the infinity norm of the second.
+	 */
+	static double relativeDifference(DoubleMatrix actual, DoubleMatrix expected) throws InvalidMatrixDimensionException
+	{
+		return normInf(MatrixMath.subtract(actual, expected)) / normInf(expected);
+	}
+}